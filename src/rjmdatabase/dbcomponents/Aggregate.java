@@ -0,0 +1,600 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * A function summarising the values of a field over many Records, such as
+ * their sum. Aggregates are built from the static factory methods. Numeric
+ * aggregates work on fields of any numeric type, and on string fields holding
+ * numbers, which are parsed as they are read. Approximate aggregates summarise
+ * the values in a sketch of fixed size instead of keeping them all, trading a
+ * small error for bounded memory.
+ * @author Rjmcf
+ */
+public class Aggregate
+{
+    // The functions that can be computed.
+    private enum Function
+    {
+        COUNT("count"), SUM("sum"), MIN("min"), MAX("max"), AVG("avg"),
+        APPROX_COUNT_DISTINCT("approx_count_distinct"), APPROX_QUANTILE("approx_quantile");
+
+        private final String functionName;
+
+        Function(String functionName)
+        {
+            this.functionName = functionName;
+        }
+    }
+
+    private final Function function;
+    // The field being summarised, or null if the function doesn't need one.
+    private final String fieldName;
+    // The quantile to estimate, for APPROX_QUANTILE.
+    private final double quantile;
+
+    private Aggregate(Function function, String fieldName)
+    {
+        this(function, fieldName, 0);
+    }
+
+    private Aggregate(Function function, String fieldName, double quantile)
+    {
+        this.function = function;
+        this.fieldName = fieldName;
+        this.quantile = quantile;
+    }
+
+    /**
+     * Gets an Aggregate counting the Records.
+     * @return The Aggregate.
+     */
+    public static Aggregate count()
+    {
+        return new Aggregate(Function.COUNT, null);
+    }
+
+    /**
+     * Gets an Aggregate adding up the values of a numeric field.
+     * @param  fieldName The name of the field.
+     * @return           The Aggregate.
+     */
+    public static Aggregate sum(String fieldName)
+    {
+        return new Aggregate(Function.SUM, fieldName);
+    }
+
+    /**
+     * Gets an Aggregate finding the smallest value of a field. String fields
+     * are compared as numbers if every value is a number, and as text if not.
+     * @param  fieldName The name of the field.
+     * @return           The Aggregate.
+     */
+    public static Aggregate min(String fieldName)
+    {
+        return new Aggregate(Function.MIN, fieldName);
+    }
+
+    /**
+     * Gets an Aggregate finding the largest value of a field. String fields
+     * are compared as numbers if every value is a number, and as text if not.
+     * @param  fieldName The name of the field.
+     * @return           The Aggregate.
+     */
+    public static Aggregate max(String fieldName)
+    {
+        return new Aggregate(Function.MAX, fieldName);
+    }
+
+    /**
+     * Gets an Aggregate finding the mean of the values of a numeric field.
+     * @param  fieldName The name of the field.
+     * @return           The Aggregate.
+     */
+    public static Aggregate avg(String fieldName)
+    {
+        return new Aggregate(Function.AVG, fieldName);
+    }
+
+    /**
+     * Gets an Aggregate estimating the number of distinct values of a field
+     * with a HyperLogLog, which is usually within 2% of the true number.
+     * @param  fieldName The name of the field.
+     * @return           The Aggregate.
+     */
+    public static Aggregate approxCountDistinct(String fieldName)
+    {
+        return new Aggregate(Function.APPROX_COUNT_DISTINCT, fieldName);
+    }
+
+    /**
+     * Gets an Aggregate estimating a quantile of the values of a field, such
+     * as their median, with a KLL sketch. The result is one of the values,
+     * whose rank is usually within 1% of the number of values of the rank
+     * asked for. Values are compared by the type of the field, so string
+     * fields are compared as text.
+     * @param  fieldName The name of the field.
+     * @param  quantile  The quantile, from 0 for the smallest value to 1 for
+     *                   the largest.
+     * @return           The Aggregate.
+     */
+    public static Aggregate approxQuantile(String fieldName, double quantile)
+    {
+        if (!(quantile >= 0 && quantile <= 1))
+            throw new IllegalArgumentException("Quantiles must be between 0 and 1, not " + quantile);
+        return new Aggregate(Function.APPROX_QUANTILE, fieldName, quantile);
+    }
+
+    /**
+     * Gets a name describing this Aggregate, such as "sum(Score)" or
+     * "approx_quantile(Score,0.5)", for use as a column name in results. The
+     * name never holds ", ", which separates the names of columns.
+     * @return The name.
+     */
+    public String getName()
+    {
+        String argument = fieldName == null ? "*" : fieldName;
+        if (function == Function.APPROX_QUANTILE)
+            argument += "," + quantile;
+        return function.functionName + "(" + argument + ")";
+    }
+
+    /**
+     * Gets the Aggregate described by a name given by getName.
+     * @param  name The name, such as "sum(Score)".
+     * @return      The Aggregate.
+     */
+    static Aggregate fromName(String name)
+    {
+        int open = name.indexOf('(');
+        if (open == -1 || !name.endsWith(")"))
+            throw new IllegalArgumentException("Invalid aggregate " + name);
+        String fieldName = name.substring(open + 1, name.length() - 1);
+        for (Function function : Function.values())
+        {
+            if (!function.functionName.equals(name.substring(0, open)))
+                continue;
+            if (function == Function.COUNT)
+                return count();
+            if (function != Function.APPROX_QUANTILE)
+                return new Aggregate(function, fieldName);
+            int comma = fieldName.lastIndexOf(',');
+            if (comma == -1)
+                throw new IllegalArgumentException("Missing quantile in " + name);
+            return approxQuantile(fieldName.substring(0, comma), Double.parseDouble(fieldName.substring(comma + 1)));
+        }
+        throw new IllegalArgumentException("Unknown aggregate function in " + name);
+    }
+
+    /**
+     * Gets whether this Aggregate adds up the values of its field, and so
+     * needs them to be numbers.
+     * @return Whether the field must hold numbers.
+     */
+    boolean needsNumbers()
+    {
+        return function == Function.SUM || function == Function.AVG;
+    }
+
+    /**
+     * Gets the type of the results of this Aggregate over a field.
+     * @param  fieldType The type of the field, or null if no field is needed.
+     * @return           The type of the results.
+     */
+    ColumnType getResultType(ColumnType fieldType)
+    {
+        switch (function)
+        {
+            case COUNT:
+            case APPROX_COUNT_DISTINCT:
+                return ColumnType.LONG;
+            case AVG:
+                return ColumnType.DOUBLE;
+            case SUM:
+                // Whole numbers are added up exactly, and anything else may
+                // or may not be.
+                if (fieldType == ColumnType.INT || fieldType == ColumnType.LONG)
+                    return ColumnType.LONG;
+                return fieldType == ColumnType.DOUBLE ? ColumnType.DOUBLE : ColumnType.STRING;
+            default:
+                return fieldType;
+        }
+    }
+
+    /**
+     * Gets the name of the field being summarised.
+     * @return The field name, or null if no field is needed.
+     */
+    String getFieldName()
+    {
+        return fieldName;
+    }
+
+    /**
+     * Creates an empty running state for computing this Aggregate.
+     * @return The new Accumulator.
+     */
+    Accumulator newAccumulator()
+    {
+        switch (function)
+        {
+            case COUNT:
+                return new CountAccumulator();
+            case SUM:
+                return new SumAccumulator(false);
+            case AVG:
+                return new SumAccumulator(true);
+            case MIN:
+                return new ExtremeAccumulator(-1);
+            case APPROX_COUNT_DISTINCT:
+                return new DistinctAccumulator();
+            case APPROX_QUANTILE:
+                return new QuantileAccumulator(quantile);
+            default:
+                return new ExtremeAccumulator(1);
+        }
+    }
+
+    /**
+     * The running state of an Aggregate over some of the Records. States built
+     * over different Records, for example by different threads, can be merged.
+     */
+    abstract static class Accumulator
+    {
+        /**
+         * Includes another value.
+         * @param value The value of the field, or null if no field is needed.
+         */
+        abstract void add(Object value);
+
+        /**
+         * Excludes a value that was included before, if the state allows it.
+         * Sums and counts can always take a value away again, but the
+         * smallest or largest value can't be found again once it is gone.
+         * @param  value The value of the field, or null if no field is needed.
+         * @return       Whether the value was excluded. If not, the state must
+         *               be built again from the values that remain.
+         */
+        abstract boolean remove(Object value);
+
+        /**
+         * Includes the selected values of a batch. By default each value is
+         * included in turn.
+         * @param values    The values, or null if no field is needed.
+         * @param selection The positions of the values to include.
+         * @param count     The number of positions.
+         */
+        void addBatch(ColumnVector values, int[] selection, int count)
+        {
+            for (int i = 0; i < count; i++)
+                add(values == null ? null : values.getValue(selection[i]));
+        }
+
+        /**
+         * Includes everything another state of the same Aggregate has seen.
+         * @param that The other state.
+         */
+        abstract void merge(Accumulator that);
+
+        /**
+         * Gets the textual form of the result.
+         * @return The result, or null if there is no result for no values.
+         */
+        abstract String getResult();
+    }
+
+    private static class CountAccumulator extends Accumulator
+    {
+        private long count;
+
+        @Override
+        void add(Object value)
+        {
+            count++;
+        }
+
+        @Override
+        boolean remove(Object value)
+        {
+            count--;
+            return true;
+        }
+
+        @Override
+        void addBatch(ColumnVector values, int[] selection, int count)
+        {
+            this.count += count;
+        }
+
+        @Override
+        void merge(Accumulator that)
+        {
+            count += ((CountAccumulator)that).count;
+        }
+
+        @Override
+        String getResult()
+        {
+            return Long.toString(count);
+        }
+    }
+
+    // Adds up values, keeping an exact whole number total for as long as
+    // every value is a whole number and the total fits in a long. The sum of
+    // no values has no result, as with the average.
+    private static class SumAccumulator extends Accumulator
+    {
+        private final boolean isAverage;
+        private long count;
+        private long wholeSum;
+        private double fractionalSum;
+        // The number of values that aren't whole numbers. The total is exact
+        // while there are none.
+        private long numFractional;
+        // Whether the whole number total has grown too large for a long, and
+        // been moved into the fractional total.
+        private boolean overflowed;
+
+        SumAccumulator(boolean isAverage)
+        {
+            this.isAverage = isAverage;
+        }
+
+        @Override
+        void add(Object value)
+        {
+            include(value, 1);
+        }
+
+        @Override
+        boolean remove(Object value)
+        {
+            // Taking fractions away again may not give exactly the sum of
+            // those that remain, but is close enough to keep.
+            include(value, -1);
+            return true;
+        }
+
+        // Adds a value to the totals, or takes it away if the sign is -1.
+        private void include(Object value, int sign)
+        {
+            count += sign;
+            if (value instanceof Integer || value instanceof Long)
+            {
+                addWhole(((Number)value).longValue(), sign);
+                return;
+            }
+            if (value instanceof Double)
+            {
+                fractionalSum += sign * (Double)value;
+                numFractional += sign;
+                return;
+            }
+            if (!(value instanceof String))
+                throw new IllegalArgumentException("Cannot add up value " + ColumnType.format(value));
+            String text = ((String)value).trim();
+            try
+            {
+                addWhole(Long.parseLong(text), sign);
+            }
+            catch (NumberFormatException notWhole)
+            {
+                try
+                {
+                    fractionalSum += sign * Double.parseDouble(text);
+                    numFractional += sign;
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Cannot add up value " + value + " as it is not a number");
+                }
+            }
+        }
+
+        @Override
+        void addBatch(ColumnVector values, int[] selection, int count)
+        {
+            switch (values.getType())
+            {
+                case INT:
+                    // A batch of ints can't add up to more than a long holds.
+                    addWhole(BatchKernels.get().sum(values.ints, selection, count), 1);
+                    break;
+                case LONG:
+                    // A batch of longs can, so each is checked as it is added.
+                    for (int i = 0; i < count; i++)
+                        addWhole(values.longs[selection[i]], 1);
+                    break;
+                case DOUBLE:
+                    fractionalSum += BatchKernels.get().sum(values.doubles, selection, count);
+                    numFractional += count;
+                    break;
+                default:
+                    super.addBatch(values, selection, count);
+                    return;
+            }
+            this.count += count;
+        }
+
+        @Override
+        void merge(Accumulator that)
+        {
+            SumAccumulator other = (SumAccumulator)that;
+            count += other.count;
+            addWhole(other.wholeSum, 1);
+            fractionalSum += other.fractionalSum;
+            numFractional += other.numFractional;
+            overflowed |= other.overflowed;
+        }
+
+        // Adds a whole number to the whole number total, or takes it away if
+        // the sign is -1, moving the total into the fractional total if it
+        // would no longer fit in a long.
+        private void addWhole(long value, int sign)
+        {
+            try
+            {
+                wholeSum = sign == 1 ? Math.addExact(wholeSum, value) : Math.subtractExact(wholeSum, value);
+            }
+            catch (ArithmeticException e)
+            {
+                fractionalSum += (double)wholeSum + (double)sign * value;
+                wholeSum = 0;
+                overflowed = true;
+            }
+        }
+
+        @Override
+        String getResult()
+        {
+            if (count == 0)
+                return null;
+            if (isAverage)
+                return Double.toString((wholeSum + fractionalSum) / count);
+            return numFractional == 0 && !overflowed ? Long.toString(wholeSum) : Double.toString(wholeSum + fractionalSum);
+        }
+    }
+
+    // Finds the smallest or largest value. Typed values are compared by their
+    // type. Text is compared both as text and, for as long as every value is a
+    // number, as numbers, and the numeric result wins if it is available.
+    private static class ExtremeAccumulator extends Accumulator
+    {
+        // 1 to find the largest value, -1 to find the smallest.
+        private final int sign;
+        private Object best;
+        private boolean allNumeric = true;
+        private double numericBest;
+        private String numericBestText;
+
+        ExtremeAccumulator(int sign)
+        {
+            this.sign = sign;
+        }
+
+        @Override
+        void add(Object value)
+        {
+            if (best == null || sign * ColumnType.compare(value, best) > 0)
+                best = value;
+            if (!(value instanceof String) || !allNumeric)
+                return;
+            try
+            {
+                double number = Double.parseDouble(((String)value).trim());
+                if (numericBestText == null || sign * Double.compare(number, numericBest) > 0)
+                {
+                    numericBest = number;
+                    numericBestText = (String)value;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                allNumeric = false;
+            }
+        }
+
+        @Override
+        boolean remove(Object value)
+        {
+            // Only values other than the best can be forgotten, and text that
+            // isn't a number may have been all that stopped the text being
+            // compared as numbers.
+            if (best == null || ColumnType.compare(value, best) == 0 || value.equals(numericBestText))
+                return false;
+            return !(value instanceof String) || allNumeric;
+        }
+
+        @Override
+        void merge(Accumulator that)
+        {
+            ExtremeAccumulator other = (ExtremeAccumulator)that;
+            if (other.best == null)
+                return;
+            if (best == null || sign * ColumnType.compare(other.best, best) > 0)
+                best = other.best;
+            allNumeric &= other.allNumeric;
+            if (other.numericBestText != null && (numericBestText == null || sign * Double.compare(other.numericBest, numericBest) > 0))
+            {
+                numericBest = other.numericBest;
+                numericBestText = other.numericBestText;
+            }
+        }
+
+        @Override
+        String getResult()
+        {
+            if (best == null)
+                return null;
+            if (best instanceof String && allNumeric)
+                return numericBestText;
+            return ColumnType.format(best);
+        }
+    }
+
+    // Estimates the number of distinct values. Sketches can't forget values,
+    // so removing any value means building the state again.
+    private static class DistinctAccumulator extends Accumulator
+    {
+        private final HyperLogLog sketch = new HyperLogLog();
+
+        @Override
+        void add(Object value)
+        {
+            sketch.add(value);
+        }
+
+        @Override
+        boolean remove(Object value)
+        {
+            return false;
+        }
+
+        @Override
+        void merge(Accumulator that)
+        {
+            sketch.merge(((DistinctAccumulator)that).sketch);
+        }
+
+        @Override
+        String getResult()
+        {
+            return Long.toString(sketch.estimate());
+        }
+    }
+
+    // Estimates a quantile of the values.
+    private static class QuantileAccumulator extends Accumulator
+    {
+        private final double quantile;
+        private final KllSketch sketch = new KllSketch();
+
+        QuantileAccumulator(double quantile)
+        {
+            this.quantile = quantile;
+        }
+
+        @Override
+        void add(Object value)
+        {
+            sketch.add(value);
+        }
+
+        @Override
+        boolean remove(Object value)
+        {
+            return false;
+        }
+
+        @Override
+        void merge(Accumulator that)
+        {
+            sketch.merge(((QuantileAccumulator)that).sketch);
+        }
+
+        @Override
+        String getResult()
+        {
+            Object result = sketch.getQuantile(quantile);
+            return result == null ? null : ColumnType.format(result);
+        }
+    }
+}
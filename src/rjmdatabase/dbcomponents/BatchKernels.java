@@ -0,0 +1,181 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * The tight loops that test and sum ColumnVectors. Each test narrows a
+ * selection vector in place, keeping the order of the positions that pass.
+ * Every comparison is expressed as a range of values, lo <= value <= hi, which
+ * is kept or, for not equal, thrown away.
+ *
+ * Doubles are compared as the longs given by sortableBits, whose order is the
+ * order of Double.compare, so that the kernels agree with how Records compare
+ * values.
+ *
+ * The kernels run on SIMD lanes using the Vector API when the
+ * jdk.incubator.vector module is present, and one value at a time otherwise.
+ * Setting the system property rjmdatabase.kernels to "scalar" turns the Vector
+ * API off.
+ * @author Rjmcf
+ */
+interface BatchKernels
+{
+    /**
+     * The name of the system property that chooses the kernels.
+     */
+    String KERNELS_PROPERTY = "rjmdatabase.kernels";
+
+    /**
+     * Gets the kernels to use, which are chosen once.
+     * @return The kernels.
+     */
+    static BatchKernels get()
+    {
+        return Holder.KERNELS;
+    }
+
+    /**
+     * Gets the kernels that process one value at a time.
+     * @return The scalar kernels.
+     */
+    static BatchKernels scalar()
+    {
+        return ScalarBatchKernels.INSTANCE;
+    }
+
+    /**
+     * Gets the kernels that use the Vector API, if it can be used.
+     * @return The vector kernels, or null if the jdk.incubator.vector module
+     *         or the kernels built against it aren't available.
+     */
+    static BatchKernels vector()
+    {
+        return Holder.VECTOR;
+    }
+
+    /**
+     * Converts a double into a long that sorts in the same order as
+     * Double.compare, with -0.0 below 0.0 and NaN above everything.
+     * @param  value The double.
+     * @return       The long.
+     */
+    static long sortableBits(double value)
+    {
+        long bits = Double.doubleToLongBits(value);
+        // Negative doubles sort in reverse order of their other bits.
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets a short name for the kernels, for reporting.
+     * @return The name.
+     */
+    String getName();
+
+    /**
+     * Narrows a selection to the positions whose int values lie in a range.
+     * @param  values    The values.
+     * @param  lo        The smallest value in the range.
+     * @param  hi        The largest value in the range.
+     * @param  negate    Whether to keep the values outside the range instead.
+     * @param  selection The positions to test, in ascending order, narrowed in
+     *                   place.
+     * @param  count     The number of positions to test.
+     * @return           The number of positions kept.
+     */
+    int selectInRange(int[] values, long lo, long hi, boolean negate, int[] selection, int count);
+
+    /**
+     * Narrows a selection to the positions whose long values lie in a range.
+     * @param  values    The values.
+     * @param  lo        The smallest value in the range.
+     * @param  hi        The largest value in the range.
+     * @param  negate    Whether to keep the values outside the range instead.
+     * @param  selection The positions to test, in ascending order, narrowed in
+     *                   place.
+     * @param  count     The number of positions to test.
+     * @return           The number of positions kept.
+     */
+    int selectInRange(long[] values, long lo, long hi, boolean negate, int[] selection, int count);
+
+    /**
+     * Narrows a selection to the positions whose double values lie in a range
+     * of sortable bits.
+     * @param  values    The values.
+     * @param  lo        The sortable bits of the smallest value in the range.
+     * @param  hi        The sortable bits of the largest value in the range.
+     * @param  negate    Whether to keep the values outside the range instead.
+     * @param  selection The positions to test, in ascending order, narrowed in
+     *                   place.
+     * @param  count     The number of positions to test.
+     * @return           The number of positions kept.
+     */
+    int selectInRange(double[] values, long lo, long hi, boolean negate, int[] selection, int count);
+
+    /**
+     * Narrows a selection to the positions whose values equal a value.
+     * @param  values    The values.
+     * @param  target    The value to look for.
+     * @param  negate    Whether to keep the values not equal to it instead.
+     * @param  selection The positions to test, in ascending order, narrowed in
+     *                   place.
+     * @param  count     The number of positions to test.
+     * @return           The number of positions kept.
+     */
+    int selectEqual(Object[] values, Object target, boolean negate, int[] selection, int count);
+
+    /**
+     * Adds up the selected int values.
+     * @param  values    The values.
+     * @param  selection The positions to add up.
+     * @param  count     The number of positions.
+     * @return           The total.
+     */
+    long sum(int[] values, int[] selection, int count);
+
+    /**
+     * Adds up the selected long values, wrapping around on overflow.
+     * @param  values    The values.
+     * @param  selection The positions to add up.
+     * @param  count     The number of positions.
+     * @return           The total.
+     */
+    long sum(long[] values, int[] selection, int count);
+
+    /**
+     * Adds up the selected double values in order, so that every
+     * implementation rounds the same way.
+     * @param  values    The values.
+     * @param  selection The positions to add up.
+     * @param  count     The number of positions.
+     * @return           The total.
+     */
+    double sum(double[] values, int[] selection, int count);
+
+    /**
+     * Chooses the kernels the first time they are needed.
+     */
+    final class Holder
+    {
+        private static final BatchKernels VECTOR = loadVector();
+        private static final BatchKernels KERNELS =
+                VECTOR != null && !"scalar".equals(System.getProperty(KERNELS_PROPERTY)) ? VECTOR : ScalarBatchKernels.INSTANCE;
+
+        private Holder() {}
+
+        // Loads the vector kernels by name, since they can only be compiled and
+        // run when the incubator module is added.
+        private static BatchKernels loadVector()
+        {
+            if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+                return null;
+            try
+            {
+                return (BatchKernels)Class.forName("rjmdatabase.dbcomponents.VectorBatchKernels")
+                        .getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | LinkageError e)
+            {
+                return null;
+            }
+        }
+    }
+}
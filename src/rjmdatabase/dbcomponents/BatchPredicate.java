@@ -0,0 +1,21 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * A test of the Records in a VectorBatch, built from a Filter for a particular
+ * Table.
+ * @author Rjmcf
+ */
+interface BatchPredicate
+{
+    /**
+     * Narrows a selection of positions in a batch down to those whose Records
+     * pass the test.
+     * @param  batch     The batch.
+     * @param  selection The positions to test, in ascending order. The
+     *                   positions that pass are moved to the front, keeping
+     *                   their order.
+     * @param  count     The number of positions to test.
+     * @return           The number of positions that passed.
+     */
+    int select(VectorBatch batch, int[] selection, int count);
+}
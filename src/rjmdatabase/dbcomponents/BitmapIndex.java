@@ -0,0 +1,65 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.HashMap;
+
+/**
+ * An index mapping each value of a column to a compressed bitmap of the keys
+ * of the Records that hold it. Best suited to columns with few distinct values,
+ * where the bitmaps of several values or columns can be combined cheaply.
+ * @author Rjmcf
+ */
+class BitmapIndex extends ColumnIndex
+{
+    // The keys of the Records holding each value.
+    private HashMap<Object, RoaringBitmap> bitmapsByValue;
+
+    BitmapIndex(String columnName)
+    {
+        super(columnName);
+        bitmapsByValue = new HashMap<>();
+    }
+
+    @Override
+    IndexType getType()
+    {
+        return IndexType.BITMAP;
+    }
+
+    @Override
+    void add(int key, Object value)
+    {
+        bitmapsByValue.computeIfAbsent(value, v -> new RoaringBitmap()).add(key);
+    }
+
+    @Override
+    void remove(int key, Object value)
+    {
+        RoaringBitmap keys = bitmapsByValue.get(value);
+        if (keys == null)
+            return;
+        keys.remove(key);
+        // Don't keep empty bitmaps around for values that are no longer stored.
+        if (keys.isEmpty())
+            bitmapsByValue.remove(value);
+    }
+
+    /**
+     * Gets the keys of the Records holding the given value.
+     * @param  value The value to look up.
+     * @return       The bitmap of keys, which must not be changed.
+     */
+    RoaringBitmap lookup(Object value)
+    {
+        RoaringBitmap keys = bitmapsByValue.get(value);
+        return keys == null ? new RoaringBitmap() : keys;
+    }
+
+    /**
+     * Gets the number of distinct values in the column.
+     * @return The number of distinct values.
+     */
+    int getNumValues()
+    {
+        return bitmapsByValue.size();
+    }
+}
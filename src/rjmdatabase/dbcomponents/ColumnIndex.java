@@ -0,0 +1,97 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Map;
+
+/**
+ * A secondary index over one column of a Table. The Table keeps its indexes
+ * up to date by telling them whenever a value is stored under, or removed
+ * from, a key.
+ * @author Rjmcf
+ */
+abstract class ColumnIndex
+{
+    // The name of the column this index is built over.
+    private String columnName;
+
+    /**
+     * Creates an empty index of the given type.
+     * @param  type       The type of index to create.
+     * @param  columnName The name of the column being indexed.
+     * @return            The new index.
+     */
+    static ColumnIndex create(IndexType type, String columnName)
+    {
+        switch (type)
+        {
+            case HASH:
+                return new HashIndex(columnName, false);
+            case UNIQUE:
+                return new HashIndex(columnName, true);
+            case SORTED:
+                return new SortedIndex(columnName);
+            case BITMAP:
+                return new BitmapIndex(columnName);
+            case TEXT:
+                return new TextIndex(columnName);
+            case SKETCH:
+                return new SketchIndex(columnName);
+            default:
+                throw new IllegalArgumentException("Cannot create index of type " + type.getTypeName());
+        }
+    }
+
+    ColumnIndex(String columnName)
+    {
+        this.columnName = columnName;
+    }
+
+    /**
+     * Gets the name of the column this index is built over.
+     * @return The column name.
+     */
+    String getColumnName()
+    {
+        return columnName;
+    }
+
+    /**
+     * Changes the name of the column this index is built over, for when the
+     * column is renamed.
+     * @param newName The new column name.
+     */
+    void setColumnName(String newName)
+    {
+        columnName = newName;
+    }
+
+    /**
+     * Gets the type of this index.
+     * @return The index type.
+     */
+    abstract IndexType getType();
+
+    /**
+     * Records that the given value is now stored under the given key.
+     * @param key   The key of the Record.
+     * @param value The value of the indexed field.
+     */
+    abstract void add(int key, Object value);
+
+    /**
+     * Records that the given value is no longer stored under the given key.
+     * @param key   The key of the Record.
+     * @param value The old value of the indexed field.
+     */
+    abstract void remove(int key, Object value);
+
+    /**
+     * Fills the index from every Record in a Table.
+     * @param records    The map of keys to Records making up the Table.
+     * @param fieldIndex The index of the indexed field within each Record.
+     */
+    void build(Map<Integer, Record> records, int fieldIndex)
+    {
+        for (Map.Entry<Integer, Record> entry : records.entrySet())
+            add(entry.getKey(), entry.getValue().getValue(fieldIndex));
+    }
+}
@@ -0,0 +1,321 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes the values held in one column of a Table: how many distinct
+ * values there are, the smallest and largest, and an equi-depth histogram
+ * splitting the values into buckets holding roughly the same number of
+ * Records each. The histogram is built by analysing the column, and is then
+ * kept roughly up to date as Records are added and removed, by counting each
+ * change into the bucket it falls in.
+ * @author Rjmcf
+ */
+public class ColumnStatistics
+{
+    // The most buckets a histogram is split into.
+    static final int MAX_BUCKETS = 32;
+    // The fraction of values assumed to match a condition that statistics
+    // can't estimate, such as a text search.
+    static final double DEFAULT_SELECTIVITY = 0.1;
+
+    private final ColumnType type;
+    // An estimate of the number of distinct values.
+    private long distinctCount;
+    // The smallest value seen, or null if there are no values.
+    private Object min;
+    // The largest value in each bucket, in ascending order. A value shared by
+    // many Records may be the largest value of several buckets in a row.
+    private Object[] upperBounds;
+    // The number of values in each bucket.
+    private long[] counts;
+
+    private ColumnStatistics(ColumnType type, long distinctCount, Object min, Object[] upperBounds, long[] counts)
+    {
+        this.type = type;
+        this.distinctCount = distinctCount;
+        this.min = min;
+        this.upperBounds = upperBounds;
+        this.counts = counts;
+    }
+
+    /**
+     * Builds statistics from every value in a column.
+     * @param  type   The type of the column.
+     * @param  values The values, which are sorted by this method.
+     * @return        The statistics.
+     */
+    static ColumnStatistics analyze(ColumnType type, List<Object> values)
+    {
+        if (values.isEmpty())
+            return new ColumnStatistics(type, 0, null, new Object[0], new long[0]);
+        values.sort(ColumnType::compare);
+        long distinct = 1;
+        for (int i = 1; i < values.size(); i++)
+            if (ColumnType.compare(values.get(i - 1), values.get(i)) != 0)
+                distinct++;
+
+        // Each bucket ends at the value found after another share of the
+        // values, so buckets hold roughly equal numbers of values.
+        int numBuckets = Math.min(MAX_BUCKETS, values.size());
+        Object[] upperBounds = new Object[numBuckets];
+        long[] counts = new long[numBuckets];
+        int start = 0;
+        for (int b = 0; b < numBuckets; b++)
+        {
+            int end = (int)((long)values.size() * (b + 1) / numBuckets);
+            upperBounds[b] = values.get(end - 1);
+            counts[b] = end - start;
+            start = end;
+        }
+        return new ColumnStatistics(type, distinct, values.get(0), upperBounds, counts);
+    }
+
+    /**
+     * Counts a value newly added to the column.
+     * @param value The value.
+     */
+    void add(Object value)
+    {
+        if (upperBounds.length == 0)
+        {
+            min = value;
+            upperBounds = new Object[]{value};
+            counts = new long[]{1};
+            distinctCount = 1;
+            return;
+        }
+        // A value beyond the current range must be new.
+        if (ColumnType.compare(value, min) < 0)
+        {
+            min = value;
+            distinctCount++;
+        }
+        else if (ColumnType.compare(value, getMaxValue()) > 0)
+        {
+            upperBounds[upperBounds.length - 1] = value;
+            distinctCount++;
+        }
+        counts[findBucket(value)]++;
+    }
+
+    /**
+     * Counts a value removed from the column. The range of values is left as
+     * it is, as the statistics can't tell whether the value was the last of
+     * its kind.
+     * @param value The value.
+     */
+    void remove(Object value)
+    {
+        if (upperBounds.length == 0)
+            return;
+        int bucket = findBucket(value);
+        if (counts[bucket] > 0)
+            counts[bucket]--;
+        distinctCount = Math.min(distinctCount, getValueCount());
+    }
+
+    /**
+     * Gets a copy of these statistics, which won't change with the column.
+     * @return The copy.
+     */
+    ColumnStatistics copy()
+    {
+        return new ColumnStatistics(type, distinctCount, min, upperBounds.clone(), counts.clone());
+    }
+
+    /**
+     * Gets an estimate of the number of distinct values in the column.
+     * @return The number of distinct values.
+     */
+    public long getDistinctCount()
+    {
+        return distinctCount;
+    }
+
+    /**
+     * Gets the smallest value in the column.
+     * @return The textual form of the value, or null if the column is empty.
+     */
+    public String getMin()
+    {
+        return min == null ? null : ColumnType.format(min);
+    }
+
+    /**
+     * Gets the largest value in the column.
+     * @return The textual form of the value, or null if the column is empty.
+     */
+    public String getMax()
+    {
+        return upperBounds.length == 0 ? null : ColumnType.format(getMaxValue());
+    }
+
+    /**
+     * Gets the largest value in each bucket of the histogram.
+     * @return The textual forms of the values, in ascending order.
+     */
+    public String[] getBucketUpperBounds()
+    {
+        String[] bounds = new String[upperBounds.length];
+        for (int i = 0; i < bounds.length; i++)
+            bounds[i] = ColumnType.format(upperBounds[i]);
+        return bounds;
+    }
+
+    /**
+     * Gets the number of values in each bucket of the histogram.
+     * @return The counts, in the same order as the upper bounds.
+     */
+    public long[] getBucketCounts()
+    {
+        return counts.clone();
+    }
+
+    /**
+     * Estimates the fraction of the column's values equal to a value. If the
+     * value is the largest in whole buckets it is common, and those buckets
+     * are counted. Otherwise values are assumed to be spread evenly between
+     * the distinct values.
+     * @param  value The value.
+     * @return       The estimated fraction, between 0 and 1.
+     */
+    double estimateEqual(Object value)
+    {
+        long total = getValueCount();
+        if (total == 0 || ColumnType.compare(value, min) < 0 || ColumnType.compare(value, getMaxValue()) > 0)
+            return 0;
+        long fullBuckets = 0;
+        int matchingBounds = 0;
+        for (int i = 0; i < upperBounds.length; i++)
+        {
+            if (ColumnType.compare(upperBounds[i], value) == 0)
+            {
+                matchingBounds++;
+                fullBuckets += counts[i];
+            }
+        }
+        if (matchingBounds > 1)
+            return (double)fullBuckets / total;
+        return 1.0 / Math.max(1, distinctCount);
+    }
+
+    /**
+     * Estimates the fraction of the column's values within a range. Buckets
+     * wholly inside the range are counted in full, and a bucket partly inside
+     * it is counted in proportion to the overlap if the column is numeric,
+     * and by half if not.
+     * @param  from          The lower bound, or null for no lower bound.
+     * @param  fromInclusive Whether the lower bound is in the range.
+     * @param  to            The upper bound, or null for no upper bound.
+     * @param  toInclusive   Whether the upper bound is in the range.
+     * @return               The estimated fraction, between 0 and 1.
+     */
+    double estimateRange(Object from, boolean fromInclusive, Object to, boolean toInclusive)
+    {
+        long total = getValueCount();
+        if (total == 0)
+            return 0;
+        double matching = 0;
+        for (int i = 0; i < upperBounds.length; i++)
+        {
+            Object low = i == 0 ? min : upperBounds[i - 1];
+            Object high = upperBounds[i];
+            // Skip buckets entirely outside the range. Every bucket but the
+            // first holds only values above the previous bucket's bound.
+            if (from != null && ColumnType.compare(high, from) < (fromInclusive ? 0 : 1))
+                continue;
+            if (to != null && ColumnType.compare(low, to) >= (i == 0 && toInclusive ? 1 : 0))
+                continue;
+            boolean coversLow = from == null || ColumnType.compare(low, from) >= 0;
+            boolean coversHigh = to == null || ColumnType.compare(high, to) < 0 || (toInclusive && ColumnType.compare(high, to) == 0);
+            if (coversLow && coversHigh)
+                matching += counts[i];
+            else
+                matching += counts[i] * overlap(low, high, coversLow ? low : from, coversHigh ? high : to);
+        }
+        return Math.min(1, matching / total);
+    }
+
+    // Estimates the fraction of a bucket's values between two values inside
+    // it, assuming numbers are spread evenly.
+    private double overlap(Object low, Object high, Object from, Object to)
+    {
+        if (!type.isNumeric())
+            return 0.5;
+        double width = ((Number)high).doubleValue() - ((Number)low).doubleValue();
+        if (width <= 0)
+            return 1;
+        double covered = ((Number)to).doubleValue() - ((Number)from).doubleValue();
+        return Math.max(0, Math.min(1, covered / width));
+    }
+
+    /**
+     * Adds these statistics to a line of a table file.
+     * @param entries The entries of the line.
+     */
+    void writeTo(List<String> entries)
+    {
+        entries.add(Integer.toString(upperBounds.length));
+        if (upperBounds.length == 0)
+            return;
+        entries.add(Long.toString(distinctCount));
+        entries.add(ColumnType.format(min));
+        for (Object bound : upperBounds)
+            entries.add(ColumnType.format(bound));
+        for (long count : counts)
+            entries.add(Long.toString(count));
+    }
+
+    /**
+     * Reads statistics written by writeTo from a line of a table file.
+     * @param  type     The type of the column.
+     * @param  entries  The entries of the line.
+     * @param  position The position of the first entry to read. Moved past the
+     *                  entries that are read.
+     * @return          The statistics.
+     */
+    static ColumnStatistics readFrom(ColumnType type, String[] entries, int[] position)
+    {
+        int numBuckets = Integer.parseInt(entries[position[0]++]);
+        if (numBuckets == 0)
+            return new ColumnStatistics(type, 0, null, new Object[0], new long[0]);
+        long distinct = Long.parseLong(entries[position[0]++]);
+        Object min = type.parse(entries[position[0]++]);
+        Object[] upperBounds = new Object[numBuckets];
+        long[] counts = new long[numBuckets];
+        for (int i = 0; i < numBuckets; i++)
+            upperBounds[i] = type.parse(entries[position[0]++]);
+        for (int i = 0; i < numBuckets; i++)
+            counts[i] = Long.parseLong(entries[position[0]++]);
+        return new ColumnStatistics(type, distinct, min, upperBounds, counts);
+    }
+
+    // Gets the number of values counted by the histogram.
+    private long getValueCount()
+    {
+        return Arrays.stream(counts).sum();
+    }
+
+    private Object getMaxValue()
+    {
+        return upperBounds[upperBounds.length - 1];
+    }
+
+    // Finds the first bucket whose largest value is at least the given value,
+    // or the last bucket if there is none.
+    private int findBucket(Object value)
+    {
+        int low = 0, high = upperBounds.length - 1;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (ColumnType.compare(upperBounds[middle], value) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
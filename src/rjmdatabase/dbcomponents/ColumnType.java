@@ -0,0 +1,146 @@
+package rjmdatabase.dbcomponents;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * The types that a column of a Table can be declared with. Each type knows how
+ * to turn the textual form of a value into the form stored in a Record, and
+ * back again.
+ * @author Rjmcf
+ */
+public enum ColumnType
+{
+    INT("int"),
+    LONG("long"),
+    DOUBLE("double"),
+    BOOLEAN("boolean"),
+    STRING("string"),
+    BYTES("bytes");
+
+    // The name used for this type in field type lists and table files.
+    private final String typeName;
+
+    ColumnType(String typeName)
+    {
+        this.typeName = typeName;
+    }
+
+    /**
+     * Gets the name of this type, as used in table files.
+     * @return The name of the type.
+     */
+    public String getTypeName()
+    {
+        return typeName;
+    }
+
+    /**
+     * Gets whether values of this type are numbers.
+     * @return Whether this type is numeric.
+     */
+    public boolean isNumeric()
+    {
+        return this == INT || this == LONG || this == DOUBLE;
+    }
+
+    /**
+     * Gets the ColumnType with the given name.
+     * @param  name The name of the type, such as "int".
+     * @return      The matching ColumnType.
+     */
+    public static ColumnType fromName(String name)
+    {
+        String lowerName = name.trim().toLowerCase(Locale.ROOT);
+        for (ColumnType type : values())
+            if (type.typeName.equals(lowerName))
+                return type;
+        throw new IllegalArgumentException("No column type named " + name);
+    }
+
+    /**
+     * Converts the textual form of a value into the form stored by Records.
+     * Bytes are given as a string of hex digits.
+     * @param  text The text to convert.
+     * @return      The value, which is always hashable and Comparable.
+     */
+    Object parse(String text)
+    {
+        try
+        {
+            switch (this)
+            {
+                case INT:
+                    return Integer.parseInt(text.trim());
+                case LONG:
+                    return Long.parseLong(text.trim());
+                case DOUBLE:
+                    return Double.parseDouble(text.trim());
+                case BOOLEAN:
+                    String lowerText = text.trim().toLowerCase(Locale.ROOT);
+                    if (!lowerText.equals("true") && !lowerText.equals("false"))
+                        throw new IllegalArgumentException();
+                    return lowerText.equals("true");
+                case BYTES:
+                    return parseHex(text.trim());
+                default:
+                    return text;
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException(String.format("Value %s is not a valid %s", text, typeName));
+        }
+    }
+
+    /**
+     * Converts a value stored by a Record back into its textual form.
+     * @param  value The stored value.
+     * @return       The textual form of the value.
+     */
+    static String format(Object value)
+    {
+        if (value instanceof ByteBuffer)
+            return formatHex((ByteBuffer)value);
+        return value.toString();
+    }
+
+    /**
+     * Compares two values stored under the same column.
+     * @param  a The first value.
+     * @param  b The second value.
+     * @return   A negative number, zero or a positive number as a is less than,
+     *           equal to or greater than b.
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b)
+    {
+        return ((Comparable<Object>)a).compareTo(b);
+    }
+
+    // Bytes are held in read only ByteBuffers so that they can be hashed and
+    // compared by content.
+    private static ByteBuffer parseHex(String h)
+    {
+        if (h.length() % 2 != 0)
+            throw new IllegalArgumentException();
+        byte[] data = new byte[h.length() / 2];
+        for (int i = 0; i < h.length(); i += 2)
+        {
+            int high = Character.digit(h.charAt(i), 16);
+            int low = Character.digit(h.charAt(i + 1), 16);
+            if (high == -1 || low == -1)
+                throw new IllegalArgumentException();
+            data[i / 2] = (byte)((high << 4) + low);
+        }
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    private static String formatHex(ByteBuffer bytes)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = bytes.position(); i < bytes.limit(); i++)
+            builder.append(String.format("%02x", bytes.get(i)));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * The values of one column for each Record in a VectorBatch, held together in
+ * an array so that they can be tested and summed in tight loops. Numbers are
+ * held in arrays of primitives, and every other type as objects.
+ * @author Rjmcf
+ */
+public class ColumnVector
+{
+    private final ColumnType type;
+    // The values, in whichever of these arrays suits the type. The others are
+    // null.
+    final int[] ints;
+    final long[] longs;
+    final double[] doubles;
+    final Object[] objects;
+
+    /**
+     * Creates an empty vector.
+     * @param type     The type of the column.
+     * @param capacity The largest number of values the vector can hold.
+     */
+    ColumnVector(ColumnType type, int capacity)
+    {
+        this.type = type;
+        ints = type == ColumnType.INT ? new int[capacity] : null;
+        longs = type == ColumnType.LONG ? new long[capacity] : null;
+        doubles = type == ColumnType.DOUBLE ? new double[capacity] : null;
+        objects = type.isNumeric() ? null : new Object[capacity];
+    }
+
+    /**
+     * Creates a vector of ints backed by an existing array, such as the keys
+     * of a batch.
+     * @param ints The array of values.
+     */
+    ColumnVector(int[] ints)
+    {
+        type = ColumnType.INT;
+        this.ints = ints;
+        longs = null;
+        doubles = null;
+        objects = null;
+    }
+
+    /**
+     * Fills the vector with the values of a field from some Records.
+     * @param records    The Records.
+     * @param size       The number of Records to read.
+     * @param fieldIndex The index of the field.
+     */
+    void load(Record[] records, int size, int fieldIndex)
+    {
+        switch (type)
+        {
+            case INT:
+                for (int i = 0; i < size; i++)
+                    ints[i] = (Integer)records[i].getValue(fieldIndex);
+                break;
+            case LONG:
+                for (int i = 0; i < size; i++)
+                    longs[i] = (Long)records[i].getValue(fieldIndex);
+                break;
+            case DOUBLE:
+                for (int i = 0; i < size; i++)
+                    doubles[i] = (Double)records[i].getValue(fieldIndex);
+                break;
+            default:
+                for (int i = 0; i < size; i++)
+                    objects[i] = records[i].getValue(fieldIndex);
+        }
+    }
+
+    /**
+     * Gets the type of the column.
+     * @return The type.
+     */
+    public ColumnType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Gets a value of an int column.
+     * @param  position The position of the value in the batch.
+     * @return          The value.
+     */
+    public int getInt(int position)
+    {
+        if (ints == null)
+            throw new IllegalArgumentException("Column is not an int column");
+        return ints[position];
+    }
+
+    /**
+     * Gets a value of an int or long column as a long.
+     * @param  position The position of the value in the batch.
+     * @return          The value.
+     */
+    public long getLong(int position)
+    {
+        if (ints != null)
+            return ints[position];
+        if (longs == null)
+            throw new IllegalArgumentException("Column is not a long column");
+        return longs[position];
+    }
+
+    /**
+     * Gets a value of a numeric column as a double.
+     * @param  position The position of the value in the batch.
+     * @return          The value.
+     */
+    public double getDouble(int position)
+    {
+        if (!type.isNumeric())
+            throw new IllegalArgumentException("Column is not a numeric column");
+        return doubles != null ? doubles[position] : getLong(position);
+    }
+
+    /**
+     * Gets the textual form of a value.
+     * @param  position The position of the value in the batch.
+     * @return          The textual form of the value.
+     */
+    public String getString(int position)
+    {
+        return ColumnType.format(getValue(position));
+    }
+
+    /**
+     * Gets a value in the form stored by Records.
+     * @param  position The position of the value in the batch.
+     * @return          The value.
+     */
+    Object getValue(int position)
+    {
+        switch (type)
+        {
+            case INT:
+                return ints[position];
+            case LONG:
+                return longs[position];
+            case DOUBLE:
+                return doubles[position];
+            default:
+                return objects[position];
+        }
+    }
+}
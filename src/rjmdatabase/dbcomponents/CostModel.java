@@ -0,0 +1,73 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * Estimates the cost of the ways a Table can find the Records matching a
+ * Filter, so that the cheapest can be chosen. Costs are in units of the work
+ * needed to test one Record during a full scan. Finding Records through an
+ * index means probing the index and then fetching each Record found by its
+ * key, which costs more per Record than reading Records in turn, so indexes
+ * are only worth using when they rule out most of the Table.
+ * @author Rjmcf
+ */
+class CostModel
+{
+    // The cost of testing one Record while reading every Record.
+    static final double SCAN_ROW_COST = 1;
+    // The cost of probing the indexes, however many Records they find.
+    static final double INDEX_PROBE_COST = 2;
+    // The cost of gathering the key of a Record found by an index and then
+    // fetching the Record by its key.
+    static final double INDEX_ROW_COST = 3;
+
+    private CostModel() {}
+
+    /**
+     * Estimates the cost of testing every Record of a Table.
+     * @param  table The Table.
+     * @return       The estimated cost.
+     */
+    static double fullScanCost(Table table)
+    {
+        return table.getNumRecords() * SCAN_ROW_COST;
+    }
+
+    /**
+     * Estimates the cost of finding the Records matching a Filter through the
+     * indexes of a Table, including testing the Records they find if the
+     * indexes can't answer the Filter on their own.
+     * @param  table  The Table.
+     * @param  filter The Filter.
+     * @return        The estimated cost.
+     */
+    static double indexCost(Table table, Filter filter)
+    {
+        double candidates = table.getNumRecords() * filter.estimateCandidateSelectivity(table);
+        double cost = INDEX_PROBE_COST + candidates * INDEX_ROW_COST;
+        if (!filter.isAnsweredByIndexes(table))
+            cost += candidates * SCAN_ROW_COST;
+        return cost;
+    }
+
+    /**
+     * Gets whether a Table should use its indexes to find the Records matching
+     * a Filter, rather than testing every Record.
+     * @param  table  The Table.
+     * @param  filter The Filter.
+     * @return        Whether using the indexes is estimated to be cheaper.
+     */
+    static boolean prefersIndexes(Table table, Filter filter)
+    {
+        return indexCost(table, filter) < fullScanCost(table);
+    }
+
+    /**
+     * Estimates the number of Records of a Table matching a Filter.
+     * @param  table  The Table.
+     * @param  filter The Filter.
+     * @return        The estimated number of Records.
+     */
+    static double estimateMatches(Table table, Filter filter)
+    {
+        return table.getNumRecords() * filter.estimateSelectivity(table);
+    }
+}
@@ -0,0 +1,223 @@
+package rjmdatabase.dbcomponents;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads the rows of a file of separated values, such as CSV or TSV, following
+ * RFC 4180: fields may be quoted with double quotes, in which case they may
+ * hold separators, line breaks and doubled double quotes standing for one.
+ * Lines may end with LF or CRLF, and empty lines are skipped. The file must be
+ * UTF-8, whose multi-byte characters never contain the bytes of the quote,
+ * separator or line break characters, so the file can be read as bytes.
+ *
+ * The file is memory mapped and split into chunks which are read in parallel.
+ * A line break only ends a row if an even number of quotes come before it, so
+ * each chunk first counts its quotes and notes its first line break after an
+ * even and after an odd number of them. Adding up the counts of the earlier
+ * chunks then tells which of the two ends a row, and the rows between those
+ * line breaks are parsed in parallel.
+ * @author Rjmcf
+ */
+class CsvReader
+{
+    // The default number of bytes in each chunk.
+    static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final byte QUOTE = '"';
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final byte separator;
+    private final int chunkSize;
+
+    /**
+     * Creates a reader for files using the given separator.
+     * @param separator The character between fields, such as ',' or '\t'.
+     * @param chunkSize The number of bytes to split the file into for reading
+     *                  in parallel.
+     */
+    CsvReader(char separator, int chunkSize)
+    {
+        if (separator >= 0x80 || separator == QUOTE || separator == LINE_FEED || separator == CARRIAGE_RETURN)
+            throw new IllegalArgumentException("Invalid separator " + separator);
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunks must hold at least one byte");
+        this.separator = (byte)separator;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads every row of a file. Parallel parts run in the pool of the calling
+     * thread if it is running in a ForkJoinPool.
+     * @param  path        The path of the file.
+     * @return             The fields of each row, in the order of the file.
+     * @throws IOException If the file could not be read.
+     */
+    List<String[]> read(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            int numChunks = (int)((size + chunkSize - 1) / chunkSize);
+            long[][] scans = IntStream.range(0, numChunks).parallel()
+                    .mapToObj(i -> scanChunk(channel, (long)i * chunkSize, Math.min(chunkSize, size - (long)i * chunkSize)))
+                    .toArray(long[][]::new);
+
+            // Find where each chunk's first row starts, merging chunks holding
+            // no row boundaries into the ones before them.
+            List<Long> starts = new ArrayList<>();
+            starts.add(0L);
+            int parity = 0;
+            for (long[] scan : scans)
+            {
+                long lineEnd = scan[1 + parity];
+                if (lineEnd != -1 && lineEnd + 1 < size)
+                    starts.add(lineEnd + 1);
+                parity ^= (int)(scan[0] & 1);
+            }
+            starts.add(size);
+
+            List<List<String[]>> segments = IntStream.range(0, starts.size() - 1).parallel()
+                    .mapToObj(i -> parseSegment(channel, starts.get(i), starts.get(i + 1)))
+                    .collect(Collectors.toList());
+            int numRows = 0;
+            for (List<String[]> segment : segments)
+                numRows += segment.size();
+            List<String[]> rows = new ArrayList<>(numRows);
+            for (List<String[]> segment : segments)
+                rows.addAll(segment);
+            return rows;
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    // Counts the quotes in a chunk, and finds the first line feed after an
+    // even and after an odd number of them within the chunk.
+    private static long[] scanChunk(FileChannel channel, long start, long length)
+    {
+        MappedByteBuffer bytes = map(channel, start, length);
+        long[] scan = {0, -1, -1};
+        for (int i = 0; i < length; i++)
+        {
+            byte b = bytes.get(i);
+            if (b == QUOTE)
+                scan[0]++;
+            else if (b == LINE_FEED && scan[1 + (int)(scan[0] & 1)] == -1)
+                scan[1 + (int)(scan[0] & 1)] = start + i;
+        }
+        return scan;
+    }
+
+    // Parses the rows between two row boundaries.
+    private List<String[]> parseSegment(FileChannel channel, long start, long end)
+    {
+        byte[] data = new byte[(int)(end - start)];
+        map(channel, start, data.length).get(data);
+        List<String[]> rows = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        int i = 0;
+        while (i < data.length)
+        {
+            // Skip empty lines.
+            if (data[i] == LINE_FEED)
+            {
+                i++;
+                continue;
+            }
+            if (data[i] == CARRIAGE_RETURN && i + 1 < data.length && data[i + 1] == LINE_FEED)
+            {
+                i += 2;
+                continue;
+            }
+            fields.clear();
+            while (true)
+            {
+                if (i < data.length && data[i] == QUOTE)
+                    i = parseQuotedField(data, i, start, fields);
+                else
+                    i = parseField(data, i, fields);
+                if (i < data.length && data[i] == separator)
+                {
+                    i++;
+                    continue;
+                }
+                if (i < data.length && data[i] == CARRIAGE_RETURN)
+                    i++;
+                if (i < data.length && data[i] == LINE_FEED)
+                    i++;
+                break;
+            }
+            rows.add(fields.toArray(new String[0]));
+        }
+        return rows;
+    }
+
+    // Parses an unquoted field, returning the position after it. A carriage
+    // return ending the line is not part of the field.
+    private int parseField(byte[] data, int start, List<String> fields)
+    {
+        int i = start;
+        while (i < data.length && data[i] != separator && data[i] != LINE_FEED)
+            i++;
+        int end = i;
+        if (end > start && data[end - 1] == CARRIAGE_RETURN)
+            end--;
+        fields.add(new String(data, start, end - start, StandardCharsets.UTF_8));
+        return end;
+    }
+
+    // Parses a quoted field starting at its opening quote, returning the
+    // position after its closing quote.
+    private int parseQuotedField(byte[] data, int quote, long offset, List<String> fields)
+    {
+        int i = quote + 1;
+        boolean hasDoubledQuotes = false;
+        while (true)
+        {
+            if (i >= data.length)
+                throw new IllegalArgumentException("Unterminated quoted field starting at byte " + (offset + quote));
+            if (data[i] == QUOTE)
+            {
+                if (i + 1 < data.length && data[i + 1] == QUOTE)
+                {
+                    hasDoubledQuotes = true;
+                    i += 2;
+                    continue;
+                }
+                break;
+            }
+            i++;
+        }
+        String text = new String(data, quote + 1, i - quote - 1, StandardCharsets.UTF_8);
+        fields.add(hasDoubledQuotes ? text.replace("\"\"", "\"") : text);
+        i++;
+        if (i < data.length && data[i] != separator && data[i] != LINE_FEED && data[i] != CARRIAGE_RETURN)
+            throw new IllegalArgumentException("Unexpected character after quoted field at byte " + (offset + i));
+        return i;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long start, long length)
+    {
+        try
+        {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Pages through the Records of a Table matching a Filter in ascending key
+ * order, a batch at a time. Each batch is only read from the Table when it is
+ * asked for, so neither the Table nor the client ever holds more than one
+ * batch of rows, however large the Table.
+ *
+ * After each batch the cursor gives a continuation token naming the last key
+ * it returned. A cursor opened later with that token carries on from the
+ * following key, so paging can be spread across requests or resumed after a
+ * failure. Records added since are picked up as long as their keys come
+ * later, which is where new Records are always added; Records deleted before
+ * they are reached are skipped.
+ *
+ * Each batch is found from the key after the last one returned. When most keys
+ * of the Table are in use this only checks the keys of the batch. Otherwise the
+ * keys in use are sorted first, which is only repeated after the Table changes,
+ * so paging through a Table that is changing often costs more.
+ * @author Rjmcf
+ */
+public class Cursor implements Iterator<List<String[]>>
+{
+    private final Database database;
+    private final String tableName;
+    private final Filter filter;
+    private final String[] projection;
+    private final int batchSize;
+    // The last key returned, or -1 before the first batch.
+    private int lastKey;
+    // The next batch and the key of its last row, once read.
+    private List<String[]> pending;
+    private int pendingLastKey;
+
+    /**
+     * Creates a cursor over the chosen Table.
+     * @param database          The database holding the Table.
+     * @param tableName         The name of the Table.
+     * @param filter            The Filter to match.
+     * @param projection        The names of the columns to include in each
+     *                          row, which may include the key column. If null,
+     *                          the key and then every field are included.
+     * @param batchSize         The most rows in each batch.
+     * @param continuationToken A token given by getContinuationToken, or null
+     *                          to start from the first Record.
+     */
+    Cursor(Database database, String tableName, Filter filter, String[] projection, int batchSize, String continuationToken)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batches must hold at least one row");
+        this.database = database;
+        this.tableName = tableName;
+        this.filter = filter;
+        this.projection = projection;
+        this.batchSize = batchSize;
+        lastKey = parseToken(continuationToken);
+    }
+
+    /**
+     * Gets whether there is another batch, reading it from the Table if it
+     * hasn't been read already.
+     * @return Whether there are more matching Records.
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (pending == null)
+            fetch();
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Gets the next batch of rows.
+     * @return The rows, in key order, of which there are at most the batch
+     *         size and at least one.
+     */
+    @Override
+    public List<String[]> next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException("No more records in table " + tableName);
+        List<String[]> batch = pending;
+        pending = null;
+        lastKey = pendingLastKey;
+        return batch;
+    }
+
+    /**
+     * Gets a token from which a new cursor can carry on after the last batch
+     * returned by this one.
+     * @return The token, or null if no batch has been returned and the cursor
+     *         was opened at the start.
+     */
+    public String getContinuationToken()
+    {
+        return lastKey == -1 ? null : Integer.toString(lastKey);
+    }
+
+    // Reads the batch following the last key returned. The Table is looked up
+    // again each time so that the cursor follows it if it changes.
+    private void fetch()
+    {
+        Table t = database.getTable(tableName);
+        int[] fieldIndices = t.resolveProjection(projection);
+        Predicate<Record> test = filter.compile(t);
+        int[] keys = t.keysAfter(lastKey, test, batchSize);
+        pending = new ArrayList<>(keys.length);
+        for (int key : keys)
+            pending.add(Table.project(key, t.getRecord(key), fieldIndices));
+        if (keys.length > 0)
+            pendingLastKey = keys[keys.length - 1];
+    }
+
+    // Gets the last key named by a continuation token.
+    private static int parseToken(String continuationToken)
+    {
+        if (continuationToken == null)
+            return -1;
+        try
+        {
+            int key = Integer.parseInt(continuationToken);
+            if (key >= 0)
+                return key;
+        }
+        catch (NumberFormatException e) {}
+        throw new IllegalArgumentException("Invalid continuation token " + continuationToken);
+    }
+}
@@ -4,8 +4,16 @@ import rjmdatabase.fileutils.FileUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Represents a database.
@@ -13,10 +21,27 @@ import java.util.Set;
  */
 public class Database
 {
+    // The default number of Records a sort holds in memory.
+    private static final int DEFAULT_SORT_RUN_SIZE = 100000;
+    // The folder within the database folder that sorts write temporary files
+    // to. Its name starts with a dot so it is never mistaken for a Table.
+    private static final String SORT_DIR_NAME = ".sortRuns";
+
     // The map of names to Tables.
     private HashMap<String, Table> tables;
     // The path to where all the Table files will be saved.
     private String parentDirPath;
+    // The pool that parallel operations run in, or null to use the common pool.
+    private ForkJoinPool scanPool;
+    // The largest number of Records a sort holds in memory before writing them
+    // to a temporary file.
+    private int sortRunSize = DEFAULT_SORT_RUN_SIZE;
+    // Counts changes to the names, columns and indexes of the Tables.
+    private long schemaVersion;
+    // The names of the views whose definitions were found when loading but
+    // whose Table or source Table was missing, so they were not kept up to
+    // date.
+    private List<String> unloadedViews = new ArrayList<>();
 
     /**
      * Creates a new Database using the supplied folder name.
@@ -59,6 +84,19 @@ public class Database
         addTable(t);
     }
 
+    /**
+     * Add a Table with typed columns to the database as long as no table with
+     * the same name is already present.
+     * @param tableName  The name of the Table to add.
+     * @param fieldNames The field names of the Table.
+     * @param fieldTypes The types of those fields, such as "string, int".
+     */
+    public void addTable(String tableName, String fieldNames, String fieldTypes)
+    {
+        Table t = new Table(tableName, fieldNames, fieldTypes);
+        addTable(t);
+    }
+
     // Actually add the table to the database.
     private void addTable(Table t)
     {
@@ -66,6 +104,7 @@ public class Database
         // putIfAbsent returns null if key is not already present.
         if (tables.putIfAbsent(tableName, t) != null)
             throw new IllegalArgumentException("Table " + tableName + " already in database.");
+        schemaVersion++;
     }
 
     // Gets the named Table if it exists in the database.
@@ -77,6 +116,98 @@ public class Database
         return t;
     }
 
+    // Gets the named Table if it exists and can be changed directly, which
+    // materialized views can't.
+    private Table getChangeableTable(String tableName)
+    {
+        Table t = getTable(tableName);
+        if (t.getDefiningView() != null)
+            throw new IllegalArgumentException("Table " + tableName + " is a view, so only changes with its source Table");
+        return t;
+    }
+
+    // Checks that no materialized view depends on the columns of a Table.
+    private void checkHasNoViews(Table t)
+    {
+        if (!t.getViews().isEmpty())
+            throw new IllegalArgumentException("Table " + t.getName() + " has views depending on its columns, which must be dropped first");
+    }
+
+    /**
+     * Creates a materialized view holding the chosen fields of the Records of
+     * a Table that match a Filter. The view is a Table of its own, which can
+     * be read like any other, holding each matching Record under the same key
+     * as in its source. It is kept up to date as Records of the source are
+     * added, updated and deleted, changing only the Records affected, and is
+     * saved with the database. It can't be changed directly, and the columns
+     * of the source can't be renamed or deleted while it exists.
+     * @param viewName   The name of the view.
+     * @param sourceName The name of the Table the view is computed from.
+     * @param filter     The Filter the Records must match.
+     * @param projection The names of the fields to hold, or null for every
+     *                   field.
+     */
+    public void createView(String viewName, String sourceName, Filter filter, String[] projection)
+    {
+        checkNameIsFree(viewName);
+        addTable(MaterializedView.project(viewName, getTable(sourceName), filter, projection).getView());
+    }
+
+    /**
+     * Creates a materialized view grouping the Records of a Table that match a
+     * Filter by some of their fields, holding a Record for each group with the
+     * grouping values followed by the result of each Aggregate. It is kept up
+     * to date in the same way as a view of the fields of Records, by changing
+     * only the groups affected. Sums and averages can only be kept of numeric
+     * fields.
+     * @param viewName   The name of the view.
+     * @param sourceName The name of the Table the view is computed from.
+     * @param filter     The Filter the Records must match.
+     * @param groupBy    The names of the fields to group by, or none to put
+     *                   every matching Record in one group.
+     * @param aggregates The Aggregates to compute for each group.
+     */
+    public void createView(String viewName, String sourceName, Filter filter, String[] groupBy, Aggregate... aggregates)
+    {
+        checkNameIsFree(viewName);
+        addTable(MaterializedView.group(viewName, getTable(sourceName), filter, groupBy, aggregates).getView());
+    }
+
+    // Checks that no Table has a name, before building a new Table under it.
+    private void checkNameIsFree(String tableName)
+    {
+        if (tables.containsKey(tableName))
+            throw new IllegalArgumentException("Table " + tableName + " already in database.");
+    }
+
+    /**
+     * Removes a materialized view, along with the Table holding it.
+     * @param viewName The name of the view.
+     */
+    public void dropView(String viewName)
+    {
+        Table t = getTable(viewName);
+        MaterializedView view = t.getDefiningView();
+        if (view == null)
+            throw new IllegalArgumentException("Table " + viewName + " is not a view");
+        checkHasNoViews(t);
+        view.detach();
+        tables.remove(viewName);
+        TableFileReadWriter.deleteTableFile(viewName, parentDirPath);
+        writeViewDefinitions();
+        schemaVersion++;
+    }
+
+    /**
+     * Gets whether a Table is a materialized view.
+     * @param  tableName The name of the Table.
+     * @return           Whether the Table holds a view.
+     */
+    public boolean isView(String tableName)
+    {
+        return getTable(tableName).getDefiningView() != null;
+    }
+
     /**
      * Renames a Table if it exists in the database.
      * @param tableName    The old name of the Table.
@@ -95,6 +226,45 @@ public class Database
         tables.remove(tableName);
         // Store the table under the new key.
         tables.put(newTableName, t);
+        // The saved views must name the Table by its new name too.
+        writeViewDefinitions();
+        schemaVersion++;
+    }
+
+    /**
+     * Gets the names of the views which could not be loaded because their
+     * Table or source Table was not saved, such as when a Table was renamed
+     * and the database was not saved afterwards. Any of these views whose own
+     * Table was loaded is an ordinary Table instead.
+     * @return The names of the views.
+     */
+    public List<String> getUnloadedViews()
+    {
+        return new ArrayList<>(unloadedViews);
+    }
+
+    /**
+     * Gets a number that changes whenever a Table is added or renamed, or a
+     * column or index of a Table is added, renamed or removed, so that
+     * anything depending on the shape of the Tables can tell when it is out of
+     * date.
+     * @return The version of the shape of the Tables.
+     */
+    public long getSchemaVersion()
+    {
+        return schemaVersion;
+    }
+
+    /**
+     * Gets a number that changes whenever the named Table is changed, whether
+     * by adding, updating or deleting Records or by changing its columns or
+     * indexes. It is not reset when the Table is saved.
+     * @param  tableName The name of the Table.
+     * @return           The number of changes made to the Table.
+     */
+    public long getModificationCount(String tableName)
+    {
+        return getTable(tableName).getModificationCount();
     }
 
     /**
@@ -130,6 +300,22 @@ public class Database
         return theTable.getFieldNames();
     }
 
+    /**
+     * Gets the types of the fields for the given table, in the same order as
+     * the field names.
+     * @param  tableName The name of the Table.
+     * @return           The types of the fields.
+     */
+    public ColumnType[] getFieldTypesAsArray(String tableName)
+    {
+        String[] fieldNames = getFieldNamesAsArray(tableName);
+        Table theTable = getTable(tableName);
+        ColumnType[] fieldTypes = new ColumnType[theTable.getNumFields()];
+        for (int i = 0; i < fieldTypes.length; i++)
+            fieldTypes[i] = theTable.getFieldType(fieldNames[i]);
+        return fieldTypes;
+    }
+
     /**
      * Adds the record with the supplied fields to the specified table.
      * @param tableName The name of the Table to add the record to.
@@ -137,10 +323,140 @@ public class Database
      */
     public void addRecord(String tableName, String fields)
     {
-        Table table = getTable(tableName);
+        Table table = getChangeableTable(tableName);
         table.addRecord(fields);
     }
 
+    /**
+     * Adds a record with the supplied fields to the specified table. Unlike
+     * the comma separated form, fields may contain commas.
+     * @param tableName The name of the Table to add the record to.
+     * @param fields    The value of each field, in order.
+     */
+    public void addRecord(String tableName, String[] fields)
+    {
+        Table table = getChangeableTable(tableName);
+        table.addRecord(fields);
+    }
+
+    /**
+     * Adds many records to the specified table at once, which is much quicker
+     * than adding them one by one. Every record is checked before any is
+     * added, so if one is invalid none are.
+     * @param  tableName The name of the Table to add the records to.
+     * @param  rows      The value of each field of each record, in order.
+     * @return           The key given to the first record. The rest are given
+     *                   the keys following it, in order.
+     */
+    public int addRecords(String tableName, List<String[]> rows)
+    {
+        Table table = getChangeableTable(tableName);
+        return table.addRecords(rows);
+    }
+
+    /**
+     * Adds many records to the specified table under the chosen keys, none of
+     * which may be in use. Every key and record is checked before any is
+     * added, so if one is invalid none are.
+     * @param tableName The name of the Table to add the records to.
+     * @param keys      The key of each record.
+     * @param rows      The value of each field of each record, in the same
+     *                  order as the keys.
+     */
+    public void insertRecords(String tableName, int[] keys, List<String[]> rows)
+    {
+        Table table = getChangeableTable(tableName);
+        table.insertRecords(keys, rows);
+    }
+
+    /**
+     * Adds a record to the specified table, or if a record already holds the
+     * same value of a unique column, changes that record to match instead.
+     * The column needs a unique index, which finds any such record with one
+     * lookup rather than a scan of the table.
+     * @param  tableName  The name of the Table.
+     * @param  columnName The name of the unique column identifying the record.
+     * @param  fields     The value of each field, in order.
+     * @return            The key of the record added or changed.
+     */
+    public int upsert(String tableName, String columnName, String[] fields)
+    {
+        Table table = getChangeableTable(tableName);
+        return table.upsert(columnName, fields);
+    }
+
+    /**
+     * Adds every row of a file of separated values, such as a CSV or TSV file,
+     * to the specified table. Fields may be quoted as described by RFC 4180,
+     * and so may hold separators, quotes and line breaks. The file is memory
+     * mapped and parsed in parallel chunks, in the pool set by setScanPool,
+     * and the rows are then added all at once, so if any row is invalid none
+     * are added.
+     * @param  tableName   The name of the Table to add the records to.
+     * @param  filePath    The path of the file, which must be UTF-8.
+     * @param  separator   The character between fields, such as ',' or '\t'.
+     * @param  hasHeader   Whether the first row names the columns. If so they
+     *                     may come in any order, and if the key column is
+     *                     among them the records are added under those keys.
+     *                     If not, the rows hold every field in order.
+     * @return             The number of records added.
+     * @throws IOException If the file could not be read.
+     */
+    public int importCsv(String tableName, String filePath, char separator, boolean hasHeader) throws IOException
+    {
+        Table table = getChangeableTable(tableName);
+        CsvReader reader = new CsvReader(separator, CsvReader.DEFAULT_CHUNK_SIZE);
+        List<String[]> rows;
+        try
+        {
+            rows = runInScanPool(() -> {
+                try
+                {
+                    return reader.read(Paths.get(filePath));
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        if (!hasHeader)
+        {
+            table.addRecords(rows);
+            return rows.size();
+        }
+        if (rows.isEmpty())
+            return 0;
+        table.addRows(rows.get(0), rows.subList(1, rows.size()));
+        return rows.size() - 1;
+    }
+
+    /**
+     * Writes the records of the specified table matching a Filter to a file in
+     * key order, replacing anything the file held before. Each record is
+     * written as soon as it is read, so exporting uses the same small amount
+     * of memory however large the table. A CSV file written with every field
+     * can be imported again with importCsv.
+     * @param  tableName   The name of the Table.
+     * @param  filePath    The path of the file to write, as UTF-8.
+     * @param  format      The format to write.
+     * @param  filter      The Filter to match.
+     * @param  projection  The names of the columns to write, which may include
+     *                     the key column. If null, the key and then every
+     *                     field are written.
+     * @return             The number of records written.
+     * @throws IOException If the file could not be written.
+     */
+    public long exportTable(String tableName, String filePath, ExportFormat format, Filter filter, String[] projection) throws IOException
+    {
+        Table table = getTable(tableName);
+        return new TableExporter(table, format, projection).export(filter, Paths.get(filePath));
+    }
+
     /**
      * Prints the specified Table.
      * @param tableName The name of the Table.
@@ -159,8 +475,38 @@ public class Database
      */
     public void renameColumn(String tableName, String oldColumnName, String newColumnName)
     {
-        Table t = getTable(tableName);
+        Table t = getChangeableTable(tableName);
+        checkHasNoViews(t);
         t.renameColumn(oldColumnName, newColumnName);
+        schemaVersion++;
+    }
+
+    /**
+     * Adds a column to the end of the chosen Table, giving every Record the
+     * same value for it.
+     * @param tableName    The name of the Table.
+     * @param columnName   The name of the new column.
+     * @param columnType   The type of the new column, such as "int".
+     * @param defaultValue The value of the column in every existing Record.
+     */
+    public void addColumn(String tableName, String columnName, String columnType, String defaultValue)
+    {
+        Table t = getChangeableTable(tableName);
+        t.addColumn(t.getNumFields(), columnName, ColumnType.fromName(columnType.trim()), defaultValue);
+        schemaVersion++;
+    }
+
+    /**
+     * Deletes a column from the chosen Table, along with any indexes over it.
+     * @param tableName  The name of the Table.
+     * @param columnName The name of the column.
+     */
+    public void deleteColumn(String tableName, String columnName)
+    {
+        Table t = getChangeableTable(tableName);
+        checkHasNoViews(t);
+        t.deleteColumn(columnName);
+        schemaVersion++;
     }
 
     /**
@@ -170,7 +516,7 @@ public class Database
      */
     public void deleteRecord(String tableName, int key)
     {
-        Table t = getTable(tableName);
+        Table t = getChangeableTable(tableName);
         t.deleteRecord(key);
     }
 
@@ -184,10 +530,557 @@ public class Database
      */
     public void updateRecord(String tableName, int key, String fieldName, String replacement)
     {
-        Table t = getTable(tableName);
+        Table t = getChangeableTable(tableName);
         t.updateRecord(key, fieldName, replacement);
     }
 
+    /**
+     * Deletes many Records from the chosen Table at once. If any key is not in
+     * use, nothing is deleted.
+     * @param tableName The table to delete from.
+     * @param keys      The keys of the Records to delete.
+     */
+    public void deleteRecords(String tableName, int[] keys)
+    {
+        Table t = getChangeableTable(tableName);
+        t.deleteRecords(keys);
+    }
+
+    /**
+     * Deletes every Record in the chosen Table matching a Filter, in a single
+     * pass over the Table.
+     * @param  tableName The table to delete from.
+     * @param  filter    The Filter to match.
+     * @return           The number of Records deleted.
+     */
+    public int deleteWhere(String tableName, Filter filter)
+    {
+        Table t = getChangeableTable(tableName);
+        return t.deleteWhere(filter);
+    }
+
+    /**
+     * Updates the chosen fields of many Records in the chosen Table at once,
+     * giving each Record the same values. If any key is not in use or any
+     * value is invalid, nothing is changed.
+     * @param tableName    The name of the Table.
+     * @param keys         The keys of the Records.
+     * @param fieldNames   The names of the fields.
+     * @param replacements The value to give each field.
+     */
+    public void updateRecords(String tableName, int[] keys, String[] fieldNames, String[] replacements)
+    {
+        Table t = getChangeableTable(tableName);
+        t.updateRecords(keys, fieldNames, replacements);
+    }
+
+    /**
+     * Updates the chosen fields of every Record in the chosen Table matching a
+     * Filter, in a single pass over the Table. Which Records match is decided
+     * before any is changed.
+     * @param  tableName    The name of the Table.
+     * @param  filter       The Filter to match.
+     * @param  fieldNames   The names of the fields.
+     * @param  replacements The value to give each field.
+     * @return              The number of Records updated.
+     */
+    public int updateWhere(String tableName, Filter filter, String[] fieldNames, String[] replacements)
+    {
+        Table t = getChangeableTable(tableName);
+        return t.updateWhere(filter, fieldNames, replacements);
+    }
+
+    /**
+     * Builds an index of the given type over a column of the chosen Table. The
+     * index is kept up to date as the Table changes, and is rebuilt whenever
+     * the database is loaded. A unique index also stops any two Records
+     * holding the same value of the column, so it cannot be built over a
+     * column where some already do.
+     * @param tableName  The name of the Table.
+     * @param columnName The name of the column to index.
+     * @param type       The type of index to build.
+     */
+    public void createIndex(String tableName, String columnName, IndexType type)
+    {
+        Table t = getTable(tableName);
+        t.createIndex(columnName, type);
+        schemaVersion++;
+    }
+
+    /**
+     * Removes an index of the given type from a column of the chosen Table.
+     * @param tableName  The name of the Table.
+     * @param columnName The name of the indexed column.
+     * @param type       The type of index to remove.
+     */
+    public void dropIndex(String tableName, String columnName, IndexType type)
+    {
+        Table t = getTable(tableName);
+        t.dropIndex(columnName, type);
+        schemaVersion++;
+    }
+
+    /**
+     * Gets whether a column of the chosen Table has an index of the given type.
+     * @param  tableName  The name of the Table.
+     * @param  columnName The name of the column.
+     * @param  type       The type of index.
+     * @return            Whether the index exists.
+     */
+    public boolean hasIndex(String tableName, String columnName, IndexType type)
+    {
+        Table t = getTable(tableName);
+        return t.hasIndex(columnName, type);
+    }
+
+    /**
+     * Gathers the statistics of the chosen Table from scratch. Statistics are
+     * otherwise kept roughly up to date as Records change, and gathered again
+     * once many Records have changed.
+     * @param tableName The name of the Table.
+     */
+    public void analyze(String tableName)
+    {
+        Table t = getTable(tableName);
+        t.analyze();
+    }
+
+    /**
+     * Gets the statistics describing the Records of the chosen Table.
+     * @param  tableName The name of the Table.
+     * @return           A copy of the statistics, which won't change with the
+     *                   Table.
+     */
+    public TableStatistics getStatistics(String tableName)
+    {
+        Table t = getTable(tableName);
+        return t.getStatistics().copy();
+    }
+
+    /**
+     * Gets the statistics describing the values of a field of the chosen Table.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @return           A copy of the statistics, which won't change with the
+     *                   Table.
+     */
+    public ColumnStatistics getColumnStatistics(String tableName, String fieldName)
+    {
+        Table t = getTable(tableName);
+        return t.getColumnStatistics(fieldName).copy();
+    }
+
+    /**
+     * Estimates the number of Records of the chosen Table matching a Filter,
+     * using the Table's statistics.
+     * @param  tableName The name of the Table.
+     * @param  filter    The Filter to match.
+     * @return           The estimated number of Records.
+     */
+    public double estimateMatches(String tableName, Filter filter)
+    {
+        Table t = getTable(tableName);
+        return t.estimateMatches(filter);
+    }
+
+    /**
+     * Gets whether the indexes of the chosen Table will be used to find the
+     * Records matching a Filter. They are only used when that is estimated to
+     * be cheaper than testing every Record.
+     * @param  tableName The name of the Table.
+     * @param  filter    The Filter to match.
+     * @return           Whether the indexes will be used.
+     */
+    public boolean usesIndexes(String tableName, Filter filter)
+    {
+        Table t = getTable(tableName);
+        return t.usesIndexes(filter);
+    }
+
+    /**
+     * Finds every Record in the chosen Table whose value for a field equals
+     * the given value. This is a constant time lookup if the field has a hash
+     * index.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  value     The value to look for.
+     * @return           The matching Records in key order, each given as the
+     *                   key followed by the field values.
+     */
+    public List<String[]> lookup(String tableName, String fieldName, String value)
+    {
+        Table t = getTable(tableName);
+        List<String[]> rows = new ArrayList<>();
+        for (int key : t.lookup(fieldName, value))
+            rows.add(t.getRow(key));
+        return rows;
+    }
+
+    /**
+     * Finds every Record in the chosen Table matching a Filter. Equality tests
+     * on fields with bitmap or hash indexes are answered from the indexes, with
+     * AND and OR combining the bitmaps of keys they find.
+     * @param  tableName The name of the Table.
+     * @param  filter    The Filter to match.
+     * @return           The matching Records in key order, each given as the
+     *                   key followed by the field values.
+     */
+    public List<String[]> filter(String tableName, Filter filter)
+    {
+        Table t = getTable(tableName);
+        List<String[]> rows = new ArrayList<>();
+        t.filter(filter).forEach(key -> rows.add(t.getRow(key)));
+        return rows;
+    }
+
+    /**
+     * Passes each Record in the chosen Table matching a Filter to an action, as
+     * a row holding just the chosen columns. The Filter is tested while
+     * iterating over the Table, using any indexes that help, and rows are only
+     * built for matching Records.
+     * @param tableName  The name of the Table.
+     * @param filter     The Filter to match.
+     * @param projection The names of the columns to include in each row, which
+     *                   may include the key column. If null, the key and then
+     *                   every field are included.
+     * @param action     The action to perform on each row.
+     */
+    public void scan(String tableName, Filter filter, String[] projection, Consumer<String[]> action)
+    {
+        Table t = getTable(tableName);
+        t.scan(filter, projection, action);
+    }
+
+    /**
+     * Passes the Records in the chosen Table matching a Filter to an action a
+     * batch of up to VectorBatch.CAPACITY Records at a time. Only the matching
+     * Records of each batch are selected, and the values of a column are only
+     * gathered into a ColumnVector when the action asks for them.
+     * @param tableName The name of the Table.
+     * @param filter    The Filter to match.
+     * @param action    The action to perform on each batch. Batches are reused,
+     *                  so must not be kept once the action returns.
+     */
+    public void scanBatches(String tableName, Filter filter, Consumer<VectorBatch> action)
+    {
+        Table t = getTable(tableName);
+        t.forEachBatch(filter, action);
+    }
+
+    /**
+     * Opens a Cursor paging through the Records in the chosen Table matching a
+     * Filter in key order, a batch at a time. Batches are read as they are
+     * asked for, so only one is held at once.
+     * @param  tableName         The name of the Table.
+     * @param  filter            The Filter to match.
+     * @param  projection        The names of the columns to include in each
+     *                           row, which may include the key column. If
+     *                           null, the key and then every field are
+     *                           included.
+     * @param  batchSize         The most rows in each batch.
+     * @param  continuationToken A token given by Cursor.getContinuationToken,
+     *                           to carry on after the last batch of an earlier
+     *                           Cursor, or null to start from the beginning.
+     * @return                   The Cursor.
+     */
+    public Cursor openCursor(String tableName, Filter filter, String[] projection, int batchSize, String continuationToken)
+    {
+        Table t = getTable(tableName);
+        t.resolveProjection(projection);
+        return new Cursor(this, tableName, filter, projection, batchSize, continuationToken);
+    }
+
+    /**
+     * Gets the Records in the chosen Table matching a Filter, as rows holding
+     * just the chosen columns. The Table is split into chunks which are tested
+     * in parallel, in the pool set by setScanPool.
+     * @param  tableName  The name of the Table.
+     * @param  filter     The Filter to match.
+     * @param  projection The names of the columns to include in each row, or
+     *                    null for the key and then every field.
+     * @param  ordered    Whether the rows must be in key order. Unordered scans
+     *                    need less coordination between threads.
+     * @return            The rows.
+     */
+    public List<String[]> parallelScan(String tableName, Filter filter, String[] projection, boolean ordered)
+    {
+        Table t = getTable(tableName);
+        return runInScanPool(() -> t.parallelScan(filter, projection, ordered));
+    }
+
+    /**
+     * Joins the Records of two Tables whose values for the chosen fields are
+     * equal, passing each joined row to an action. A hash table is built over
+     * the Table expected to have fewer matching Records and the other Table is
+     * read just once.
+     * @param leftTable  The name of the left Table.
+     * @param leftField  The name of the field to join on in the left Table.
+     * @param rightTable The name of the right Table.
+     * @param rightField The name of the field to join on in the right Table.
+     * @param type       The kind of join.
+     * @param action     The action to perform on each row, which holds the key
+     *                   and fields of the left Record followed by the key and
+     *                   fields of the right Record. For a left outer join, the
+     *                   right half of the row is null for left Records
+     *                   matching nothing.
+     */
+    public void join(String leftTable, String leftField, String rightTable, String rightField, JoinType type, Consumer<String[]> action)
+    {
+        join(leftTable, Filter.all(), leftField, rightTable, Filter.all(), rightField, type, action);
+    }
+
+    /**
+     * Joins the Records of two Tables matching their own Filters whose values
+     * for the chosen fields are equal, passing each joined row to an action.
+     * @param leftTable   The name of the left Table.
+     * @param leftFilter  The Filter that Records of the left Table must match.
+     * @param leftField   The name of the field to join on in the left Table.
+     * @param rightTable  The name of the right Table.
+     * @param rightFilter The Filter that Records of the right Table must match.
+     * @param rightField  The name of the field to join on in the right Table.
+     * @param type        The kind of join.
+     * @param action      The action to perform on each row, laid out as for
+     *                    the join without Filters.
+     */
+    public void join(String leftTable, Filter leftFilter, String leftField, String rightTable, Filter rightFilter, String rightField, JoinType type, Consumer<String[]> action)
+    {
+        HashJoin join = new HashJoin(getTable(leftTable), leftFilter, leftField, getTable(rightTable), rightFilter, rightField, type);
+        join.run(action);
+    }
+
+    /**
+     * Estimates the number of distinct values of a field of the chosen Table.
+     * Uses a sketch index on the field if there is one, and otherwise reads
+     * every Record into a HyperLogLog, which is still much smaller than
+     * remembering every value.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @return           The estimate, usually within 2% of the true number.
+     */
+    public long estimateDistinct(String tableName, String fieldName)
+    {
+        Table t = getTable(tableName);
+        SketchIndex sketch = t.getSketch(fieldName);
+        if (sketch != null)
+            return sketch.estimateDistinct();
+        return Long.parseLong(aggregate(tableName, Filter.all(), new String[0], Aggregate.approxCountDistinct(fieldName)).get(0)[0]);
+    }
+
+    /**
+     * Estimates the value at a quantile of a field of the chosen Table, such
+     * as its median. Uses a sketch index on the field if there is one, and
+     * otherwise reads every Record into a KLL sketch.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  quantile  The quantile, from 0 for the smallest value to 1 for
+     *                   the largest.
+     * @return           The textual form of one of the values, whose rank is
+     *                   usually within 1% of the number of Records of the rank
+     *                   asked for, or null if the Table is empty.
+     */
+    public String estimateQuantile(String tableName, String fieldName, double quantile)
+    {
+        Aggregate aggregate = Aggregate.approxQuantile(fieldName, quantile);
+        Table t = getTable(tableName);
+        SketchIndex sketch = t.getSketch(fieldName);
+        if (sketch == null)
+            return aggregate(tableName, Filter.all(), new String[0], aggregate).get(0)[0];
+        Object value = sketch.estimateQuantile(quantile);
+        return value == null ? null : ColumnType.format(value);
+    }
+
+    /**
+     * Computes Aggregates such as sums and averages over the Records in the
+     * chosen Table matching a Filter, in groups sharing the same values for the
+     * chosen columns. The Records are processed in parallel.
+     * @param  tableName  The name of the Table.
+     * @param  filter     The Filter to match.
+     * @param  groupBy    The names of the columns to group by. If empty, every
+     *                    matching Record forms a single group.
+     * @param  aggregates The Aggregates to compute for each group.
+     * @return            One row per group, ordered by the grouping values,
+     *                    holding the grouping values and then the result of
+     *                    each Aggregate, or null where an Aggregate has no
+     *                    result, such as the average of no values.
+     */
+    public List<String[]> aggregate(String tableName, Filter filter, String[] groupBy, Aggregate... aggregates)
+    {
+        Table t = getTable(tableName);
+        return runInScanPool(() -> t.aggregate(filter, groupBy, aggregates));
+    }
+
+    /**
+     * Passes the Records in the chosen Table matching a Filter to an action in
+     * order, as rows holding just the chosen columns. Tables too large to sort
+     * in memory are sorted in runs, which are written to temporary files in the
+     * database folder and merged as the rows are passed on.
+     * @param  tableName   The name of the Table.
+     * @param  filter      The Filter to match.
+     * @param  sortKeys    The columns to order by. Ties are broken by key.
+     * @param  projection  The names of the columns to include in each row, or
+     *                     null for the key and then every field.
+     * @param  action      The action to perform on each row.
+     * @throws IOException If the temporary files could not be written or read.
+     */
+    public void sort(String tableName, Filter filter, SortKey[] sortKeys, String[] projection, Consumer<String[]> action) throws IOException
+    {
+        Table t = getTable(tableName);
+        ExternalSort sort = new ExternalSort(t, sortKeys, projection, sortRunSize, new File(parentDirPath + SORT_DIR_NAME));
+        sort.run(filter, action);
+    }
+
+    /**
+     * Gets the first few Records in the chosen Table matching a Filter in the
+     * chosen order, as rows holding just the chosen columns. Only as many
+     * Records as the limit are ever held at once, however large the Table.
+     * @param  tableName  The name of the Table.
+     * @param  filter     The Filter to match.
+     * @param  sortKeys   The columns to order by. Ties are broken by key.
+     * @param  projection The names of the columns to include in each row, or
+     *                    null for the key and then every field.
+     * @param  limit      The largest number of rows to return.
+     * @return            The rows, in order.
+     */
+    public List<String[]> top(String tableName, Filter filter, SortKey[] sortKeys, String[] projection, int limit)
+    {
+        Table t = getTable(tableName);
+        return runInScanPool(() -> t.top(filter, sortKeys, projection, limit));
+    }
+
+    /**
+     * Chooses how many Records a sort may hold in memory at once.
+     * @param runSize The largest number of Records, which must be positive.
+     */
+    public void setSortRunSize(int runSize)
+    {
+        if (runSize < 1)
+            throw new IllegalArgumentException("Sorts must be able to hold at least one Record");
+        sortRunSize = runSize;
+    }
+
+    /**
+     * Chooses the pool that parallel operations run in.
+     * @param pool The pool to use, or null to use the common pool.
+     */
+    public void setScanPool(ForkJoinPool pool)
+    {
+        scanPool = pool;
+    }
+
+    // Runs a parallel operation in the chosen pool. Parallel streams started
+    // from inside a pool's task run in that pool.
+    private <T> T runInScanPool(Supplier<T> operation)
+    {
+        if (scanPool == null)
+            return operation.get();
+        return scanPool.submit(operation::get).join();
+    }
+
+    /**
+     * Gets the Records in the chosen Table matching a Filter, as rows holding
+     * just the chosen columns.
+     * @param  tableName  The name of the Table.
+     * @param  filter     The Filter to match.
+     * @param  projection The names of the columns to include in each row, or
+     *                    null for the key and then every field.
+     * @return            The rows.
+     */
+    public List<String[]> select(String tableName, Filter filter, String[] projection)
+    {
+        List<String[]> rows = new ArrayList<>();
+        scan(tableName, filter, projection, rows::add);
+        return rows;
+    }
+
+    /**
+     * Counts the Records in the chosen Table matching a Filter, without
+     * building any rows.
+     * @param  tableName The name of the Table.
+     * @param  filter    The Filter to match.
+     * @return           The number of matching Records.
+     */
+    public int count(String tableName, Filter filter)
+    {
+        Table t = getTable(tableName);
+        return t.filter(filter).getCardinality();
+    }
+
+    /**
+     * Finds every Record in the chosen Table whose string field contains a
+     * word, in any case. Only the Records containing the word are visited if
+     * the field has a text index.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  word      The word to search for.
+     * @return           The matching Records in key order, each given as the
+     *                   key followed by the field values.
+     */
+    public List<String[]> searchWord(String tableName, String fieldName, String word)
+    {
+        return filter(tableName, Filter.containsWord(fieldName, word));
+    }
+
+    /**
+     * Finds every Record in the chosen Table whose string field contains the
+     * words of a phrase one after the other, in any case.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  phrase    The phrase to search for.
+     * @return           The matching Records in key order, each given as the
+     *                   key followed by the field values.
+     */
+    public List<String[]> searchPhrase(String tableName, String fieldName, String phrase)
+    {
+        return filter(tableName, Filter.containsPhrase(fieldName, phrase));
+    }
+
+    /**
+     * Finds every Record in the chosen Table whose string field contains a
+     * word starting with the given prefix, in any case.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  prefix    The prefix to search for.
+     * @return           The matching Records in key order, each given as the
+     *                   key followed by the field values.
+     */
+    public List<String[]> searchPrefix(String tableName, String fieldName, String prefix)
+    {
+        return filter(tableName, Filter.containsWordStartingWith(fieldName, prefix));
+    }
+
+    /**
+     * Iterates over every Record in the chosen Table whose value for a field
+     * lies in the range from <= value < to. Only the matching values are
+     * visited if the field has a sorted index.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  from      The inclusive lower bound, or null for no lower bound.
+     * @param  to        The exclusive upper bound, or null for no upper bound.
+     * @return           The matching Records ordered by the field's value, each
+     *                   given as the key followed by the field values.
+     */
+    public Iterator<String[]> range(String tableName, String fieldName, String from, String to)
+    {
+        Table t = getTable(tableName);
+        return t.range(fieldName, from, to).map(t::getRow).iterator();
+    }
+
+    /**
+     * Iterates over every Record in the chosen Table whose value for a string
+     * field starts with the given prefix. Only the matching values are visited
+     * if the field has a sorted index.
+     * @param  tableName The name of the Table.
+     * @param  fieldName The name of the field.
+     * @param  prefix    The prefix to look for.
+     * @return           The matching Records ordered by the field's value, each
+     *                   given as the key followed by the field values.
+     */
+    public Iterator<String[]> prefix(String tableName, String fieldName, String prefix)
+    {
+        Table t = getTable(tableName);
+        return t.prefix(fieldName, prefix).map(t::getRow).iterator();
+    }
+
     /**
      * Saves the Tables stored in this database to the correct folder.
      * @throws IOException If an io exception occurred.
@@ -195,8 +1088,32 @@ public class Database
     public void saveDatabase() throws IOException
     {
         for (Table table : tables.values())
-        {
             table.saveTableToFile(parentDirPath);
+        TableFileReadWriter.writeViewDefinitions(getViewDefinitions(), parentDirPath);
+    }
+
+    // Gets the definition of every view.
+    private List<String[]> getViewDefinitions()
+    {
+        List<String[]> viewDefinitions = new ArrayList<>();
+        for (Table table : tables.values())
+            if (table.getDefiningView() != null)
+                viewDefinitions.add(table.getDefiningView().getDefinition());
+        return viewDefinitions;
+    }
+
+    // Saves the definitions of the views straight away, for when a Table file
+    // has been deleted so that the saved definitions would no longer match
+    // the saved Tables.
+    private void writeViewDefinitions()
+    {
+        try
+        {
+            TableFileReadWriter.writeViewDefinitions(getViewDefinitions(), parentDirPath);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -211,5 +1128,16 @@ public class Database
                 continue;
             addTable(TableFileReadWriter.readFromFile(tableName, parentDirPath));
         }
+        // Views can only be kept up to date once their sources are loaded.
+        // A view can't be kept up to date if either Table is missing, and
+        // those that can't are left out rather than stopping the database
+        // from loading.
+        for (String[] definition : TableFileReadWriter.readViewDefinitions(parentDirPath))
+        {
+            if (tables.containsKey(MaterializedView.getViewName(definition)) && tables.containsKey(MaterializedView.getSourceName(definition)))
+                MaterializedView.readFrom(definition, this::getTable);
+            else
+                unloadedViews.add(MaterializedView.getViewName(definition));
+        }
     }
 }
@@ -0,0 +1,17 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * The file formats that the Records of a Table can be exported to.
+ * @author Rjmcf
+ */
+public enum ExportFormat
+{
+    // Comma separated values, starting with a row naming the columns. Fields
+    // holding commas, quotes or line breaks are quoted as described by
+    // RFC 4180, so the file can be imported again.
+    CSV,
+    // Newline delimited JSON: one object per line, mapping each column name to
+    // its value. Numbers and booleans are written as such, and everything
+    // else as strings.
+    NDJSON
+}
@@ -0,0 +1,287 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.fileutils.FileUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Sorts the Records of a Table matching a Filter without holding them all in
+ * memory at once. Records are gathered into runs of a bounded size, and each
+ * full run is sorted and written to a temporary file. The runs are then merged
+ * by repeatedly taking the smallest of the rows at the front of every run. If
+ * every Record fits in one run, nothing is written to disk. Only so many runs
+ * are read at once, so that the number of open files stays bounded however
+ * many Records there are; if there are more runs than that, groups of them are
+ * first merged into longer runs.
+ * @author Rjmcf
+ */
+class ExternalSort
+{
+    // The most runs merged at once, each of which holds a file open.
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    private final Table table;
+    private final SortSpec sortSpec;
+    // The type of each value in an Entry's sortValues.
+    private final ColumnType[] sortTypes;
+    private final int[] projectedFields;
+    // The number of Records held in memory at once.
+    private final int runSize;
+    // The folder that runs are written to.
+    private final File spillDir;
+    private final Comparator<Entry> order;
+
+    /**
+     * Prepares to sort a Table.
+     * @param table      The Table to sort.
+     * @param sortKeys   The columns to order by. Ties are broken by key.
+     * @param projection The names of the columns to include in each row, or
+     *                   null for the key and then every field.
+     * @param runSize    The largest number of Records to hold in memory.
+     * @param spillDir   The folder to write runs to, which is created if
+     *                   needed.
+     */
+    ExternalSort(Table table, SortKey[] sortKeys, String[] projection, int runSize, File spillDir)
+    {
+        if (runSize < 1)
+            throw new IllegalArgumentException("Runs must hold at least one Record");
+        this.table = table;
+        this.runSize = runSize;
+        this.spillDir = spillDir;
+        projectedFields = table.resolveProjection(projection);
+        sortSpec = new SortSpec(table, sortKeys);
+        sortTypes = sortSpec.getTypes();
+        Comparator<Object[]> valueOrder = sortSpec.getOrder();
+        order = (a, b) -> valueOrder.compare(a.sortValues, b.sortValues);
+    }
+
+    /**
+     * Sorts the Records matching a Filter, passing each as a row to an action
+     * in order. Temporary files are removed before returning, even if the
+     * action throws an exception.
+     * @param  filter      The Filter to match.
+     * @param  action      The action to perform on each row.
+     * @throws IOException If a run could not be written or read.
+     */
+    void run(Filter filter, Consumer<String[]> action) throws IOException
+    {
+        ArrayList<File> runFiles = new ArrayList<>();
+        try
+        {
+            ArrayList<Entry> run = new ArrayList<>();
+            IOException[] spillError = new IOException[1];
+            table.forEachMatch(filter, (key, record) -> {
+                if (spillError[0] != null)
+                    return;
+                run.add(new Entry(key, record));
+                if (run.size() < runSize)
+                    return;
+                try
+                {
+                    runFiles.add(spill(run));
+                }
+                catch (IOException e)
+                {
+                    spillError[0] = e;
+                }
+                run.clear();
+            });
+            if (spillError[0] != null)
+                throw spillError[0];
+
+            run.sort(order);
+            if (runFiles.isEmpty())
+            {
+                for (Entry entry : run)
+                    action.accept(entry.row);
+                return;
+            }
+            if (!run.isEmpty())
+                runFiles.add(spill(run));
+            while (runFiles.size() > MAX_MERGE_WIDTH)
+                mergeGroup(runFiles);
+            merge(runFiles, entry -> action.accept(entry.row));
+        }
+        finally
+        {
+            for (File runFile : runFiles)
+                FileUtil.deleteFileIfExists(runFile);
+        }
+    }
+
+    // Sorts a run and writes it to a new temporary file.
+    private File spill(ArrayList<Entry> run) throws IOException
+    {
+        run.sort(order);
+        FileUtil.makeDirsIfNeeded(spillDir);
+        File runFile = File.createTempFile("run", ".tmp", spillDir);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile))))
+        {
+            out.writeInt(run.size());
+            for (Entry entry : run)
+                writeEntry(out, entry);
+        }
+        return runFile;
+    }
+
+    // Merges the oldest runs into one longer run, which is put at the back of
+    // the list so that every run is merged again before any new one is.
+    private void mergeGroup(List<File> runFiles) throws IOException
+    {
+        List<File> group = new ArrayList<>(runFiles.subList(0, MAX_MERGE_WIDTH));
+        int numEntries = 0;
+        for (File runFile : group)
+        {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(runFile)))
+            {
+                numEntries += in.readInt();
+            }
+        }
+        File mergedFile = File.createTempFile("run", ".tmp", spillDir);
+        // Listed straight away, so that it is removed if the merge fails.
+        runFiles.add(mergedFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mergedFile))))
+        {
+            out.writeInt(numEntries);
+            merge(group, entry -> writeEntry(out, entry));
+        }
+        runFiles.subList(0, MAX_MERGE_WIDTH).clear();
+        for (File runFile : group)
+            FileUtil.deleteFileIfExists(runFile);
+    }
+
+    // Merges sorted runs, always passing on the smallest Entry at the front
+    // of any run.
+    private void merge(List<File> runFiles, EntryAction action) throws IOException
+    {
+        ArrayList<RunReader> allReaders = new ArrayList<>();
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(runFiles.size(), (a, b) -> order.compare(a.current, b.current));
+        try
+        {
+            for (File runFile : runFiles)
+            {
+                RunReader reader = new RunReader(runFile);
+                allReaders.add(reader);
+                if (reader.advance())
+                    readers.add(reader);
+            }
+            while (!readers.isEmpty())
+            {
+                RunReader smallest = readers.poll();
+                action.accept(smallest.current);
+                if (smallest.advance())
+                    readers.add(smallest);
+            }
+        }
+        finally
+        {
+            for (RunReader reader : allReaders)
+                reader.close();
+        }
+    }
+
+    // Writes the values an Entry is sorted by, then its row.
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException
+    {
+        for (Object value : entry.sortValues)
+            writeString(out, ColumnType.format(value));
+        for (String field : entry.row)
+            writeString(out, field);
+    }
+
+    // Strings are written as their length followed by their bytes, so they
+    // may hold any character.
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(FileUtil.ENCODING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, FileUtil.ENCODING);
+    }
+
+    /**
+     * Something done with each Entry of a merge, which may write to a file.
+     */
+    private interface EntryAction
+    {
+        void accept(Entry entry) throws IOException;
+    }
+
+    /**
+     * A Record waiting to be sorted, holding the values it is sorted by and
+     * the row it will be output as.
+     */
+    private class Entry
+    {
+        // The values the Record is sorted by, ending with its key.
+        final Object[] sortValues;
+        final String[] row;
+
+        Entry(int key, Record record)
+        {
+            sortValues = sortSpec.extract(key, record);
+            row = Table.project(key, record, projectedFields);
+        }
+
+        Entry(Object[] sortValues, String[] row)
+        {
+            this.sortValues = sortValues;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Reads the Entries of a run back from its file, one at a time.
+     */
+    private class RunReader
+    {
+        private final DataInputStream in;
+        private int remaining;
+        Entry current;
+
+        RunReader(File runFile) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+            remaining = in.readInt();
+        }
+
+        // Moves on to the next Entry, returning false if there are none left.
+        boolean advance() throws IOException
+        {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            Object[] sortValues = new Object[sortTypes.length];
+            for (int i = 0; i < sortTypes.length; i++)
+                sortValues[i] = sortTypes[i].parse(readString(in));
+            String[] row = new String[projectedFields.length];
+            for (int i = 0; i < row.length; i++)
+                row[i] = readString(in);
+            current = new Entry(sortValues, row);
+            return true;
+        }
+
+        void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,964 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * A condition on the fields of a Record, used to choose which Records of a
+ * Table an operation applies to. Filters are built from the static factory
+ * methods, and refer to fields by name and to values by their textual form.
+ * @author Rjmcf
+ */
+public abstract class Filter
+{
+    /**
+     * Gets a Filter matching Records whose field equals the given value.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value.
+     * @return           The Filter.
+     */
+    public static Filter equalTo(String fieldName, String value)
+    {
+        return new EqualTo(fieldName, value);
+    }
+
+    /**
+     * Gets a Filter matching Records whose field does not equal the given value.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value.
+     * @return           The Filter.
+     */
+    public static Filter notEqualTo(String fieldName, String value)
+    {
+        return new Comparison(fieldName, Comparison.Operator.NOT_EQUAL, value);
+    }
+
+    /**
+     * Gets a Filter matching Records whose field is less than the given value,
+     * comparing as the field's type.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value.
+     * @return           The Filter.
+     */
+    public static Filter lessThan(String fieldName, String value)
+    {
+        return new Comparison(fieldName, Comparison.Operator.LESS, value);
+    }
+
+    /**
+     * Gets a Filter matching Records whose field is at most the given value,
+     * comparing as the field's type.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value.
+     * @return           The Filter.
+     */
+    public static Filter lessThanOrEqualTo(String fieldName, String value)
+    {
+        return new Comparison(fieldName, Comparison.Operator.LESS_OR_EQUAL, value);
+    }
+
+    /**
+     * Gets a Filter matching Records whose field is greater than the given
+     * value, comparing as the field's type.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value.
+     * @return           The Filter.
+     */
+    public static Filter greaterThan(String fieldName, String value)
+    {
+        return new Comparison(fieldName, Comparison.Operator.GREATER, value);
+    }
+
+    /**
+     * Gets a Filter matching Records whose field is at least the given value,
+     * comparing as the field's type.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value.
+     * @return           The Filter.
+     */
+    public static Filter greaterThanOrEqualTo(String fieldName, String value)
+    {
+        return new Comparison(fieldName, Comparison.Operator.GREATER_OR_EQUAL, value);
+    }
+
+    /**
+     * Gets a Filter matching Records whose field lies in the range
+     * from <= value < to, comparing as the field's type.
+     * @param  fieldName The name of the field.
+     * @param  from      The textual form of the inclusive lower bound.
+     * @param  to        The textual form of the exclusive upper bound.
+     * @return           The Filter.
+     */
+    public static Filter between(String fieldName, String from, String to)
+    {
+        return and(greaterThanOrEqualTo(fieldName, from), lessThan(fieldName, to));
+    }
+
+    /**
+     * Gets a Filter matching Records whose string field starts with a prefix.
+     * @param  fieldName The name of the field.
+     * @param  prefix    The prefix.
+     * @return           The Filter.
+     */
+    public static Filter startsWith(String fieldName, String prefix)
+    {
+        return new StartsWith(fieldName, prefix);
+    }
+
+    /**
+     * Gets a Filter matching every Record.
+     * @return The Filter.
+     */
+    public static Filter all()
+    {
+        return new All();
+    }
+
+    /**
+     * Gets a Filter matching Records that do not match the given Filter.
+     * @param  filter The Filter to negate.
+     * @return        The Filter.
+     */
+    public static Filter not(Filter filter)
+    {
+        return new Not(filter);
+    }
+
+    /**
+     * Gets a Filter matching Records whose string field contains a word, in
+     * any case. Words are separated by anything other than letters and digits.
+     * @param  fieldName The name of the field.
+     * @param  word      The word to search for.
+     * @return           The Filter.
+     */
+    public static Filter containsWord(String fieldName, String word)
+    {
+        return new TextSearch(fieldName, TextSearch.Mode.WORD, word);
+    }
+
+    /**
+     * Gets a Filter matching Records whose string field contains the words of
+     * a phrase one after the other, in any case.
+     * @param  fieldName The name of the field.
+     * @param  phrase    The phrase to search for.
+     * @return           The Filter.
+     */
+    public static Filter containsPhrase(String fieldName, String phrase)
+    {
+        return new TextSearch(fieldName, TextSearch.Mode.PHRASE, phrase);
+    }
+
+    /**
+     * Gets a Filter matching Records whose string field contains a word
+     * starting with the given prefix, in any case.
+     * @param  fieldName The name of the field.
+     * @param  prefix    The prefix to search for.
+     * @return           The Filter.
+     */
+    public static Filter containsWordStartingWith(String fieldName, String prefix)
+    {
+        return new TextSearch(fieldName, TextSearch.Mode.PREFIX, prefix);
+    }
+
+    /**
+     * Gets a Filter matching Records that match every one of the given Filters.
+     * @param  filters The Filters to combine.
+     * @return         The Filter.
+     */
+    public static Filter and(Filter... filters)
+    {
+        return new And(Arrays.asList(filters));
+    }
+
+    /**
+     * Gets a Filter matching Records that match any of the given Filters.
+     * @param  filters The Filters to combine.
+     * @return         The Filter.
+     */
+    public static Filter or(Filter... filters)
+    {
+        return new Or(Arrays.asList(filters));
+    }
+
+    /**
+     * Reads a Filter written by writeTo.
+     * @param  words The words written, from which those describing the Filter
+     *               are taken.
+     * @return       The Filter.
+     */
+    static Filter readFrom(Iterator<String> words)
+    {
+        String kind = words.next();
+        switch (kind)
+        {
+            case "=":
+                return equalTo(words.next(), words.next());
+            case "startsWith":
+                return startsWith(words.next(), words.next());
+            case "all":
+                return all();
+            case "not":
+                return not(readFrom(words));
+            case "and":
+            case "or":
+                Filter[] filters = new Filter[Integer.parseInt(words.next())];
+                for (int i = 0; i < filters.length; i++)
+                    filters[i] = readFrom(words);
+                return kind.equals("and") ? and(filters) : or(filters);
+        }
+        for (Comparison.Operator operator : Comparison.Operator.values())
+            if (operator.name().equals(kind))
+                return new Comparison(words.next(), operator, words.next());
+        for (TextSearch.Mode mode : TextSearch.Mode.values())
+            if (mode.name().equals(kind))
+                return new TextSearch(words.next(), mode, words.next());
+        throw new IllegalArgumentException("Unknown filter " + kind);
+    }
+
+    /**
+     * Describes this Filter as a list of words, from which readFrom can build
+     * an equal Filter. Each Filter writes what kind it is, then its fields and
+     * values, then the Filters it combines.
+     * @param words The list to add the words to.
+     */
+    abstract void writeTo(List<String> words);
+
+    /**
+     * Builds a test for Records of the given Table, with field names resolved
+     * and values converted to the field types up front.
+     * @param  table The Table whose Records will be tested.
+     * @return       The test.
+     */
+    abstract Predicate<Record> compile(Table table);
+
+    /**
+     * Builds a test for batches of Records of the given Table. By default each
+     * selected Record is tested in turn by the test built by compile, but
+     * tests of numeric fields work on whole ColumnVectors at once.
+     * @param  table The Table whose Records will be tested.
+     * @return       The test.
+     */
+    BatchPredicate compileBatch(Table table)
+    {
+        Predicate<Record> test = compile(table);
+        return (batch, selection, count) -> {
+            int kept = 0;
+            for (int i = 0; i < count; i++)
+                if (test.test(batch.getRecord(selection[i])))
+                    selection[kept++] = selection[i];
+            return kept;
+        };
+    }
+
+    // Builds a batch test keeping the Records whose numeric field lies in the
+    // range lo <= value <= hi, or outside it if negated. Bounds are given as by
+    // toComparable.
+    private static BatchPredicate selectInRange(int fieldIndex, ColumnType type, long lo, long hi, boolean negate)
+    {
+        switch (type)
+        {
+            case INT:
+                return (batch, selection, count) ->
+                        BatchKernels.get().selectInRange(batch.getVector(fieldIndex).ints, lo, hi, negate, selection, count);
+            case LONG:
+                return (batch, selection, count) ->
+                        BatchKernels.get().selectInRange(batch.getVector(fieldIndex).longs, lo, hi, negate, selection, count);
+            default:
+                return (batch, selection, count) ->
+                        BatchKernels.get().selectInRange(batch.getVector(fieldIndex).doubles, lo, hi, negate, selection, count);
+        }
+    }
+
+    // Converts a numeric value into the long that batch tests compare values
+    // of its type as.
+    private static long toComparable(Object value)
+    {
+        return value instanceof Double ? BatchKernels.sortableBits((Double)value) : ((Number)value).longValue();
+    }
+
+    // Runs a batch test on a copy of a selection, marking the positions that
+    // pass.
+    private static void markMatches(BatchPredicate test, VectorBatch batch, int[] selection, int count, boolean[] marks)
+    {
+        int[] trial = Arrays.copyOf(selection, count);
+        int passed = test.select(batch, trial, count);
+        for (int i = 0; i < passed; i++)
+            marks[trial[i]] = true;
+    }
+
+    /**
+     * Uses the indexes of the given Table to find the keys of the Records that
+     * might match, without looking at the Records themselves.
+     * @param  table The Table to search.
+     * @return       A set of keys containing every matching Record, or null if
+     *               the indexes cannot narrow the search.
+     */
+    abstract RoaringBitmap findCandidates(Table table);
+
+    /**
+     * Gets whether the keys found by findCandidates are exactly the keys of
+     * the matching Records, so that the Records need not be tested.
+     * @param  table The Table to search.
+     * @return       Whether the indexes answer this Filter on their own.
+     */
+    abstract boolean isAnsweredByIndexes(Table table);
+
+    /**
+     * Estimates the fraction of the Records of the given Table matching this
+     * Filter, using the Table's statistics.
+     * @param  table The Table to search.
+     * @return       The estimated fraction, between 0 and 1.
+     */
+    abstract double estimateSelectivity(Table table);
+
+    /**
+     * Estimates the fraction of the Records of the given Table that
+     * findCandidates would return. By default this is every matching Record
+     * if an index can answer the Filter, and every Record if not.
+     * @param  table The Table to search.
+     * @return       The estimated fraction, between 0 and 1.
+     */
+    double estimateCandidateSelectivity(Table table)
+    {
+        return isAnsweredByIndexes(table) ? estimateSelectivity(table) : 1;
+    }
+
+    /**
+     * Matches Records whose field equals a value.
+     */
+    private static class EqualTo extends Filter
+    {
+        private final String fieldName;
+        private final String value;
+
+        EqualTo(String fieldName, String value)
+        {
+            this.fieldName = fieldName;
+            this.value = value;
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add("=");
+            words.add(fieldName);
+            words.add(value);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            int fieldIndex = table.getFieldIndex(fieldName);
+            Object target = table.getFieldType(fieldName).parse(value);
+            return record -> record.getValue(fieldIndex).equals(target);
+        }
+
+        @Override
+        BatchPredicate compileBatch(Table table)
+        {
+            int fieldIndex = table.getFieldIndex(fieldName);
+            ColumnType type = table.getFieldType(fieldName);
+            Object target = type.parse(value);
+            if (type.isNumeric())
+                return selectInRange(fieldIndex, type, toComparable(target), toComparable(target), false);
+            return (batch, selection, count) ->
+                    BatchKernels.get().selectEqual(batch.getVector(fieldIndex).objects, target, false, selection, count);
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            return table.lookupWithIndex(fieldName, value);
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            return table.hasIndex(fieldName, IndexType.BITMAP) || table.getHashIndex(fieldName) != null ||
+                   table.hasIndex(fieldName, IndexType.SORTED);
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            Object target = table.getFieldType(fieldName).parse(value);
+            return table.getColumnStatistics(fieldName).estimateEqual(target);
+        }
+    }
+
+    /**
+     * Matches Records whose field compares to a value in a particular way.
+     */
+    private static class Comparison extends Filter
+    {
+        enum Operator { NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL }
+
+        private final String fieldName;
+        private final Operator operator;
+        private final String value;
+
+        Comparison(String fieldName, Operator operator, String value)
+        {
+            this.fieldName = fieldName;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add(operator.name());
+            words.add(fieldName);
+            words.add(value);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            int fieldIndex = table.getFieldIndex(fieldName);
+            Object target = table.getFieldType(fieldName).parse(value);
+            switch (operator)
+            {
+                case NOT_EQUAL:
+                    return record -> !record.getValue(fieldIndex).equals(target);
+                case LESS:
+                    return record -> ColumnType.compare(record.getValue(fieldIndex), target) < 0;
+                case LESS_OR_EQUAL:
+                    return record -> ColumnType.compare(record.getValue(fieldIndex), target) <= 0;
+                case GREATER:
+                    return record -> ColumnType.compare(record.getValue(fieldIndex), target) > 0;
+                default:
+                    return record -> ColumnType.compare(record.getValue(fieldIndex), target) >= 0;
+            }
+        }
+
+        @Override
+        BatchPredicate compileBatch(Table table)
+        {
+            int fieldIndex = table.getFieldIndex(fieldName);
+            ColumnType type = table.getFieldType(fieldName);
+            Object target = type.parse(value);
+            if (!type.isNumeric())
+            {
+                if (operator != Operator.NOT_EQUAL)
+                    return super.compileBatch(table);
+                return (batch, selection, count) ->
+                        BatchKernels.get().selectEqual(batch.getVector(fieldIndex).objects, target, true, selection, count);
+            }
+            long bound = toComparable(target);
+            switch (operator)
+            {
+                case NOT_EQUAL:
+                    return selectInRange(fieldIndex, type, bound, bound, true);
+                case LESS:
+                    // Nothing is less than the smallest value, so use an empty range.
+                    return bound == Long.MIN_VALUE ? selectInRange(fieldIndex, type, 1, 0, false)
+                                                   : selectInRange(fieldIndex, type, Long.MIN_VALUE, bound - 1, false);
+                case LESS_OR_EQUAL:
+                    return selectInRange(fieldIndex, type, Long.MIN_VALUE, bound, false);
+                case GREATER:
+                    return bound == Long.MAX_VALUE ? selectInRange(fieldIndex, type, 1, 0, false)
+                                                   : selectInRange(fieldIndex, type, bound + 1, Long.MAX_VALUE, false);
+                default:
+                    return selectInRange(fieldIndex, type, bound, Long.MAX_VALUE, false);
+            }
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            SortedIndex index = (SortedIndex)table.getIndex(fieldName, IndexType.SORTED);
+            if (index == null || operator == Operator.NOT_EQUAL)
+                return null;
+            Object target = table.getFieldType(fieldName).parse(value);
+            switch (operator)
+            {
+                case LESS:
+                    return RoaringBitmap.of(index.range(null, false, target, false)::iterator);
+                case LESS_OR_EQUAL:
+                    return RoaringBitmap.of(index.range(null, false, target, true)::iterator);
+                case GREATER:
+                    return RoaringBitmap.of(index.range(target, false, null, false)::iterator);
+                default:
+                    return RoaringBitmap.of(index.range(target, true, null, false)::iterator);
+            }
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            return operator != Operator.NOT_EQUAL && table.hasIndex(fieldName, IndexType.SORTED);
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            Object target = table.getFieldType(fieldName).parse(value);
+            ColumnStatistics statistics = table.getColumnStatistics(fieldName);
+            switch (operator)
+            {
+                case NOT_EQUAL:
+                    return 1 - statistics.estimateEqual(target);
+                case LESS:
+                    return statistics.estimateRange(null, false, target, false);
+                case LESS_OR_EQUAL:
+                    return statistics.estimateRange(null, false, target, true);
+                case GREATER:
+                    return statistics.estimateRange(target, false, null, false);
+                default:
+                    return statistics.estimateRange(target, true, null, false);
+            }
+        }
+    }
+
+    /**
+     * Matches Records whose string field starts with a prefix.
+     */
+    private static class StartsWith extends Filter
+    {
+        private final String fieldName;
+        private final String prefix;
+
+        StartsWith(String fieldName, String prefix)
+        {
+            this.fieldName = fieldName;
+            this.prefix = prefix;
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add("startsWith");
+            words.add(fieldName);
+            words.add(prefix);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            int fieldIndex = table.getFieldIndex(fieldName);
+            if (table.getFieldType(fieldName) != ColumnType.STRING)
+                throw new IllegalArgumentException("Prefix tests need a string column, but " + fieldName + " is not");
+            return record -> ((String)record.getValue(fieldIndex)).startsWith(prefix);
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            if (!table.hasIndex(fieldName, IndexType.SORTED))
+                return null;
+            return RoaringBitmap.of(table.prefix(fieldName, prefix)::iterator);
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            return table.hasIndex(fieldName, IndexType.SORTED);
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            if (table.getFieldType(fieldName) != ColumnType.STRING)
+                return ColumnStatistics.DEFAULT_SELECTIVITY;
+            // Every string with the prefix sorts between the prefix itself and
+            // the prefix followed by the largest character.
+            return table.getColumnStatistics(fieldName).estimateRange(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+    }
+
+    /**
+     * Matches every Record.
+     */
+    private static class All extends Filter
+    {
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add("all");
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            return record -> true;
+        }
+
+        @Override
+        BatchPredicate compileBatch(Table table)
+        {
+            return (batch, selection, count) -> count;
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            return null;
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            return false;
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            return 1;
+        }
+    }
+
+    /**
+     * Matches Records not matching another Filter.
+     */
+    private static class Not extends Filter
+    {
+        private final Filter filter;
+
+        Not(Filter filter)
+        {
+            this.filter = filter;
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add("not");
+            filter.writeTo(words);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            return filter.compile(table).negate();
+        }
+
+        @Override
+        BatchPredicate compileBatch(Table table)
+        {
+            BatchPredicate test = filter.compileBatch(table);
+            return (batch, selection, count) -> {
+                boolean[] matched = new boolean[VectorBatch.CAPACITY];
+                markMatches(test, batch, selection, count, matched);
+                int kept = 0;
+                for (int i = 0; i < count; i++)
+                    if (!matched[selection[i]])
+                        selection[kept++] = selection[i];
+                return kept;
+            };
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            // The indexes only say which Records match, so can't narrow down
+            // the Records that don't.
+            return null;
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            return false;
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            return 1 - filter.estimateSelectivity(table);
+        }
+    }
+
+    /**
+     * Matches Records whose string field contains a word, phrase, or word
+     * starting with a prefix.
+     */
+    private static class TextSearch extends Filter
+    {
+        enum Mode { WORD, PHRASE, PREFIX }
+
+        private final String fieldName;
+        private final Mode mode;
+        private final String text;
+
+        TextSearch(String fieldName, Mode mode, String text)
+        {
+            this.fieldName = fieldName;
+            this.mode = mode;
+            this.text = text;
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add(mode.name());
+            words.add(fieldName);
+            words.add(text);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            int fieldIndex = table.getFieldIndex(fieldName);
+            if (table.getFieldType(fieldName) != ColumnType.STRING)
+                throw new IllegalArgumentException("Text searches need a string column, but " + fieldName + " is not");
+            String lowerText = text.toLowerCase(Locale.ROOT);
+            switch (mode)
+            {
+                case WORD:
+                    return record -> TextIndex.tokenize((String)record.getValue(fieldIndex)).contains(lowerText);
+                case PHRASE:
+                    List<String> phrase = TextIndex.tokenize(text);
+                    return record -> !phrase.isEmpty() && TextIndex.containsPhrase(TextIndex.tokenize((String)record.getValue(fieldIndex)), phrase);
+                default:
+                    return record -> {
+                        for (String word : TextIndex.tokenize((String)record.getValue(fieldIndex)))
+                            if (word.startsWith(lowerText))
+                                return true;
+                        return false;
+                    };
+            }
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            TextIndex index = (TextIndex)table.getIndex(fieldName, IndexType.TEXT);
+            if (index == null)
+                return null;
+            switch (mode)
+            {
+                case WORD:
+                    return index.searchWord(text);
+                case PHRASE:
+                    return index.searchPhrase(text);
+                default:
+                    return index.searchPrefix(text);
+            }
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            return table.hasIndex(fieldName, IndexType.TEXT);
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            // The statistics don't describe the words within values.
+            return ColumnStatistics.DEFAULT_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Matches Records matching all of a list of Filters.
+     */
+    private static class And extends Filter
+    {
+        private final List<Filter> filters;
+
+        And(List<Filter> filters)
+        {
+            this.filters = new ArrayList<>(filters);
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add("and");
+            words.add(Integer.toString(filters.size()));
+            for (Filter filter : filters)
+                filter.writeTo(words);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            List<Predicate<Record>> tests = new ArrayList<>();
+            for (Filter filter : filters)
+                tests.add(filter.compile(table));
+            return record -> {
+                for (Predicate<Record> test : tests)
+                    if (!test.test(record))
+                        return false;
+                return true;
+            };
+        }
+
+        @Override
+        BatchPredicate compileBatch(Table table)
+        {
+            List<BatchPredicate> tests = new ArrayList<>();
+            for (Filter filter : filters)
+                tests.add(filter.compileBatch(table));
+            // Each test only looks at the Records passing the ones before.
+            return (batch, selection, count) -> {
+                for (BatchPredicate test : tests)
+                    count = test.select(batch, selection, count);
+                return count;
+            };
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            // Any Filter that can use an index narrows the search, so intersect
+            // all of those that can.
+            RoaringBitmap candidates = null;
+            for (Filter filter : filters)
+            {
+                RoaringBitmap filterCandidates = filter.findCandidates(table);
+                if (filterCandidates == null)
+                    continue;
+                candidates = candidates == null ? filterCandidates : candidates.and(filterCandidates);
+            }
+            return candidates;
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            for (Filter filter : filters)
+                if (!filter.isAnsweredByIndexes(table))
+                    return false;
+            return true;
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            // The Filters are assumed to be independent.
+            double selectivity = 1;
+            for (Filter filter : filters)
+                selectivity *= filter.estimateSelectivity(table);
+            return selectivity;
+        }
+
+        @Override
+        double estimateCandidateSelectivity(Table table)
+        {
+            // The candidates of every Filter that can use an index are
+            // intersected.
+            double selectivity = 1;
+            for (Filter filter : filters)
+                selectivity *= filter.estimateCandidateSelectivity(table);
+            return selectivity;
+        }
+    }
+
+    /**
+     * Matches Records matching any of a list of Filters.
+     */
+    private static class Or extends Filter
+    {
+        private final List<Filter> filters;
+
+        Or(List<Filter> filters)
+        {
+            this.filters = new ArrayList<>(filters);
+        }
+
+        @Override
+        void writeTo(List<String> words)
+        {
+            words.add("or");
+            words.add(Integer.toString(filters.size()));
+            for (Filter filter : filters)
+                filter.writeTo(words);
+        }
+
+        @Override
+        Predicate<Record> compile(Table table)
+        {
+            List<Predicate<Record>> tests = new ArrayList<>();
+            for (Filter filter : filters)
+                tests.add(filter.compile(table));
+            return record -> {
+                for (Predicate<Record> test : tests)
+                    if (test.test(record))
+                        return true;
+                return false;
+            };
+        }
+
+        @Override
+        BatchPredicate compileBatch(Table table)
+        {
+            List<BatchPredicate> tests = new ArrayList<>();
+            for (Filter filter : filters)
+                tests.add(filter.compileBatch(table));
+            // Each test only looks at the Records that failed the ones before.
+            return (batch, selection, count) -> {
+                boolean[] matched = new boolean[VectorBatch.CAPACITY];
+                int[] remaining = Arrays.copyOf(selection, count);
+                int remainingCount = count;
+                for (BatchPredicate test : tests)
+                {
+                    markMatches(test, batch, remaining, remainingCount, matched);
+                    int stillRemaining = 0;
+                    for (int i = 0; i < remainingCount; i++)
+                        if (!matched[remaining[i]])
+                            remaining[stillRemaining++] = remaining[i];
+                    remainingCount = stillRemaining;
+                }
+                int kept = 0;
+                for (int i = 0; i < count; i++)
+                    if (matched[selection[i]])
+                        selection[kept++] = selection[i];
+                return kept;
+            };
+        }
+
+        @Override
+        RoaringBitmap findCandidates(Table table)
+        {
+            // Only narrows the search if every Filter can use an index, as
+            // otherwise any Record might match.
+            RoaringBitmap candidates = new RoaringBitmap();
+            for (Filter filter : filters)
+            {
+                RoaringBitmap filterCandidates = filter.findCandidates(table);
+                if (filterCandidates == null)
+                    return null;
+                candidates = candidates.or(filterCandidates);
+            }
+            return candidates;
+        }
+
+        @Override
+        boolean isAnsweredByIndexes(Table table)
+        {
+            for (Filter filter : filters)
+                if (!filter.isAnsweredByIndexes(table))
+                    return false;
+            return true;
+        }
+
+        @Override
+        double estimateSelectivity(Table table)
+        {
+            // The Filters are assumed to be independent.
+            double notSelected = 1;
+            for (Filter filter : filters)
+                notSelected *= 1 - filter.estimateSelectivity(table);
+            return 1 - notSelected;
+        }
+
+        @Override
+        double estimateCandidateSelectivity(Table table)
+        {
+            // The candidates of every Filter are combined, so every Filter
+            // must be able to use an index.
+            double selectivity = 0;
+            for (Filter filter : filters)
+                selectivity += filter.estimateCandidateSelectivity(table);
+            return Math.min(1, selectivity);
+        }
+    }
+}
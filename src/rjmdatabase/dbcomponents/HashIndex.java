@@ -0,0 +1,68 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An index mapping each value of a column to the keys of the Records that
+ * hold it, so that equality lookups take constant time. A unique hash index
+ * refuses to store a value under a second key, though the Table checks its
+ * changes against the index before making any of them.
+ * @author Rjmcf
+ */
+class HashIndex extends ColumnIndex
+{
+    // The keys of the Records holding each value.
+    private HashMap<Object, HashSet<Integer>> keysByValue;
+    // Whether each value may only be held by one Record.
+    private final boolean unique;
+
+    HashIndex(String columnName, boolean unique)
+    {
+        super(columnName);
+        keysByValue = new HashMap<>();
+        this.unique = unique;
+    }
+
+    @Override
+    IndexType getType()
+    {
+        return unique ? IndexType.UNIQUE : IndexType.HASH;
+    }
+
+    @Override
+    void add(int key, Object value)
+    {
+        HashSet<Integer> keys = keysByValue.computeIfAbsent(value, v -> new HashSet<>());
+        if (unique && !keys.isEmpty() && !keys.contains(key))
+            throw new IllegalArgumentException(String.format("Column %s is unique, but %s appears more than once", getColumnName(), ColumnType.format(value)));
+        keys.add(key);
+    }
+
+    @Override
+    void remove(int key, Object value)
+    {
+        HashSet<Integer> keys = keysByValue.get(value);
+        if (keys == null)
+            return;
+        keys.remove(key);
+        // Don't keep empty sets around for values that are no longer stored.
+        if (keys.isEmpty())
+            keysByValue.remove(value);
+    }
+
+    /**
+     * Gets the keys of the Records holding the given value.
+     * @param  value The value to look up.
+     * @return       The unmodifiable set of keys, which may be empty.
+     */
+    Set<Integer> lookup(Object value)
+    {
+        HashSet<Integer> keys = keysByValue.get(value);
+        if (keys == null)
+            return Collections.emptySet();
+        return Collections.unmodifiableSet(keys);
+    }
+}
@@ -0,0 +1,191 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Joins the Records of two Tables whose values for a chosen field are equal.
+ * A hash table of the Records of the side expected to have fewer matches is
+ * built, keyed on their join value, and the other side is then read once,
+ * looking up each of its Records in the hash table. If the build side already
+ * has a hash index on its join field, the index is used instead of building a
+ * hash table.
+ * @author Rjmcf
+ */
+class HashJoin
+{
+    private final Table left;
+    private final Filter leftFilter;
+    private final String leftFieldName;
+    private final int leftField;
+    private final Table right;
+    private final Filter rightFilter;
+    private final String rightFieldName;
+    private final int rightField;
+    private final JoinType type;
+    // Whether join values are compared in their stored form. If the fields have
+    // different types, values are compared in their textual form instead.
+    private final boolean sameTypes;
+
+    /**
+     * Prepares a join between two Tables.
+     * @param left        The left Table.
+     * @param leftFilter  The Filter that Records of the left Table must match.
+     * @param leftField   The name of the field to join on in the left Table.
+     * @param right       The right Table.
+     * @param rightFilter The Filter that Records of the right Table must match.
+     * @param rightField  The name of the field to join on in the right Table.
+     * @param type        The kind of join.
+     */
+    HashJoin(Table left, Filter leftFilter, String leftField, Table right, Filter rightFilter, String rightField, JoinType type)
+    {
+        this.left = left;
+        this.leftFilter = leftFilter;
+        leftFieldName = leftField;
+        this.leftField = left.getFieldIndex(leftField);
+        this.right = right;
+        this.rightFilter = rightFilter;
+        rightFieldName = rightField;
+        this.rightField = right.getFieldIndex(rightField);
+        this.type = type;
+        sameTypes = left.getFieldType(leftField) == right.getFieldType(rightField);
+    }
+
+    /**
+     * Runs the join, passing each joined row to an action. A row holds the key
+     * and fields of the left Record followed by the key and fields of the right
+     * Record, with nulls in place of a missing right Record.
+     * @param action The action to perform on each row.
+     */
+    void run(Consumer<String[]> action)
+    {
+        if (buildsLeft())
+            buildLeft(action);
+        else
+            buildRight(action);
+    }
+
+    /**
+     * Gets whether the hash table will be built from the left Table. The side
+     * expected to have fewer Records matching its Filter is chosen, so that
+     * the hash table is as small as possible.
+     * @return Whether the left Table is the build side.
+     */
+    boolean buildsLeft()
+    {
+        return left.estimateMatches(leftFilter) <= right.estimateMatches(rightFilter);
+    }
+
+    // Builds on the right Table and probes with the left, so a left Record
+    // matching nothing is known as soon as it is probed.
+    private void buildRight(Consumer<String[]> action)
+    {
+        Matcher matcher = new Matcher(right, rightFilter, rightFieldName, rightField);
+        int[] leftColumns = left.resolveProjection(null);
+        int[] rightColumns = right.resolveProjection(null);
+        left.forEachMatch(leftFilter, (leftKey, leftRecord) -> {
+            String[] leftRow = Table.project(leftKey, leftRecord, leftColumns);
+            boolean matched = false;
+            for (int rightKey : matcher.find(leftRecord.getValue(leftField)))
+            {
+                Record rightRecord = right.getRecord(rightKey);
+                if (!matcher.matchesFilter(rightRecord))
+                    continue;
+                matched = true;
+                action.accept(concat(leftRow, Table.project(rightKey, rightRecord, rightColumns)));
+            }
+            if (!matched && type == JoinType.LEFT_OUTER)
+                action.accept(concat(leftRow, new String[rightColumns.length]));
+        });
+    }
+
+    // Builds on the left Table and probes with the right. Left Records that
+    // matched nothing are only known once every right Record has been probed.
+    private void buildLeft(Consumer<String[]> action)
+    {
+        Matcher matcher = new Matcher(left, leftFilter, leftFieldName, leftField);
+        int[] leftColumns = left.resolveProjection(null);
+        int[] rightColumns = right.resolveProjection(null);
+        RoaringBitmap matchedLeftKeys = new RoaringBitmap();
+        right.forEachMatch(rightFilter, (rightKey, rightRecord) -> {
+            String[] rightRow = null;
+            for (int leftKey : matcher.find(rightRecord.getValue(rightField)))
+            {
+                Record leftRecord = left.getRecord(leftKey);
+                if (!matcher.matchesFilter(leftRecord))
+                    continue;
+                if (rightRow == null)
+                    rightRow = Table.project(rightKey, rightRecord, rightColumns);
+                matchedLeftKeys.add(leftKey);
+                action.accept(concat(Table.project(leftKey, leftRecord, leftColumns), rightRow));
+            }
+        });
+        if (type != JoinType.LEFT_OUTER)
+            return;
+        left.forEachMatch(leftFilter, (leftKey, leftRecord) -> {
+            if (!matchedLeftKeys.contains(leftKey))
+                action.accept(concat(Table.project(leftKey, leftRecord, leftColumns), new String[rightColumns.length]));
+        });
+    }
+
+    // Converts a stored value into the form used to compare join values.
+    private Object joinValue(Object value)
+    {
+        return sameTypes ? value : ColumnType.format(value);
+    }
+
+    // Joins two rows into one.
+    private static String[] concat(String[] first, String[] second)
+    {
+        String[] row = new String[first.length + second.length];
+        System.arraycopy(first, 0, row, 0, first.length);
+        System.arraycopy(second, 0, row, first.length, second.length);
+        return row;
+    }
+
+    /**
+     * Finds the Records of the build side of the join holding a join value.
+     */
+    private class Matcher
+    {
+        // The hash index to look values up in, or null if a hash table of the
+        // build side was built instead.
+        private final HashIndex index;
+        private final HashMap<Object, ArrayList<Integer>> keysByValue;
+        // Records found through the index still need testing against the
+        // build side's Filter.
+        private final Predicate<Record> buildTest;
+
+        Matcher(Table build, Filter buildFilter, String buildFieldName, int buildField)
+        {
+            index = sameTypes ? build.getHashIndex(buildFieldName) : null;
+            if (index != null)
+            {
+                keysByValue = null;
+                buildTest = buildFilter.compile(build);
+                return;
+            }
+            keysByValue = new HashMap<>();
+            build.forEachMatch(buildFilter, (key, record) ->
+                    keysByValue.computeIfAbsent(joinValue(record.getValue(buildField)), v -> new ArrayList<>()).add(key));
+            buildTest = record -> true;
+        }
+
+        Collection<Integer> find(Object probeValue)
+        {
+            if (index != null)
+                return index.lookup(probeValue);
+            ArrayList<Integer> keys = keysByValue.get(joinValue(probeValue));
+            return keys == null ? Collections.emptyList() : keys;
+        }
+
+        boolean matchesFilter(Record record)
+        {
+            return buildTest.test(record);
+        }
+    }
+}
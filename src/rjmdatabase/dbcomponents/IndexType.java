@@ -0,0 +1,58 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Locale;
+
+/**
+ * The kinds of secondary index that can be built over a column of a Table.
+ * @author Rjmcf
+ */
+public enum IndexType
+{
+    // Maps each value to the keys of the Records holding it, for equality lookups.
+    HASH("hash"),
+    // Keeps the values in order, for range and prefix lookups.
+    SORTED("sorted"),
+    // Maps each value to a compressed bitmap of keys, for columns with few
+    // distinct values.
+    BITMAP("bitmap"),
+    // Maps each word of a free text column to the keys containing it, for text
+    // searches. Only string columns can have this kind of index.
+    TEXT("text"),
+    // Keeps sketches of the values, for estimating the number of distinct
+    // values and quantiles without reading the Records.
+    SKETCH("sketch"),
+    // A hash index which also keeps any two Records from holding the same
+    // value, so that the column identifies the Records.
+    UNIQUE("unique");
+
+    // The name used for this index type in table files.
+    private final String typeName;
+
+    IndexType(String typeName)
+    {
+        this.typeName = typeName;
+    }
+
+    /**
+     * Gets the name of this index type, as used in table files.
+     * @return The name of the index type.
+     */
+    public String getTypeName()
+    {
+        return typeName;
+    }
+
+    /**
+     * Gets the IndexType with the given name.
+     * @param  name The name of the index type, such as "hash".
+     * @return      The matching IndexType.
+     */
+    public static IndexType fromName(String name)
+    {
+        String lowerName = name.trim().toLowerCase(Locale.ROOT);
+        for (IndexType type : values())
+            if (type.typeName.equals(lowerName))
+                return type;
+        throw new IllegalArgumentException("No index type named " + name);
+    }
+}
@@ -0,0 +1,14 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * The kinds of join that can combine the Records of two Tables.
+ * @author Rjmcf
+ */
+public enum JoinType
+{
+    // Only pairs of Records with matching values are included.
+    INNER,
+    // As for INNER, but Records of the left Table matching nothing are also
+    // included, alongside nulls in place of a right Record.
+    LEFT_OUTER
+}
@@ -0,0 +1,91 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the keys of a Table into ranges so that they can be visited in
+ * parallel and in ascending order. Keys are handed out a few at a time, so
+ * each range is split in half, skipping any unused keys as it goes.
+ * @author Rjmcf
+ */
+class KeyRangeSpliterator implements Spliterator.OfInt
+{
+    // Ranges smaller than this are not worth splitting further.
+    private static final int MIN_SPLIT_SIZE = 1024;
+
+    // The map of keys to Records making up the Table.
+    private final Map<Integer, Record> records;
+    // The next key to check.
+    private int next;
+    // One more than the last key to check.
+    private final int end;
+
+    /**
+     * Creates a Spliterator over the keys from start up to but not including end.
+     * @param records The map of keys to Records making up the Table.
+     * @param start   The first key to check.
+     * @param end     One more than the last key to check.
+     */
+    KeyRangeSpliterator(Map<Integer, Record> records, int start, int end)
+    {
+        this.records = records;
+        this.next = start;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action)
+    {
+        while (next < end)
+        {
+            int key = next++;
+            if (records.containsKey(key))
+            {
+                action.accept(key);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action)
+    {
+        for (; next < end; next++)
+            if (records.containsKey(next))
+                action.accept(next);
+    }
+
+    @Override
+    public OfInt trySplit()
+    {
+        if (end - next < MIN_SPLIT_SIZE)
+            return null;
+        int middle = (next + end) >>> 1;
+        KeyRangeSpliterator firstHalf = new KeyRangeSpliterator(records, next, middle);
+        next = middle;
+        return firstHalf;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+        return end - next;
+    }
+
+    @Override
+    public int characteristics()
+    {
+        return ORDERED | SORTED | DISTINCT | NONNULL;
+    }
+
+    @Override
+    public Comparator<? super Integer> getComparator()
+    {
+        // Keys are in their natural order.
+        return null;
+    }
+}
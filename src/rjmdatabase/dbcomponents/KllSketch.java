@@ -0,0 +1,181 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Estimates the quantiles of the values seen, such as their median, in an
+ * amount of memory that grows only with the logarithm of the number of values.
+ * This is the KLL sketch: values are kept in a stack of compactors, where each
+ * value held by the compactor at level h stands for 2^h of the values seen.
+ * When a compactor fills up, its values are sorted and every other one, from
+ * a randomly chosen start, is passed up to the next level, halving them while
+ * doubling their weight. Higher levels hold more of the values, so lower
+ * levels are given less room. The rank of a value is then estimated to within
+ * about 1% of the number of values seen. Compacting may pass over the
+ * smallest and largest values, so those are kept separately.
+ *
+ * Two sketches can be merged by joining their compactors level by level and
+ * compacting again, so that parts of a Table can be summarised separately.
+ * Values are compared as ColumnType.compare does, so any column can be
+ * summarised.
+ * @author Rjmcf
+ */
+class KllSketch
+{
+    // The room given to the highest compactor, which sets the accuracy.
+    private static final int K = 200;
+    // How much less room each compactor has than the one above it.
+    private static final double SHRINK = 2.0 / 3.0;
+    // The least room any compactor is given.
+    private static final int MIN_CAPACITY = 2;
+
+    // The compactors, from the lowest level up.
+    private final List<List<Object>> compactors = new ArrayList<>();
+    // Chooses where each compaction starts. It is seeded so that results can
+    // be repeated.
+    private final Random random = new Random(0x5EED);
+    // The number of values held by all the compactors, and the most they can
+    // hold before one must be compacted.
+    private int size;
+    private int maxSize;
+    // The number of values seen, and the smallest and largest of them.
+    private long count;
+    private Object min;
+    private Object max;
+
+    /**
+     * Creates an empty sketch.
+     */
+    KllSketch()
+    {
+        grow();
+    }
+
+    /**
+     * Includes a value.
+     * @param value The value, as stored in a Record.
+     */
+    void add(Object value)
+    {
+        compactors.get(0).add(value);
+        size++;
+        count++;
+        if (min == null || ColumnType.compare(value, min) < 0)
+            min = value;
+        if (max == null || ColumnType.compare(value, max) > 0)
+            max = value;
+        if (size >= maxSize)
+            compress();
+    }
+
+    /**
+     * Includes every value another sketch has seen.
+     * @param that The other sketch.
+     */
+    void merge(KllSketch that)
+    {
+        while (compactors.size() < that.compactors.size())
+            grow();
+        for (int h = 0; h < that.compactors.size(); h++)
+            compactors.get(h).addAll(that.compactors.get(h));
+        size += that.size;
+        count += that.count;
+        if (that.min != null && (min == null || ColumnType.compare(that.min, min) < 0))
+            min = that.min;
+        if (that.max != null && (max == null || ColumnType.compare(that.max, max) > 0))
+            max = that.max;
+        while (size >= maxSize)
+            compress();
+    }
+
+    /**
+     * Gets the number of values seen.
+     * @return The count.
+     */
+    long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Estimates the value at a quantile of those seen, so that about that
+     * fraction of them are no larger.
+     * @param  quantile The quantile, from 0 for the smallest value to 1 for
+     *                  the largest.
+     * @return          One of the values seen, or null if there are none.
+     */
+    Object getQuantile(double quantile)
+    {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("Quantiles must be between 0 and 1, not " + quantile);
+        if (quantile == 0)
+            return min;
+        if (quantile == 1)
+            return max;
+        List<Object[]> weighted = new ArrayList<>(size);
+        long totalWeight = 0;
+        for (int h = 0; h < compactors.size(); h++)
+        {
+            for (Object value : compactors.get(h))
+                weighted.add(new Object[]{value, 1L << h});
+            totalWeight += (long)compactors.get(h).size() << h;
+        }
+        if (weighted.isEmpty())
+            return null;
+        weighted.sort((a, b) -> ColumnType.compare(a[0], b[0]));
+        // The first value whose weight, with those of the values before it,
+        // reaches the quantile of the total.
+        double target = quantile * totalWeight;
+        long cumulative = 0;
+        for (Object[] entry : weighted)
+        {
+            cumulative += (Long)entry[1];
+            if (cumulative >= target)
+                return entry[0];
+        }
+        return weighted.get(weighted.size() - 1)[0];
+    }
+
+    // Adds a level on top, giving every level less room.
+    private void grow()
+    {
+        compactors.add(new ArrayList<>());
+        maxSize = 0;
+        for (int h = 0; h < compactors.size(); h++)
+            maxSize += capacity(h);
+    }
+
+    // Gets how many values the compactor at a level holds before compacting.
+    private int capacity(int level)
+    {
+        int depth = compactors.size() - level - 1;
+        return Math.max(MIN_CAPACITY, (int)Math.ceil(K * Math.pow(SHRINK, depth)));
+    }
+
+    // Compacts the lowest compactor that is full, passing half its values up.
+    private void compress()
+    {
+        for (int h = 0; h < compactors.size(); h++)
+        {
+            List<Object> compactor = compactors.get(h);
+            if (compactor.size() < capacity(h))
+                continue;
+            if (h + 1 == compactors.size())
+                grow();
+            Collections.sort(compactor, ColumnType::compare);
+            // An odd value out stays where it is.
+            Object leftOver = compactor.size() % 2 == 1 ? compactor.remove(compactor.size() - 1) : null;
+            List<Object> above = compactors.get(h + 1);
+            for (int i = random.nextInt(2); i < compactor.size(); i += 2)
+                above.add(compactor.get(i));
+            size -= compactor.size() / 2;
+            compactor.clear();
+            if (leftOver != null)
+                compactor.add(leftOver);
+            return;
+        }
+    }
+}
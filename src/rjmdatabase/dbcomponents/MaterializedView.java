@@ -0,0 +1,454 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A Table whose Records are computed from another Table, its source, and kept
+ * up to date as the source changes. A view either projects the Records of the
+ * source matching a Filter onto some of their fields, keeping the key of each
+ * Record, or groups them by some fields and holds one Record per group with
+ * the grouping values and the result of each Aggregate.
+ *
+ * The source tells the view of each Record added, updated or deleted, and the
+ * view changes only the Records affected. Each group keeps the running state
+ * of its Aggregates and the keys of its Records, so that a change to a group
+ * only needs the state brought up to date, unless the smallest or largest
+ * value of a group is taken away, when the Aggregate is worked out again from
+ * the Records of that group alone.
+ * @author Rjmcf
+ */
+class MaterializedView
+{
+    // The words that start the definition of each kind of view.
+    private static final String PROJECTION = "projection";
+    private static final String GROUPING = "grouping";
+
+    private final Table view;
+    private final Table source;
+    private final Filter filter;
+    private final Predicate<Record> test;
+    // The names of the columns of the view.
+    private final String[] columnNames;
+    // The names of the source fields that are projected, or grouped by.
+    private final String[] fieldNames;
+    private final int[] fieldIndices;
+    // The Aggregates computed for each group, or null for a projection.
+    private final Aggregate[] aggregates;
+    // The index of the source field of each Aggregate, or -1 if none is needed.
+    private final int[] aggregateIndices;
+    // The groups by their grouping values.
+    private final HashMap<List<Object>, Group> groups = new HashMap<>();
+
+    // The Records of the source in one group, and the state of its Aggregates.
+    private static class Group
+    {
+        final List<Object> values;
+        final RoaringBitmap keys = new RoaringBitmap();
+        final Aggregate.Accumulator[] accumulators;
+        // The key of the Record in the view holding this group, or -1 if it
+        // has not been added yet.
+        int viewKey = -1;
+
+        Group(List<Object> values, Aggregate[] aggregates)
+        {
+            this.values = values;
+            accumulators = new Aggregate.Accumulator[aggregates.length];
+            for (int i = 0; i < aggregates.length; i++)
+                accumulators[i] = aggregates[i].newAccumulator();
+        }
+    }
+
+    private MaterializedView(Table view, Table source, Filter filter, String[] fieldNames, Aggregate[] aggregates)
+    {
+        this.view = view;
+        this.source = source;
+        this.filter = filter;
+        this.fieldNames = fieldNames;
+        this.aggregates = aggregates;
+        test = filter.compile(source);
+        fieldIndices = new int[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++)
+            fieldIndices[i] = source.getFieldIndex(fieldNames[i]);
+        aggregateIndices = new int[aggregates == null ? 0 : aggregates.length];
+        for (int i = 0; i < aggregateIndices.length; i++)
+        {
+            String fieldName = aggregates[i].getFieldName();
+            aggregateIndices[i] = fieldName == null ? -1 : source.getFieldIndex(fieldName);
+        }
+        columnNames = view.getNumFields() == 0 ? new String[0] : view.getFieldNames().split(", ");
+    }
+
+    /**
+     * Creates a view holding the chosen fields of the Records of a Table that
+     * match a Filter, under the same keys.
+     * @param  name       The name of the view.
+     * @param  source     The Table the view is computed from.
+     * @param  filter     The Filter the Records must match.
+     * @param  projection The names of the fields to hold, or null for every
+     *                    field.
+     * @return            The view, filled with the matching Records.
+     */
+    static MaterializedView project(String name, Table source, Filter filter, String[] projection)
+    {
+        String[] fieldNames = projection;
+        if (fieldNames == null)
+            fieldNames = source.getNumFields() == 0 ? new String[0] : source.getFieldNames().split(", ");
+        String[] types = new String[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++)
+            types[i] = source.getFieldType(fieldNames[i]).getTypeName();
+        Table view = new Table(name, String.join(", ", checkDistinct(fieldNames)), String.join(", ", types));
+        return attach(view, source, filter, fieldNames, null);
+    }
+
+    /**
+     * Creates a view grouping the Records of a Table that match a Filter by
+     * the values of some fields, holding the grouping values and the result
+     * of each Aggregate for every group. Groups with no Records are left out.
+     * Sums and averages are only kept of numeric fields.
+     * @param  name       The name of the view.
+     * @param  source     The Table the view is computed from.
+     * @param  filter     The Filter the Records must match.
+     * @param  groupBy    The names of the fields to group by, which may be
+     *                    empty to put every matching Record in one group.
+     * @param  aggregates The Aggregates to compute for each group.
+     * @return            The view, filled with the groups.
+     */
+    static MaterializedView group(String name, Table source, Filter filter, String[] groupBy, Aggregate[] aggregates)
+    {
+        List<String> names = new ArrayList<>(Arrays.asList(groupBy));
+        List<String> types = new ArrayList<>();
+        for (String fieldName : groupBy)
+            types.add(source.getFieldType(fieldName).getTypeName());
+        for (Aggregate aggregate : aggregates)
+        {
+            String fieldName = aggregate.getFieldName();
+            ColumnType fieldType = fieldName == null ? null : source.getFieldType(fieldName);
+            // Text is only parsed as it is added up, when it would be too late
+            // to refuse a change to the source.
+            if (aggregate.needsNumbers() && !fieldType.isNumeric())
+                throw new IllegalArgumentException("Views can only keep " + aggregate.getName() + " of a numeric field");
+            names.add(aggregate.getName());
+            types.add(aggregate.getResultType(fieldType).getTypeName());
+        }
+        if (names.isEmpty())
+            throw new IllegalArgumentException("A grouping view needs at least one column");
+        Table view = new Table(name, String.join(", ", checkDistinct(names.toArray(new String[0]))), String.join(", ", types));
+        return attach(view, source, filter, groupBy, aggregates);
+    }
+
+    /**
+     * Reads the definition of a view written by getDefinition, and starts
+     * keeping the Table holding the view up to date. The Table is brought up
+     * to date with the source first, in case they were saved at different
+     * times.
+     * @param  definition The definition.
+     * @param  tables     Gets a Table of the database by name.
+     * @return            The view.
+     */
+    static MaterializedView readFrom(String[] definition, Function<String, Table> tables)
+    {
+        Iterator<String> words = Arrays.asList(definition).iterator();
+        Table view = tables.apply(words.next());
+        Table source = tables.apply(words.next());
+        String kind = words.next();
+        String[] fieldNames = new String[Integer.parseInt(words.next())];
+        for (int i = 0; i < fieldNames.length; i++)
+            fieldNames[i] = words.next();
+        Aggregate[] aggregates = null;
+        if (kind.equals(GROUPING))
+        {
+            aggregates = new Aggregate[Integer.parseInt(words.next())];
+            for (int i = 0; i < aggregates.length; i++)
+                aggregates[i] = Aggregate.fromName(words.next());
+        }
+        else if (!kind.equals(PROJECTION))
+            throw new IllegalArgumentException("Unknown kind of view " + kind);
+        return attach(view, source, Filter.readFrom(words), fieldNames, aggregates);
+    }
+
+    /**
+     * Gets the name of the view from a definition written by getDefinition.
+     * @param  definition The definition.
+     * @return            The name of the view.
+     */
+    static String getViewName(String[] definition)
+    {
+        return definition[0];
+    }
+
+    /**
+     * Gets the name of the source Table from a definition written by
+     * getDefinition.
+     * @param  definition The definition.
+     * @return            The name of the source Table.
+     */
+    static String getSourceName(String[] definition)
+    {
+        return definition[1];
+    }
+
+    /**
+     * Describes the view as a list of words, from which readFrom can build
+     * the view again: the names of the view and its source, what kind of view
+     * it is, its fields and Aggregates and then its Filter.
+     * @return The definition.
+     */
+    String[] getDefinition()
+    {
+        List<String> words = new ArrayList<>();
+        words.add(view.getName());
+        words.add(source.getName());
+        words.add(aggregates == null ? PROJECTION : GROUPING);
+        words.add(Integer.toString(fieldNames.length));
+        words.addAll(Arrays.asList(fieldNames));
+        if (aggregates != null)
+        {
+            words.add(Integer.toString(aggregates.length));
+            for (Aggregate aggregate : aggregates)
+                words.add(aggregate.getName());
+        }
+        filter.writeTo(words);
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the Table holding the view.
+     * @return The Table.
+     */
+    Table getView()
+    {
+        return view;
+    }
+
+    /**
+     * Gets the Table the view is computed from.
+     * @return The source Table.
+     */
+    Table getSource()
+    {
+        return source;
+    }
+
+    /**
+     * Stops keeping the view up to date.
+     */
+    void detach()
+    {
+        source.removeView(this);
+        view.setDefiningView(null);
+    }
+
+    /**
+     * Brings the view up to date with a Record newly added to the source.
+     * @param key    The key of the Record.
+     * @param record The Record.
+     */
+    void recordAdded(int key, Record record)
+    {
+        if (!test.test(record))
+            return;
+        if (aggregates == null)
+            view.insertRecord(key, project(record));
+        else
+            writeGroup(include(key, record));
+    }
+
+    /**
+     * Brings the view up to date with a Record of the source that has had a
+     * field updated.
+     * @param key        The key of the Record.
+     * @param record     The Record, holding the new value.
+     * @param fieldIndex The index of the field that was updated.
+     * @param oldValue   The value of the field before it was updated.
+     */
+    void recordUpdated(int key, Record record, int fieldIndex, Object oldValue)
+    {
+        Object[] oldValues = new Object[source.getNumFields()];
+        for (int i = 0; i < oldValues.length; i++)
+            oldValues[i] = i == fieldIndex ? oldValue : record.getValue(i);
+        Record oldRecord = new Record(oldValues);
+        boolean wasIncluded = test.test(oldRecord);
+        boolean isIncluded = test.test(record);
+        if (aggregates == null)
+        {
+            if (wasIncluded && isIncluded)
+                updateRow(key, project(record));
+            else if (wasIncluded)
+                view.deleteRecord(key);
+            else if (isIncluded)
+                view.insertRecord(key, project(record));
+            return;
+        }
+        Group oldGroup = wasIncluded ? exclude(key, oldRecord) : null;
+        Group newGroup = isIncluded ? include(key, record) : null;
+        if (oldGroup != null && oldGroup != newGroup)
+            writeGroup(oldGroup);
+        if (newGroup != null)
+            writeGroup(newGroup);
+    }
+
+    /**
+     * Brings the view up to date with a Record deleted from the source.
+     * @param key    The key of the Record.
+     * @param record The Record, which is no longer in the source.
+     */
+    void recordDeleted(int key, Record record)
+    {
+        if (!test.test(record))
+            return;
+        if (aggregates == null)
+            view.deleteRecord(key);
+        else
+            writeGroup(exclude(key, record));
+    }
+
+    // Makes a view of a Table, fills it with what it should hold and starts
+    // telling it of changes to the source.
+    private static MaterializedView attach(Table view, Table source, Filter filter, String[] fieldNames, Aggregate[] aggregates)
+    {
+        MaterializedView materializedView = new MaterializedView(view, source, filter, fieldNames, aggregates);
+        materializedView.refresh();
+        view.setDefiningView(materializedView);
+        source.addView(materializedView);
+        return materializedView;
+    }
+
+    // Works out from scratch what the view should hold, and changes only the
+    // Records of the view that differ.
+    private void refresh()
+    {
+        Set<Integer> staleKeys = view.matchingKeys(Filter.all(), false, false).boxed().collect(Collectors.toCollection(HashSet::new));
+        if (aggregates == null)
+        {
+            source.forEachMatch(filter, (key, record) -> {
+                if (staleKeys.remove(key))
+                    updateRow(key, project(record));
+                else
+                    view.insertRecord(key, project(record));
+            });
+        }
+        else
+        {
+            groups.clear();
+            source.forEachMatch(filter, this::include);
+            // Rows of the view are kept for the groups they already hold.
+            for (int viewKey : new ArrayList<>(staleKeys))
+            {
+                Record row = view.getRecord(viewKey);
+                Object[] values = new Object[fieldIndices.length];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = row.getValue(i);
+                Group group = groups.get(Arrays.asList(values));
+                if (group != null && group.viewKey == -1)
+                {
+                    group.viewKey = viewKey;
+                    staleKeys.remove(viewKey);
+                }
+            }
+            for (Group group : groups.values())
+                writeGroup(group);
+        }
+        for (int key : staleKeys)
+            view.deleteRecord(key);
+    }
+
+    // Gets the chosen fields of a source Record as text.
+    private String[] project(Record record)
+    {
+        String[] row = new String[fieldIndices.length];
+        for (int i = 0; i < row.length; i++)
+            row[i] = record.getField(fieldIndices[i]);
+        return row;
+    }
+
+    // Adds a Record to its group, creating the group if needed, and returns
+    // the group.
+    private Group include(int key, Record record)
+    {
+        Object[] values = new Object[fieldIndices.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = record.getValue(fieldIndices[i]);
+        Group group = groups.computeIfAbsent(Arrays.asList(values), v -> new Group(v, aggregates));
+        group.keys.add(key);
+        for (int i = 0; i < aggregates.length; i++)
+            group.accumulators[i].add(aggregateIndices[i] == -1 ? null : record.getValue(aggregateIndices[i]));
+        return group;
+    }
+
+    // Takes a Record out of its group, and returns the group.
+    private Group exclude(int key, Record record)
+    {
+        Object[] values = new Object[fieldIndices.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = record.getValue(fieldIndices[i]);
+        Group group = groups.get(Arrays.asList(values));
+        group.keys.remove(key);
+        for (int i = 0; i < aggregates.length; i++)
+        {
+            // An empty group starts again, in case the Record is included in
+            // it again, as when a field it is not grouped by is updated.
+            if (group.keys.isEmpty())
+            {
+                group.accumulators[i] = aggregates[i].newAccumulator();
+                continue;
+            }
+            Object value = aggregateIndices[i] == -1 ? null : record.getValue(aggregateIndices[i]);
+            if (group.accumulators[i].remove(value))
+                continue;
+            // Work the Aggregate out again from the Records left in the group.
+            Aggregate.Accumulator accumulator = aggregates[i].newAccumulator();
+            int fieldIndex = aggregateIndices[i];
+            group.keys.forEach(k -> accumulator.add(fieldIndex == -1 ? null : source.getRecord(k).getValue(fieldIndex)));
+            group.accumulators[i] = accumulator;
+        }
+        return group;
+    }
+
+    // Writes the values of a group to its row of the view, adding the row if
+    // the group is new and deleting it if the group is now empty.
+    private void writeGroup(Group group)
+    {
+        if (group.keys.isEmpty())
+        {
+            if (group.viewKey != -1)
+                view.deleteRecord(group.viewKey);
+            groups.remove(group.values);
+            return;
+        }
+        String[] row = new String[columnNames.length];
+        for (int i = 0; i < fieldIndices.length; i++)
+            row[i] = ColumnType.format(group.values.get(i));
+        for (int i = 0; i < aggregates.length; i++)
+            row[fieldIndices.length + i] = group.accumulators[i].getResult();
+        if (group.viewKey == -1)
+            group.viewKey = view.addRecord(row);
+        else
+            updateRow(group.viewKey, row);
+    }
+
+    // Updates the fields of a Record of the view that differ from a row.
+    private void updateRow(int key, String[] row)
+    {
+        Record record = view.getRecord(key);
+        for (int i = 0; i < row.length; i++)
+            if (!record.getField(i).equals(row[i]))
+                view.updateRecord(key, columnNames[i], row[i]);
+    }
+
+    // Checks that no column name is used twice, returning the names.
+    private static String[] checkDistinct(String[] names)
+    {
+        if (new HashSet<>(Arrays.asList(names)).size() != names.length)
+            throw new IllegalArgumentException("A view cannot have two columns with the same name");
+        return names;
+    }
+}
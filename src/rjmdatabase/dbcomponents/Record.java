@@ -1,6 +1,8 @@
 package rjmdatabase.dbcomponents;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Represents a Record.
@@ -8,8 +10,10 @@ import java.util.ArrayList;
  */
 public class Record
 {
-    // Fields are stored as an array list to make adding new fields easier.
-    private ArrayList<String> fields;
+    // Fields are stored as an array list to make adding new fields easier. Each
+    // value is held in the form produced by its column's ColumnType, so numbers
+    // are not kept as text.
+    private ArrayList<Object> fields;
 
     /**
      * Creates a Record storing the fields as Strings.
@@ -20,6 +24,15 @@ public class Record
         fields = new ArrayList<>(fs);
     }
 
+    /**
+     * Creates a Record storing already typed values as fields.
+     * @param values The values to be stored as fields.
+     */
+    Record(Object[] values)
+    {
+        fields = new ArrayList<>(Arrays.asList(values));
+    }
+
     /**
      * Creates an empty Record.
      */
@@ -35,6 +48,17 @@ public class Record
      * @return   The value of the field.
      */
     String getField(int i)
+    {
+        return ColumnType.format(getValue(i));
+    }
+
+    /**
+     * Gets the stored value of the field at a certain index. Throws an
+     * exception if the index is out of bounds.
+     * @param  i The index of the field.
+     * @return   The value of the field.
+     */
+    Object getValue(int i)
     {
         if (i<0 || i >= fields.size())
             throw new IndexOutOfBoundsException(String.format("No field %d exists", i));
@@ -43,25 +67,93 @@ public class Record
     }
 
     /**
-     * Updates the value of a particular field. Throws an exception if the index is
-     * out of bounds.
+     * Gets the value of an int field.
+     * @param  i The index of the field.
+     * @return   The value of the field.
+     */
+    int getInt(int i)
+    {
+        Object value = getValue(i);
+        if (!(value instanceof Integer))
+            throw new IllegalArgumentException(String.format("Field %d is not an int", i));
+        return (Integer)value;
+    }
+
+    /**
+     * Gets the value of an int or long field as a long.
+     * @param  i The index of the field.
+     * @return   The value of the field.
+     */
+    long getLong(int i)
+    {
+        Object value = getValue(i);
+        if (!(value instanceof Integer) && !(value instanceof Long))
+            throw new IllegalArgumentException(String.format("Field %d is not a long", i));
+        return ((Number)value).longValue();
+    }
+
+    /**
+     * Gets the value of a numeric field as a double.
+     * @param  i The index of the field.
+     * @return   The value of the field.
+     */
+    double getDouble(int i)
+    {
+        Object value = getValue(i);
+        if (!(value instanceof Number))
+            throw new IllegalArgumentException(String.format("Field %d is not a number", i));
+        return ((Number)value).doubleValue();
+    }
+
+    /**
+     * Gets the value of a boolean field.
+     * @param  i The index of the field.
+     * @return   The value of the field.
+     */
+    boolean getBoolean(int i)
+    {
+        Object value = getValue(i);
+        if (!(value instanceof Boolean))
+            throw new IllegalArgumentException(String.format("Field %d is not a boolean", i));
+        return (Boolean)value;
+    }
+
+    /**
+     * Gets a copy of the value of a bytes field.
+     * @param  i The index of the field.
+     * @return   The value of the field.
+     */
+    byte[] getBytes(int i)
+    {
+        Object value = getValue(i);
+        if (!(value instanceof ByteBuffer))
+            throw new IllegalArgumentException(String.format("Field %d is not bytes", i));
+        ByteBuffer buffer = ((ByteBuffer)value).duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Updates the stored value of a particular field. Throws an exception if
+     * the index is out of bounds.
      * @param i The index of the field.
-     * @param r The new value of the field.
+     * @param v The new value of the field.
      */
-    void updateField(int i, String r)
+    void updateValue(int i, Object v)
     {
         if (i<0 || i >= fields.size())
             throw new IndexOutOfBoundsException(String.format("No field %d exists", i));
 
-        fields.set(i, r);
+        fields.set(i, v);
     }
 
     /**
      * Adds a field to a Record. Throws an exception if the index is out of bounds.
      * @param i   The index at which to add the new field.
-     * @param val The field to be added.
+     * @param val The value of the field to be added.
      */
-    void addField(int i, String val)
+    void addField(int i, Object val)
     {
         if (i<0 || i > fields.size())
             throw new IndexOutOfBoundsException(String.format("Cannot add field at index %d", i));
@@ -93,14 +185,14 @@ public class Record
         if (!(that instanceof Record)) return false;
         Record thatRecord = (Record)that;
         int size = fields.size();
-        ArrayList<String> otherRecordsFields = thatRecord.fields;
+        ArrayList<Object> otherRecordsFields = thatRecord.fields;
         if (size != otherRecordsFields.size()) return false;
 
         // The Records are only equal if all their fields are the same.
         for (int i = 0; i < size; i++)
         {
-            String thatField = thatRecord.getField(i);
-            if (!getField(i).equals(thatField))
+            Object thatField = thatRecord.getValue(i);
+            if (!getValue(i).equals(thatField))
                 return false;
         }
 
@@ -0,0 +1,461 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, such as the keys of a Table. The ints
+ * are split into chunks sharing their top 16 bits. Sparse chunks store their
+ * bottom 16 bits in a sorted array, and dense chunks store them as a bitmap,
+ * so that set operations between dense chunks work a whole word at a time.
+ * @author Rjmcf
+ */
+class RoaringBitmap
+{
+    // The top 16 bits of the ints in each chunk, in ascending order.
+    private char[] highBits;
+    // The chunks themselves, in the same order as highBits.
+    private Container[] containers;
+    // The number of chunks in use.
+    private int size;
+
+    /**
+     * Creates an empty bitmap.
+     */
+    RoaringBitmap()
+    {
+        highBits = new char[4];
+        containers = new Container[4];
+        size = 0;
+    }
+
+    /**
+     * Creates a bitmap containing the given ints.
+     * @param  values The ints to add.
+     * @return        The new bitmap.
+     */
+    static RoaringBitmap of(Iterable<Integer> values)
+    {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : values)
+            bitmap.add(value);
+        return bitmap;
+    }
+
+    /**
+     * Adds an int to the set.
+     * @param value The int to add, which must not be negative.
+     */
+    void add(int value)
+    {
+        if (value < 0)
+            throw new IllegalArgumentException("Cannot store negative value " + value);
+        char high = (char)(value >>> 16);
+        int i = Arrays.binarySearch(highBits, 0, size, high);
+        if (i >= 0)
+            containers[i] = containers[i].add((char)value);
+        else
+            insertContainer(-i - 1, high, new ArrayContainer().add((char)value));
+    }
+
+    /**
+     * Removes an int from the set, if it is present.
+     * @param value The int to remove.
+     */
+    void remove(int value)
+    {
+        if (value < 0)
+            return;
+        int i = Arrays.binarySearch(highBits, 0, size, (char)(value >>> 16));
+        if (i < 0)
+            return;
+        containers[i] = containers[i].remove((char)value);
+        if (containers[i].getCardinality() == 0)
+        {
+            System.arraycopy(highBits, i + 1, highBits, i, size - i - 1);
+            System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+            containers[--size] = null;
+        }
+    }
+
+    /**
+     * Gets whether an int is in the set.
+     * @param  value The int to look for.
+     * @return       Whether it is present.
+     */
+    boolean contains(int value)
+    {
+        if (value < 0)
+            return false;
+        int i = Arrays.binarySearch(highBits, 0, size, (char)(value >>> 16));
+        return i >= 0 && containers[i].contains((char)value);
+    }
+
+    /**
+     * Gets the number of ints in the set.
+     * @return The cardinality of the set.
+     */
+    int getCardinality()
+    {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+            cardinality += containers[i].getCardinality();
+        return cardinality;
+    }
+
+    /**
+     * Gets whether the set is empty.
+     * @return Whether there are no ints in the set.
+     */
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Builds the intersection of this set and another.
+     * @param  that The other set.
+     * @return      A new set of the ints in both.
+     */
+    RoaringBitmap and(RoaringBitmap that)
+    {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < that.size)
+        {
+            if (highBits[i] < that.highBits[j])
+                i++;
+            else if (highBits[i] > that.highBits[j])
+                j++;
+            else
+            {
+                Container both = containers[i].and(that.containers[j]);
+                if (both.getCardinality() > 0)
+                    result.insertContainer(result.size, highBits[i], both);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds the union of this set and another.
+     * @param  that The other set.
+     * @return      A new set of the ints in either.
+     */
+    RoaringBitmap or(RoaringBitmap that)
+    {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < that.size)
+        {
+            if (j == that.size || (i < size && highBits[i] < that.highBits[j]))
+            {
+                result.insertContainer(result.size, highBits[i], containers[i].copy());
+                i++;
+            }
+            else if (i == size || highBits[i] > that.highBits[j])
+            {
+                result.insertContainer(result.size, that.highBits[j], that.containers[j].copy());
+                j++;
+            }
+            else
+            {
+                result.insertContainer(result.size, highBits[i], containers[i].or(that.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Performs an action for every int in the set, in ascending order.
+     * @param action The action to perform.
+     */
+    void forEach(IntConsumer action)
+    {
+        for (int i = 0; i < size; i++)
+            containers[i].forEach(highBits[i] << 16, action);
+    }
+
+    /**
+     * Gets the ints in the set in ascending order.
+     * @return The array of ints.
+     */
+    int[] toArray()
+    {
+        int[] values = new int[getCardinality()];
+        int[] counter = new int[1];
+        forEach(value -> values[counter[0]++] = value);
+        return values;
+    }
+
+    // Puts a new chunk at position i, moving later chunks along.
+    private void insertContainer(int i, char high, Container container)
+    {
+        if (size == highBits.length)
+        {
+            highBits = Arrays.copyOf(highBits, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(highBits, i, highBits, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        highBits[i] = high;
+        containers[i] = container;
+        size++;
+    }
+
+    /**
+     * A chunk of up to 65536 values sharing their top 16 bits. Operations that
+     * change a chunk return the chunk to use from then on, which may be of a
+     * different kind.
+     */
+    private interface Container
+    {
+        Container add(char value);
+        Container remove(char value);
+        boolean contains(char value);
+        int getCardinality();
+        Container and(Container that);
+        Container or(Container that);
+        Container copy();
+        void forEach(int highPart, IntConsumer action);
+    }
+
+    /**
+     * A sparse chunk, storing its values in a sorted array.
+     */
+    private static class ArrayContainer implements Container
+    {
+        // Above this many values a bitmap takes less space than an array.
+        static final int MAX_SIZE = 4096;
+
+        char[] values = new char[4];
+        int cardinality = 0;
+
+        @Override
+        public Container add(char value)
+        {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0)
+                return this;
+            if (cardinality == MAX_SIZE)
+                return toBitmap().add(value);
+            i = -i - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, MAX_SIZE));
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char value)
+        {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0)
+            {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value)
+        {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int getCardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container that)
+        {
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(cardinality, 1)];
+            if (that instanceof ArrayContainer)
+            {
+                // Walk both sorted arrays together.
+                ArrayContainer other = (ArrayContainer)that;
+                int i = 0, j = 0;
+                while (i < cardinality && j < other.cardinality)
+                {
+                    if (values[i] < other.values[j])
+                        i++;
+                    else if (values[i] > other.values[j])
+                        j++;
+                    else
+                    {
+                        result.values[result.cardinality++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            else
+            {
+                for (int i = 0; i < cardinality; i++)
+                    if (that.contains(values[i]))
+                        result.values[result.cardinality++] = values[i];
+            }
+            return result;
+        }
+
+        @Override
+        public Container or(Container that)
+        {
+            if (that instanceof BitmapContainer)
+                return that.or(this);
+            Container result = copy();
+            ArrayContainer other = (ArrayContainer)that;
+            for (int i = 0; i < other.cardinality; i++)
+                result = result.add(other.values[i]);
+            return result;
+        }
+
+        @Override
+        public Container copy()
+        {
+            ArrayContainer result = new ArrayContainer();
+            result.values = Arrays.copyOf(values, Math.max(cardinality, 1));
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        @Override
+        public void forEach(int highPart, IntConsumer action)
+        {
+            for (int i = 0; i < cardinality; i++)
+                action.accept(highPart | values[i]);
+        }
+
+        BitmapContainer toBitmap()
+        {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++)
+                bitmap.add(values[i]);
+            return bitmap;
+        }
+    }
+
+    /**
+     * A dense chunk, storing one bit for each of its 65536 possible values.
+     */
+    private static class BitmapContainer implements Container
+    {
+        long[] words = new long[1024];
+        int cardinality = 0;
+
+        @Override
+        public Container add(char value)
+        {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) == 0)
+            {
+                words[value >>> 6] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container remove(char value)
+        {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) != 0)
+            {
+                words[value >>> 6] &= ~mask;
+                cardinality--;
+            }
+            return cardinality <= ArrayContainer.MAX_SIZE ? toArrayContainer() : this;
+        }
+
+        @Override
+        public boolean contains(char value)
+        {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int getCardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container that)
+        {
+            if (that instanceof ArrayContainer)
+                return that.and(this);
+            BitmapContainer other = (BitmapContainer)that;
+            BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < words.length; i++)
+            {
+                result.words[i] = words[i] & other.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result.cardinality <= ArrayContainer.MAX_SIZE ? result.toArrayContainer() : result;
+        }
+
+        @Override
+        public Container or(Container that)
+        {
+            BitmapContainer result = (BitmapContainer)copy();
+            if (that instanceof ArrayContainer)
+            {
+                ArrayContainer other = (ArrayContainer)that;
+                for (int i = 0; i < other.cardinality; i++)
+                    result.add(other.values[i]);
+                return result;
+            }
+            BitmapContainer other = (BitmapContainer)that;
+            result.cardinality = 0;
+            for (int i = 0; i < words.length; i++)
+            {
+                result.words[i] |= other.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public Container copy()
+        {
+            BitmapContainer result = new BitmapContainer();
+            result.words = words.clone();
+            result.cardinality = cardinality;
+            return result;
+        }
+
+        @Override
+        public void forEach(int highPart, IntConsumer action)
+        {
+            for (int i = 0; i < words.length; i++)
+            {
+                long word = words[i];
+                while (word != 0)
+                {
+                    action.accept(highPart | (i << 6) | Long.numberOfTrailingZeros(word));
+                    // Clear the lowest set bit.
+                    word &= word - 1;
+                }
+            }
+        }
+
+        ArrayContainer toArrayContainer()
+        {
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(cardinality, 1)];
+            forEach(0, value -> result.values[result.cardinality++] = (char)value);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * BatchKernels that process one value at a time. Each test narrows the
+ * selection without branching on the result, by always writing the position
+ * and only moving on when it passes, so that the loops suit values in any
+ * order.
+ * @author Rjmcf
+ */
+class ScalarBatchKernels implements BatchKernels
+{
+    /**
+     * The kernels.
+     */
+    static final ScalarBatchKernels INSTANCE = new ScalarBatchKernels();
+
+    /**
+     * Creates the kernels. Only subclasses need to create more.
+     */
+    ScalarBatchKernels() {}
+
+    @Override
+    public String getName()
+    {
+        return "scalar";
+    }
+
+    @Override
+    public int selectInRange(int[] values, long lo, long hi, boolean negate, int[] selection, int count)
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int position = selection[i];
+            int value = values[position];
+            selection[kept] = position;
+            kept += ((value >= lo & value <= hi) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    @Override
+    public int selectInRange(long[] values, long lo, long hi, boolean negate, int[] selection, int count)
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int position = selection[i];
+            long value = values[position];
+            selection[kept] = position;
+            kept += ((value >= lo & value <= hi) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    @Override
+    public int selectInRange(double[] values, long lo, long hi, boolean negate, int[] selection, int count)
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int position = selection[i];
+            long value = BatchKernels.sortableBits(values[position]);
+            selection[kept] = position;
+            kept += ((value >= lo & value <= hi) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    @Override
+    public int selectEqual(Object[] values, Object target, boolean negate, int[] selection, int count)
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int position = selection[i];
+            selection[kept] = position;
+            kept += (values[position].equals(target) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    @Override
+    public long sum(int[] values, int[] selection, int count)
+    {
+        long total = 0;
+        for (int i = 0; i < count; i++)
+            total += values[selection[i]];
+        return total;
+    }
+
+    @Override
+    public long sum(long[] values, int[] selection, int count)
+    {
+        long total = 0;
+        for (int i = 0; i < count; i++)
+            total += values[selection[i]];
+        return total;
+    }
+
+    @Override
+    public double sum(double[] values, int[] selection, int count)
+    {
+        double total = 0;
+        for (int i = 0; i < count; i++)
+            total += values[selection[i]];
+        return total;
+    }
+}
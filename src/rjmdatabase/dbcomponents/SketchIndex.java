@@ -0,0 +1,92 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Map;
+
+/**
+ * An index keeping sketches of the values of a column, from which the number
+ * of distinct values and quantiles such as the median can be estimated without
+ * reading the Records. Sketches can't forget values, so values removed from
+ * the column are still counted until the index is built again; the Table does
+ * so once enough have been removed, as told by isStale.
+ * @author Rjmcf
+ */
+class SketchIndex extends ColumnIndex
+{
+    // Once more than this fraction of the values added have been removed
+    // again, the estimates are considered too far out.
+    private static final int MAX_REMOVED_FRACTION = 4;
+
+    private HyperLogLog distinctSketch;
+    private KllSketch quantileSketch;
+    // The number of values added and removed since the index was built.
+    private long numAdded;
+    private long numRemoved;
+
+    SketchIndex(String columnName)
+    {
+        super(columnName);
+        distinctSketch = new HyperLogLog();
+        quantileSketch = new KllSketch();
+    }
+
+    @Override
+    IndexType getType()
+    {
+        return IndexType.SKETCH;
+    }
+
+    @Override
+    void add(int key, Object value)
+    {
+        distinctSketch.add(value);
+        quantileSketch.add(value);
+        numAdded++;
+    }
+
+    @Override
+    void remove(int key, Object value)
+    {
+        numRemoved++;
+    }
+
+    @Override
+    void build(Map<Integer, Record> records, int fieldIndex)
+    {
+        // Building again starts from empty sketches, forgetting removed values.
+        distinctSketch = new HyperLogLog();
+        quantileSketch = new KllSketch();
+        numAdded = 0;
+        numRemoved = 0;
+        super.build(records, fieldIndex);
+    }
+
+    /**
+     * Gets whether so many values have been removed since the index was built
+     * that it should be built again.
+     * @return Whether the index is stale.
+     */
+    boolean isStale()
+    {
+        return numRemoved * MAX_REMOVED_FRACTION > numAdded;
+    }
+
+    /**
+     * Estimates the number of distinct values in the column.
+     * @return The estimate.
+     */
+    long estimateDistinct()
+    {
+        return distinctSketch.estimate();
+    }
+
+    /**
+     * Estimates the value at a quantile of the column.
+     * @param  quantile The quantile, from 0 for the smallest value to 1 for
+     *                  the largest.
+     * @return          The value, or null if the column is empty.
+     */
+    Object estimateQuantile(double quantile)
+    {
+        return quantileSketch.getQuantile(quantile);
+    }
+}
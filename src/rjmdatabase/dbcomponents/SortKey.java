@@ -0,0 +1,58 @@
+package rjmdatabase.dbcomponents;
+
+/**
+ * A column to order rows by, and the direction to order them in. Rows are
+ * ordered by the first SortKey, then ties are broken by the next, and so on.
+ * Values are compared by their column's type, so string columns are ordered
+ * as text.
+ * @author Rjmcf
+ */
+public class SortKey
+{
+    private final String fieldName;
+    private final boolean descending;
+
+    private SortKey(String fieldName, boolean descending)
+    {
+        this.fieldName = fieldName;
+        this.descending = descending;
+    }
+
+    /**
+     * Gets a SortKey ordering rows from the smallest value of a column.
+     * @param  fieldName The name of the column, which may be the key column.
+     * @return           The SortKey.
+     */
+    public static SortKey ascending(String fieldName)
+    {
+        return new SortKey(fieldName, false);
+    }
+
+    /**
+     * Gets a SortKey ordering rows from the largest value of a column.
+     * @param  fieldName The name of the column, which may be the key column.
+     * @return           The SortKey.
+     */
+    public static SortKey descending(String fieldName)
+    {
+        return new SortKey(fieldName, true);
+    }
+
+    /**
+     * Gets the name of the column to order by.
+     * @return The column name.
+     */
+    public String getFieldName()
+    {
+        return fieldName;
+    }
+
+    /**
+     * Gets whether rows are ordered from the largest value.
+     * @return Whether the order is descending.
+     */
+    public boolean isDescending()
+    {
+        return descending;
+    }
+}
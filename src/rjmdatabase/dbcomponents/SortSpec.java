@@ -0,0 +1,95 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Comparator;
+
+/**
+ * A list of SortKeys resolved against a Table, which pulls the values to sort
+ * by out of Records and compares them. Ties are always broken by key, so every
+ * Record has a single place in the order.
+ * @author Rjmcf
+ */
+class SortSpec
+{
+    // Where each value to sort by is stored within Records, with -1 standing
+    // for the key.
+    private final int[] fields;
+    // The type of each value to sort by, followed by the type of the key.
+    private final ColumnType[] types;
+    private final Comparator<Object[]> order;
+
+    /**
+     * Resolves SortKeys against a Table.
+     * @param table    The Table whose Records will be sorted.
+     * @param sortKeys The columns to order by.
+     */
+    SortSpec(Table table, SortKey[] sortKeys)
+    {
+        fields = new int[sortKeys.length];
+        types = new ColumnType[sortKeys.length + 1];
+        Comparator<Object[]> comparator = null;
+        for (int i = 0; i < sortKeys.length; i++)
+        {
+            String fieldName = sortKeys[i].getFieldName();
+            boolean isKey = Table.KEY_COL_NAME.equals(fieldName);
+            fields[i] = isKey ? -1 : table.getFieldIndex(fieldName);
+            types[i] = isKey ? ColumnType.INT : table.getFieldType(fieldName);
+            Comparator<Object[]> byColumn = byPosition(i);
+            if (sortKeys[i].isDescending())
+                byColumn = byColumn.reversed();
+            comparator = comparator == null ? byColumn : comparator.thenComparing(byColumn);
+        }
+        types[sortKeys.length] = ColumnType.INT;
+        Comparator<Object[]> byKey = byPosition(sortKeys.length);
+        order = comparator == null ? byKey : comparator.thenComparing(byKey);
+    }
+
+    // Compares the values at one position of two extracted arrays.
+    private static Comparator<Object[]> byPosition(int position)
+    {
+        return (a, b) -> ColumnType.compare(a[position], b[position]);
+    }
+
+    /**
+     * Gets the values a Record is sorted by.
+     * @param  key    The key of the Record.
+     * @param  record The Record.
+     * @return        The value of each SortKey, followed by the key.
+     */
+    Object[] extract(int key, Record record)
+    {
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < fields.length; i++)
+            values[i] = fields[i] == -1 ? Integer.valueOf(key) : record.getValue(fields[i]);
+        values[fields.length] = key;
+        return values;
+    }
+
+    /**
+     * Gets the key of a Record from the values it is sorted by.
+     * @param  values The values, as returned by extract.
+     * @return        The key.
+     */
+    static int getKey(Object[] values)
+    {
+        return (Integer)values[values.length - 1];
+    }
+
+    /**
+     * Gets the types of the values returned by extract, so that they can be
+     * turned back from text.
+     * @return The types, ending with the type of the key.
+     */
+    ColumnType[] getTypes()
+    {
+        return types.clone();
+    }
+
+    /**
+     * Gets the order of Records, given the values returned by extract.
+     * @return The Comparator.
+     */
+    Comparator<Object[]> getOrder()
+    {
+        return order;
+    }
+}
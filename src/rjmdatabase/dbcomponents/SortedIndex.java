@@ -0,0 +1,110 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An index keeping the values of a column in order, each mapped to the keys of
+ * the Records that hold it, so that range and prefix lookups only visit the
+ * matching values.
+ * @author Rjmcf
+ */
+class SortedIndex extends ColumnIndex
+{
+    // The keys of the Records holding each value, ordered by value.
+    private TreeMap<Object, TreeSet<Integer>> keysByValue;
+
+    SortedIndex(String columnName)
+    {
+        super(columnName);
+        keysByValue = new TreeMap<>();
+    }
+
+    @Override
+    IndexType getType()
+    {
+        return IndexType.SORTED;
+    }
+
+    @Override
+    void add(int key, Object value)
+    {
+        keysByValue.computeIfAbsent(value, v -> new TreeSet<>()).add(key);
+    }
+
+    @Override
+    void remove(int key, Object value)
+    {
+        TreeSet<Integer> keys = keysByValue.get(value);
+        if (keys == null)
+            return;
+        keys.remove(key);
+        // Don't keep empty sets around for values that are no longer stored.
+        if (keys.isEmpty())
+            keysByValue.remove(value);
+    }
+
+    /**
+     * Fills the index from every Record in a Table. The Records are grouped by
+     * value in parallel, with each thread building its own sorted map before
+     * they are merged.
+     * @param records    The map of keys to Records making up the Table.
+     * @param fieldIndex The index of the indexed field within each Record.
+     */
+    @Override
+    void build(Map<Integer, Record> records, int fieldIndex)
+    {
+        keysByValue = records.entrySet().parallelStream().collect(Collectors.groupingBy(
+                entry -> entry.getValue().getValue(fieldIndex),
+                TreeMap::new,
+                Collectors.mapping(Map.Entry::getKey, Collectors.toCollection(TreeSet::new))));
+    }
+
+    /**
+     * Gets the keys of the Records whose values lie in the range from <= value < to.
+     * @param  from The inclusive lower bound, or null for no lower bound.
+     * @param  to   The exclusive upper bound, or null for no upper bound.
+     * @return      The keys, ordered by value and then by key.
+     */
+    Stream<Integer> range(Object from, Object to)
+    {
+        return range(from, true, to, false);
+    }
+
+    /**
+     * Gets the keys of the Records whose values lie between two bounds.
+     * @param  from          The lower bound, or null for no lower bound.
+     * @param  fromInclusive Whether values equal to the lower bound are included.
+     * @param  to            The upper bound, or null for no upper bound.
+     * @param  toInclusive   Whether values equal to the upper bound are included.
+     * @return               The keys, ordered by value and then by key.
+     */
+    Stream<Integer> range(Object from, boolean fromInclusive, Object to, boolean toInclusive)
+    {
+        NavigableMap<Object, TreeSet<Integer>> inRange = keysByValue;
+        if (from != null)
+            inRange = inRange.tailMap(from, fromInclusive);
+        if (to != null)
+            inRange = inRange.headMap(to, toInclusive);
+        return inRange.values().stream().flatMap(TreeSet::stream);
+    }
+
+    /**
+     * Gets the keys of the Records whose values start with the given prefix.
+     * Only makes sense for string columns.
+     * @param  prefix The prefix to look for.
+     * @return        The keys, ordered by value and then by key.
+     */
+    Stream<Integer> prefix(String prefix)
+    {
+        // Every string starting with the prefix sorts at or after it, and they
+        // all come before any string that doesn't.
+        return keysByValue.tailMap(prefix, true).entrySet().stream()
+                .takeWhile(entry -> ((String)entry.getKey()).startsWith(prefix))
+                .flatMap(entry -> entry.getValue().stream());
+    }
+}
@@ -4,10 +4,24 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a Table, which stores Records.
@@ -19,19 +33,57 @@ public class Table
     static final String KEY_COL_NAME = "KeyTable";
     // The version number of this table. Will change when new code needs to be
     // written to save and load from file.
-    static final String version = "1.0";
+    static final String version = "1.3";
+    // Every version of table file that can still be loaded, oldest first. Files
+    // from version 1.0 have no column types, so every column is a string. Files
+    // from before 1.2 have no indexes, and files from before 1.3 have no
+    // statistics.
+    private static final List<String> LOADABLE_VERSIONS = Arrays.asList("1.0", "1.1", "1.2", version);
+    // The label at the start of the line of index definitions in table files.
+    private static final String INDEXES_LABEL = "Indexes";
+    // The label at the start of the line of statistics in table files.
+    private static final String STATISTICS_LABEL = "Statistics";
+    // Key ranges up to this size are always checked key by key when visiting
+    // Records in key order, however few keys are in use.
+    private static final int MIN_DENSE_KEY_LIMIT = 1024;
+    // Batches of fewer rows than this are converted to Records on one thread.
+    private static final int MIN_PARALLEL_PARSE_SIZE = 10000;
 
     // The name of this table.
     private String name;
     // The next key that will be assigned to a Record. All keys are unique within
     // a table.
     private int nextKey;
+    // One more than the largest key ever used. Bounds the keys to check when
+    // visiting Records in key order.
+    private int keyLimit;
+    // The keys in use in ascending order, for paging through the Table when
+    // its keys are too sparse to check one by one, and the modification
+    // count when they were gathered. They are only gathered again once the
+    // Table has changed.
+    private int[] sortedKeys;
+    private long sortedKeysModificationCount;
     // The names of the fields stored by Records.
     private ArrayList<String> fieldNames;
+    // The types of the fields stored by Records, in the same order as fieldNames.
+    private ArrayList<ColumnType> fieldTypes;
     // The map of keys to Records constituting the actual Table.
     private HashMap<Integer, Record> table;
+    // The secondary indexes built over columns of this Table.
+    private ArrayList<ColumnIndex> indexes;
+    // Describes the Records, for choosing how to find them.
+    private TableStatistics statistics;
     // Whether the Table needs saving back to file
     private boolean isDirty = true;
+    // The number of times the Table has been changed since it was created or
+    // loaded. Unlike isDirty, this is not reset when the Table is saved.
+    private long modificationCount;
+    // The materialized views over this Table, which are told of every change
+    // to its Records.
+    private ArrayList<MaterializedView> views = new ArrayList<>();
+    // The view whose Records this Table holds, or null if it is an ordinary
+    // Table.
+    private MaterializedView definingView;
 
     /**
      * Factory method to load a Table from the data read in from a file.
@@ -42,7 +94,8 @@ public class Table
     static Table createTableFromData(String name, String[][] data)
     {
         // The first line is the version number.
-        if (!version.equals(data[0][0]))
+        int fileVersion = LOADABLE_VERSIONS.indexOf(data[0][0]);
+        if (fileVersion == -1)
         {
             throw new Error("Attempted to load old version of Table. This is not possible at present.");
         }
@@ -53,20 +106,65 @@ public class Table
         for (int i = 1; i < keyAndAttrs.length; i++)
             joiner.add(keyAndAttrs[i]);
 
+        // The third line, if present, is the types of the fields. Again the
+        // first entry belongs to the key column.
+        int firstRecordRow = 2;
+        StringJoiner typeJoiner = new StringJoiner(", ");
+        for (int i = 1; i < keyAndAttrs.length; i++)
+            typeJoiner.add(ColumnType.STRING.getTypeName());
+        if (fileVersion >= 1)
+        {
+            String[] keyAndTypes = data[2];
+            typeJoiner = new StringJoiner(", ");
+            for (int i = 1; i < keyAndTypes.length; i++)
+                typeJoiner.add(keyAndTypes[i]);
+            firstRecordRow = 3;
+        }
+
+        // The fourth line, if present, is the label for the index definitions
+        // followed by pairs of index type and column name.
+        String[] indexDefinitions = new String[]{INDEXES_LABEL};
+        if (fileVersion >= 2)
+        {
+            indexDefinitions = data[3];
+            firstRecordRow = 4;
+        }
+
+        // The fifth line, if present, is the label for the statistics followed
+        // by the statistics themselves.
+        String[] statisticsLine = null;
+        if (fileVersion >= 3)
+        {
+            statisticsLine = data[4];
+            firstRecordRow = 5;
+        }
+
         // The new Table instance.
-        Table t = new Table(name, joiner.toString());
+        Table t = new Table(name, joiner.toString(), typeJoiner.toString());
 
-        // Now add the Records one at a time.
-        for (int row = 2; row < data.length; row++)
+        // Now add the Records all at once.
+        int[] keys = new int[data.length - firstRecordRow];
+        List<String[]> rows = new ArrayList<>(keys.length);
+        for (int row = firstRecordRow; row < data.length; row++)
         {
             String[] recordFields = data[row];
-            String[] fields = new String[recordFields.length - 1];
-            int key = Integer.parseInt(recordFields[0]);
+            keys[row - firstRecordRow] = Integer.parseInt(recordFields[0]);
             // Field 0 in Record = Field 1 in recordFields
-            for (int f = 1; f < recordFields.length; f++)
-                fields[f - 1] = recordFields[f];
-            t.insertRecord(key, fields);
+            rows.add(Arrays.copyOfRange(recordFields, 1, recordFields.length));
         }
+        t.insertRecords(keys, rows);
+
+        // Indexes are not stored in the file, so build them now that all the
+        // Records are present.
+        for (int i = 1; i + 1 < indexDefinitions.length; i += 2)
+            t.createIndex(indexDefinitions[i + 1], IndexType.fromName(indexDefinitions[i]));
+
+        // Statistics saved with the Table describe the same Records, so save
+        // analysing them again. Older files have none, so analyse now.
+        if (statisticsLine != null)
+            t.statistics = TableStatistics.readFrom(t.fieldTypes, t.getNumRecords(), statisticsLine, 1);
+        else
+            t.analyze();
 
         // We have just read from file, so no need to save it again right now.
         t.isDirty = false;
@@ -80,6 +178,19 @@ public class Table
      * @param fNames A comma separated list of the Table's new column names.
      */
     Table(String name, String fNames)
+    {
+        this(name, fNames, null);
+    }
+
+    /**
+     * Creates a new Table with the specified name, a comma separated list of
+     * column names, and a comma separated list of the types of those columns.
+     * @param name   The name of the new Table.
+     * @param fNames A comma separated list of the Table's new column names.
+     * @param fTypes A comma separated list of the column types, such as
+     *               "string, int". If null, every column is a string.
+     */
+    Table(String name, String fNames, String fTypes)
     {
         this.name = name;
         nextKey = 0;
@@ -90,7 +201,25 @@ public class Table
             String[] fNameArray = fNames.split(", ");
             fieldNames = new ArrayList<>(Arrays.asList(fNameArray));
         }
+        fieldTypes = new ArrayList<>();
+        if (fTypes == null)
+        {
+            for (int i = 0; i < fieldNames.size(); i++)
+                fieldTypes.add(ColumnType.STRING);
+        }
+        else if (!fTypes.equals(""))
+        {
+            for (String typeName : fTypes.split(","))
+                fieldTypes.add(ColumnType.fromName(typeName));
+        }
+        if (fieldTypes.size() != fieldNames.size())
+        {
+            String errorMsg = String.format("Expected %d column types but got %d", fieldNames.size(), fieldTypes.size());
+            throw new IllegalArgumentException(errorMsg);
+        }
         table = new HashMap<>();
+        indexes = new ArrayList<>();
+        statistics = TableStatistics.analyze(fieldTypes, table.values());
     }
 
     /**
@@ -115,6 +244,99 @@ public class Table
         return names.toString();
     }
 
+    /**
+     * Returns a comma separated list of the field types.
+     * @return the field types.
+     */
+    String getFieldTypes()
+    {
+        StringJoiner types = new StringJoiner(", ");
+        for (ColumnType type : fieldTypes)
+            types.add(type.getTypeName());
+
+        return types.toString();
+    }
+
+    /**
+     * Gets the type of the named field.
+     * @param  fieldName The name of the field.
+     * @return           The type of the field.
+     */
+    ColumnType getFieldType(String fieldName)
+    {
+        return fieldTypes.get(getFieldIndex(fieldName));
+    }
+
+    /**
+     * Gets the type of the field at an index within Records.
+     * @param  fieldIndex The index of the field.
+     * @return            The type of the field.
+     */
+    ColumnType getFieldType(int fieldIndex)
+    {
+        return fieldTypes.get(fieldIndex);
+    }
+
+    /**
+     * Gets the index of the named field within Records, if it exists.
+     * @param  fieldName The name of the field.
+     * @return           The index of the field.
+     */
+    int getFieldIndex(String fieldName)
+    {
+        int fieldIndex = fieldNames.indexOf(fieldName);
+        if (fieldIndex == -1)
+            throw new IllegalArgumentException("No attribute: " + fieldName + " exists");
+        return fieldIndex;
+    }
+
+    // Converts the textual field values into the typed values stored by a
+    // Record, checking that there are the right number of them.
+    private Object[] parseFields(String[] fs)
+    {
+        int numFieldsInTable = getNumFields();
+        if (fs.length != numFieldsInTable)
+        {
+            String errorMsg = String.format("Expected %d fields but got %d" , numFieldsInTable, fs.length);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        Object[] values = new Object[numFieldsInTable];
+        for (int i = 0; i < numFieldsInTable; i++)
+            values[i] = fieldTypes.get(i).parse(fs[i]);
+        return values;
+    }
+
+    // Converts many rows of textual field values into Records, checking every
+    // row before any is stored so that a bad row stores nothing. The types
+    // are looked up once for all the rows, and large batches are converted in
+    // parallel.
+    private Record[] parseRecords(List<String[]> rows)
+    {
+        ColumnType[] types = fieldTypes.toArray(new ColumnType[0]);
+        String[][] rowArray = rows.toArray(new String[0][]);
+        Record[] records = new Record[rowArray.length];
+        IntStream positions = IntStream.range(0, records.length);
+        if (records.length >= MIN_PARALLEL_PARSE_SIZE)
+            positions = positions.parallel();
+        positions.forEach(r -> {
+            String[] fs = rowArray[r];
+            if (fs.length != types.length)
+                throw new IllegalArgumentException(String.format("Row %d: Expected %d fields but got %d", r, types.length, fs.length));
+            Object[] values = new Object[types.length];
+            try
+            {
+                for (int i = 0; i < types.length; i++)
+                    values[i] = types[i].parse(fs[i]);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Row " + r + ": " + e.getMessage());
+            }
+            records[r] = new Record(values);
+        });
+        return records;
+    }
+
     // Gets the key that will be assigned to the next Record which is added.
     private int getNextKey()
     {
@@ -130,6 +352,69 @@ public class Table
         return isDirty;
     }
 
+    /**
+     * Gets a number that changes whenever the Table is changed, whether or not
+     * it has been saved since, so that anything computed from the Table can
+     * tell when it is out of date.
+     * @return The number of changes made to the Table.
+     */
+    long getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    /**
+     * Gets the materialized views over this Table.
+     * @return The views, which must not be changed.
+     */
+    List<MaterializedView> getViews()
+    {
+        return views;
+    }
+
+    /**
+     * Gets the materialized view whose Records this Table holds.
+     * @return The view, or null if this is an ordinary Table.
+     */
+    MaterializedView getDefiningView()
+    {
+        return definingView;
+    }
+
+    /**
+     * Makes this Table hold the Records of a materialized view.
+     * @param view The view, or null to make this an ordinary Table again.
+     */
+    void setDefiningView(MaterializedView view)
+    {
+        definingView = view;
+    }
+
+    /**
+     * Starts telling a materialized view of every change to the Records.
+     * @param view The view over this Table.
+     */
+    void addView(MaterializedView view)
+    {
+        views.add(view);
+    }
+
+    /**
+     * Stops telling a materialized view of changes to the Records.
+     * @param view The view over this Table.
+     */
+    void removeView(MaterializedView view)
+    {
+        views.remove(view);
+    }
+
+    // Records that the Table has changed and so needs saving.
+    private void markDirty()
+    {
+        isDirty = true;
+        modificationCount++;
+    }
+
     // Finds the largest key assigned so far, and sets the next key to be one
     // larger than it. This will be called when we try to add a new Record and
     // discover that the next key is out of sync with the Records in the table.
@@ -171,26 +456,67 @@ public class Table
      * An array is used rather than an ArrayList because arrays are easier to
      * build inline on the fly, such as new String[]{"Field1", "Field2",..., "FieldN"};
      * The equivalent with ArrayList takes N + 1 lines.
-     * @param fs The values of the fields to be saved.
+     * @param  fs The values of the fields to be saved.
+     * @return    The key the Record was stored under.
      */
-    void addRecord(String[] fs)
+    int addRecord(String[] fs)
     {
-        ArrayList<String> fields = new ArrayList<>(Arrays.asList(fs));
-        int numFieldsInTable = getNumFields();
-        if (fields.size() != numFieldsInTable)
-        {
-            String errorMsg = String.format("Expected %d fields but got %d" , numFieldsInTable, fields.size());
-            throw new IllegalArgumentException(errorMsg);
-        }
+        return addRecord(new Record(parseFields(fs)));
+    }
+
+    // Stores a new Record under the next unused key.
+    private int addRecord(Record newRecord)
+    {
+        checkUnique(new Record[]{newRecord});
         // HashMap.putIfAbsent returns null only if the key wasn't already
         // assigned in the map. Thus if the key has been assigned, we need to
         // update the next key and try again.
-        Record newRecord = new Record(fields);
         while (table.putIfAbsent(nextKey, newRecord) != null)
             setNextKeyBasedOnRecords();
+        int key = nextKey;
         nextKey++;
+        keyLimit = Math.max(keyLimit, nextKey);
+        markDirty();
+        recordStored(key, newRecord);
+        return key;
+    }
 
-        isDirty = true;
+    /**
+     * Adds many new Records to the Table under a block of consecutive unused
+     * keys. Every row is checked before any is stored, so if one is invalid
+     * the Table is left unchanged. The map of Records is grown once for the
+     * whole batch and the Table is only marked as changed once.
+     * @param  rows The values of the fields of each Record.
+     * @return      The key of the first Record. The rest follow in order.
+     */
+    int addRecords(List<String[]> rows)
+    {
+        Record[] records = parseRecords(rows);
+        if (records.length == 0)
+            return nextKey;
+        checkUnique(records);
+        // Keys from keyLimit up have never been used, so if any key of the
+        // block starting at nextKey is taken the block is moved there.
+        int firstKey = nextKey;
+        for (int key = firstKey; key < firstKey + records.length && key < keyLimit; key++)
+        {
+            if (table.containsKey(key))
+            {
+                firstKey = keyLimit;
+                break;
+            }
+        }
+        if ((long)firstKey + records.length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Not enough keys left for " + records.length + " records");
+        reserve(records.length);
+        for (int i = 0; i < records.length; i++)
+            table.put(firstKey + i, records[i]);
+        nextKey = firstKey + records.length;
+        keyLimit = Math.max(keyLimit, nextKey);
+        markDirty();
+        for (int i = 0; i < records.length; i++)
+            recordStored(firstKey + i, records[i]);
+        return firstKey;
     }
 
     /**
@@ -210,23 +536,145 @@ public class Table
      * @param key The key at which insertion is attempted.
      * @param fs  The fields to insert as a new Record.
      */
-    private void insertRecord(int key, String[] fs)
+    void insertRecord(int key, String[] fs)
     {
         if (key < 0)
             throw new IllegalArgumentException("Key must be non-negative");
-        ArrayList<String> fields = new ArrayList<>(Arrays.asList(fs));
-        int numFieldsInTable = getNumFields();
-        if (fields.size() != numFieldsInTable)
-        {
-            String errorMsg = String.format("Expected %d fields but got %d" , numFieldsInTable, fields.size());
-            throw new IllegalArgumentException(errorMsg);
-        }
+        Record newRecord = new Record(parseFields(fs));
+        if (!table.containsKey(key))
+            checkUnique(new Record[]{newRecord});
         // Don't bother updating nextKey and trying again here, as the user
         // specified this key for a reason.
-        if (table.putIfAbsent(key, new Record(fields)) != null)
+        if (table.putIfAbsent(key, newRecord) != null)
             throw new IllegalArgumentException("There already exists a record with that key");
         nextKey = key + 1;
-        isDirty = true;
+        keyLimit = Math.max(keyLimit, nextKey);
+        markDirty();
+        recordStored(key, newRecord);
+    }
+
+    /**
+     * Inserts many new Records at the given keys, none of which may already be
+     * assigned. Every key and row is checked before any is stored, so if one
+     * is invalid the Table is left unchanged.
+     * @param keys The key of each Record.
+     * @param rows The values of the fields of each Record, in the same order.
+     */
+    void insertRecords(int[] keys, List<String[]> rows)
+    {
+        if (keys.length != rows.size())
+            throw new IllegalArgumentException(String.format("Got %d keys for %d records", keys.length, rows.size()));
+        RoaringBitmap seen = new RoaringBitmap();
+        int maxKey = -1;
+        for (int key : keys)
+        {
+            if (key < 0)
+                throw new IllegalArgumentException("Key must be non-negative");
+            if (seen.contains(key) || table.containsKey(key))
+                throw new IllegalArgumentException("There already exists a record with key " + key);
+            seen.add(key);
+            maxKey = Math.max(maxKey, key);
+        }
+        Record[] records = parseRecords(rows);
+        if (records.length == 0)
+            return;
+        checkUnique(records);
+        reserve(records.length);
+        for (int i = 0; i < records.length; i++)
+            table.put(keys[i], records[i]);
+        nextKey = keys[keys.length - 1] + 1;
+        keyLimit = Math.max(keyLimit, maxKey + 1);
+        markDirty();
+        for (int i = 0; i < records.length; i++)
+            recordStored(keys[i], records[i]);
+    }
+
+    /**
+     * Adds many new Records given as rows whose columns are named, such as by
+     * the header of an imported file. The columns may come in any order, but
+     * every field must be present. If the key column is present the Records
+     * are inserted under those keys, and otherwise under new keys.
+     * @param columnNames The name of each column of the rows.
+     * @param rows        The rows.
+     */
+    void addRows(String[] columnNames, List<String[]> rows)
+    {
+        int keyColumn = -1;
+        int[] columnOfField = new int[getNumFields()];
+        Arrays.fill(columnOfField, -1);
+        boolean inOrder = columnNames.length == columnOfField.length;
+        for (int c = 0; c < columnNames.length; c++)
+        {
+            String name = columnNames[c].trim();
+            int fieldIndex = KEY_COL_NAME.equals(name) ? -1 : getFieldIndex(name);
+            if ((fieldIndex == -1 ? keyColumn : columnOfField[fieldIndex]) != -1)
+                throw new IllegalArgumentException("Column " + name + " appears more than once");
+            if (fieldIndex == -1)
+                keyColumn = c;
+            else
+                columnOfField[fieldIndex] = c;
+            inOrder &= fieldIndex == c;
+        }
+        for (int f = 0; f < columnOfField.length; f++)
+            if (columnOfField[f] == -1)
+                throw new IllegalArgumentException("No column for field " + fieldNames.get(f));
+        if (inOrder)
+        {
+            addRecords(rows);
+            return;
+        }
+
+        int[] keys = new int[keyColumn == -1 ? 0 : rows.size()];
+        List<String[]> fieldRows = new ArrayList<>(rows.size());
+        for (int r = 0; r < rows.size(); r++)
+        {
+            String[] row = rows.get(r);
+            if (row.length != columnNames.length)
+                throw new IllegalArgumentException(String.format("Row %d: Expected %d fields but got %d", r, columnNames.length, row.length));
+            String[] fields = new String[columnOfField.length];
+            for (int f = 0; f < fields.length; f++)
+                fields[f] = row[columnOfField[f]];
+            fieldRows.add(fields);
+            if (keyColumn != -1)
+            {
+                try
+                {
+                    keys[r] = Integer.parseInt(row[keyColumn].trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Row " + r + ": Invalid key " + row[keyColumn]);
+                }
+            }
+        }
+        if (keyColumn == -1)
+            addRecords(fieldRows);
+        else
+            insertRecords(keys, fieldRows);
+    }
+
+    // Grows the map of Records once to make room for many more, rather than
+    // letting it double repeatedly as they are added.
+    private void reserve(int numNewRecords)
+    {
+        int needed = table.size() + numNewRecords;
+        // Growing by less than the map already holds takes at most the one
+        // resize the map would make anyway.
+        if (numNewRecords <= table.size())
+            return;
+        HashMap<Integer, Record> grown = new HashMap<>((int)Math.min(Integer.MAX_VALUE, needed * 4L / 3 + 1));
+        grown.putAll(table);
+        table = grown;
+    }
+
+    // Tells the indexes, statistics and views about a Record newly stored
+    // under a key.
+    private void recordStored(int key, Record record)
+    {
+        addToIndexes(key, record);
+        statistics.add(record);
+        for (MaterializedView view : views)
+            view.recordAdded(key, record);
     }
 
     /**
@@ -242,6 +690,61 @@ public class Table
         return table.get(key);
     }
 
+    /**
+     * Gets the value of an int field from the Record with the given key.
+     * @param  key       The key of the Record.
+     * @param  fieldName The name of the field.
+     * @return           The value of the field.
+     */
+    int getInt(int key, String fieldName)
+    {
+        return getRecord(key).getInt(getFieldIndex(fieldName));
+    }
+
+    /**
+     * Gets the value of an int or long field from the Record with the given key.
+     * @param  key       The key of the Record.
+     * @param  fieldName The name of the field.
+     * @return           The value of the field.
+     */
+    long getLong(int key, String fieldName)
+    {
+        return getRecord(key).getLong(getFieldIndex(fieldName));
+    }
+
+    /**
+     * Gets the value of a numeric field from the Record with the given key.
+     * @param  key       The key of the Record.
+     * @param  fieldName The name of the field.
+     * @return           The value of the field.
+     */
+    double getDouble(int key, String fieldName)
+    {
+        return getRecord(key).getDouble(getFieldIndex(fieldName));
+    }
+
+    /**
+     * Gets the value of a boolean field from the Record with the given key.
+     * @param  key       The key of the Record.
+     * @param  fieldName The name of the field.
+     * @return           The value of the field.
+     */
+    boolean getBoolean(int key, String fieldName)
+    {
+        return getRecord(key).getBoolean(getFieldIndex(fieldName));
+    }
+
+    /**
+     * Gets the value of a bytes field from the Record with the given key.
+     * @param  key       The key of the Record.
+     * @param  fieldName The name of the field.
+     * @return           A copy of the value of the field.
+     */
+    byte[] getBytes(int key, String fieldName)
+    {
+        return getRecord(key).getBytes(getFieldIndex(fieldName));
+    }
+
     /**
      * Updates a Record with a given key by changing the value under the given
      * field name, if it exists.
@@ -253,11 +756,23 @@ public class Table
     {
         // Fields are accessed by index in records, so we need the index of the
         // field name to refer to it by.
-        int fieldIndex = fieldNames.indexOf(fieldName);
-        if (fieldIndex == -1)
-            throw new IllegalArgumentException("No attribute: " + fieldName + " exists");
-        getRecord(key).updateField(fieldIndex, replacement);
-        isDirty = true;
+        int fieldIndex = getFieldIndex(fieldName);
+        Record record = getRecord(key);
+        Object newValue = fieldTypes.get(fieldIndex).parse(replacement);
+        checkUnique(new int[]{key}, fieldIndex, newValue);
+        Object oldValue = record.getValue(fieldIndex);
+        record.updateValue(fieldIndex, newValue);
+        for (ColumnIndex index : indexes)
+        {
+            if (!index.getColumnName().equals(fieldName))
+                continue;
+            index.remove(key, oldValue);
+            index.add(key, newValue);
+        }
+        statistics.update(fieldIndex, oldValue, newValue);
+        markDirty();
+        for (MaterializedView view : views)
+            view.recordUpdated(key, record, fieldIndex, oldValue);
     }
 
     /**
@@ -267,27 +782,993 @@ public class Table
      */
     void deleteRecord(int key)
     {
-        if (table.remove(key) == null)
+        Record removed = table.remove(key);
+        if (removed == null)
             throw new IndexOutOfBoundsException("No record found with that key");
+        removeFromIndexes(key, removed);
+        statistics.remove(removed);
+        markDirty();
+        for (MaterializedView view : views)
+            view.recordDeleted(key, removed);
+    }
+
+    /**
+     * Changes the values of some fields of many Records at once. The new values
+     * are converted and every key is checked before anything is changed, so
+     * if one is invalid nothing is. The Table is only marked as changed once.
+     * @param keys         The keys of the Records to update.
+     * @param fieldNames   The names of the fields to update.
+     * @param replacements The new value of each field, for every Record.
+     */
+    void updateRecords(int[] keys, String[] fieldNames, String[] replacements)
+    {
+        if (fieldNames.length != replacements.length)
+            throw new IllegalArgumentException(String.format("Got %d values for %d fields", replacements.length, fieldNames.length));
+        int[] fieldIndices = new int[fieldNames.length];
+        Object[] newValues = new Object[fieldNames.length];
+        for (int f = 0; f < fieldNames.length; f++)
+        {
+            fieldIndices[f] = getFieldIndex(fieldNames[f]);
+            newValues[f] = fieldTypes.get(fieldIndices[f]).parse(replacements[f]);
+        }
+        checkKeys(keys);
+        updateRecords(keys, fieldIndices, newValues);
+    }
+
+    // Gives some fields of every Record with the given keys new values,
+    // which are already converted. The keys must be in use.
+    private void updateRecords(int[] keys, int[] fieldIndices, Object[] newValues)
+    {
+        if (keys.length == 0 || fieldIndices.length == 0)
+            return;
+        List<List<ColumnIndex>> indexesOfField = new ArrayList<>();
+        for (int f = 0; f < fieldIndices.length; f++)
+        {
+            checkUnique(keys, fieldIndices[f], newValues[f]);
+            List<ColumnIndex> fieldIndexes = new ArrayList<>();
+            for (ColumnIndex index : indexes)
+                if (index.getColumnName().equals(fieldNames.get(fieldIndices[f])))
+                    fieldIndexes.add(index);
+            indexesOfField.add(fieldIndexes);
+        }
+
+        markDirty();
+        for (int key : keys)
+        {
+            Record record = table.get(key);
+            for (int f = 0; f < fieldIndices.length; f++)
+            {
+                Object oldValue = record.getValue(fieldIndices[f]);
+                record.updateValue(fieldIndices[f], newValues[f]);
+                for (ColumnIndex index : indexesOfField.get(f))
+                {
+                    index.remove(key, oldValue);
+                    index.add(key, newValues[f]);
+                }
+                statistics.update(fieldIndices[f], oldValue, newValues[f]);
+                for (MaterializedView view : views)
+                    view.recordUpdated(key, record, fieldIndices[f], oldValue);
+            }
+        }
+    }
+
+    /**
+     * Adds a Record, unless a Record already holds the same value of a unique
+     * column, in which case the fields of that Record which differ are
+     * changed instead. The unique index over the column finds any such Record
+     * with one lookup.
+     * @param  columnName The name of the unique column.
+     * @param  fs         The values of the fields.
+     * @return            The key of the Record added or changed.
+     */
+    int upsert(String columnName, String[] fs)
+    {
+        HashIndex unique = (HashIndex)getIndex(columnName, IndexType.UNIQUE);
+        if (unique == null)
+            throw new IllegalArgumentException("No unique index on column " + columnName);
+        Object[] values = parseFields(fs);
+        Set<Integer> existing = unique.lookup(values[getFieldIndex(columnName)]);
+        if (existing.isEmpty())
+            return addRecord(new Record(values));
+
+        int key = existing.iterator().next();
+        Record record = table.get(key);
+        int numChanged = 0;
+        int[] fieldIndices = new int[values.length];
+        for (int i = 0; i < values.length; i++)
+            if (!record.getValue(i).equals(values[i]))
+                fieldIndices[numChanged++] = i;
+        fieldIndices = Arrays.copyOf(fieldIndices, numChanged);
+        Object[] newValues = new Object[numChanged];
+        for (int f = 0; f < numChanged; f++)
+            newValues[f] = values[fieldIndices[f]];
+        updateRecords(new int[]{key}, fieldIndices, newValues);
+        return key;
+    }
+
+    /**
+     * Changes the values of some fields of every Record matching a Filter, in
+     * one pass. The matching keys are all found before anything is changed, so
+     * the changes can't affect which Records are updated.
+     * @param  filter       The Filter to match.
+     * @param  fieldNames   The names of the fields to update.
+     * @param  replacements The new value of each field.
+     * @return              The number of Records updated.
+     */
+    int updateWhere(Filter filter, String[] fieldNames, String[] replacements)
+    {
+        int[] keys = matchingKeys(filter, false, false).toArray();
+        updateRecords(keys, fieldNames, replacements);
+        return keys.length;
+    }
+
+    /**
+     * Deletes many Records at once. Every key is checked before anything is
+     * deleted, so if one is missing nothing is. The Table is only marked as
+     * changed once.
+     * @param keys The keys of the Records to delete.
+     */
+    void deleteRecords(int[] keys)
+    {
+        checkKeys(keys);
+        if (keys.length == 0)
+            return;
+        int[] indexedFields = new int[indexes.size()];
+        for (int i = 0; i < indexedFields.length; i++)
+            indexedFields[i] = fieldNames.indexOf(indexes.get(i).getColumnName());
+
+        markDirty();
+        for (int key : keys)
+        {
+            Record removed = table.remove(key);
+            for (int i = 0; i < indexedFields.length; i++)
+                indexes.get(i).remove(key, removed.getValue(indexedFields[i]));
+            statistics.remove(removed);
+            for (MaterializedView view : views)
+                view.recordDeleted(key, removed);
+        }
+    }
+
+    /**
+     * Deletes every Record matching a Filter, in one pass. The matching keys
+     * are all found before anything is deleted.
+     * @param  filter The Filter to match.
+     * @return        The number of Records deleted.
+     */
+    int deleteWhere(Filter filter)
+    {
+        int[] keys = matchingKeys(filter, false, false).toArray();
+        deleteRecords(keys);
+        return keys.length;
+    }
+
+    // Checks that every key is in use, and that none is given twice.
+    private void checkKeys(int[] keys)
+    {
+        RoaringBitmap seen = new RoaringBitmap();
+        for (int key : keys)
+        {
+            if (!table.containsKey(key))
+                throw new IndexOutOfBoundsException("No record found with key " + key);
+            if (seen.contains(key))
+                throw new IllegalArgumentException("Key " + key + " is given more than once");
+            seen.add(key);
+        }
+    }
+
+    // Checks that storing new Records would not leave two Records holding the
+    // same value of a unique column.
+    private void checkUnique(Record[] records)
+    {
+        for (ColumnIndex index : indexes)
+        {
+            if (index.getType() != IndexType.UNIQUE)
+                continue;
+            HashIndex unique = (HashIndex)index;
+            int fieldIndex = fieldNames.indexOf(index.getColumnName());
+            HashSet<Object> newValues = new HashSet<>();
+            for (Record record : records)
+            {
+                Object value = record.getValue(fieldIndex);
+                if (!unique.lookup(value).isEmpty() || !newValues.add(value))
+                    throw uniqueViolation(index.getColumnName(), value);
+            }
+        }
+    }
+
+    // Checks that giving the Records with some keys the same new value of a
+    // field would not leave two Records holding it, if the field is unique.
+    private void checkUnique(int[] keys, int fieldIndex, Object newValue)
+    {
+        String columnName = fieldNames.get(fieldIndex);
+        HashIndex unique = (HashIndex)getIndex(columnName, IndexType.UNIQUE);
+        if (unique == null || keys.length == 0)
+            return;
+        Set<Integer> holders = unique.lookup(newValue);
+        if (keys.length > 1 || !(holders.isEmpty() || holders.contains(keys[0])))
+            throw uniqueViolation(columnName, newValue);
+    }
+
+    // Makes the exception thrown when a change would repeat a unique value.
+    private static IllegalArgumentException uniqueViolation(String columnName, Object value)
+    {
+        return new IllegalArgumentException(String.format("Column %s is unique, but %s would appear more than once", columnName, ColumnType.format(value)));
+    }
+
+    // Tells every index about the values of a Record newly stored under a key.
+    private void addToIndexes(int key, Record record)
+    {
+        for (ColumnIndex index : indexes)
+            index.add(key, record.getValue(fieldNames.indexOf(index.getColumnName())));
+    }
+
+    // Tells every index that a Record is no longer stored under a key.
+    private void removeFromIndexes(int key, Record record)
+    {
+        for (ColumnIndex index : indexes)
+            index.remove(key, record.getValue(fieldNames.indexOf(index.getColumnName())));
+    }
+
+    /**
+     * Builds a secondary index of the given type over a column, unless one
+     * already exists. The index is kept up to date as the Table changes.
+     * @param columnName The name of the column to index.
+     * @param type       The type of index to build.
+     */
+    void createIndex(String columnName, IndexType type)
+    {
+        int fieldIndex = getFieldIndex(columnName);
+        if (type == IndexType.TEXT && fieldTypes.get(fieldIndex) != ColumnType.STRING)
+            throw new IllegalArgumentException("Text indexes need a string column, but " + columnName + " is not");
+        if (type == IndexType.UNIQUE && definingView != null)
+            throw new IllegalArgumentException("Views cannot have unique indexes");
+        if (getIndex(columnName, type) != null)
+            return;
+        ColumnIndex index = ColumnIndex.create(type, columnName);
+        index.build(table, fieldIndex);
+        indexes.add(index);
+        markDirty();
+    }
+
+    /**
+     * Removes the index of the given type from a column, if it exists.
+     * @param columnName The name of the indexed column.
+     * @param type       The type of index to remove.
+     */
+    void dropIndex(String columnName, IndexType type)
+    {
+        ColumnIndex index = getIndex(columnName, type);
+        if (index == null)
+            throw new IllegalArgumentException(String.format("No %s index on column %s", type.getTypeName(), columnName));
+        indexes.remove(index);
+        markDirty();
+    }
+
+    /**
+     * Gets whether there is an index of the given type over a column.
+     * @param  columnName The name of the column.
+     * @param  type       The type of index.
+     * @return            Whether the index exists.
+     */
+    boolean hasIndex(String columnName, IndexType type)
+    {
+        return getIndex(columnName, type) != null;
+    }
+
+    /**
+     * Gets the index of the given type over a column.
+     * @param  columnName The name of the column.
+     * @param  type       The type of index.
+     * @return            The index, or null if there isn't one.
+     */
+    ColumnIndex getIndex(String columnName, IndexType type)
+    {
+        for (ColumnIndex index : indexes)
+            if (index.getColumnName().equals(columnName) && index.getType() == type)
+                return index;
+        return null;
+    }
+
+    /**
+     * Gets a hash index over a column, which may be a unique one.
+     * @param  columnName The name of the column.
+     * @return            The index, or null if there isn't one.
+     */
+    HashIndex getHashIndex(String columnName)
+    {
+        HashIndex index = (HashIndex)getIndex(columnName, IndexType.HASH);
+        if (index == null)
+            index = (HashIndex)getIndex(columnName, IndexType.UNIQUE);
+        return index;
+    }
+
+    /**
+     * Gets the sketch index over a column, first building it again if so many
+     * values have been removed since it was built that its estimates would be
+     * poor.
+     * @param  columnName The name of the column.
+     * @return            The index, or null if there isn't one.
+     */
+    SketchIndex getSketch(String columnName)
+    {
+        SketchIndex index = (SketchIndex)getIndex(columnName, IndexType.SKETCH);
+        if (index != null && index.isStale())
+            index.build(table, getFieldIndex(columnName));
+        return index;
+    }
+
+    /**
+     * Finds the keys of every Record whose value for a field equals the given
+     * value. Uses a hash index on the field if there is one, and otherwise
+     * checks every Record.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value to look for.
+     * @return           The keys of the matching Records, in ascending order.
+     */
+    TreeSet<Integer> lookup(String fieldName, String value)
+    {
+        int fieldIndex = getFieldIndex(fieldName);
+        Object target = fieldTypes.get(fieldIndex).parse(value);
+        HashIndex index = getHashIndex(fieldName);
+        if (index != null)
+            return new TreeSet<>(index.lookup(target));
+
+        TreeSet<Integer> keys = new TreeSet<>();
+        for (Map.Entry<Integer, Record> entry : table.entrySet())
+            if (entry.getValue().getValue(fieldIndex).equals(target))
+                keys.add(entry.getKey());
+        return keys;
+    }
+
+    /**
+     * Uses an index on a field to find the keys of every Record whose value for
+     * that field equals the given value. Bitmap indexes are preferred, then
+     * hash indexes, then sorted indexes.
+     * @param  fieldName The name of the field.
+     * @param  value     The textual form of the value to look for.
+     * @return           The keys of the matching Records, or null if the field
+     *                   has none of those kinds of index.
+     */
+    RoaringBitmap lookupWithIndex(String fieldName, String value)
+    {
+        Object target = getFieldType(fieldName).parse(value);
+        BitmapIndex bitmapIndex = (BitmapIndex)getIndex(fieldName, IndexType.BITMAP);
+        if (bitmapIndex != null)
+            return bitmapIndex.lookup(target);
+        HashIndex hashIndex = getHashIndex(fieldName);
+        if (hashIndex != null)
+            return RoaringBitmap.of(hashIndex.lookup(target));
+        SortedIndex sortedIndex = (SortedIndex)getIndex(fieldName, IndexType.SORTED);
+        if (sortedIndex != null)
+            return RoaringBitmap.of(sortedIndex.range(target, true, target, true)::iterator);
+        return null;
+    }
+
+    /**
+     * Gathers statistics describing the Records from scratch.
+     */
+    void analyze()
+    {
+        statistics = TableStatistics.analyze(fieldTypes, table.values());
+        // The statistics are saved with the Table, but don't change what it
+        // holds.
         isDirty = true;
     }
 
     /**
-     * Adds a column to the Table. The default value is added to every Record. Throws
-     * an exception if the index is out of bounds.
+     * Gets the statistics describing the Records, gathering them again first
+     * if they are stale. Unlike analyze, this doesn't mark the Table as
+     * needing saving, as it is only done while reading the Table; statistics
+     * go stale through changes, which mark the Table anyway.
+     * @return The statistics, which change as the Table does.
+     */
+    TableStatistics getStatistics()
+    {
+        if (statistics.isStale())
+            statistics = TableStatistics.analyze(fieldTypes, table.values());
+        return statistics;
+    }
+
+    /**
+     * Gets the statistics describing the values of a field.
+     * @param  fieldName The name of the field.
+     * @return           The statistics, which change as the Table does.
+     */
+    ColumnStatistics getColumnStatistics(String fieldName)
+    {
+        return getStatistics().getColumn(getFieldIndex(fieldName));
+    }
+
+    /**
+     * Estimates the number of Records matching a Filter.
+     * @param  filter The Filter to match.
+     * @return        The estimated number of Records.
+     */
+    double estimateMatches(Filter filter)
+    {
+        return CostModel.estimateMatches(this, filter);
+    }
+
+    /**
+     * Gets whether the indexes will be used to find the Records matching a
+     * Filter. They are only used if that is estimated to be cheaper than
+     * testing every Record.
+     * @param  filter The Filter to match.
+     * @return        Whether the indexes will be used.
+     */
+    boolean usesIndexes(Filter filter)
+    {
+        return CostModel.prefersIndexes(this, filter);
+    }
+
+    // Uses the indexes to narrow down the Records that might match a Filter,
+    // unless testing every Record is estimated to be cheaper.
+    private RoaringBitmap findCandidates(Filter filter)
+    {
+        return usesIndexes(filter) ? filter.findCandidates(this) : null;
+    }
+
+    /**
+     * Finds the keys of every Record matching a Filter.
+     * @param  filter The Filter to match.
+     * @return        The keys of the matching Records.
+     */
+    RoaringBitmap filter(Filter filter)
+    {
+        RoaringBitmap candidates = findCandidates(filter);
+        if (candidates != null && filter.isAnsweredByIndexes(this))
+            return candidates;
+
+        RoaringBitmap matches = new RoaringBitmap();
+        forEachBatch(filter, batch -> {
+            for (int i = 0; i < batch.getSelectedCount(); i++)
+                matches.add(batch.getKey(batch.getSelectedPosition(i)));
+        });
+        return matches;
+    }
+
+    /**
+     * Passes the Records matching a Filter to an action a batch at a time.
+     * Each batch is tested as a whole, leaving just the matching Records
+     * selected, and batches with nothing selected are skipped. The indexes are
+     * used to narrow down the Records that need testing, as for forEachMatch,
+     * and Records are visited in the same order.
+     * @param filter The Filter to match.
+     * @param action The action to perform on each batch, which must not keep
+     *               the batch once it returns.
+     */
+    void forEachBatch(Filter filter, Consumer<VectorBatch> action)
+    {
+        collectBatches(filter, false, () -> action, Consumer::accept, (first, second) -> {});
+    }
+
+    /**
+     * Splits the Records that might match a Filter into batches, tests each
+     * batch, and folds the batches with anything selected into states, in the
+     * manner of Stream.collect. In parallel, each thread has its own states
+     * and batch, and the states are combined at the end.
+     * @param  filter   The Filter to match.
+     * @param  parallel Whether batches may be processed in parallel.
+     * @param  newState Creates an empty state.
+     * @param  action   Folds a batch into a state.
+     * @param  combine  Folds the second state into the first.
+     * @return          The state holding every batch.
+     */
+    <S> S collectBatches(Filter filter, boolean parallel, Supplier<S> newState, BiConsumer<S, VectorBatch> action, BiConsumer<S, S> combine)
+    {
+        RoaringBitmap candidates = findCandidates(filter);
+        boolean needsTest = candidates == null || !filter.isAnsweredByIndexes(this);
+        BatchPredicate test = needsTest ? filter.compileBatch(this) : null;
+        int[] keys = candidates != null ? candidates.toArray() : table.keySet().stream().mapToInt(Integer::intValue).toArray();
+        int numBatches = (keys.length + VectorBatch.CAPACITY - 1) / VectorBatch.CAPACITY;
+
+        IntStream batchNumbers = IntStream.range(0, numBatches);
+        if (parallel)
+            batchNumbers = batchNumbers.parallel();
+        return batchNumbers.collect(
+                () -> new BatchState<>(newState.get(), new VectorBatch(this)),
+                (state, batchNumber) -> {
+                    VectorBatch batch = state.batch;
+                    batch.clear();
+                    int end = Math.min(keys.length, (batchNumber + 1) * VectorBatch.CAPACITY);
+                    for (int i = batchNumber * VectorBatch.CAPACITY; i < end; i++)
+                        batch.add(keys[i], table.get(keys[i]));
+                    batch.selectAll();
+                    if (test != null)
+                        batch.setSelectedCount(test.select(batch, batch.getSelection(), batch.getSelectedCount()));
+                    if (batch.getSelectedCount() > 0)
+                        action.accept(state.state, batch);
+                },
+                (state, other) -> combine.accept(state.state, other.state)).state;
+    }
+
+    // A state being folded by collectBatches, with the batch reused for it.
+    private static class BatchState<S>
+    {
+        final S state;
+        final VectorBatch batch;
+
+        BatchState(S state, VectorBatch batch)
+        {
+            this.state = state;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * Passes every Record matching a Filter to an action, along with its key.
+     * The indexes are used to narrow down the Records that need testing, and
+     * if they can answer the Filter on their own no Records are tested at all.
+     * Records found through an index are visited in key order.
+     * @param filter The Filter to match.
+     * @param action The action to perform on each matching Record.
+     */
+    void forEachMatch(Filter filter, BiConsumer<Integer, Record> action)
+    {
+        RoaringBitmap candidates = findCandidates(filter);
+        boolean needsTest = candidates == null || !filter.isAnsweredByIndexes(this);
+        Predicate<Record> test = needsTest ? filter.compile(this) : record -> true;
+        if (candidates != null)
+        {
+            candidates.forEach(key -> {
+                Record record = table.get(key);
+                if (test.test(record))
+                    action.accept(key, record);
+            });
+            return;
+        }
+        for (Map.Entry<Integer, Record> entry : table.entrySet())
+            if (test.test(entry.getValue()))
+                action.accept(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Gets a stream of the keys of the Records matching a Filter, which can be
+     * split up and processed in parallel. The indexes are used to narrow down
+     * the Records that need testing, as for forEachMatch.
+     * @param  filter   The Filter to match.
+     * @param  parallel Whether the stream should be parallel.
+     * @param  ordered  Whether the keys must be kept in ascending order. If not
+     *                  the stream is unordered, which is cheaper in parallel.
+     * @return          The stream of keys.
+     */
+    IntStream matchingKeys(Filter filter, boolean parallel, boolean ordered)
+    {
+        RoaringBitmap candidates = findCandidates(filter);
+        boolean needsTest = candidates == null || !filter.isAnsweredByIndexes(this);
+        IntStream keys;
+        if (candidates != null)
+            keys = IntStream.of(candidates.toArray());
+        else if (!ordered)
+            keys = table.keySet().stream().mapToInt(Integer::intValue);
+        else if (keyLimit > 2L * table.size() + MIN_DENSE_KEY_LIMIT)
+            // Most keys are unused, so sorting the used ones is cheaper than
+            // checking every possible key.
+            keys = table.keySet().stream().mapToInt(Integer::intValue).sorted();
+        else
+            keys = StreamSupport.intStream(new KeyRangeSpliterator(table, 0, keyLimit), parallel);
+
+        keys = parallel ? keys.parallel() : keys.sequential();
+        if (!ordered)
+            keys = keys.unordered();
+        if (needsTest)
+        {
+            Predicate<Record> test = filter.compile(this);
+            keys = keys.filter(key -> test.test(table.get(key)));
+        }
+        return keys;
+    }
+
+    /**
+     * Finds the smallest keys above a given key of Records matching a test,
+     * for paging through the Table in key order. When most keys are in use
+     * they are checked one by one from the given key. Otherwise the keys in
+     * use are sorted, once for each version of the Table, so that each page
+     * then costs a binary search and the Records it checks.
+     * @param  after The key to start after, or -1 to start from the first key.
+     * @param  test  The test the Records must pass.
+     * @param  limit The most keys to find.
+     * @return       The keys, in ascending order.
+     */
+    int[] keysAfter(int after, Predicate<Record> test, int limit)
+    {
+        int capacity = Math.max(1, Math.min(limit, table.size()));
+        if (keyLimit <= 2L * table.size() + MIN_DENSE_KEY_LIMIT)
+        {
+            // Most keys are used, so checking each key in turn finds them in
+            // order and stops as soon as there are enough.
+            int[] keys = new int[capacity];
+            int count = 0;
+            for (int key = after + 1; key < keyLimit && count < limit; key++)
+            {
+                Record record = table.get(key);
+                if (record != null && test.test(record))
+                    keys[count++] = key;
+            }
+            return Arrays.copyOf(keys, count);
+        }
+        // Otherwise start from the first larger key in the sorted keys.
+        int[] sorted = getSortedKeys();
+        int position = Arrays.binarySearch(sorted, after);
+        position = position >= 0 ? position + 1 : -position - 1;
+        int[] keys = new int[capacity];
+        int count = 0;
+        for (; position < sorted.length && count < limit; position++)
+            if (test.test(table.get(sorted[position])))
+                keys[count++] = sorted[position];
+        return Arrays.copyOf(keys, count);
+    }
+
+    // Gets the keys in use in ascending order, sorting them again only if the
+    // Table has changed since they were last sorted.
+    private synchronized int[] getSortedKeys()
+    {
+        if (sortedKeys == null || sortedKeysModificationCount != modificationCount)
+        {
+            int[] keys = new int[table.size()];
+            int i = 0;
+            for (int key : table.keySet())
+                keys[i++] = key;
+            Arrays.sort(keys);
+            sortedKeys = keys;
+            sortedKeysModificationCount = modificationCount;
+        }
+        return sortedKeys;
+    }
+
+    /**
+     * Gets the Records matching a Filter as rows of text holding just the
+     * chosen columns, testing and building the rows in parallel.
+     * @param  filter     The Filter to match.
+     * @param  projection The names of the columns to include in each row, or
+     *                    null for the key and then every field.
+     * @param  ordered    Whether the rows must be in key order.
+     * @return            The rows.
+     */
+    List<String[]> parallelScan(Filter filter, String[] projection, boolean ordered)
+    {
+        int[] fieldIndices = resolveProjection(projection);
+        return matchingKeys(filter, true, ordered)
+                .mapToObj(key -> project(key, table.get(key), fieldIndices))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Computes Aggregates over the Records matching a Filter, in groups sharing
+     * the same values for the chosen columns. Records are split between
+     * threads, each of which builds its own hash table of groups, and the hash
+     * tables are merged at the end. Without grouping, the threads work through
+     * batches of Records, adding up whole ColumnVectors at once.
+     * @param  filter     The Filter to match.
+     * @param  groupBy    The names of the columns to group by, which may include
+     *                    the key column. If empty, every matching Record forms
+     *                    a single group.
+     * @param  aggregates The Aggregates to compute for each group.
+     * @return            One row per group, ordered by the grouping values,
+     *                    holding the grouping values and then the result of
+     *                    each Aggregate, or null where an Aggregate has no
+     *                    result, such as the average of no values.
+     */
+    List<String[]> aggregate(Filter filter, String[] groupBy, Aggregate[] aggregates)
+    {
+        int[] groupIndices = resolveProjection(groupBy);
+        int[] aggregateIndices = new int[aggregates.length];
+        for (int i = 0; i < aggregates.length; i++)
+        {
+            String fieldName = aggregates[i].getFieldName();
+            aggregateIndices[i] = fieldName == null ? -2 : resolveProjection(new String[] {fieldName})[0];
+        }
+
+        // Without grouping, every Aggregate can be computed a batch at a time.
+        if (groupIndices.length == 0)
+        {
+            String[] row = new String[aggregates.length];
+            Aggregate.Accumulator[] totals = aggregateBatches(filter, aggregates, aggregateIndices);
+            for (int i = 0; i < totals.length; i++)
+                row[i] = totals[i].getResult();
+            return new ArrayList<>(Collections.singletonList(row));
+        }
+
+        HashMap<List<Object>, Aggregate.Accumulator[]> groups = matchingKeys(filter, true, false).collect(
+                HashMap::new,
+                (partial, key) -> {
+                    Record record = table.get(key);
+                    Object[] groupValues = new Object[groupIndices.length];
+                    for (int i = 0; i < groupIndices.length; i++)
+                        groupValues[i] = getValue(key, record, groupIndices[i]);
+                    Aggregate.Accumulator[] accumulators = partial.computeIfAbsent(Arrays.asList(groupValues), g -> newAccumulators(aggregates));
+                    for (int i = 0; i < aggregates.length; i++)
+                        accumulators[i].add(aggregateIndices[i] == -2 ? null : getValue(key, record, aggregateIndices[i]));
+                },
+                (partial, other) -> other.forEach((group, accumulators) -> partial.merge(group, accumulators, (mine, theirs) -> {
+                    for (int i = 0; i < mine.length; i++)
+                        mine[i].merge(theirs[i]);
+                    return mine;
+                })));
+
+        ArrayList<List<Object>> groupValues = new ArrayList<>(groups.keySet());
+        groupValues.sort((a, b) -> {
+            for (int i = 0; i < a.size(); i++)
+            {
+                int comparison = ColumnType.compare(a.get(i), b.get(i));
+                if (comparison != 0)
+                    return comparison;
+            }
+            return 0;
+        });
+        ArrayList<String[]> rows = new ArrayList<>(groups.size());
+        for (List<Object> group : groupValues)
+        {
+            String[] row = new String[group.size() + aggregates.length];
+            for (int i = 0; i < group.size(); i++)
+                row[i] = ColumnType.format(group.get(i));
+            Aggregate.Accumulator[] accumulators = groups.get(group);
+            for (int i = 0; i < accumulators.length; i++)
+                row[group.size() + i] = accumulators[i].getResult();
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the first few Records matching a Filter in the chosen order, without
+     * sorting every matching Record. Each thread keeps a heap of the best
+     * Records it has seen, never holding more than the limit, and the heaps are
+     * merged at the end.
+     * @param  filter     The Filter to match.
+     * @param  sortKeys   The columns to order by. Ties are broken by key.
+     * @param  projection The names of the columns to include in each row, or
+     *                    null for the key and then every field.
+     * @param  limit      The largest number of rows to return.
+     * @return            The rows, in order.
+     */
+    List<String[]> top(Filter filter, SortKey[] sortKeys, String[] projection, int limit)
+    {
+        if (limit < 0)
+            throw new IllegalArgumentException("Cannot return fewer than zero rows");
+        if (limit == 0)
+            return new ArrayList<>();
+        int[] fieldIndices = resolveProjection(projection);
+        SortSpec sortSpec = new SortSpec(this, sortKeys);
+        Comparator<Object[]> order = sortSpec.getOrder();
+
+        // Each heap has the worst of its Records at the top, ready to be
+        // replaced by a better one. The heaps start small and grow as needed,
+        // as there is one for every split of the Records and the limit may be
+        // far larger than the number of Records.
+        PriorityQueue<Object[]> best = matchingKeys(filter, true, false).collect(
+                () -> new PriorityQueue<>(order.reversed()),
+                (heap, key) -> offerBounded(heap, sortSpec.extract(key, table.get(key)), limit, order),
+                (heap, other) -> other.forEach(values -> offerBounded(heap, values, limit, order)));
+
+        ArrayList<Object[]> sorted = new ArrayList<>(best);
+        sorted.sort(order);
+        ArrayList<String[]> rows = new ArrayList<>(sorted.size());
+        for (Object[] values : sorted)
+        {
+            int key = SortSpec.getKey(values);
+            rows.add(project(key, table.get(key), fieldIndices));
+        }
+        return rows;
+    }
+
+    // Adds values to a heap holding at most limit of the smallest values seen.
+    private static void offerBounded(PriorityQueue<Object[]> heap, Object[] values, int limit, Comparator<Object[]> order)
+    {
+        if (heap.size() < limit)
+            heap.add(values);
+        else if (order.compare(values, heap.peek()) < 0)
+        {
+            heap.poll();
+            heap.add(values);
+        }
+    }
+
+    // Computes Aggregates over every Record matching a Filter as one group, a
+    // batch at a time, splitting the batches between threads.
+    private Aggregate.Accumulator[] aggregateBatches(Filter filter, Aggregate[] aggregates, int[] aggregateIndices)
+    {
+        return collectBatches(filter, true, () -> newAccumulators(aggregates),
+                (accumulators, batch) -> {
+                    for (int i = 0; i < aggregates.length; i++)
+                    {
+                        ColumnVector values = aggregateIndices[i] == -2 ? null : batch.getVector(aggregateIndices[i]);
+                        accumulators[i].addBatch(values, batch.getSelection(), batch.getSelectedCount());
+                    }
+                },
+                (accumulators, others) -> {
+                    for (int i = 0; i < accumulators.length; i++)
+                        accumulators[i].merge(others[i]);
+                });
+    }
+
+    // Creates a fresh running state for each Aggregate.
+    private static Aggregate.Accumulator[] newAccumulators(Aggregate[] aggregates)
+    {
+        Aggregate.Accumulator[] accumulators = new Aggregate.Accumulator[aggregates.length];
+        for (int i = 0; i < aggregates.length; i++)
+            accumulators[i] = aggregates[i].newAccumulator();
+        return accumulators;
+    }
+
+    // Gets a stored value by its index as found by resolveProjection.
+    private static Object getValue(int key, Record record, int fieldIndex)
+    {
+        return fieldIndex == -1 ? Integer.valueOf(key) : record.getValue(fieldIndex);
+    }
+
+    /**
+     * Passes each Record matching a Filter to an action as a row of text
+     * holding just the chosen columns. Rows are only built for matching
+     * Records, and the Filter is tested a batch at a time as the Table is
+     * iterated over, using any indexes that help.
+     * @param filter     The Filter to match.
+     * @param projection The names of the columns to include in each row, which
+     *                   may include the key column. If null, the key and then
+     *                   every field are included.
+     * @param action     The action to perform on each row.
+     */
+    void scan(Filter filter, String[] projection, Consumer<String[]> action)
+    {
+        int[] fieldIndices = resolveProjection(projection);
+        forEachBatch(filter, batch -> {
+            for (int i = 0; i < batch.getSelectedCount(); i++)
+            {
+                int position = batch.getSelectedPosition(i);
+                action.accept(project(batch.getKey(position), batch.getRecord(position), fieldIndices));
+            }
+        });
+    }
+
+    /**
+     * Finds where the values of the chosen columns are stored in each Record.
+     * @param  projection The names of the columns, or null for the key and then
+     *                    every field.
+     * @return            The index of each column within Records, with -1
+     *                    standing for the key.
+     */
+    int[] resolveProjection(String[] projection)
+    {
+        if (projection == null)
+        {
+            int[] allFields = new int[getNumFields() + 1];
+            for (int i = 0; i < allFields.length; i++)
+                allFields[i] = i - 1;
+            return allFields;
+        }
+        int[] fieldIndices = new int[projection.length];
+        for (int i = 0; i < projection.length; i++)
+            fieldIndices[i] = KEY_COL_NAME.equals(projection[i]) ? -1 : getFieldIndex(projection[i]);
+        return fieldIndices;
+    }
+
+    /**
+     * Builds a row of text from some of a Record's values.
+     * @param  key          The key of the Record.
+     * @param  record       The Record.
+     * @param  fieldIndices The values to include, as found by resolveProjection.
+     * @return              The row of text.
+     */
+    static String[] project(int key, Record record, int[] fieldIndices)
+    {
+        String[] row = new String[fieldIndices.length];
+        for (int i = 0; i < fieldIndices.length; i++)
+            row[i] = fieldIndices[i] == -1 ? Integer.toString(key) : record.getField(fieldIndices[i]);
+        return row;
+    }
+
+    /**
+     * Finds the keys of every Record whose value for a field lies in the range
+     * from <= value < to. Uses a sorted index on the field if there is one, and
+     * otherwise checks every Record.
+     * @param  fieldName The name of the field.
+     * @param  from      The textual form of the inclusive lower bound, or null
+     *                   for no lower bound.
+     * @param  to        The textual form of the exclusive upper bound, or null
+     *                   for no upper bound.
+     * @return           The keys of the matching Records, ordered by value and
+     *                   then by key.
+     */
+    Stream<Integer> range(String fieldName, String from, String to)
+    {
+        int fieldIndex = getFieldIndex(fieldName);
+        ColumnType type = fieldTypes.get(fieldIndex);
+        Object lower = from == null ? null : type.parse(from);
+        Object upper = to == null ? null : type.parse(to);
+        SortedIndex index = (SortedIndex)getIndex(fieldName, IndexType.SORTED);
+        if (index != null)
+            return index.range(lower, upper);
+
+        return keysInValueOrder(fieldIndex, value ->
+                (lower == null || ColumnType.compare(value, lower) >= 0) &&
+                (upper == null || ColumnType.compare(value, upper) < 0));
+    }
+
+    /**
+     * Finds the keys of every Record whose value for a string field starts with
+     * the given prefix. Uses a sorted index on the field if there is one, and
+     * otherwise checks every Record.
+     * @param  fieldName The name of the field.
+     * @param  prefix    The prefix to look for.
+     * @return           The keys of the matching Records, ordered by value and
+     *                   then by key.
+     */
+    Stream<Integer> prefix(String fieldName, String prefix)
+    {
+        int fieldIndex = getFieldIndex(fieldName);
+        if (fieldTypes.get(fieldIndex) != ColumnType.STRING)
+            throw new IllegalArgumentException("Prefix lookups need a string column, but " + fieldName + " is not");
+        SortedIndex index = (SortedIndex)getIndex(fieldName, IndexType.SORTED);
+        if (index != null)
+            return index.prefix(prefix);
+
+        return keysInValueOrder(fieldIndex, value -> ((String)value).startsWith(prefix));
+    }
+
+    // Checks every Record and gets the keys of those whose value for a field
+    // passes the test, ordered by that value and then by key.
+    private Stream<Integer> keysInValueOrder(int fieldIndex, Predicate<Object> test)
+    {
+        return table.entrySet().stream()
+                .filter(entry -> test.test(entry.getValue().getValue(fieldIndex)))
+                .sorted((a, b) -> {
+                    int byValue = ColumnType.compare(a.getValue().getValue(fieldIndex), b.getValue().getValue(fieldIndex));
+                    return byValue != 0 ? byValue : Integer.compare(a.getKey(), b.getKey());
+                })
+                .map(Map.Entry::getKey);
+    }
+
+    /**
+     * Gets the Record stored under a key as a row of text, with the key first
+     * and then each field in order.
+     * @param  key The key of the Record.
+     * @return     The row of text.
+     */
+    String[] getRow(int key)
+    {
+        Record record = getRecord(key);
+        String[] row = new String[getNumFields() + 1];
+        row[0] = Integer.toString(key);
+        for (int i = 0; i < getNumFields(); i++)
+            row[i + 1] = record.getField(i);
+        return row;
+    }
+
+    /**
+     * Adds a string column to the Table. The default value is added to every
+     * Record. Throws an exception if the index is out of bounds.
      * @param name       The name of the new column.
      * @param defaultVal The default value to be added to every Record for this
      *                   new field.
      */
     void addColumn(int index, String name, String defaultVal)
+    {
+        addColumn(index, name, ColumnType.STRING, defaultVal);
+    }
+
+    /**
+     * Adds a column of the given type to the Table. The default value is added
+     * to every Record. Throws an exception if the index is out of bounds or
+     * the name is already taken.
+     * @param name       The name of the new column.
+     * @param type       The type of the new column.
+     * @param defaultVal The default value to be added to every Record for this
+     *                   new field.
+     */
+    void addColumn(int index, String name, ColumnType type, String defaultVal)
     {
         if (index < 0 || index > fieldNames.size())
             throw new IndexOutOfBoundsException(String.format("Cannot insert new column at index %d", index));
+        if (fieldNames.contains(name) || name.equals(KEY_COL_NAME))
+            throw new IllegalArgumentException("Already a column named " + name);
 
+        Object defaultValue = type.parse(defaultVal);
         fieldNames.add(index, name);
+        fieldTypes.add(index, type);
         for (Record r: table.values())
-            r.addField(index, defaultVal);
-        isDirty = true;
+            r.addField(index, defaultValue);
+        statistics.addColumn(index, type, defaultValue);
+        markDirty();
     }
 
     /**
@@ -298,13 +1779,16 @@ public class Table
      */
     void renameColumn(String oldName, String newName)
     {
-        if (fieldNames.contains(newName))
+        if (fieldNames.contains(newName) || newName.equals(KEY_COL_NAME))
             throw new IllegalArgumentException("Already a column named " + newName);
         int index = fieldNames.indexOf(oldName);
         if (index == -1)
             throw new IndexOutOfBoundsException("No column with name " + oldName);
         fieldNames.set(index, newName);
-        isDirty = true;
+        for (ColumnIndex columnIndex : indexes)
+            if (columnIndex.getColumnName().equals(oldName))
+                columnIndex.setColumnName(newName);
+        markDirty();
     }
 
     /**
@@ -318,9 +1802,16 @@ public class Table
             throw new IllegalArgumentException("No column with name " + name);
 
         fieldNames.remove(index);
+        fieldTypes.remove(index);
         for (Record r: table.values())
             r.deleteField(index);
-        isDirty = true;
+        statistics.deleteColumn(index);
+        // Indexes over the column are no use now it is gone.
+        Iterator<ColumnIndex> indexIterator = indexes.iterator();
+        while (indexIterator.hasNext())
+            if (indexIterator.next().getColumnName().equals(name))
+                indexIterator.remove();
+        markDirty();
     }
 
     /**
@@ -330,7 +1821,7 @@ public class Table
     void rename(String newName)
     {
         name = newName;
-        isDirty = true;
+        markDirty();
     }
 
     /**
@@ -346,14 +1837,63 @@ public class Table
         String[][] tableData = new String[getNumRecords() + 2][];
         // First line stores our version number.
         tableData[0] = new String[]{version};
+        tableData[1] = getColumnNameRow();
+        // Record 0 is row 2.
+        addRecordRows(tableData, 2);
+        return tableData;
+    }
+
+    /**
+     * Builds the matrix of Strings that is saved to file. This is the same as
+     * the table data, except the names of the fields are followed by a line
+     * giving their types, a line defining the indexes and a line of
+     * statistics.
+     * @return The file data.
+     */
+    private String[][] getFileData()
+    {
+        String[][] fileData = new String[getNumRecords() + 5][];
+        fileData[0] = new String[]{version};
+        fileData[1] = getColumnNameRow();
+        // The key column is always an int.
+        ArrayList<String> colTypes = new ArrayList<>();
+        colTypes.add(ColumnType.INT.getTypeName());
+        for (ColumnType type : fieldTypes)
+            colTypes.add(type.getTypeName());
+        fileData[2] = colTypes.toArray(new String[0]);
+        // The index definitions are given as pairs of type and column name
+        // after a label, so that the line is never empty.
+        ArrayList<String> indexDefinitions = new ArrayList<>();
+        indexDefinitions.add(INDEXES_LABEL);
+        for (ColumnIndex index : indexes)
+        {
+            indexDefinitions.add(index.getType().getTypeName());
+            indexDefinitions.add(index.getColumnName());
+        }
+        fileData[3] = indexDefinitions.toArray(new String[0]);
+        ArrayList<String> statisticsEntries = new ArrayList<>();
+        statisticsEntries.add(STATISTICS_LABEL);
+        statistics.writeTo(statisticsEntries);
+        fileData[4] = statisticsEntries.toArray(new String[0]);
+        // Record 0 is row 5.
+        addRecordRows(fileData, 5);
+        return fileData;
+    }
+
+    // Gets the names of all the columns, including the key column.
+    private String[] getColumnNameRow()
+    {
         // Need to have the first col name be the key col name.
         ArrayList<String> colNames = new ArrayList<>();
         colNames.add(KEY_COL_NAME);
         colNames.addAll(fieldNames);
-        tableData[1] = colNames.toArray(new String[0]);
+        return colNames.toArray(new String[0]);
+    }
 
-        // Record 0 is row 2.
-        int counter = 2;
+    // Fills in one row of data per Record, starting from the given row.
+    private void addRecordRows(String[][] tableData, int firstRow)
+    {
+        int counter = firstRow;
         ArrayList<String> fields;
         for (Map.Entry<Integer, Record> entry : table.entrySet())
         {
@@ -368,7 +1908,6 @@ public class Table
             }
             tableData[counter++] = fields.toArray(new String[0]);
         }
-        return tableData;
     }
 
     /**
@@ -388,7 +1927,7 @@ public class Table
     {
         if (isDirty)
         {
-            TableFileReadWriter.writeToFile(name, getTableData(), parentFolderPath);
+            TableFileReadWriter.writeToFile(name, getFileData(), parentFolderPath);
             isDirty = false;
         }
     }
@@ -408,6 +1947,7 @@ public class Table
         // Tables are equal only if they share the same field names.
         String thatTableFields = thatTable.getFieldNames();
         if (!getFieldNames().equals(thatTableFields)) return false;
+        if (!fieldTypes.equals(thatTable.fieldTypes)) return false;
         int numRecords = getNumRecords();
         if (numRecords != thatTable.getNumRecords()) return false;
 
@@ -0,0 +1,204 @@
+package rjmdatabase.dbcomponents;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the Records of a Table matching a Filter to a file, one row at a
+ * time in key order. Each row is written to a buffer over the file's channel
+ * as soon as it is read, so only the buffer and one row are held at once,
+ * however large the Table.
+ * @author Rjmcf
+ */
+class TableExporter
+{
+    // The number of characters buffered before they are written to the file.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Table table;
+    private final ExportFormat format;
+    private final String[] columnNames;
+    // Where each column is stored in Records, with -1 standing for the key.
+    private final int[] fieldIndices;
+    // The type of each column, with null standing for the key.
+    private final ColumnType[] types;
+
+    /**
+     * Prepares to export some of the columns of a Table.
+     * @param table      The Table.
+     * @param format     The format to write.
+     * @param projection The names of the columns to write, which may include
+     *                   the key column. If null, the key and then every field
+     *                   are written.
+     */
+    TableExporter(Table table, ExportFormat format, String[] projection)
+    {
+        this.table = table;
+        this.format = format;
+        fieldIndices = table.resolveProjection(projection);
+        String[] fieldNames = table.getFieldNames().split(", ");
+        columnNames = new String[fieldIndices.length];
+        types = new ColumnType[fieldIndices.length];
+        for (int i = 0; i < fieldIndices.length; i++)
+        {
+            boolean isKey = fieldIndices[i] == -1;
+            columnNames[i] = isKey ? Table.KEY_COL_NAME : fieldNames[fieldIndices[i]];
+            types[i] = isKey ? null : table.getFieldType(fieldIndices[i]);
+        }
+    }
+
+    /**
+     * Writes the Records matching a Filter to a file, replacing anything the
+     * file held before.
+     * @param  filter      The Filter to match.
+     * @param  path        The path of the file.
+     * @return             The number of Records written.
+     * @throws IOException If the file could not be written.
+     */
+    long export(Filter filter, Path path) throws IOException
+    {
+        long[] numRows = new long[1];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE))
+        {
+            if (format == ExportFormat.CSV)
+                writeCsvRow(out, columnNames);
+            StringBuilder row = new StringBuilder();
+            String[] values = new String[fieldIndices.length];
+            table.matchingKeys(filter, false, true).forEach(key -> {
+                Record record = table.getRecord(key);
+                row.setLength(0);
+                try
+                {
+                    if (format == ExportFormat.CSV)
+                    {
+                        for (int i = 0; i < values.length; i++)
+                            values[i] = fieldIndices[i] == -1 ? Integer.toString(key) : record.getField(fieldIndices[i]);
+                        writeCsvRow(out, values);
+                    }
+                    else
+                        writeJsonRow(out, row, key, record);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                numRows[0]++;
+            });
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        return numRows[0];
+    }
+
+    // Writes a row of comma separated values, quoting those that need it.
+    private static void writeCsvRow(Writer out, String[] values) throws IOException
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+                out.write(',');
+            String value = values[i];
+            if (needsQuotes(value))
+            {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            }
+            else
+                out.write(value);
+        }
+        out.write("\r\n");
+    }
+
+    private static boolean needsQuotes(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r')
+                return true;
+        }
+        return false;
+    }
+
+    // Writes a Record as a JSON object on one line.
+    private void writeJsonRow(Writer out, StringBuilder row, int key, Record record) throws IOException
+    {
+        row.append('{');
+        for (int i = 0; i < fieldIndices.length; i++)
+        {
+            if (i > 0)
+                row.append(',');
+            appendJsonString(row, columnNames[i]);
+            row.append(':');
+            if (fieldIndices[i] == -1)
+            {
+                row.append(key);
+                continue;
+            }
+            Object value = record.getValue(fieldIndices[i]);
+            switch (types[i])
+            {
+                case DOUBLE:
+                    // JSON has no way to write infinities or NaN as numbers.
+                    if (Double.isFinite((Double)value))
+                        row.append(value);
+                    else
+                        appendJsonString(row, value.toString());
+                    break;
+                case INT:
+                case LONG:
+                case BOOLEAN:
+                    row.append(value);
+                    break;
+                default:
+                    appendJsonString(row, ColumnType.format(value));
+            }
+        }
+        row.append("}\n");
+        out.append(row);
+    }
+
+    private static void appendJsonString(StringBuilder row, String text)
+    {
+        row.append('"');
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    row.append("\\\"");
+                    break;
+                case '\\':
+                    row.append("\\\\");
+                    break;
+                case '\n':
+                    row.append("\\n");
+                    break;
+                case '\r':
+                    row.append("\\r");
+                    break;
+                case '\t':
+                    row.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        row.append(String.format("\\u%04x", (int)c));
+                    else
+                        row.append(c);
+            }
+        }
+        row.append('"');
+    }
+}
@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.StringJoiner;
 
 /**
@@ -18,6 +19,13 @@ public class TableFileReadWriter
     private static final String FIELD_SEPARATOR = String.valueOf((char)0x1F);
     // The extension added to filenames.
     private static final String FILE_EXT = ".rjmTable";
+    // The file holding the definitions of the materialized views. Its name
+    // starts with a dot so it is never mistaken for a Table.
+    private static final String VIEWS_FILE_NAME = ".rjmViews";
+    // Stands for an empty word in the views file. The hex form of an empty
+    // String is the same as that of "\0", so empty words need their own form,
+    // and this is never part of any hex.
+    private static final String EMPTY_WORD = "-";
 
     /**
      * Gets the name of the Table from the supplied file name.
@@ -100,6 +108,55 @@ public class TableFileReadWriter
         return Table.createTableFromData(name, tableData);
     }
 
+    /**
+     * Writes the definitions of the materialized views of a database, or
+     * deletes the file if there are none.
+     * @param  definitions   The definition of each view, as a list of words.
+     * @param  parentDirPath The folder of the database.
+     * @throws IOException   if an error occurred during writing.
+     */
+    static void writeViewDefinitions(List<String[]> definitions, String parentDirPath) throws IOException
+    {
+        File viewsFile = new File(parentDirPath + VIEWS_FILE_NAME);
+        if (definitions.isEmpty())
+        {
+            FileUtil.deleteFileIfExists(viewsFile);
+            return;
+        }
+        String[] lines = new String[definitions.size()];
+        for (int i = 0; i < lines.length; i++)
+        {
+            StringJoiner joiner = new StringJoiner(FIELD_SEPARATOR);
+            for (String word : definitions.get(i))
+                joiner.add(word.isEmpty() ? EMPTY_WORD : convertStringToHex(word));
+            lines[i] = joiner.toString();
+        }
+        FileUtil.writeFile(viewsFile.getPath(), lines);
+    }
+
+    /**
+     * Reads the definitions of the materialized views of a database.
+     * @param  parentDirPath The folder of the database.
+     * @return               The definition of each view, which is empty if
+     *                       there are no views.
+     * @throws IOException   If an io exception occurred.
+     */
+    static List<String[]> readViewDefinitions(String parentDirPath) throws IOException
+    {
+        List<String[]> definitions = new ArrayList<>();
+        File viewsFile = new File(parentDirPath + VIEWS_FILE_NAME);
+        if (!viewsFile.exists())
+            return definitions;
+        for (String line : FileUtil.readFile(viewsFile.getPath()))
+        {
+            String[] words = line.split(FIELD_SEPARATOR);
+            for (int i = 0; i < words.length; i++)
+                words[i] = words[i].equals(EMPTY_WORD) ? "" : convertHexToString(words[i]);
+            definitions.add(words);
+        }
+        return definitions;
+    }
+
     private static String convertHexToString(String h)
     {
         // TODO update Java and use HexFormat.of().parseHex(s)
@@ -2,6 +2,7 @@ package rjmdatabase.dbcomponents;
 
 import java.io.PrintStream;
 import java.util.Collections;
+import java.util.List;
 import java.util.StringJoiner;
 
 /**
@@ -136,6 +137,30 @@ public class TablePrinter
         out.println();
     }
 
+    /**
+     * Prints rows returned by a query to the console, in the same way as a
+     * Table. Missing values are printed as blanks.
+     * @param title       The title to print above the rows.
+     * @param columnNames The names of the columns.
+     * @param rows        The rows to print.
+     */
+    public static void printRows(String title, String[] columnNames, List<String[]> rows)
+    {
+        // Leave the first line empty, in place of the version number.
+        String[][] tableData = new String[rows.size() + 2][];
+        tableData[0] = new String[0];
+        tableData[1] = columnNames;
+        for (int row = 0; row < rows.size(); row++)
+        {
+            String[] values = rows.get(row).clone();
+            for (int col = 0; col < values.length; col++)
+                if (values[col] == null)
+                    values[col] = "";
+            tableData[row + 2] = values;
+        }
+        printTable(title, tableData);
+    }
+
     // Gets the StringJoiner used to build up lines to print.
     private static StringJoiner getLineStringJoiner()
     {
@@ -0,0 +1,204 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes the Records of a Table, for estimating how many Records an
+ * operation will touch: the number of Records, and ColumnStatistics for each
+ * field. Statistics are gathered by analysing the Table, and kept roughly up to
+ * date as Records change. Once many Records have changed since the last
+ * analysis the statistics are considered stale, and are gathered again the
+ * next time they are needed.
+ * @author Rjmcf
+ */
+public class TableStatistics
+{
+    // The fewest changes after which statistics are considered stale.
+    private static final long MIN_CHANGES_BEFORE_STALE = 100;
+    // The fraction of the Records analysed that must change before statistics
+    // are considered stale, if that is more than the minimum.
+    private static final double STALE_FRACTION = 0.2;
+
+    private long rowCount;
+    // The number of Records when the statistics were last gathered.
+    private long analyzedRowCount;
+    // The number of Records added, removed or changed since then.
+    private long changesSinceAnalyze;
+    // The statistics of each field, in the same order as the fields.
+    private final ArrayList<ColumnStatistics> columns;
+
+    private TableStatistics(long rowCount, long analyzedRowCount, long changesSinceAnalyze, ArrayList<ColumnStatistics> columns)
+    {
+        this.rowCount = rowCount;
+        this.analyzedRowCount = analyzedRowCount;
+        this.changesSinceAnalyze = changesSinceAnalyze;
+        this.columns = columns;
+    }
+
+    /**
+     * Builds statistics from every Record of a Table.
+     * @param  types   The types of the fields.
+     * @param  records The Records.
+     * @return         The statistics.
+     */
+    static TableStatistics analyze(List<ColumnType> types, Iterable<Record> records)
+    {
+        ArrayList<List<Object>> values = new ArrayList<>();
+        for (int i = 0; i < types.size(); i++)
+            values.add(new ArrayList<>());
+        long rowCount = 0;
+        for (Record record : records)
+        {
+            rowCount++;
+            for (int i = 0; i < types.size(); i++)
+                values.get(i).add(record.getValue(i));
+        }
+        ArrayList<ColumnStatistics> columns = new ArrayList<>();
+        for (int i = 0; i < types.size(); i++)
+            columns.add(ColumnStatistics.analyze(types.get(i), values.get(i)));
+        return new TableStatistics(rowCount, rowCount, 0, columns);
+    }
+
+    /**
+     * Counts a Record newly added to the Table.
+     * @param record The Record.
+     */
+    void add(Record record)
+    {
+        rowCount++;
+        changesSinceAnalyze++;
+        for (int i = 0; i < columns.size(); i++)
+            columns.get(i).add(record.getValue(i));
+    }
+
+    /**
+     * Counts a Record removed from the Table.
+     * @param record The Record.
+     */
+    void remove(Record record)
+    {
+        rowCount--;
+        changesSinceAnalyze++;
+        for (int i = 0; i < columns.size(); i++)
+            columns.get(i).remove(record.getValue(i));
+    }
+
+    /**
+     * Counts a change to the value of one field of a Record.
+     * @param fieldIndex The index of the field.
+     * @param oldValue   The value before the change.
+     * @param newValue   The value after the change.
+     */
+    void update(int fieldIndex, Object oldValue, Object newValue)
+    {
+        changesSinceAnalyze++;
+        columns.get(fieldIndex).remove(oldValue);
+        columns.get(fieldIndex).add(newValue);
+    }
+
+    /**
+     * Adds statistics for a new field, holding the same value in every Record.
+     * @param fieldIndex The index of the new field.
+     * @param type       The type of the field.
+     * @param value      The value of the field in every Record.
+     */
+    void addColumn(int fieldIndex, ColumnType type, Object value)
+    {
+        ArrayList<Object> values = new ArrayList<>();
+        for (long i = 0; i < rowCount; i++)
+            values.add(value);
+        columns.add(fieldIndex, ColumnStatistics.analyze(type, values));
+    }
+
+    /**
+     * Removes the statistics of a deleted field.
+     * @param fieldIndex The index of the field.
+     */
+    void deleteColumn(int fieldIndex)
+    {
+        columns.remove(fieldIndex);
+    }
+
+    /**
+     * Gets whether enough Records have changed since the statistics were
+     * gathered that they should be gathered again.
+     * @return Whether the statistics are stale.
+     */
+    boolean isStale()
+    {
+        return changesSinceAnalyze >= Math.max(MIN_CHANGES_BEFORE_STALE, analyzedRowCount * STALE_FRACTION);
+    }
+
+    /**
+     * Gets a copy of these statistics, which won't change with the Table.
+     * @return The copy.
+     */
+    TableStatistics copy()
+    {
+        ArrayList<ColumnStatistics> columnCopies = new ArrayList<>();
+        for (ColumnStatistics column : columns)
+            columnCopies.add(column.copy());
+        return new TableStatistics(rowCount, analyzedRowCount, changesSinceAnalyze, columnCopies);
+    }
+
+    /**
+     * Gets the number of Records in the Table.
+     * @return The number of Records.
+     */
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * Gets the number of Records added, removed or changed since the
+     * statistics were last gathered.
+     * @return The number of changes.
+     */
+    public long getChangesSinceAnalyze()
+    {
+        return changesSinceAnalyze;
+    }
+
+    /**
+     * Gets the statistics of a field.
+     * @param  fieldIndex The index of the field.
+     * @return            The statistics.
+     */
+    ColumnStatistics getColumn(int fieldIndex)
+    {
+        return columns.get(fieldIndex);
+    }
+
+    /**
+     * Adds these statistics to a line of a table file.
+     * @param entries The entries of the line.
+     */
+    void writeTo(List<String> entries)
+    {
+        entries.add(Long.toString(analyzedRowCount));
+        entries.add(Long.toString(changesSinceAnalyze));
+        for (ColumnStatistics column : columns)
+            column.writeTo(entries);
+    }
+
+    /**
+     * Reads statistics written by writeTo from a line of a table file.
+     * @param  types    The types of the fields.
+     * @param  rowCount The number of Records in the Table.
+     * @param  entries  The entries of the line.
+     * @param  position The position of the first entry to read.
+     * @return          The statistics.
+     */
+    static TableStatistics readFrom(List<ColumnType> types, long rowCount, String[] entries, int position)
+    {
+        int[] next = new int[]{position};
+        long analyzedRowCount = Long.parseLong(entries[next[0]++]);
+        long changesSinceAnalyze = Long.parseLong(entries[next[0]++]);
+        ArrayList<ColumnStatistics> columns = new ArrayList<>();
+        for (ColumnType type : types)
+            columns.add(ColumnStatistics.readFrom(type, entries, next));
+        return new TableStatistics(rowCount, analyzedRowCount, changesSinceAnalyze, columns);
+    }
+}
@@ -0,0 +1,193 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over a free text column. The text of each field is split
+ * into lower case words, and each word is mapped to the keys of the Records
+ * containing it along with the positions it appears at, so that searches only
+ * look at the Records containing the words searched for.
+ * @author Rjmcf
+ */
+class TextIndex extends ColumnIndex
+{
+    // The Records containing each word, ordered by word so that prefixes can
+    // be searched.
+    private TreeMap<String, Postings> postingsByWord;
+
+    TextIndex(String columnName)
+    {
+        super(columnName);
+        postingsByWord = new TreeMap<>();
+    }
+
+    /**
+     * Splits text into lower case words. Anything other than a letter or digit
+     * separates words.
+     * @param  text The text to split.
+     * @return      The words in the order they appear.
+     */
+    static List<String> tokenize(String text)
+    {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+            if (!word.isEmpty())
+                words.add(word);
+        return words;
+    }
+
+    /**
+     * Gets whether a list of words contains a phrase, which is itself a list of
+     * words, as consecutive words.
+     * @param  words  The words to search.
+     * @param  phrase The words of the phrase.
+     * @return        Whether the phrase appears.
+     */
+    static boolean containsPhrase(List<String> words, List<String> phrase)
+    {
+        if (phrase.isEmpty())
+            return true;
+        for (int start = 0; start + phrase.size() <= words.size(); start++)
+            if (words.subList(start, start + phrase.size()).equals(phrase))
+                return true;
+        return false;
+    }
+
+    @Override
+    IndexType getType()
+    {
+        return IndexType.TEXT;
+    }
+
+    @Override
+    void add(int key, Object value)
+    {
+        // Collect the positions of each word before storing them, so that each
+        // word's positions are stored once and already sorted.
+        HashMap<String, List<Integer>> positionsByWord = new HashMap<>();
+        List<String> words = tokenize((String)value);
+        for (int position = 0; position < words.size(); position++)
+            positionsByWord.computeIfAbsent(words.get(position), w -> new ArrayList<>()).add(position);
+
+        for (Map.Entry<String, List<Integer>> entry : positionsByWord.entrySet())
+        {
+            int[] positions = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            postingsByWord.computeIfAbsent(entry.getKey(), w -> new Postings()).add(key, positions);
+        }
+    }
+
+    @Override
+    void remove(int key, Object value)
+    {
+        for (String word : tokenize((String)value))
+        {
+            Postings postings = postingsByWord.get(word);
+            if (postings == null)
+                continue;
+            postings.remove(key);
+            if (postings.keys.isEmpty())
+                postingsByWord.remove(word);
+        }
+    }
+
+    /**
+     * Gets the keys of the Records containing a word.
+     * @param  word The word, in any case.
+     * @return      The keys, which must not be changed.
+     */
+    RoaringBitmap searchWord(String word)
+    {
+        Postings postings = postingsByWord.get(word.toLowerCase(Locale.ROOT));
+        return postings == null ? new RoaringBitmap() : postings.keys;
+    }
+
+    /**
+     * Gets the keys of the Records containing a word starting with the prefix.
+     * @param  prefix The prefix, in any case.
+     * @return        The keys.
+     */
+    RoaringBitmap searchPrefix(String prefix)
+    {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        RoaringBitmap keys = new RoaringBitmap();
+        // Every word starting with the prefix sorts at or after it, and they all
+        // come before any word that doesn't.
+        for (Map.Entry<String, Postings> entry : postingsByWord.tailMap(lowerPrefix, true).entrySet())
+        {
+            if (!entry.getKey().startsWith(lowerPrefix))
+                break;
+            keys = keys.or(entry.getValue().keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the keys of the Records containing a phrase as consecutive words.
+     * @param  phrase The phrase to search for.
+     * @return        The keys.
+     */
+    RoaringBitmap searchPhrase(String phrase)
+    {
+        List<String> words = tokenize(phrase);
+        if (words.isEmpty())
+            return new RoaringBitmap();
+        // Only Records containing every word can contain the phrase.
+        List<Postings> wordPostings = new ArrayList<>();
+        RoaringBitmap candidates = null;
+        for (String word : words)
+        {
+            Postings postings = postingsByWord.get(word);
+            if (postings == null)
+                return new RoaringBitmap();
+            wordPostings.add(postings);
+            candidates = candidates == null ? postings.keys : candidates.and(postings.keys);
+        }
+
+        RoaringBitmap matches = new RoaringBitmap();
+        candidates.forEach(key -> {
+            // The phrase appears if the first word is at some position p and the
+            // ith word is at position p + i.
+            for (int start : wordPostings.get(0).positionsByKey.get(key))
+            {
+                boolean allFollow = true;
+                for (int i = 1; i < wordPostings.size() && allFollow; i++)
+                    allFollow = Arrays.binarySearch(wordPostings.get(i).positionsByKey.get(key), start + i) >= 0;
+                if (allFollow)
+                {
+                    matches.add(key);
+                    return;
+                }
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * The Records containing a particular word, and where they contain it.
+     */
+    private static class Postings
+    {
+        // The keys of the Records containing the word.
+        RoaringBitmap keys = new RoaringBitmap();
+        // The sorted positions of the word within each Record's field.
+        HashMap<Integer, int[]> positionsByKey = new HashMap<>();
+
+        void add(int key, int[] positions)
+        {
+            keys.add(key);
+            positionsByKey.put(key, positions);
+        }
+
+        void remove(int key)
+        {
+            keys.remove(key);
+            positionsByKey.remove(key);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Arrays;
+
+/**
+ * A batch of up to CAPACITY Records from one Table, processed together. The
+ * values of a field are only gathered into a ColumnVector when something asks
+ * for that field, so fields that are never tested or read cost nothing. A
+ * selection vector holds the positions in the batch of the Records that are
+ * still wanted. Filters narrow the selection down rather than copying Records
+ * around, and only the selected positions are read afterwards.
+ *
+ * Batches are reused, so a batch must not be kept after the action it was
+ * given to returns.
+ * @author Rjmcf
+ */
+public class VectorBatch
+{
+    /**
+     * The largest number of Records in a batch.
+     */
+    public static final int CAPACITY = 1024;
+
+    private final Table table;
+    private final int[] keys;
+    private final Record[] records;
+    // The number of Records in the batch.
+    private int size;
+    // The vector of each field, by field index, or null if never needed.
+    private final ColumnVector[] columns;
+    // Whether each field's vector holds the values of the Records now in the
+    // batch.
+    private final boolean[] gathered;
+    private final ColumnVector keyColumn;
+    // The positions of the selected Records, in ascending order.
+    private final int[] selection;
+    private int selectedCount;
+
+    /**
+     * Creates an empty batch for Records of a Table.
+     * @param table The Table.
+     */
+    VectorBatch(Table table)
+    {
+        this.table = table;
+        keys = new int[CAPACITY];
+        records = new Record[CAPACITY];
+        columns = new ColumnVector[table.getNumFields()];
+        gathered = new boolean[columns.length];
+        keyColumn = new ColumnVector(keys);
+        selection = new int[CAPACITY];
+    }
+
+    /**
+     * Empties the batch, ready to be filled again.
+     */
+    void clear()
+    {
+        size = 0;
+        selectedCount = 0;
+        // The vectors are kept to be filled again when next needed.
+        Arrays.fill(gathered, false);
+    }
+
+    /**
+     * Adds a Record to the batch.
+     * @param key    The key of the Record.
+     * @param record The Record.
+     */
+    void add(int key, Record record)
+    {
+        keys[size] = key;
+        records[size] = record;
+        size++;
+    }
+
+    /**
+     * Selects every Record in the batch.
+     */
+    void selectAll()
+    {
+        for (int i = 0; i < size; i++)
+            selection[i] = i;
+        selectedCount = size;
+    }
+
+    /**
+     * Gets the Record at a position in the batch.
+     * @param  position The position.
+     * @return          The Record.
+     */
+    Record getRecord(int position)
+    {
+        return records[position];
+    }
+
+    /**
+     * Gets the values of a field for every Record in the batch, gathering them
+     * if they haven't been already.
+     * @param  fieldIndex The index of the field, or -1 for the keys.
+     * @return            The vector of values.
+     */
+    ColumnVector getVector(int fieldIndex)
+    {
+        if (fieldIndex == -1)
+            return keyColumn;
+        if (!gathered[fieldIndex])
+        {
+            if (columns[fieldIndex] == null)
+                columns[fieldIndex] = new ColumnVector(table.getFieldType(fieldIndex), CAPACITY);
+            columns[fieldIndex].load(records, size, fieldIndex);
+            gathered[fieldIndex] = true;
+        }
+        return columns[fieldIndex];
+    }
+
+    /**
+     * Gets the selection vector itself, so that it can be narrowed in place.
+     * @return The positions of the selected Records.
+     */
+    int[] getSelection()
+    {
+        return selection;
+    }
+
+    /**
+     * Sets how many positions at the front of the selection vector are
+     * selected.
+     * @param count The number of selected Records.
+     */
+    void setSelectedCount(int count)
+    {
+        selectedCount = count;
+    }
+
+    /**
+     * Gets the number of Records in the batch that are selected.
+     * @return The number of selected Records.
+     */
+    public int getSelectedCount()
+    {
+        return selectedCount;
+    }
+
+    /**
+     * Gets the position in the batch of a selected Record.
+     * @param  i Which of the selected Records to find, counting from 0.
+     * @return   The position of the Record, for reading from ColumnVectors.
+     */
+    public int getSelectedPosition(int i)
+    {
+        if (i < 0 || i >= selectedCount)
+            throw new IndexOutOfBoundsException(String.format("Only %d Records are selected", selectedCount));
+        return selection[i];
+    }
+
+    /**
+     * Gets the key of the Record at a position in the batch.
+     * @param  position The position.
+     * @return          The key.
+     */
+    public int getKey(int position)
+    {
+        return keys[position];
+    }
+
+    /**
+     * Gets the values of a column for every Record in the batch.
+     * @param  fieldName The name of the column, which may be the key column.
+     * @return           The vector of values, indexed by position.
+     */
+    public ColumnVector getColumn(String fieldName)
+    {
+        return getVector(Table.KEY_COL_NAME.equals(fieldName) ? -1 : table.getFieldIndex(fieldName));
+    }
+}
@@ -0,0 +1,219 @@
+package rjmdatabase.dbcomponents;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BatchKernels that test and add up numbers a whole SIMD register at a time,
+ * using the incubating Vector API. Registers are only worth filling when
+ * every position in the batch is selected, so that values can be loaded
+ * straight from the ColumnVector; gathering values through a selection is
+ * slower than testing them one at a time. Tests compare a whole register at
+ * once to find those where every value passes or every value fails, which
+ * is common with sorted or clustered values such as the times of metrics.
+ * Without an instruction to pick out the lanes that passed, registers where
+ * only some values pass are tested again one value at a time. Selections with
+ * gaps, whatever doesn't fill a register, and any kernel with nothing to gain
+ * from the Vector API are left to the scalar kernels.
+ *
+ * This class needs the jdk.incubator.vector module both to compile and to
+ * run, so it is only ever loaded by name, from BatchKernels.
+ * @author Rjmcf
+ */
+class VectorBatchKernels extends ScalarBatchKernels
+{
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Ints in as many lanes as LONGS has, so that they can be widened to longs.
+    private static final VectorSpecies<Integer> NARROW_INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+    // The bits Double.doubleToLongBits gives every NaN.
+    private static final long NAN_BITS = Double.doubleToLongBits(Double.NaN);
+
+    /**
+     * Creates the kernels.
+     */
+    VectorBatchKernels() {}
+
+    @Override
+    public String getName()
+    {
+        return "vector (" + INTS.vectorBitSize() + " bit)";
+    }
+
+    @Override
+    public int selectInRange(int[] values, long lo, long hi, boolean negate, int[] selection, int count)
+    {
+        if (!isDense(selection, count))
+            return super.selectInRange(values, lo, hi, negate, selection, count);
+        if (lo > hi || lo > Integer.MAX_VALUE || hi < Integer.MIN_VALUE)
+            return negate ? count : 0;
+        int loValue = (int)Math.max(lo, Integer.MIN_VALUE);
+        int hiValue = (int)Math.min(hi, Integer.MAX_VALUE);
+        int bound = INTS.loopBound(count);
+        int kept = 0;
+        for (int i = 0; i < bound; i += INTS.length())
+        {
+            IntVector vector = IntVector.fromArray(INTS, values, i);
+            VectorMask<Integer> inRange = vector.compare(VectorOperators.GE, loValue).and(vector.compare(VectorOperators.LE, hiValue));
+            VectorMask<Integer> passed = negate ? inRange.not() : inRange;
+            if (passed.allTrue())
+                kept = keepAll(i, INTS.length(), selection, kept);
+            else if (passed.anyTrue())
+                kept = select(values, loValue, hiValue, negate, i, i + INTS.length(), selection, kept);
+        }
+        return select(values, loValue, hiValue, negate, bound, count, selection, kept);
+    }
+
+    @Override
+    public int selectInRange(long[] values, long lo, long hi, boolean negate, int[] selection, int count)
+    {
+        if (!isDense(selection, count))
+            return super.selectInRange(values, lo, hi, negate, selection, count);
+        int bound = LONGS.loopBound(count);
+        int kept = 0;
+        for (int i = 0; i < bound; i += LONGS.length())
+        {
+            VectorMask<Long> passed = inRange(LongVector.fromArray(LONGS, values, i), lo, hi, negate);
+            if (passed.allTrue())
+                kept = keepAll(i, LONGS.length(), selection, kept);
+            else if (passed.anyTrue())
+                kept = select(values, lo, hi, negate, i, i + LONGS.length(), selection, kept);
+        }
+        return select(values, lo, hi, negate, bound, count, selection, kept);
+    }
+
+    @Override
+    public int selectInRange(double[] values, long lo, long hi, boolean negate, int[] selection, int count)
+    {
+        if (!isDense(selection, count))
+            return super.selectInRange(values, lo, hi, negate, selection, count);
+        int bound = DOUBLES.loopBound(count);
+        int kept = 0;
+        for (int i = 0; i < bound; i += DOUBLES.length())
+        {
+            DoubleVector vector = DoubleVector.fromArray(DOUBLES, values, i);
+            // The raw bits of a NaN may be any of many, so they are all
+            // replaced by the one sortableBits uses before flipping the
+            // negative values around.
+            LongVector bits = vector.viewAsIntegralLanes().blend(NAN_BITS, vector.test(VectorOperators.IS_NAN).cast(LONGS));
+            LongVector sortable = bits.lanewise(VectorOperators.XOR,
+                    bits.lanewise(VectorOperators.ASHR, 63).lanewise(VectorOperators.AND, Long.MAX_VALUE));
+            VectorMask<Long> passed = inRange(sortable, lo, hi, negate);
+            if (passed.allTrue())
+                kept = keepAll(i, DOUBLES.length(), selection, kept);
+            else if (passed.anyTrue())
+                kept = select(values, lo, hi, negate, i, i + DOUBLES.length(), selection, kept);
+        }
+        return select(values, lo, hi, negate, bound, count, selection, kept);
+    }
+
+    @Override
+    public long sum(int[] values, int[] selection, int count)
+    {
+        if (!isDense(selection, count))
+            return super.sum(values, selection, count);
+        // Ints are widened to longs before being added, so that the total
+        // can't overflow any sooner than the scalar total does.
+        int bound = NARROW_INTS.loopBound(count);
+        LongVector totals = LongVector.zero(LONGS);
+        for (int i = 0; i < bound; i += NARROW_INTS.length())
+        {
+            IntVector vector = IntVector.fromArray(NARROW_INTS, values, i);
+            totals = totals.add((LongVector)vector.convertShape(VectorOperators.I2L, LONGS, 0));
+        }
+        long total = totals.reduceLanes(VectorOperators.ADD);
+        for (int i = bound; i < count; i++)
+            total += values[i];
+        return total;
+    }
+
+    @Override
+    public long sum(long[] values, int[] selection, int count)
+    {
+        if (!isDense(selection, count))
+            return super.sum(values, selection, count);
+        // Adding longs wraps around the same way in any order.
+        int bound = LONGS.loopBound(count);
+        LongVector totals = LongVector.zero(LONGS);
+        for (int i = 0; i < bound; i += LONGS.length())
+            totals = totals.add(LongVector.fromArray(LONGS, values, i));
+        long total = totals.reduceLanes(VectorOperators.ADD);
+        for (int i = bound; i < count; i++)
+            total += values[i];
+        return total;
+    }
+
+    // Doubles are still added up by the scalar kernel, since adding them in
+    // lanes would round differently depending on the width of the registers.
+
+    // Gets whether a selection holds every position from 0 to count - 1, in
+    // which case values can be loaded in order and the position of each value
+    // is its index.
+    private static boolean isDense(int[] selection, int count)
+    {
+        // The selection is ascending, so this is only true if every position
+        // before the last is there too.
+        return count > 0 && selection[count - 1] == count - 1;
+    }
+
+    // Gets which lanes of a vector of longs lie in the range lo <= value <= hi,
+    // or outside it if negated.
+    private static VectorMask<Long> inRange(LongVector vector, long lo, long hi, boolean negate)
+    {
+        VectorMask<Long> inRange = vector.compare(VectorOperators.GE, lo).and(vector.compare(VectorOperators.LE, hi));
+        return negate ? inRange.not() : inRange;
+    }
+
+    // Writes the positions from start to start + numLanes - 1 of a dense
+    // selection after the kept positions so far, and returns the new number
+    // kept.
+    private static int keepAll(int start, int numLanes, int[] selection, int kept)
+    {
+        for (int lane = 0; lane < numLanes; lane++)
+            selection[kept + lane] = start + lane;
+        return kept + numLanes;
+    }
+
+    // Tests the positions from start to end - 1 of a dense selection one at a
+    // time, as the scalar kernels do, writing those that pass after the kept
+    // positions so far, and returns the new number kept.
+    private static int select(int[] values, int lo, int hi, boolean negate, int start, int end, int[] selection, int kept)
+    {
+        for (int i = start; i < end; i++)
+        {
+            selection[kept] = i;
+            kept += ((values[i] >= lo & values[i] <= hi) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    // As above, for longs.
+    private static int select(long[] values, long lo, long hi, boolean negate, int start, int end, int[] selection, int kept)
+    {
+        for (int i = start; i < end; i++)
+        {
+            selection[kept] = i;
+            kept += ((values[i] >= lo & values[i] <= hi) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+
+    // As above, for doubles compared as sortable bits.
+    private static int select(double[] values, long lo, long hi, boolean negate, int start, int end, int[] selection, int kept)
+    {
+        for (int i = start; i < end; i++)
+        {
+            long value = BatchKernels.sortableBits(values[i]);
+            selection[kept] = i;
+            kept += ((value >= lo & value <= hi) != negate) ? 1 : 0;
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,85 @@
+package rjmdatabase.query;
+
+/**
+ * A reference to a column in a query, such as Name or Person.Name. Once the
+ * query has been checked against the database, the reference is bound to the
+ * table it belongs to.
+ * @author Rjmcf
+ */
+class ColumnRef
+{
+    // The table name or alias written before the column name, if any.
+    private final String qualifier;
+    private final String fieldName;
+    // The alias of the table the column belongs to, once bound.
+    private String tableAlias;
+
+    ColumnRef(String qualifier, String fieldName)
+    {
+        this.qualifier = qualifier;
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * Gets the table name or alias written before the column name.
+     * @return The qualifier, or null if none was written.
+     */
+    String getQualifier()
+    {
+        return qualifier;
+    }
+
+    /**
+     * Gets the name of the column within its table.
+     * @return The field name.
+     */
+    String getFieldName()
+    {
+        return fieldName;
+    }
+
+    /**
+     * Records which table the column belongs to.
+     * @param tableAlias The alias of the table.
+     */
+    void bind(String tableAlias)
+    {
+        this.tableAlias = tableAlias;
+    }
+
+    /**
+     * Gets the alias of the table the column belongs to.
+     * @return The alias, or null if not yet bound.
+     */
+    String getTableAlias()
+    {
+        return tableAlias;
+    }
+
+    /**
+     * Gets the name of the column qualified by its table, as used for the
+     * columns of plans.
+     * @return The qualified name, such as Person.Name.
+     */
+    String getQualifiedName()
+    {
+        return qualify(tableAlias, fieldName);
+    }
+
+    /**
+     * Builds a qualified column name.
+     * @param  tableAlias The alias of the table.
+     * @param  fieldName  The name of the column within the table.
+     * @return            The qualified name.
+     */
+    static String qualify(String tableAlias, String fieldName)
+    {
+        return tableAlias + "." + fieldName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return tableAlias != null ? getQualifiedName() : qualifier != null ? qualify(qualifier, fieldName) : fieldName;
+    }
+}
@@ -0,0 +1,636 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.ColumnType;
+import rjmdatabase.dbcomponents.Filter;
+import rjmdatabase.dbcomponents.IndexType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.function.Predicate;
+
+/**
+ * The condition in a WHERE clause. A Condition whose columns all belong to one
+ * table can be turned into a Filter, which is tested as the table is scanned
+ * and can use its indexes. Any Condition can also be tested against the rows
+ * produced by a plan, which is needed once tables have been joined.
+ * @author Rjmcf
+ */
+abstract class Condition
+{
+    /**
+     * Converts this Condition into a Filter over the table its columns belong
+     * to. Only valid if isPushable returns true.
+     * @param  parameters The values of the parameters of the query.
+     * @return            The Filter.
+     */
+    abstract Filter toFilter(String[] parameters);
+
+    /**
+     * Builds a test for rows laid out with the given columns. Values are
+     * compared according to their column's type, and a missing value, as in
+     * the right half of an unmatched left outer join row, matches nothing.
+     * @param  columns    The qualified names of the columns of the rows.
+     * @param  types      The types of those columns.
+     * @param  parameters The values of the parameters of the query.
+     * @return            The test.
+     */
+    abstract Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters);
+
+    /**
+     * Adds every column this Condition refers to to a list.
+     * @param columns The list to add to.
+     */
+    abstract void collectColumns(List<ColumnRef> columns);
+
+    /**
+     * Gets the Conditions that must all hold for this one to hold.
+     * @return The list of Conditions, which is just this one unless this is
+     *         an AND.
+     */
+    List<Condition> getConjuncts()
+    {
+        return Collections.singletonList(this);
+    }
+
+    /**
+     * Gets the column this Condition tests, if it tests a single column in a
+     * way that an index could answer.
+     * @return The column, or null.
+     */
+    ColumnRef getIndexableColumn()
+    {
+        return null;
+    }
+
+    /**
+     * Gets the kinds of index that could answer this Condition on their own,
+     * best first.
+     * @return The index types, which are empty if no index can help.
+     */
+    List<IndexType> getHelpfulIndexes()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Gets the aliases of the tables whose columns this Condition refers to.
+     * @return The aliases.
+     */
+    List<String> getTableAliases()
+    {
+        ArrayList<ColumnRef> columns = new ArrayList<>();
+        collectColumns(columns);
+        ArrayList<String> aliases = new ArrayList<>();
+        for (ColumnRef column : columns)
+            if (!aliases.contains(column.getTableAlias()))
+                aliases.add(column.getTableAlias());
+        return aliases;
+    }
+
+    /**
+     * Gets whether this Condition can be turned into a Filter. Filters can't
+     * test the key column, so Conditions on keys are tested against rows.
+     * @return Whether toFilter can be called.
+     */
+    boolean isPushable()
+    {
+        ArrayList<ColumnRef> columns = new ArrayList<>();
+        collectColumns(columns);
+        for (ColumnRef column : columns)
+            if (column.getFieldName().equals(QueryEngine.KEY_COL_NAME))
+                return false;
+        return getTableAliases().size() <= 1;
+    }
+
+    /**
+     * Combines Conditions that must all hold.
+     * @param  conditions The Conditions.
+     * @return            A single Condition, or null if the list is empty.
+     */
+    static Condition and(List<Condition> conditions)
+    {
+        if (conditions.isEmpty())
+            return null;
+        if (conditions.size() == 1)
+            return conditions.get(0);
+        return new And(conditions);
+    }
+
+    /**
+     * Compares the textual forms of two values of a column.
+     * @param  type The type of the column.
+     * @param  a    The first value.
+     * @param  b    The second value.
+     * @return      A negative number, zero or a positive number as a is less
+     *              than, equal to or greater than b.
+     */
+    static int compareText(ColumnType type, String a, String b)
+    {
+        switch (type)
+        {
+            case INT:
+            case LONG:
+                return Long.compare(Long.parseLong(a.trim()), Long.parseLong(b.trim()));
+            case DOUBLE:
+                return Double.compare(Double.parseDouble(a.trim()), Double.parseDouble(b.trim()));
+            case BOOLEAN:
+                return Boolean.compare(Boolean.parseBoolean(a.trim()), Boolean.parseBoolean(b.trim()));
+            case BYTES:
+                return a.toLowerCase(Locale.ROOT).compareTo(b.toLowerCase(Locale.ROOT));
+            default:
+                return a.compareTo(b);
+        }
+    }
+
+    /**
+     * Finds a column in a row layout.
+     * @param  columns The qualified names of the columns of the rows.
+     * @param  column  The column to find.
+     * @return         The position of the column in each row.
+     */
+    static int findColumn(String[] columns, ColumnRef column)
+    {
+        int position = Arrays.asList(columns).indexOf(column.getQualifiedName());
+        if (position == -1)
+            throw new IllegalArgumentException("No column " + column + " available here");
+        return position;
+    }
+
+    /**
+     * Gets the prefix matched by a LIKE pattern. Only patterns matching a
+     * prefix, such as 'abc%', are supported.
+     * @param  pattern The pattern.
+     * @return         The prefix.
+     */
+    static String prefixOf(String pattern)
+    {
+        int wildcard = pattern.indexOf('%');
+        if (wildcard != pattern.length() - 1 || pattern.indexOf('_') != -1)
+            throw new IllegalArgumentException("Only patterns matching a prefix, such as 'abc%', are supported by LIKE");
+        return pattern.substring(0, wildcard);
+    }
+
+    /**
+     * Compares a column to a value.
+     */
+    static class Comparison extends Condition
+    {
+        /**
+         * The ways a column can be compared to a value.
+         */
+        enum Operator
+        {
+            EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_EQUAL("<="), GREATER(">"), GREATER_EQUAL(">=");
+
+            private final String symbol;
+
+            Operator(String symbol)
+            {
+                this.symbol = symbol;
+            }
+
+            /**
+             * Gets the Operator written with the given symbol.
+             * @param  symbol The symbol, such as "<=".
+             * @return        The Operator.
+             */
+            static Operator fromSymbol(String symbol)
+            {
+                if (symbol.equals("<>"))
+                    return NOT_EQUAL;
+                for (Operator operator : values())
+                    if (operator.symbol.equals(symbol))
+                        return operator;
+                throw new IllegalArgumentException("No comparison " + symbol);
+            }
+
+            // Gets whether the result of comparing a value to the one in the
+            // query satisfies this Operator.
+            boolean holds(int comparison)
+            {
+                switch (this)
+                {
+                    case EQUAL:
+                        return comparison == 0;
+                    case NOT_EQUAL:
+                        return comparison != 0;
+                    case LESS:
+                        return comparison < 0;
+                    case LESS_EQUAL:
+                        return comparison <= 0;
+                    case GREATER:
+                        return comparison > 0;
+                    default:
+                        return comparison >= 0;
+                }
+            }
+        }
+
+        private final ColumnRef column;
+        private final Operator operator;
+        private final Value value;
+
+        Comparison(ColumnRef column, Operator operator, Value value)
+        {
+            this.column = column;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            String fieldName = column.getFieldName();
+            String value = this.value.resolve(parameters);
+            switch (operator)
+            {
+                case EQUAL:
+                    return Filter.equalTo(fieldName, value);
+                case NOT_EQUAL:
+                    return Filter.notEqualTo(fieldName, value);
+                case LESS:
+                    return Filter.lessThan(fieldName, value);
+                case LESS_EQUAL:
+                    return Filter.lessThanOrEqualTo(fieldName, value);
+                case GREATER:
+                    return Filter.greaterThan(fieldName, value);
+                default:
+                    return Filter.greaterThanOrEqualTo(fieldName, value);
+            }
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            int position = findColumn(columns, column);
+            ColumnType type = types[position];
+            String value = this.value.resolve(parameters);
+            return row -> row[position] != null && operator.holds(compareText(type, row[position], value));
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            columns.add(column);
+        }
+
+        @Override
+        ColumnRef getIndexableColumn()
+        {
+            return operator == Operator.NOT_EQUAL ? null : column;
+        }
+
+        @Override
+        List<IndexType> getHelpfulIndexes()
+        {
+            if (operator == Operator.NOT_EQUAL)
+                return Collections.emptyList();
+            if (operator == Operator.EQUAL)
+                return Arrays.asList(IndexType.BITMAP, IndexType.HASH, IndexType.UNIQUE, IndexType.SORTED);
+            return Collections.singletonList(IndexType.SORTED);
+        }
+
+        @Override
+        public String toString()
+        {
+            return column + " " + operator.symbol + " " + value;
+        }
+    }
+
+    /**
+     * Tests whether a column lies between two values, inclusive.
+     */
+    static class Between extends Condition
+    {
+        private final ColumnRef column;
+        private final Value low;
+        private final Value high;
+
+        Between(ColumnRef column, Value low, Value high)
+        {
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            return Filter.and(Filter.greaterThanOrEqualTo(column.getFieldName(), low.resolve(parameters)),
+                    Filter.lessThanOrEqualTo(column.getFieldName(), high.resolve(parameters)));
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            int position = findColumn(columns, column);
+            ColumnType type = types[position];
+            String low = this.low.resolve(parameters);
+            String high = this.high.resolve(parameters);
+            return row -> row[position] != null
+                    && compareText(type, row[position], low) >= 0
+                    && compareText(type, row[position], high) <= 0;
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            columns.add(column);
+        }
+
+        @Override
+        ColumnRef getIndexableColumn()
+        {
+            return column;
+        }
+
+        @Override
+        List<IndexType> getHelpfulIndexes()
+        {
+            return Collections.singletonList(IndexType.SORTED);
+        }
+
+        @Override
+        public String toString()
+        {
+            return column + " BETWEEN " + low + " AND " + high;
+        }
+    }
+
+    /**
+     * Tests whether a string column starts with a prefix, written as
+     * LIKE 'prefix%'.
+     */
+    static class StartsWith extends Condition
+    {
+        private final ColumnRef column;
+        // The whole pattern, including the "%".
+        private final Value pattern;
+
+        StartsWith(ColumnRef column, Value pattern)
+        {
+            this.column = column;
+            this.pattern = pattern;
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            return Filter.startsWith(column.getFieldName(), prefixOf(pattern.resolve(parameters)));
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            int position = findColumn(columns, column);
+            String prefix = prefixOf(pattern.resolve(parameters));
+            return row -> row[position] != null && row[position].startsWith(prefix);
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            columns.add(column);
+        }
+
+        @Override
+        ColumnRef getIndexableColumn()
+        {
+            return column;
+        }
+
+        @Override
+        List<IndexType> getHelpfulIndexes()
+        {
+            return Collections.singletonList(IndexType.SORTED);
+        }
+
+        @Override
+        public String toString()
+        {
+            return column + " LIKE " + pattern;
+        }
+    }
+
+    /**
+     * Tests whether a string column contains a phrase, ignoring case and
+     * punctuation.
+     */
+    static class Contains extends Condition
+    {
+        private final ColumnRef column;
+        private final Value phrase;
+
+        Contains(ColumnRef column, Value phrase)
+        {
+            this.column = column;
+            this.phrase = phrase;
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            return Filter.containsPhrase(column.getFieldName(), phrase.resolve(parameters));
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            int position = findColumn(columns, column);
+            List<String> words = words(phrase.resolve(parameters));
+            return row -> row[position] != null && Collections.indexOfSubList(words(row[position]), words) != -1;
+        }
+
+        // Splits text into lower case words, as text indexes do.
+        private static List<String> words(String text)
+        {
+            ArrayList<String> words = new ArrayList<>();
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                if (!word.isEmpty())
+                    words.add(word);
+            return words;
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            columns.add(column);
+        }
+
+        @Override
+        ColumnRef getIndexableColumn()
+        {
+            return column;
+        }
+
+        @Override
+        List<IndexType> getHelpfulIndexes()
+        {
+            return Collections.singletonList(IndexType.TEXT);
+        }
+
+        @Override
+        public String toString()
+        {
+            return column + " CONTAINS " + phrase;
+        }
+    }
+
+    /**
+     * Holds if every one of its Conditions holds.
+     */
+    static class And extends Condition
+    {
+        private final List<Condition> conditions;
+
+        And(List<Condition> conditions)
+        {
+            // Nested ANDs are flattened so every conjunct can be pushed down
+            // on its own.
+            this.conditions = new ArrayList<>();
+            for (Condition condition : conditions)
+                this.conditions.addAll(condition.getConjuncts());
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            Filter[] filters = new Filter[conditions.size()];
+            for (int i = 0; i < filters.length; i++)
+                filters[i] = conditions.get(i).toFilter(parameters);
+            return Filter.and(filters);
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            Predicate<String[]> test = row -> true;
+            for (Condition condition : conditions)
+                test = test.and(condition.compile(columns, types, parameters));
+            return test;
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            for (Condition condition : conditions)
+                condition.collectColumns(columns);
+        }
+
+        @Override
+        List<Condition> getConjuncts()
+        {
+            return Collections.unmodifiableList(conditions);
+        }
+
+        @Override
+        public String toString()
+        {
+            StringJoiner joiner = new StringJoiner(" AND ", "(", ")");
+            for (Condition condition : conditions)
+                joiner.add(condition.toString());
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * Holds if any of its Conditions holds.
+     */
+    static class Or extends Condition
+    {
+        private final List<Condition> conditions;
+
+        Or(List<Condition> conditions)
+        {
+            this.conditions = new ArrayList<>(conditions);
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            Filter[] filters = new Filter[conditions.size()];
+            for (int i = 0; i < filters.length; i++)
+                filters[i] = conditions.get(i).toFilter(parameters);
+            return Filter.or(filters);
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            Predicate<String[]> test = row -> false;
+            for (Condition condition : conditions)
+                test = test.or(condition.compile(columns, types, parameters));
+            return test;
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            for (Condition condition : conditions)
+                condition.collectColumns(columns);
+        }
+
+        @Override
+        public String toString()
+        {
+            StringJoiner joiner = new StringJoiner(" OR ", "(", ")");
+            for (Condition condition : conditions)
+                joiner.add(condition.toString());
+            return joiner.toString();
+        }
+    }
+
+    /**
+     * Holds if its Condition does not.
+     */
+    static class Not extends Condition
+    {
+        private final Condition condition;
+
+        Not(Condition condition)
+        {
+            this.condition = condition;
+        }
+
+        @Override
+        Filter toFilter(String[] parameters)
+        {
+            return Filter.not(condition.toFilter(parameters));
+        }
+
+        @Override
+        Predicate<String[]> compile(String[] columns, ColumnType[] types, String[] parameters)
+        {
+            // A row missing any value the Condition refers to matches neither
+            // the Condition nor its negation.
+            List<ColumnRef> referenced = new ArrayList<>();
+            condition.collectColumns(referenced);
+            int[] positions = new int[referenced.size()];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = findColumn(columns, referenced.get(i));
+            Predicate<String[]> test = condition.compile(columns, types, parameters);
+            return row -> {
+                for (int position : positions)
+                    if (row[position] == null)
+                        return false;
+                return !test.test(row);
+            };
+        }
+
+        @Override
+        void collectColumns(List<ColumnRef> columns)
+        {
+            condition.collectColumns(columns);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "NOT " + condition;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package rjmdatabase.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits query text into Tokens.
+ * @author Rjmcf
+ */
+class Lexer
+{
+    // Symbols made of two characters, which must be matched before their
+    // first characters are matched on their own.
+    private static final String[] TWO_CHAR_SYMBOLS = {"<=", ">=", "!=", "<>"};
+    private static final String ONE_CHAR_SYMBOLS = "(),.*=<>;";
+
+    /**
+     * Splits query text into Tokens, ending with an END Token.
+     * @param  query The query text.
+     * @return       The Tokens.
+     */
+    static List<Token> tokenize(String query)
+    {
+        ArrayList<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length())
+        {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c))
+            {
+                i++;
+                continue;
+            }
+            int start = i;
+            if (c == '\'' || c == '"')
+            {
+                // Quotes inside a quoted string or name are doubled.
+                StringBuilder text = new StringBuilder();
+                i++;
+                while (true)
+                {
+                    if (i >= query.length())
+                        throw new IllegalArgumentException("Unterminated quote starting at position " + start);
+                    char next = query.charAt(i++);
+                    if (next != c)
+                        text.append(next);
+                    else if (i < query.length() && query.charAt(i) == c)
+                        text.append(query.charAt(i++));
+                    else
+                        break;
+                }
+                if (c == '\'')
+                    tokens.add(new Token(Token.Kind.STRING, text.toString(), start, false));
+                else
+                    tokens.add(new Token(Token.Kind.WORD, text.toString(), start, true));
+            }
+            else if (Character.isDigit(c) || (c == '-' && i + 1 < query.length() && Character.isDigit(query.charAt(i + 1))))
+            {
+                i++;
+                while (i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '.'))
+                    i++;
+                tokens.add(new Token(Token.Kind.NUMBER, query.substring(start, i), start, false));
+            }
+            else if (Character.isLetter(c) || c == '_')
+            {
+                while (i < query.length() && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '_'))
+                    i++;
+                tokens.add(new Token(Token.Kind.WORD, query.substring(start, i), start, false));
+            }
+            else if (c == '?')
+            {
+                i++;
+                tokens.add(new Token(Token.Kind.PARAMETER, "?", start, false));
+            }
+            else
+            {
+                String symbol = null;
+                for (String twoChars : TWO_CHAR_SYMBOLS)
+                    if (query.startsWith(twoChars, i))
+                        symbol = twoChars;
+                if (symbol == null && ONE_CHAR_SYMBOLS.indexOf(c) != -1)
+                    symbol = String.valueOf(c);
+                if (symbol == null)
+                    throw new IllegalArgumentException(String.format("Unexpected character '%c' at position %d", c, i));
+                i += symbol.length();
+                tokens.add(new Token(Token.Kind.SYMBOL, symbol, start, false));
+            }
+        }
+        tokens.add(new Token(Token.Kind.END, "", query.length(), false));
+        return tokens;
+    }
+}
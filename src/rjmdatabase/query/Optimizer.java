@@ -0,0 +1,212 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.Database;
+import rjmdatabase.dbcomponents.Filter;
+import rjmdatabase.dbcomponents.IndexType;
+import rjmdatabase.dbcomponents.JoinType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rewrites a plan into a cheaper one that produces the same rows. Work is
+ * pushed as far down the plan as it will go, ideally into the Scans, where the
+ * database can do it while reading the table:
+ * <ul>
+ * <li>Conditions on a single table are tested as that table is scanned, even
+ * beneath a join, so fewer rows are joined.</li>
+ * <li>Sorting, limits and choosing columns are merged into a Scan where
+ * possible, and a sort followed by a limit only keeps the rows it returns.</li>
+ * <li>Aggregates over a single table are computed as it is scanned.</li>
+ * <li>Each Scan notes how many Records it is expected to find, using the
+ * table's statistics, and whether an index will find them or every Record
+ * will be tested, whichever the database's cost model expects to be cheaper.
+ * </li>
+ * <li>Each join notes which table it will build its hash table from, which
+ * is the one expected to have fewer matching Records.</li>
+ * </ul>
+ * @author Rjmcf
+ */
+class Optimizer
+{
+    private final Database database;
+
+    Optimizer(Database database)
+    {
+        this.database = database;
+    }
+
+    /**
+     * Rewrites a plan.
+     * @param  plan       The plan to rewrite, which may be changed.
+     * @param  parameters The values of the parameters of the query, which the
+     *                    estimates are made for.
+     * @return            The rewritten plan.
+     */
+    PlanNode optimize(PlanNode plan, String[] parameters)
+    {
+        PlanNode rewritten = rewrite(plan);
+        chooseAccessPaths(rewritten, parameters);
+        return rewritten;
+    }
+
+    // Rewrites the steps beneath a step, then the step itself.
+    private PlanNode rewrite(PlanNode node)
+    {
+        if (node instanceof PlanNode.RowFilter)
+        {
+            PlanNode.RowFilter filter = (PlanNode.RowFilter)node;
+            filter.child = rewrite(filter.child);
+            return pushDown(filter);
+        }
+        if (node instanceof PlanNode.Sort)
+        {
+            PlanNode.Sort sort = (PlanNode.Sort)node;
+            sort.child = rewrite(sort.child);
+            if (sort.child instanceof PlanNode.Scan && ((PlanNode.Scan)sort.child).isPlain())
+            {
+                PlanNode.Scan scan = (PlanNode.Scan)sort.child;
+                scan.sortColumns = sort.sortColumns;
+                scan.descending = sort.descending;
+                scan.limit = sort.limit;
+                return scan;
+            }
+            return sort;
+        }
+        if (node instanceof PlanNode.Limit)
+        {
+            PlanNode.Limit limit = (PlanNode.Limit)node;
+            limit.child = rewrite(limit.child);
+            if (limit.child instanceof PlanNode.Sort && ((PlanNode.Sort)limit.child).limit == -1)
+            {
+                ((PlanNode.Sort)limit.child).limit = limit.limit;
+                return limit.child;
+            }
+            if (limit.child instanceof PlanNode.Scan && ((PlanNode.Scan)limit.child).limit == -1
+                    && ((PlanNode.Scan)limit.child).projection == null)
+            {
+                ((PlanNode.Scan)limit.child).limit = limit.limit;
+                return limit.child;
+            }
+            return limit;
+        }
+        if (node instanceof PlanNode.Project)
+        {
+            PlanNode.Project project = (PlanNode.Project)node;
+            project.child = rewrite(project.child);
+            if (project.child instanceof PlanNode.Scan && ((PlanNode.Scan)project.child).projection == null)
+            {
+                ((PlanNode.Scan)project.child).projection = project.columns;
+                return project.child;
+            }
+            // Keeping every column in the same order does nothing.
+            if (Arrays.equals(project.columns, project.child.getColumns()))
+                return project.child;
+            return project;
+        }
+        if (node instanceof PlanNode.AggregateScan)
+        {
+            PlanNode.AggregateScan aggregate = (PlanNode.AggregateScan)node;
+            aggregate.source = rewrite(aggregate.source);
+            if (!(aggregate.source instanceof PlanNode.Scan) || !((PlanNode.Scan)aggregate.source).isPlain())
+                throw new IllegalArgumentException("Aggregates can only be computed over a single table, with conditions that don't test keys");
+            return aggregate;
+        }
+        if (node instanceof PlanNode.Join)
+        {
+            PlanNode.Join join = (PlanNode.Join)node;
+            join.left = (PlanNode.Scan)rewrite(join.left);
+            join.right = (PlanNode.Scan)rewrite(join.right);
+        }
+        return node;
+    }
+
+    // Moves as much of a filter's Condition as possible into the Scans beneath
+    // it. Conditions on the right table of a left outer join must stay above
+    // the join, as they also remove unmatched rows.
+    private PlanNode pushDown(PlanNode.RowFilter filter)
+    {
+        PlanNode.Scan onlyScan = null;
+        PlanNode.Join join = null;
+        if (filter.child instanceof PlanNode.Scan && ((PlanNode.Scan)filter.child).isPlain())
+            onlyScan = (PlanNode.Scan)filter.child;
+        else if (filter.child instanceof PlanNode.Join)
+            join = (PlanNode.Join)filter.child;
+        else
+            return filter;
+
+        ArrayList<Condition> remaining = new ArrayList<>();
+        for (Condition conjunct : filter.condition.getConjuncts())
+        {
+            PlanNode.Scan target = null;
+            if (conjunct.isPushable())
+            {
+                String alias = conjunct.getTableAliases().isEmpty() ? null : conjunct.getTableAliases().get(0);
+                if (onlyScan != null)
+                    target = onlyScan;
+                else if (join.left.alias.equals(alias))
+                    target = join.left;
+                else if (join.right.alias.equals(alias) && join.type == JoinType.INNER)
+                    target = join.right;
+            }
+            if (target == null)
+                remaining.add(conjunct);
+            else
+                addCondition(target, conjunct);
+        }
+        if (remaining.isEmpty())
+            return filter.child;
+        filter.condition = Condition.and(remaining);
+        return filter;
+    }
+
+    // Adds a Condition to those a Scan already tests.
+    private static void addCondition(PlanNode.Scan scan, Condition condition)
+    {
+        ArrayList<Condition> conditions = new ArrayList<>();
+        if (scan.condition != null)
+            conditions.add(scan.condition);
+        conditions.add(condition);
+        scan.condition = Condition.and(conditions);
+    }
+
+    // Notes on every Scan how many Records it should find and how, and on
+    // every join which table it builds on. The database uses every index that
+    // can narrow down a Filter if it uses indexes at all, so the first helpful
+    // index found is reported.
+    private void chooseAccessPaths(PlanNode node, String[] parameters)
+    {
+        for (PlanNode child : node.getChildren())
+            chooseAccessPaths(child, parameters);
+        if (node instanceof PlanNode.Join)
+        {
+            PlanNode.Join join = (PlanNode.Join)node;
+            join.buildsLeft = join.left.estimatedRows <= join.right.estimatedRows;
+            return;
+        }
+        if (!(node instanceof PlanNode.Scan))
+            return;
+        PlanNode.Scan scan = (PlanNode.Scan)node;
+        Filter filter = scan.getFilter(parameters);
+        scan.estimatedRows = database.estimateMatches(scan.tableName, filter);
+        if (scan.condition == null || !database.usesIndexes(scan.tableName, filter))
+            return;
+        for (Condition conjunct : scan.condition.getConjuncts())
+        {
+            ColumnRef column = conjunct.getIndexableColumn();
+            if (column == null)
+                continue;
+            List<IndexType> helpful = conjunct.getHelpfulIndexes();
+            for (IndexType type : helpful)
+            {
+                if (database.hasIndex(scan.tableName, column.getFieldName(), type))
+                {
+                    scan.accessPath = "index lookup using " + type.getTypeName() + " index on " + column.getFieldName();
+                    return;
+                }
+            }
+        }
+        scan.accessPath = "index lookup";
+    }
+}
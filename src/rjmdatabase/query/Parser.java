@@ -0,0 +1,473 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.JoinType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Parses query text into a Statement by recursive descent. Keywords may be
+ * written in any case. Names that clash with keywords, or hold spaces, can be
+ * written in double quotes, and strings are written in single quotes.
+ * @author Rjmcf
+ */
+class Parser
+{
+    // Words that can't be used as an alias without quotes, as they may follow
+    // a table or column name.
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+            "SELECT", "FROM", "WHERE", "JOIN", "INNER", "LEFT", "OUTER", "ON", "GROUP", "ORDER", "BY", "LIMIT",
+            "AND", "OR", "NOT", "AS", "ASC", "DESC", "BETWEEN", "LIKE", "CONTAINS", "INSERT", "INTO", "VALUES",
+            "UPDATE", "SET", "DELETE", "EXPLAIN"));
+    // The aggregate functions that can appear in a SELECT list.
+    private static final Set<String> AGGREGATES = new HashSet<>(Arrays.asList("count", "sum", "min", "max", "avg",
+            "approx_count_distinct", "approx_quantile"));
+
+    private final List<Token> tokens;
+    // The position of the next Token to read.
+    private int position;
+    // The number of "?" parameters read so far.
+    private int numParameters;
+
+    private Parser(List<Token> tokens)
+    {
+        this.tokens = tokens;
+        position = 0;
+        numParameters = 0;
+    }
+
+    /**
+     * Parses a single statement. Throws an IllegalArgumentException describing
+     * the problem if the query is not valid.
+     * @param  query The query text, optionally ending with a semicolon.
+     * @return       The parsed Statement.
+     */
+    static Statement parse(String query)
+    {
+        Parser parser = new Parser(Lexer.tokenize(query));
+        Statement statement = parser.parseStatement();
+        if (parser.peek().isSymbol(";"))
+            parser.next();
+        parser.expectEnd();
+        statement.numParameters = parser.numParameters;
+        return statement;
+    }
+
+    /**
+     * Writes a query in a standard form, so that queries differing only in
+     * spacing, the case of reserved words or a final semicolon are written the
+     * same.
+     * The query is not checked beyond splitting it into Tokens.
+     * @param  query The query text.
+     * @return       The standard form of the query.
+     */
+    static String normalize(String query)
+    {
+        List<Token> tokens = Lexer.tokenize(query);
+        int end = tokens.size() - 1;
+        if (end > 0 && tokens.get(end - 1).isSymbol(";"))
+            end--;
+        StringJoiner normalized = new StringJoiner(" ");
+        for (Token token : tokens.subList(0, end))
+        {
+            // Only reserved words are changed to upper case, since any other
+            // word might be a name, in which case its case matters.
+            String text = token.getText();
+            if (token.getKind() == Token.Kind.STRING)
+                normalized.add("'" + text.replace("'", "''") + "'");
+            else if (token.isQuoted())
+                normalized.add("\"" + text.replace("\"", "\"\"") + "\"");
+            else if (isReserved(token))
+                normalized.add(text.toUpperCase(Locale.ROOT));
+            else
+                normalized.add(text);
+        }
+        return normalized.toString();
+    }
+
+    private Statement parseStatement()
+    {
+        Token first = peek();
+        if (first.isKeyword("SELECT"))
+            return parseSelect();
+        if (first.isKeyword("INSERT"))
+            return parseInsert();
+        if (first.isKeyword("UPDATE"))
+            return parseUpdate();
+        if (first.isKeyword("DELETE"))
+            return parseDelete();
+        if (first.isKeyword("EXPLAIN"))
+        {
+            next();
+            Statement.Explain explain = new Statement.Explain();
+            explain.select = parseSelect();
+            return explain;
+        }
+        throw error("SELECT, INSERT, UPDATE, DELETE or EXPLAIN", first);
+    }
+
+    private Statement.Select parseSelect()
+    {
+        expectKeyword("SELECT");
+        Statement.Select select = new Statement.Select();
+        if (peek().isSymbol("*"))
+            next();
+        else
+        {
+            do
+                select.items.add(parseSelectItem(true));
+            while (acceptSymbol(","));
+        }
+
+        expectKeyword("FROM");
+        select.from = parseTableRef();
+        if (peek().isKeyword("JOIN") || peek().isKeyword("INNER") || peek().isKeyword("LEFT"))
+        {
+            select.joinType = JoinType.INNER;
+            if (acceptKeyword("LEFT"))
+            {
+                acceptKeyword("OUTER");
+                select.joinType = JoinType.LEFT_OUTER;
+            }
+            else
+                acceptKeyword("INNER");
+            expectKeyword("JOIN");
+            select.join = parseTableRef();
+            expectKeyword("ON");
+            select.joinLeft = parseColumn();
+            expectSymbol("=");
+            select.joinRight = parseColumn();
+        }
+
+        if (acceptKeyword("WHERE"))
+            select.where = parseCondition();
+        if (acceptKeyword("GROUP"))
+        {
+            expectKeyword("BY");
+            do
+                select.groupBy.add(parseColumn());
+            while (acceptSymbol(","));
+        }
+        if (acceptKeyword("ORDER"))
+        {
+            expectKeyword("BY");
+            do
+            {
+                Statement.SelectItem item = parseSelectItem(false);
+                boolean descending = false;
+                if (acceptKeyword("DESC"))
+                    descending = true;
+                else
+                    acceptKeyword("ASC");
+                select.orderBy.add(new Statement.OrderItem(item, descending));
+            }
+            while (acceptSymbol(","));
+        }
+        if (acceptKeyword("LIMIT"))
+        {
+            Token count = next();
+            if (count.getKind() != Token.Kind.NUMBER)
+                throw error("a row count", count);
+            try
+            {
+                select.limit = Integer.parseInt(count.getText());
+            }
+            catch (NumberFormatException e)
+            {
+                throw error("a whole number of rows", count);
+            }
+            if (select.limit < 0)
+                throw error("a row count of at least zero", count);
+        }
+        return select;
+    }
+
+    private Statement.Insert parseInsert()
+    {
+        expectKeyword("INSERT");
+        expectKeyword("INTO");
+        Statement.Insert insert = new Statement.Insert();
+        insert.tableName = expectName();
+        if (acceptSymbol("("))
+        {
+            do
+                insert.columns.add(expectName());
+            while (acceptSymbol(","));
+            expectSymbol(")");
+        }
+        expectKeyword("VALUES");
+        do
+        {
+            expectSymbol("(");
+            ArrayList<Value> row = new ArrayList<>();
+            do
+                row.add(parseValue());
+            while (acceptSymbol(","));
+            expectSymbol(")");
+            insert.rows.add(row);
+        }
+        while (acceptSymbol(","));
+        return insert;
+    }
+
+    private Statement.Update parseUpdate()
+    {
+        expectKeyword("UPDATE");
+        Statement.Update update = new Statement.Update();
+        update.table = parseTableRef();
+        expectKeyword("SET");
+        do
+        {
+            update.columns.add(expectName());
+            expectSymbol("=");
+            update.values.add(parseValue());
+        }
+        while (acceptSymbol(","));
+        if (acceptKeyword("WHERE"))
+            update.where = parseCondition();
+        return update;
+    }
+
+    private Statement.Delete parseDelete()
+    {
+        expectKeyword("DELETE");
+        expectKeyword("FROM");
+        Statement.Delete delete = new Statement.Delete();
+        delete.table = parseTableRef();
+        if (acceptKeyword("WHERE"))
+            delete.where = parseCondition();
+        return delete;
+    }
+
+    // A table name followed by an optional alias, with or without AS.
+    private Statement.TableRef parseTableRef()
+    {
+        String tableName = expectName();
+        String alias = null;
+        if (acceptKeyword("AS"))
+            alias = expectName();
+        else if (peek().getKind() == Token.Kind.WORD && !isReserved(peek()))
+            alias = next().getText();
+        return new Statement.TableRef(tableName, alias);
+    }
+
+    // A column, or an aggregate function applied to a column or "*".
+    // approx_quantile also takes the quantile to estimate after the column.
+    private Statement.SelectItem parseSelectItem(boolean allowAlias)
+    {
+        Token first = peek();
+        String function = first.getText().toLowerCase(Locale.ROOT);
+        ColumnRef column = null;
+        String argument = null;
+        if (first.getKind() == Token.Kind.WORD && AGGREGATES.contains(function) && peekAhead(1).isSymbol("("))
+        {
+            next();
+            next();
+            if (acceptSymbol("*"))
+            {
+                if (!function.equals("count"))
+                    throw new IllegalArgumentException("Only count can be applied to *");
+            }
+            else
+                column = parseColumn();
+            if (function.equals("approx_quantile"))
+            {
+                expectSymbol(",");
+                argument = parseQuantile();
+            }
+            expectSymbol(")");
+        }
+        else
+        {
+            function = null;
+            column = parseColumn();
+        }
+        String alias = null;
+        if (allowAlias && acceptKeyword("AS"))
+            alias = expectName();
+        return new Statement.SelectItem(column, function, argument, alias);
+    }
+
+    // A number from 0 to 1, in the form Double.toString gives it so that
+    // equal quantiles are written the same.
+    private String parseQuantile()
+    {
+        Token token = next();
+        double quantile = -1;
+        if (token.getKind() == Token.Kind.NUMBER)
+        {
+            try
+            {
+                quantile = Double.parseDouble(token.getText());
+            }
+            catch (NumberFormatException e) {}
+        }
+        if (!(quantile >= 0 && quantile <= 1))
+            throw error("a quantile from 0 to 1", token);
+        return Double.toString(quantile);
+    }
+
+    // A column name, optionally qualified by a table name or alias.
+    private ColumnRef parseColumn()
+    {
+        String first = expectName();
+        if (acceptSymbol("."))
+            return new ColumnRef(first, expectName());
+        return new ColumnRef(null, first);
+    }
+
+    private Condition parseCondition()
+    {
+        ArrayList<Condition> alternatives = new ArrayList<>();
+        do
+            alternatives.add(parseConjunction());
+        while (acceptKeyword("OR"));
+        return alternatives.size() == 1 ? alternatives.get(0) : new Condition.Or(alternatives);
+    }
+
+    private Condition parseConjunction()
+    {
+        ArrayList<Condition> conjuncts = new ArrayList<>();
+        do
+            conjuncts.add(parseNegation());
+        while (acceptKeyword("AND"));
+        return Condition.and(conjuncts);
+    }
+
+    private Condition parseNegation()
+    {
+        if (acceptKeyword("NOT"))
+            return new Condition.Not(parseNegation());
+        return parseTest();
+    }
+
+    // A bracketed condition, or a single test of a column.
+    private Condition parseTest()
+    {
+        if (acceptSymbol("("))
+        {
+            Condition condition = parseCondition();
+            expectSymbol(")");
+            return condition;
+        }
+        ColumnRef column = parseColumn();
+        Token operator = next();
+        if (operator.isKeyword("BETWEEN"))
+        {
+            Value low = parseValue();
+            expectKeyword("AND");
+            return new Condition.Between(column, low, parseValue());
+        }
+        if (operator.isKeyword("LIKE"))
+        {
+            Token pattern = peek();
+            if (pattern.getKind() != Token.Kind.STRING && pattern.getKind() != Token.Kind.PARAMETER)
+                throw error("a pattern in quotes", pattern);
+            // Patterns given as parameters are checked when they are supplied.
+            if (pattern.getKind() == Token.Kind.STRING)
+                Condition.prefixOf(pattern.getText());
+            return new Condition.StartsWith(column, parseValue());
+        }
+        if (operator.isKeyword("CONTAINS"))
+            return new Condition.Contains(column, parseValue());
+        if (operator.getKind() != Token.Kind.SYMBOL)
+            throw error("a comparison", operator);
+        try
+        {
+            return new Condition.Comparison(column, Condition.Comparison.Operator.fromSymbol(operator.getText()), parseValue());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw error("a comparison", operator);
+        }
+    }
+
+    // A quoted string, a number, true or false, or a "?" parameter.
+    private Value parseValue()
+    {
+        Token value = next();
+        if (value.getKind() == Token.Kind.STRING || value.getKind() == Token.Kind.NUMBER)
+            return Value.literal(value.getText());
+        if (value.isKeyword("TRUE") || value.isKeyword("FALSE"))
+            return Value.literal(value.getText().toLowerCase(Locale.ROOT));
+        if (value.getKind() == Token.Kind.PARAMETER)
+            return Value.parameter(numParameters++);
+        throw error("a value", value);
+    }
+
+    private Token peek()
+    {
+        return tokens.get(position);
+    }
+
+    private Token peekAhead(int distance)
+    {
+        return tokens.get(Math.min(position + distance, tokens.size() - 1));
+    }
+
+    private Token next()
+    {
+        Token token = tokens.get(position);
+        if (token.getKind() != Token.Kind.END)
+            position++;
+        return token;
+    }
+
+    private boolean acceptKeyword(String keyword)
+    {
+        if (!peek().isKeyword(keyword))
+            return false;
+        next();
+        return true;
+    }
+
+    private boolean acceptSymbol(String symbol)
+    {
+        if (!peek().isSymbol(symbol))
+            return false;
+        next();
+        return true;
+    }
+
+    private void expectKeyword(String keyword)
+    {
+        if (!acceptKeyword(keyword))
+            throw error(keyword, peek());
+    }
+
+    private void expectSymbol(String symbol)
+    {
+        if (!acceptSymbol(symbol))
+            throw error("'" + symbol + "'", peek());
+    }
+
+    private String expectName()
+    {
+        Token name = next();
+        if (name.getKind() != Token.Kind.WORD || isReserved(name))
+            throw error("a name", name);
+        return name.getText();
+    }
+
+    private void expectEnd()
+    {
+        if (peek().getKind() != Token.Kind.END)
+            throw error("the end of the query", peek());
+    }
+
+    // Quoted names are never keywords.
+    private static boolean isReserved(Token token)
+    {
+        return RESERVED.contains(token.getText().toUpperCase(Locale.ROOT)) && token.isKeyword(token.getText().toUpperCase(Locale.ROOT));
+    }
+
+    private static IllegalArgumentException error(String expected, Token found)
+    {
+        return new IllegalArgumentException(String.format("Expected %s but found %s at position %d", expected, found, found.getPosition()));
+    }
+}
@@ -0,0 +1,660 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.Aggregate;
+import rjmdatabase.dbcomponents.ColumnType;
+import rjmdatabase.dbcomponents.Database;
+import rjmdatabase.dbcomponents.Filter;
+import rjmdatabase.dbcomponents.JoinType;
+import rjmdatabase.dbcomponents.SortKey;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * A step in the plan for running a SELECT, producing rows of text. Columns are
+ * named by their table alias and field name, such as Person.Name, so that
+ * columns of joined tables never clash. Plans start out as a simple chain of
+ * steps, which the Optimizer then merges into fewer, cheaper steps.
+ * @author Rjmcf
+ */
+abstract class PlanNode
+{
+    /**
+     * Gets the qualified names of the columns of the rows this step produces.
+     * @return The column names.
+     */
+    abstract String[] getColumns();
+
+    /**
+     * Gets the types of the columns of the rows this step produces.
+     * @return The column types, in the same order as the column names.
+     */
+    abstract ColumnType[] getTypes();
+
+    /**
+     * Runs this step, passing each row it produces to an action.
+     * @param  database    The database to read from.
+     * @param  parameters  The values of the parameters of the query.
+     * @param  action      The action to perform on each row.
+     * @throws IOException If a sort could not use its temporary files.
+     */
+    abstract void execute(Database database, String[] parameters, Consumer<String[]> action) throws IOException;
+
+    /**
+     * Gets a one line description of this step, for EXPLAIN.
+     * @return The description.
+     */
+    abstract String describe();
+
+    /**
+     * Gets the steps whose rows this step reads.
+     * @return The child steps.
+     */
+    List<PlanNode> getChildren()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Adds a description of this step and every step beneath it to a list of
+     * lines, indenting each level further.
+     * @param lines The list of lines to add to.
+     * @param depth How deeply to indent this step.
+     */
+    void explain(List<String> lines, int depth)
+    {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            line.append("  ");
+        lines.add(line.append(describe()).toString());
+        for (PlanNode child : getChildren())
+            child.explain(lines, depth + 1);
+    }
+
+    // Finds the position of each named column in a list of columns.
+    private static int[] positionsOf(String[] names, String[] columns)
+    {
+        List<String> columnList = Arrays.asList(columns);
+        int[] positions = new int[names.length];
+        for (int i = 0; i < names.length; i++)
+        {
+            positions[i] = columnList.indexOf(names[i]);
+            if (positions[i] == -1)
+                throw new IllegalArgumentException("No column " + names[i] + " available here");
+        }
+        return positions;
+    }
+
+    // Removes the table alias from a qualified column name.
+    private static String fieldNameOf(String qualifiedName)
+    {
+        return qualifiedName.substring(qualifiedName.indexOf('.') + 1);
+    }
+
+    /**
+     * Reads the Records of a table. Conditions, sorting, limits and choosing
+     * columns can all be merged into a Scan, so that they are done by the
+     * database as the table is read.
+     */
+    static class Scan extends PlanNode
+    {
+        final String tableName;
+        final String alias;
+        // The key column and every field, qualified by the alias.
+        private final String[] allColumns;
+        private final ColumnType[] allTypes;
+        // The Condition every Record must meet, which must be pushable, or null.
+        Condition condition;
+        // The qualified names of the columns to output, or null for all.
+        String[] projection;
+        // The qualified names of the columns to sort by, or null if unsorted.
+        String[] sortColumns;
+        boolean[] descending;
+        // The largest number of rows to output, or -1 for no limit.
+        int limit = -1;
+        // A description of how the Records will be found.
+        String accessPath = "full scan";
+        // The number of Records expected to meet the Condition, or -1 if not
+        // yet estimated.
+        double estimatedRows = -1;
+
+        Scan(String tableName, String alias, String[] allColumns, ColumnType[] allTypes)
+        {
+            this.tableName = tableName;
+            this.alias = alias;
+            this.allColumns = allColumns;
+            this.allTypes = allTypes;
+        }
+
+        /**
+         * Gets whether nothing but a Condition has been merged into this Scan,
+         * so it still produces every column in key order.
+         * @return Whether the Scan is plain.
+         */
+        boolean isPlain()
+        {
+            return projection == null && sortColumns == null && limit == -1;
+        }
+
+        /**
+         * Gets the Filter for the merged Condition.
+         * @param  parameters The values of the parameters of the query.
+         * @return            The Filter.
+         */
+        Filter getFilter(String[] parameters)
+        {
+            return condition == null ? Filter.all() : condition.toFilter(parameters);
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            return projection == null ? allColumns.clone() : projection.clone();
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            if (projection == null)
+                return allTypes.clone();
+            int[] positions = positionsOf(projection, allColumns);
+            ColumnType[] types = new ColumnType[positions.length];
+            for (int i = 0; i < positions.length; i++)
+                types[i] = allTypes[positions[i]];
+            return types;
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action) throws IOException
+        {
+            String[] fieldProjection = null;
+            if (projection != null)
+            {
+                fieldProjection = new String[projection.length];
+                for (int i = 0; i < projection.length; i++)
+                    fieldProjection[i] = fieldNameOf(projection[i]);
+            }
+            if (sortColumns == null && limit == -1)
+            {
+                database.scan(tableName, getFilter(parameters), fieldProjection, action);
+                return;
+            }
+
+            SortKey[] sortKeys = new SortKey[sortColumns == null ? 0 : sortColumns.length];
+            for (int i = 0; i < sortKeys.length; i++)
+            {
+                String fieldName = fieldNameOf(sortColumns[i]);
+                sortKeys[i] = descending[i] ? SortKey.descending(fieldName) : SortKey.ascending(fieldName);
+            }
+            // With no sort columns, the first Records by key are returned.
+            if (limit != -1)
+                database.top(tableName, getFilter(parameters), sortKeys, fieldProjection, limit).forEach(action);
+            else
+                database.sort(tableName, getFilter(parameters), sortKeys, fieldProjection, action);
+        }
+
+        @Override
+        String describe()
+        {
+            StringBuilder description = new StringBuilder("Scan " + tableName);
+            if (!alias.equals(tableName))
+                description.append(" AS ").append(alias);
+            description.append(" (").append(accessPath);
+            if (estimatedRows >= 0)
+                description.append(", about ").append(Math.round(estimatedRows)).append(" rows");
+            description.append(")");
+            if (condition != null)
+                description.append(" WHERE ").append(condition);
+            if (sortColumns != null)
+                description.append(" ORDER BY ").append(describeOrder(sortColumns, descending));
+            if (limit != -1)
+                description.append(" LIMIT ").append(limit);
+            if (projection != null)
+                description.append(" COLUMNS ").append(String.join(", ", projection));
+            return description.toString();
+        }
+    }
+
+    /**
+     * Computes aggregates over a single table, grouped by some of its columns.
+     * The rows hold the grouping columns and then the aggregates.
+     */
+    static class AggregateScan extends PlanNode
+    {
+        // The Records to aggregate, which must be a plain Scan by the time
+        // the plan is run.
+        PlanNode source;
+        private final List<ColumnRef> groupBy;
+        private final List<Statement.SelectItem> aggregates;
+
+        AggregateScan(PlanNode source, List<ColumnRef> groupBy, List<Statement.SelectItem> aggregates)
+        {
+            this.source = source;
+            this.groupBy = groupBy;
+            this.aggregates = aggregates;
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            String[] columns = new String[groupBy.size() + aggregates.size()];
+            for (int i = 0; i < groupBy.size(); i++)
+                columns[i] = groupBy.get(i).getQualifiedName();
+            for (int i = 0; i < aggregates.size(); i++)
+                columns[groupBy.size() + i] = aggregates.get(i).toString();
+            return columns;
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            String[] sourceColumns = source.getColumns();
+            ColumnType[] sourceTypes = source.getTypes();
+            ColumnType[] types = new ColumnType[groupBy.size() + aggregates.size()];
+            for (int i = 0; i < groupBy.size(); i++)
+                types[i] = sourceTypes[Condition.findColumn(sourceColumns, groupBy.get(i))];
+            for (int i = 0; i < aggregates.size(); i++)
+            {
+                Statement.SelectItem item = aggregates.get(i);
+                if (item.function.equals("count") || item.function.equals("approx_count_distinct"))
+                    types[groupBy.size() + i] = ColumnType.LONG;
+                else if (item.function.equals("min") || item.function.equals("max") || item.function.equals("approx_quantile"))
+                    types[groupBy.size() + i] = sourceTypes[Condition.findColumn(sourceColumns, item.column)];
+                else
+                    types[groupBy.size() + i] = ColumnType.DOUBLE;
+            }
+            return types;
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action)
+        {
+            String[] groupFields = new String[groupBy.size()];
+            for (int i = 0; i < groupFields.length; i++)
+                groupFields[i] = groupBy.get(i).getFieldName();
+            Aggregate[] toCompute = new Aggregate[aggregates.size()];
+            for (int i = 0; i < toCompute.length; i++)
+                toCompute[i] = toAggregate(aggregates.get(i));
+            Scan scan = (Scan)source;
+            database.aggregate(scan.tableName, scan.getFilter(parameters), groupFields, toCompute).forEach(action);
+        }
+
+        // Builds the Aggregate computing a SELECT item.
+        private static Aggregate toAggregate(Statement.SelectItem item)
+        {
+            switch (item.function)
+            {
+                case "count":
+                    return Aggregate.count();
+                case "sum":
+                    return Aggregate.sum(item.column.getFieldName());
+                case "min":
+                    return Aggregate.min(item.column.getFieldName());
+                case "max":
+                    return Aggregate.max(item.column.getFieldName());
+                case "approx_count_distinct":
+                    return Aggregate.approxCountDistinct(item.column.getFieldName());
+                case "approx_quantile":
+                    return Aggregate.approxQuantile(item.column.getFieldName(), Double.parseDouble(item.argument));
+                default:
+                    return Aggregate.avg(item.column.getFieldName());
+            }
+        }
+
+        @Override
+        String describe()
+        {
+            StringJoiner computed = new StringJoiner(", ");
+            for (Statement.SelectItem item : aggregates)
+                computed.add(item.toString());
+            StringJoiner grouping = new StringJoiner(", ");
+            for (ColumnRef column : groupBy)
+                grouping.add(column.getQualifiedName());
+            return "Hash aggregate " + computed + (groupBy.isEmpty() ? "" : " GROUP BY " + grouping);
+        }
+
+        @Override
+        List<PlanNode> getChildren()
+        {
+            return Collections.singletonList(source);
+        }
+    }
+
+    /**
+     * Joins the Records of two tables with equal values in a column of each.
+     * Conditions merged into either Scan are tested before joining.
+     */
+    static class Join extends PlanNode
+    {
+        Scan left;
+        Scan right;
+        final ColumnRef leftColumn;
+        final ColumnRef rightColumn;
+        final JoinType type;
+        // Whether the hash table is expected to be built from the left table.
+        boolean buildsLeft = true;
+
+        Join(Scan left, Scan right, ColumnRef leftColumn, ColumnRef rightColumn, JoinType type)
+        {
+            this.left = left;
+            this.right = right;
+            this.leftColumn = leftColumn;
+            this.rightColumn = rightColumn;
+            this.type = type;
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            return concat(left.getColumns(), right.getColumns(), String[]::new);
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            return concat(left.getTypes(), right.getTypes(), ColumnType[]::new);
+        }
+
+        // Joins two arrays into a new one.
+        private static <T> T[] concat(T[] first, T[] second, IntFunction<T[]> newArray)
+        {
+            T[] both = newArray.apply(first.length + second.length);
+            System.arraycopy(first, 0, both, 0, first.length);
+            System.arraycopy(second, 0, both, first.length, second.length);
+            return both;
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action)
+        {
+            database.join(left.tableName, left.getFilter(parameters), leftColumn.getFieldName(),
+                    right.tableName, right.getFilter(parameters), rightColumn.getFieldName(), type, action);
+        }
+
+        @Override
+        String describe()
+        {
+            String kind = type == JoinType.INNER ? "Hash join" : "Hash left outer join";
+            String buildAlias = buildsLeft ? left.alias : right.alias;
+            return kind + " ON " + leftColumn.getQualifiedName() + " = " + rightColumn.getQualifiedName() + " (building on " + buildAlias + ")";
+        }
+
+        @Override
+        List<PlanNode> getChildren()
+        {
+            return Arrays.asList(left, right);
+        }
+    }
+
+    /**
+     * Passes on only the rows meeting a Condition that couldn't be merged into
+     * a Scan.
+     */
+    static class RowFilter extends PlanNode
+    {
+        PlanNode child;
+        Condition condition;
+
+        RowFilter(PlanNode child, Condition condition)
+        {
+            this.child = child;
+            this.condition = condition;
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            return child.getColumns();
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            return child.getTypes();
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action) throws IOException
+        {
+            Predicate<String[]> test = condition.compile(child.getColumns(), child.getTypes(), parameters);
+            child.execute(database, parameters, row -> {
+                if (test.test(row))
+                    action.accept(row);
+            });
+        }
+
+        @Override
+        String describe()
+        {
+            return "Filter " + condition;
+        }
+
+        @Override
+        List<PlanNode> getChildren()
+        {
+            return Collections.singletonList(child);
+        }
+    }
+
+    /**
+     * Sorts rows in memory. If there is a limit, only that many rows are ever
+     * held, in a heap.
+     */
+    static class Sort extends PlanNode
+    {
+        PlanNode child;
+        final String[] sortColumns;
+        final boolean[] descending;
+        // The largest number of rows to output, or -1 for no limit.
+        int limit = -1;
+
+        Sort(PlanNode child, String[] sortColumns, boolean[] descending)
+        {
+            this.child = child;
+            this.sortColumns = sortColumns;
+            this.descending = descending;
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            return child.getColumns();
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            return child.getTypes();
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action) throws IOException
+        {
+            Comparator<String[]> order = buildOrder();
+            if (limit == -1)
+            {
+                ArrayList<String[]> rows = new ArrayList<>();
+                child.execute(database, parameters, rows::add);
+                rows.sort(order);
+                rows.forEach(action);
+                return;
+            }
+            if (limit == 0)
+                return;
+            // The heap has the worst row at the top, ready to be replaced. It
+            // starts small and grows as needed, as the limit may be far larger
+            // than the number of rows.
+            PriorityQueue<String[]> best = new PriorityQueue<>(order.reversed());
+            child.execute(database, parameters, row -> {
+                if (best.size() < limit)
+                    best.add(row);
+                else if (order.compare(row, best.peek()) < 0)
+                {
+                    best.poll();
+                    best.add(row);
+                }
+            });
+            ArrayList<String[]> rows = new ArrayList<>(best);
+            rows.sort(order);
+            rows.forEach(action);
+        }
+
+        // Missing values, as in unmatched outer join rows, come first.
+        private Comparator<String[]> buildOrder()
+        {
+            int[] positions = positionsOf(sortColumns, child.getColumns());
+            ColumnType[] types = child.getTypes();
+            Comparator<String[]> order = (a, b) -> 0;
+            for (int i = 0; i < positions.length; i++)
+            {
+                int position = positions[i];
+                ColumnType type = types[position];
+                Comparator<String[]> byColumn = (a, b) -> {
+                    if (a[position] == null || b[position] == null)
+                        return a[position] == null ? (b[position] == null ? 0 : -1) : 1;
+                    return Condition.compareText(type, a[position], b[position]);
+                };
+                order = order.thenComparing(descending[i] ? byColumn.reversed() : byColumn);
+            }
+            return order;
+        }
+
+        @Override
+        String describe()
+        {
+            return (limit == -1 ? "Sort " : "Top " + limit + " ") + "BY " + describeOrder(sortColumns, descending);
+        }
+
+        @Override
+        List<PlanNode> getChildren()
+        {
+            return Collections.singletonList(child);
+        }
+    }
+
+    /**
+     * Passes on only the first few rows.
+     */
+    static class Limit extends PlanNode
+    {
+        PlanNode child;
+        final int limit;
+
+        Limit(PlanNode child, int limit)
+        {
+            this.child = child;
+            this.limit = limit;
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            return child.getColumns();
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            return child.getTypes();
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action) throws IOException
+        {
+            int[] passed = new int[1];
+            child.execute(database, parameters, row -> {
+                if (passed[0] < limit)
+                {
+                    passed[0]++;
+                    action.accept(row);
+                }
+            });
+        }
+
+        @Override
+        String describe()
+        {
+            return "Limit " + limit;
+        }
+
+        @Override
+        List<PlanNode> getChildren()
+        {
+            return Collections.singletonList(child);
+        }
+    }
+
+    /**
+     * Keeps just the chosen columns of each row, in the chosen order.
+     */
+    static class Project extends PlanNode
+    {
+        PlanNode child;
+        final String[] columns;
+
+        Project(PlanNode child, String[] columns)
+        {
+            this.child = child;
+            this.columns = columns;
+        }
+
+        @Override
+        String[] getColumns()
+        {
+            return columns.clone();
+        }
+
+        @Override
+        ColumnType[] getTypes()
+        {
+            int[] positions = positionsOf(columns, child.getColumns());
+            ColumnType[] childTypes = child.getTypes();
+            ColumnType[] types = new ColumnType[positions.length];
+            for (int i = 0; i < positions.length; i++)
+                types[i] = childTypes[positions[i]];
+            return types;
+        }
+
+        @Override
+        void execute(Database database, String[] parameters, Consumer<String[]> action) throws IOException
+        {
+            int[] positions = positionsOf(columns, child.getColumns());
+            child.execute(database, parameters, row -> {
+                String[] projected = new String[positions.length];
+                for (int i = 0; i < positions.length; i++)
+                    projected[i] = row[positions[i]];
+                action.accept(projected);
+            });
+        }
+
+        @Override
+        String describe()
+        {
+            return "Project " + String.join(", ", columns);
+        }
+
+        @Override
+        List<PlanNode> getChildren()
+        {
+            return Collections.singletonList(child);
+        }
+    }
+
+    // Describes an ordering as it would be written in ORDER BY.
+    private static String describeOrder(String[] columns, boolean[] descending)
+    {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (int i = 0; i < columns.length; i++)
+            joiner.add(columns[i] + (descending[i] ? " DESC" : ""));
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,284 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.ColumnType;
+import rjmdatabase.dbcomponents.Database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks a SELECT against the database and builds the plan for running it.
+ * Every column reference is bound to the table it belongs to, a simple plan is
+ * built step by step from the parts of the query, and the plan is then handed
+ * to the Optimizer.
+ * @author Rjmcf
+ */
+class Planner
+{
+    private final Database database;
+    private final Optimizer optimizer;
+
+    Planner(Database database)
+    {
+        this.database = database;
+        optimizer = new Optimizer(database);
+    }
+
+    /**
+     * A plan ready to run, along with the names to show for its columns.
+     */
+    static class SelectPlan
+    {
+        final PlanNode root;
+        final String[] columnNames;
+
+        SelectPlan(PlanNode root, String[] columnNames)
+        {
+            this.root = root;
+            this.columnNames = columnNames;
+        }
+    }
+
+    /**
+     * Plans a SELECT. The plan can be run with any values of the parameters,
+     * but is chosen to suit the values given.
+     * @param  select     The parsed SELECT.
+     * @param  parameters The values of the parameters of the query.
+     * @return            The optimized plan.
+     */
+    SelectPlan planSelect(Statement.Select select, String[] parameters)
+    {
+        Scope scope = new Scope();
+        PlanNode.Scan fromScan = scope.addTable(select.from);
+        PlanNode plan = fromScan;
+        boolean joined = select.join != null;
+        if (joined)
+        {
+            PlanNode.Scan joinScan = scope.addTable(select.join);
+            ColumnRef leftColumn = scope.bind(select.joinLeft);
+            ColumnRef rightColumn = scope.bind(select.joinRight);
+            // The columns may be written either way round.
+            if (leftColumn.getTableAlias().equals(joinScan.alias))
+            {
+                ColumnRef swap = leftColumn;
+                leftColumn = rightColumn;
+                rightColumn = swap;
+            }
+            if (!leftColumn.getTableAlias().equals(fromScan.alias) || !rightColumn.getTableAlias().equals(joinScan.alias))
+                throw new IllegalArgumentException("A join must compare a column of each table");
+            if (leftColumn.getFieldName().equals(QueryEngine.KEY_COL_NAME) || rightColumn.getFieldName().equals(QueryEngine.KEY_COL_NAME))
+                throw new IllegalArgumentException("Tables cannot be joined on their keys");
+            plan = new PlanNode.Join(fromScan, joinScan, leftColumn, rightColumn, select.joinType);
+        }
+        if (select.where != null)
+        {
+            scope.bind(select.where);
+            plan = new PlanNode.RowFilter(plan, select.where);
+        }
+
+        boolean aggregating = !select.groupBy.isEmpty();
+        for (Statement.SelectItem item : select.items)
+            aggregating |= item.isAggregate();
+        for (Statement.OrderItem order : select.orderBy)
+            aggregating |= order.item.isAggregate();
+
+        String[] planColumns;
+        String[] columnNames;
+        ArrayList<Statement.SelectItem> aggregates = new ArrayList<>();
+        if (select.items.isEmpty())
+        {
+            if (aggregating)
+                throw new IllegalArgumentException("SELECT * cannot be used with aggregates");
+            planColumns = plan.getColumns();
+            columnNames = new String[planColumns.length];
+            for (int i = 0; i < planColumns.length; i++)
+                columnNames[i] = joined ? planColumns[i] : planColumns[i].substring(planColumns[i].indexOf('.') + 1);
+        }
+        else
+        {
+            if (aggregating && joined)
+                throw new IllegalArgumentException("Aggregates over joined tables are not supported");
+            for (ColumnRef column : select.groupBy)
+                scope.bind(column);
+            planColumns = new String[select.items.size()];
+            columnNames = new String[select.items.size()];
+            for (int i = 0; i < planColumns.length; i++)
+            {
+                Statement.SelectItem item = select.items.get(i);
+                planColumns[i] = bindItem(item, scope, select.groupBy, aggregating, aggregates);
+                columnNames[i] = displayName(item, joined);
+            }
+        }
+
+        if (!select.orderBy.isEmpty())
+        {
+            String[] sortColumns = new String[select.orderBy.size()];
+            boolean[] descending = new boolean[select.orderBy.size()];
+            for (int i = 0; i < sortColumns.length; i++)
+            {
+                Statement.OrderItem order = select.orderBy.get(i);
+                int aliased = findAlias(select.items, order.item);
+                sortColumns[i] = aliased != -1 ? planColumns[aliased] : bindItem(order.item, scope, select.groupBy, aggregating, aggregates);
+                descending[i] = order.descending;
+            }
+            if (aggregating)
+                plan = new PlanNode.AggregateScan(plan, select.groupBy, aggregates);
+            plan = new PlanNode.Sort(plan, sortColumns, descending);
+        }
+        else if (aggregating)
+            plan = new PlanNode.AggregateScan(plan, select.groupBy, aggregates);
+
+        if (select.limit != -1)
+            plan = new PlanNode.Limit(plan, select.limit);
+        plan = new PlanNode.Project(plan, planColumns);
+        return new SelectPlan(optimizer.optimize(plan, parameters), columnNames);
+    }
+
+    /**
+     * Plans finding the keys of the Records of a table meeting a Condition,
+     * for UPDATE and DELETE.
+     * @param  table      The table.
+     * @param  where      The Condition, or null to find every key.
+     * @param  parameters The values of the parameters of the query.
+     * @return            The optimized plan, whose rows hold just a key.
+     */
+    PlanNode planKeys(Statement.TableRef table, Condition where, String[] parameters)
+    {
+        Scope scope = new Scope();
+        PlanNode.Scan scan = scope.addTable(table);
+        PlanNode plan = scan;
+        if (where != null)
+        {
+            scope.bind(where);
+            plan = new PlanNode.RowFilter(plan, where);
+        }
+        plan = new PlanNode.Project(plan, new String[]{ColumnRef.qualify(scan.alias, QueryEngine.KEY_COL_NAME)});
+        return optimizer.optimize(plan, parameters);
+    }
+
+    // Binds a SELECT or ORDER BY item, returning the name of the plan column
+    // holding it. Aggregates are added to the list of those to compute.
+    private static String bindItem(Statement.SelectItem item, Scope scope, List<ColumnRef> groupBy, boolean aggregating, List<Statement.SelectItem> aggregates)
+    {
+        if (item.column != null)
+            scope.bind(item.column);
+        if (!item.isAggregate())
+        {
+            if (aggregating && groupBy.stream().noneMatch(g -> g.getQualifiedName().equals(item.column.getQualifiedName())))
+                throw new IllegalArgumentException("Column " + item.column + " must appear in GROUP BY or in an aggregate");
+            return item.column.getQualifiedName();
+        }
+        String name = item.toString();
+        if (aggregates.stream().noneMatch(a -> a.toString().equals(name)))
+            aggregates.add(item);
+        return name;
+    }
+
+    // Finds the SELECT item an ORDER BY item refers to by its alias.
+    private static int findAlias(List<Statement.SelectItem> items, Statement.SelectItem order)
+    {
+        if (order.isAggregate() || order.column.getQualifier() != null)
+            return -1;
+        for (int i = 0; i < items.size(); i++)
+            if (order.column.getFieldName().equals(items.get(i).alias))
+                return i;
+        return -1;
+    }
+
+    // Gets the name shown for a SELECT item. Columns are only qualified by
+    // their table if there is more than one table.
+    private static String displayName(Statement.SelectItem item, boolean joined)
+    {
+        if (item.alias != null)
+            return item.alias;
+        String column = item.column == null ? "*" : joined ? item.column.getQualifiedName() : item.column.getFieldName();
+        if (!item.isAggregate())
+            return column;
+        return item.function + "(" + column + (item.argument == null ? "" : ", " + item.argument) + ")";
+    }
+
+    /**
+     * The tables named in a query, against which column references are bound.
+     */
+    private class Scope
+    {
+        // The tables by alias, along with their columns.
+        private final Map<String, Statement.TableRef> tables = new LinkedHashMap<>();
+        private final Map<String, List<String>> columns = new LinkedHashMap<>();
+
+        // Adds a table to the scope, returning a Scan of it.
+        PlanNode.Scan addTable(Statement.TableRef table)
+        {
+            if (!database.hasTable(table.tableName))
+                throw new IllegalArgumentException("No table " + table.tableName + " in database");
+            if (tables.containsKey(table.alias))
+                throw new IllegalArgumentException("Table name " + table.alias + " is used twice, so an alias is needed");
+            ArrayList<String> fieldNames = new ArrayList<>();
+            fieldNames.add(QueryEngine.KEY_COL_NAME);
+            if (!database.getFieldNames(table.tableName).isEmpty())
+                fieldNames.addAll(Arrays.asList(database.getFieldNamesAsArray(table.tableName)));
+            tables.put(table.alias, table);
+            columns.put(table.alias, fieldNames);
+
+            String[] allColumns = new String[fieldNames.size()];
+            ColumnType[] allTypes = new ColumnType[fieldNames.size()];
+            ColumnType[] fieldTypes = database.getFieldTypesAsArray(table.tableName);
+            allColumns[0] = ColumnRef.qualify(table.alias, QueryEngine.KEY_COL_NAME);
+            allTypes[0] = ColumnType.INT;
+            for (int i = 1; i < allColumns.length; i++)
+            {
+                allColumns[i] = ColumnRef.qualify(table.alias, fieldNames.get(i));
+                allTypes[i] = fieldTypes[i - 1];
+            }
+            return new PlanNode.Scan(table.tableName, table.alias, allColumns, allTypes);
+        }
+
+        // Binds a column to the one table in scope that it can belong to.
+        ColumnRef bind(ColumnRef column)
+        {
+            String alias = null;
+            if (column.getQualifier() != null)
+            {
+                if (tables.containsKey(column.getQualifier()))
+                    alias = column.getQualifier();
+                else
+                {
+                    for (Statement.TableRef table : tables.values())
+                        if (table.tableName.equals(column.getQualifier()))
+                            alias = table.alias;
+                }
+                if (alias == null)
+                    throw new IllegalArgumentException("No table " + column.getQualifier() + " in query");
+                if (!columns.get(alias).contains(column.getFieldName()))
+                    throw new IllegalArgumentException("No column " + column.getFieldName() + " in table " + tables.get(alias).tableName);
+            }
+            else
+            {
+                for (Map.Entry<String, List<String>> entry : columns.entrySet())
+                {
+                    if (!entry.getValue().contains(column.getFieldName()))
+                        continue;
+                    if (alias != null)
+                        throw new IllegalArgumentException("Column " + column.getFieldName() + " is ambiguous, so must be qualified by its table");
+                    alias = entry.getKey();
+                }
+                if (alias == null)
+                    throw new IllegalArgumentException("No column " + column.getFieldName() + " in query");
+            }
+            column.bind(alias);
+            return column;
+        }
+
+        // Binds every column in a Condition.
+        void bind(Condition condition)
+        {
+            ArrayList<ColumnRef> refs = new ArrayList<>();
+            condition.collectColumns(refs);
+            for (ColumnRef ref : refs)
+                bind(ref);
+        }
+    }
+}
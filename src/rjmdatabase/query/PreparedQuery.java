@@ -0,0 +1,262 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.Database;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A query that has been parsed once so that it can be run many times. Values
+ * in the query may be written as "?", and are then supplied, in order, each
+ * time the query is run, as in
+ * <pre>
+ * SELECT Name FROM Person WHERE Age &gt; ? AND City = ?
+ * </pre>
+ * The plan for a SELECT, UPDATE or DELETE is made the first time the query is
+ * run, suiting the values given then, and is kept for later runs. It is made
+ * again if any Table is added or renamed, or has a column or index added,
+ * renamed or removed, since the plan may no longer be valid or the best.
+ *
+ * The rows returned by a SELECT are kept in the result cache of the
+ * QueryEngine, and returned again when the query is run with the same values
+ * until any Table it reads is changed. The rows are shared, so must not be
+ * changed by the caller.
+ * @author Rjmcf
+ */
+public class PreparedQuery
+{
+    private final Database database;
+    private final Planner planner;
+    private final ResultCache resultCache;
+    // The standard form of the query text.
+    private final String text;
+    private final Statement statement;
+    // The plan of a SELECT, or of finding the keys for an UPDATE or DELETE,
+    // or null if it is yet to be made.
+    private Planner.SelectPlan selectPlan;
+    private PlanNode keysPlan;
+    // The schema version of the database when the plan was made.
+    private long planVersion;
+    // The number of times a plan has been made, for testing.
+    private int timesPlanned;
+
+    /**
+     * Parses a query. Throws an IllegalArgumentException describing the
+     * problem if the query is not valid.
+     * @param database    The database the query is run against.
+     * @param planner     The planner for the database.
+     * @param resultCache The cache of the rows returned by SELECTs.
+     * @param query       The query text.
+     * @param text        The standard form of the query text.
+     */
+    PreparedQuery(Database database, Planner planner, ResultCache resultCache, String query, String text)
+    {
+        this.database = database;
+        this.planner = planner;
+        this.resultCache = resultCache;
+        this.text = text;
+        statement = Parser.parse(query);
+    }
+
+    /**
+     * Gets the query in the standard form it is cached under.
+     * @return The query text.
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Gets the number of "?" parameters in the query.
+     * @return The number of values to supply when running the query.
+     */
+    public int getNumParameters()
+    {
+        return statement.numParameters;
+    }
+
+    /**
+     * Runs the query. Throws an IllegalArgumentException describing the
+     * problem if the values are not valid for the query.
+     * @param  parameters  The value of each "?" in the query, in order.
+     * @return             The rows returned or number of Records changed.
+     * @throws IOException If a sort could not use its temporary files.
+     */
+    public QueryResult execute(String... parameters) throws IOException
+    {
+        checkParameters(parameters);
+        if (statement instanceof Statement.Select)
+            return select((Statement.Select)statement, parameters);
+        if (statement instanceof Statement.Explain)
+        {
+            List<String[]> rows = new ArrayList<>();
+            for (String line : explainLines(((Statement.Explain)statement).select, parameters))
+                rows.add(new String[]{line});
+            return new QueryResult(new String[]{"Plan"}, rows);
+        }
+        if (statement instanceof Statement.Insert)
+            return insert((Statement.Insert)statement, parameters);
+        if (statement instanceof Statement.Update)
+            return update((Statement.Update)statement, parameters);
+        return delete((Statement.Delete)statement, parameters);
+    }
+
+    /**
+     * Describes how the query would be run with the given values, one step of
+     * the plan per line, with the steps feeding each step indented beneath it.
+     * The query must be a SELECT, with or without EXPLAIN.
+     * @param  parameters The value of each "?" in the query, in order.
+     * @return            The description.
+     */
+    public String explain(String... parameters)
+    {
+        Statement toExplain = statement instanceof Statement.Explain ? ((Statement.Explain)statement).select : statement;
+        if (!(toExplain instanceof Statement.Select))
+            throw new IllegalArgumentException("Only SELECT queries can be explained");
+        checkParameters(parameters);
+        return String.join("\n", explainLines((Statement.Select)toExplain, parameters));
+    }
+
+    /**
+     * Gets the number of times a plan has been made for the query.
+     * @return The number of plans made.
+     */
+    int getTimesPlanned()
+    {
+        return timesPlanned;
+    }
+
+    private void checkParameters(String[] parameters)
+    {
+        if (parameters.length != statement.numParameters)
+            throw new IllegalArgumentException(String.format("Expected %d parameters but got %d", statement.numParameters, parameters.length));
+    }
+
+    // Gets whether the plan, if any, was made for the current Tables.
+    private boolean hasCurrentPlan()
+    {
+        return planVersion == database.getSchemaVersion() && (selectPlan != null || keysPlan != null);
+    }
+
+    // Plans are made while holding the lock, as planning binds the columns of
+    // the Statement.
+    private synchronized Planner.SelectPlan getSelectPlan(String[] parameters)
+    {
+        if (!hasCurrentPlan())
+        {
+            planVersion = database.getSchemaVersion();
+            selectPlan = planner.planSelect((Statement.Select)statement, parameters);
+            timesPlanned++;
+        }
+        return selectPlan;
+    }
+
+    private synchronized PlanNode getKeysPlan(Statement.TableRef table, Condition where, String[] parameters)
+    {
+        if (!hasCurrentPlan())
+        {
+            planVersion = database.getSchemaVersion();
+            keysPlan = planner.planKeys(table, where, parameters);
+            timesPlanned++;
+        }
+        return keysPlan;
+    }
+
+    // A fresh plan is made every time, with estimates for the values given.
+    private synchronized List<String> explainLines(Statement.Select select, String[] parameters)
+    {
+        List<String> lines = new ArrayList<>();
+        planner.planSelect(select, parameters).root.explain(lines, 0);
+        return lines;
+    }
+
+    // The modification counts are read before the query is run, so that the
+    // result is out of date if a Table is changed while it runs.
+    private QueryResult select(Statement.Select select, String[] parameters) throws IOException
+    {
+        String key = ResultCache.keyOf(text, parameters);
+        QueryResult cached = resultCache.get(key);
+        if (cached != null)
+            return cached;
+        String[] tableNames = select.join == null
+                ? new String[]{select.from.tableName}
+                : new String[]{select.from.tableName, select.join.tableName};
+        long schemaVersion = database.getSchemaVersion();
+        long[] modificationCounts = null;
+        if (Arrays.stream(tableNames).allMatch(database::hasTable))
+            modificationCounts = resultCache.getModificationCounts(tableNames);
+
+        Planner.SelectPlan plan = getSelectPlan(parameters);
+        List<String[]> rows = new ArrayList<>();
+        plan.root.execute(database, parameters, rows::add);
+        QueryResult result = new QueryResult(plan.columnNames, rows);
+        if (modificationCounts != null)
+            resultCache.put(key, tableNames, modificationCounts, schemaVersion, result);
+        return result;
+    }
+
+    // Every row of values is checked before any is inserted.
+    private QueryResult insert(Statement.Insert insert, String[] parameters)
+    {
+        if (!database.hasTable(insert.tableName))
+            throw new IllegalArgumentException("No table " + insert.tableName + " in database");
+        List<String> fieldNames = database.getFieldNames(insert.tableName).isEmpty()
+                ? new ArrayList<>() : Arrays.asList(database.getFieldNamesAsArray(insert.tableName));
+        List<String> columns = insert.columns.isEmpty() ? fieldNames : insert.columns;
+        for (String column : columns)
+            if (!fieldNames.contains(column))
+                throw new IllegalArgumentException("No column " + column + " in table " + insert.tableName);
+        if (columns.size() != fieldNames.size() || columns.stream().distinct().count() != columns.size())
+            throw new IllegalArgumentException("Values must be given for each column of " + insert.tableName + " exactly once");
+
+        List<String[]> records = new ArrayList<>();
+        for (List<Value> row : insert.rows)
+        {
+            if (row.size() != columns.size())
+                throw new IllegalArgumentException(String.format("Expected %d values but got %d", columns.size(), row.size()));
+            String[] fields = new String[fieldNames.size()];
+            for (int i = 0; i < columns.size(); i++)
+                fields[fieldNames.indexOf(columns.get(i))] = row.get(i).resolve(parameters);
+            records.add(fields);
+        }
+        database.addRecords(insert.tableName, records);
+        return new QueryResult(records.size());
+    }
+
+    private QueryResult update(Statement.Update update, String[] parameters) throws IOException
+    {
+        if (!database.hasTable(update.table.tableName))
+            throw new IllegalArgumentException("No table " + update.table.tableName + " in database");
+        List<String> fieldNames = Arrays.asList(database.getFieldNamesAsArray(update.table.tableName));
+        for (String column : update.columns)
+            if (!fieldNames.contains(column))
+                throw new IllegalArgumentException("No column " + column + " in table " + update.table.tableName + " that can be updated");
+        if (update.columns.stream().distinct().count() != update.columns.size())
+            throw new IllegalArgumentException("Each column of " + update.table.tableName + " can only be set once");
+        String[] values = new String[update.values.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = update.values.get(i).resolve(parameters);
+        int[] keys = findKeys(update.table, update.where, parameters);
+        database.updateRecords(update.table.tableName, keys, update.columns.toArray(new String[0]), values);
+        return new QueryResult(keys.length);
+    }
+
+    private QueryResult delete(Statement.Delete delete, String[] parameters) throws IOException
+    {
+        int[] keys = findKeys(delete.table, delete.where, parameters);
+        database.deleteRecords(delete.table.tableName, keys);
+        return new QueryResult(keys.length);
+    }
+
+    // The keys are all found before any Record is changed, so changes can't
+    // affect which Records are found. They are then changed in one batch.
+    private int[] findKeys(Statement.TableRef table, Condition where, String[] parameters) throws IOException
+    {
+        List<Integer> keys = new ArrayList<>();
+        getKeysPlan(table, where, parameters).execute(database, parameters, row -> keys.add(Integer.parseInt(row[0])));
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,167 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.Database;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs queries written in a subset of SQL against a Database. The supported
+ * statements are:
+ * <pre>
+ * SELECT * | item [AS name], ... FROM table [alias]
+ *     [[INNER | LEFT [OUTER]] JOIN table [alias] ON column = column]
+ *     [WHERE condition] [GROUP BY column, ...]
+ *     [ORDER BY item [ASC | DESC], ...] [LIMIT count]
+ * INSERT INTO table [(column, ...)] VALUES (value, ...), ...
+ * UPDATE table SET column = value, ... [WHERE condition]
+ * DELETE FROM table [WHERE condition]
+ * EXPLAIN select
+ * </pre>
+ * An item is a column, or one of count, sum, min, max and avg applied to a
+ * column, or count(*). Conditions combine tests of the form column = value
+ * (or !=, &lt;&gt;, &lt;, &lt;=, &gt;, &gt;=), column BETWEEN value AND
+ * value, column LIKE 'prefix%' and column CONTAINS 'phrase' with AND, OR, NOT
+ * and brackets. Values are strings in single quotes, numbers, true or false.
+ * Columns may be qualified by their table, as in Person.Name, and the key of
+ * each Record is the column KeyTable. Any value may instead be written as "?",
+ * and supplied when the query is run.
+ *
+ * Queries are parsed once and kept, with their plans, as PreparedQueries in a
+ * cache of the most recently used queries, so that running the same query
+ * again, perhaps with different values for its parameters, skips parsing and
+ * planning. Queries are matched ignoring spacing, the case of reserved words
+ * and a final semicolon. The rows returned by SELECTs are kept too, up to a
+ * budget of bytes, and returned again until a Table they came from changes.
+ * @author Rjmcf
+ */
+public class QueryEngine
+{
+    /**
+     * The number of queries kept in the cache unless set otherwise.
+     */
+    public static final int DEFAULT_PLAN_CACHE_SIZE = 256;
+
+    /**
+     * The number of bytes of rows kept in the result cache unless set
+     * otherwise.
+     */
+    public static final long DEFAULT_RESULT_CACHE_BYTES = 16L * 1024 * 1024;
+
+    // The name of the column holding the key of each Record.
+    static final String KEY_COL_NAME = "KeyTable";
+
+    private final Database database;
+    private final Planner planner;
+    private final ResultCache resultCache;
+    // The prepared queries by the standard form of their text, from least to
+    // most recently used.
+    private final LinkedHashMap<String, PreparedQuery> planCache;
+    private int planCacheSize = DEFAULT_PLAN_CACHE_SIZE;
+
+    /**
+     * Creates a QueryEngine running queries against a Database.
+     * @param database The database.
+     */
+    public QueryEngine(Database database)
+    {
+        this.database = database;
+        planner = new Planner(database);
+        resultCache = new ResultCache(database, DEFAULT_RESULT_CACHE_BYTES);
+        planCache = new LinkedHashMap<String, PreparedQuery>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedQuery> eldest)
+            {
+                return size() > planCacheSize;
+            }
+        };
+    }
+
+    /**
+     * Runs a query. Throws an IllegalArgumentException describing the problem
+     * if the query is not valid for the database.
+     * @param  query       The query text.
+     * @param  parameters  The value of each "?" in the query, in order.
+     * @return             The rows returned or number of Records changed.
+     * @throws IOException If a sort could not use its temporary files.
+     */
+    public QueryResult execute(String query, String... parameters) throws IOException
+    {
+        return prepare(query).execute(parameters);
+    }
+
+    /**
+     * Parses a query so that it can be run many times, or finds it in the
+     * cache if it has been seen recently. Throws an IllegalArgumentException
+     * describing the problem if the query is not valid.
+     * @param  query The query text, which may hold "?" parameters.
+     * @return       The prepared query.
+     */
+    public synchronized PreparedQuery prepare(String query)
+    {
+        String text = Parser.normalize(query);
+        PreparedQuery prepared = planCache.get(text);
+        if (prepared == null)
+        {
+            prepared = new PreparedQuery(database, planner, resultCache, query, text);
+            planCache.put(text, prepared);
+        }
+        return prepared;
+    }
+
+    /**
+     * Describes how a SELECT would be run, one step of the plan per line, with
+     * the steps feeding each step indented beneath it.
+     * @param  query      The text of the SELECT, with or without EXPLAIN.
+     * @param  parameters The value of each "?" in the query, in order.
+     * @return            The description.
+     */
+    public String explain(String query, String... parameters)
+    {
+        return prepare(query).explain(parameters);
+    }
+
+    /**
+     * Sets how many queries the cache holds. The least recently used queries
+     * are forgotten first.
+     * @param size The number of queries, or 0 to cache none.
+     */
+    public synchronized void setPlanCacheSize(int size)
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        planCacheSize = size;
+        while (planCache.size() > size)
+            planCache.remove(planCache.keySet().iterator().next());
+    }
+
+    /**
+     * Gets the number of queries in the cache.
+     * @return The number of cached queries.
+     */
+    public synchronized int getPlanCacheCount()
+    {
+        return planCache.size();
+    }
+
+    /**
+     * Sets how many bytes of rows the result cache holds, roughly. The least
+     * recently used results are forgotten first.
+     * @param bytes The number of bytes, or 0 to cache no results.
+     */
+    public void setResultCacheBytes(long bytes)
+    {
+        resultCache.setBudget(bytes);
+    }
+
+    /**
+     * Gets the estimated number of bytes of rows in the result cache.
+     * @return The number of bytes.
+     */
+    public long getResultCacheBytesUsed()
+    {
+        return resultCache.getBytesUsed();
+    }
+}
@@ -0,0 +1,76 @@
+package rjmdatabase.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of running a query: the rows returned by a SELECT, or the number
+ * of Records changed by an INSERT, UPDATE or DELETE.
+ * @author Rjmcf
+ */
+public class QueryResult
+{
+    private final String[] columnNames;
+    private final List<String[]> rows;
+    private final int updateCount;
+
+    /**
+     * Creates the result of a query returning rows.
+     * @param columnNames The names of the columns of the rows.
+     * @param rows        The rows.
+     */
+    QueryResult(String[] columnNames, List<String[]> rows)
+    {
+        this.columnNames = columnNames;
+        this.rows = Collections.unmodifiableList(rows);
+        updateCount = -1;
+    }
+
+    /**
+     * Creates the result of a query changing Records.
+     * @param updateCount The number of Records changed.
+     */
+    QueryResult(int updateCount)
+    {
+        columnNames = new String[0];
+        rows = Collections.emptyList();
+        this.updateCount = updateCount;
+    }
+
+    /**
+     * Gets the names of the columns of the rows.
+     * @return The column names, which are empty if no rows are returned.
+     */
+    public String[] getColumnNames()
+    {
+        return columnNames.clone();
+    }
+
+    /**
+     * Gets the rows returned. A value is null where there was nothing to
+     * return, as for unmatched rows of a left outer join.
+     * @return The unmodifiable list of rows.
+     */
+    public List<String[]> getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Gets the number of Records inserted, updated or deleted.
+     * @return The count, or -1 if the query returned rows instead.
+     */
+    public int getUpdateCount()
+    {
+        return updateCount;
+    }
+
+    /**
+     * Gets whether the query returned rows rather than changing Records.
+     * @return Whether there are rows to show.
+     */
+    public boolean hasRows()
+    {
+        return updateCount == -1;
+    }
+}
@@ -0,0 +1,216 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.Database;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of recent SELECTs so that running the same query with
+ * the same values again can skip running it. Each result is kept with the
+ * modification count of every Table the query read, and the schema version of
+ * the database, when it was run; it is only used while they are all unchanged,
+ * so any change to those Tables makes it out of date.
+ *
+ * The cache holds results up to a budget of bytes, estimated from the number
+ * and length of the values in them, and forgets the least recently used
+ * results first to stay within it. Results larger than the whole budget are
+ * never kept.
+ * @author Rjmcf
+ */
+class ResultCache
+{
+    // The rough number of bytes taken by an array, and by a String, before
+    // counting what they hold.
+    private static final long ARRAY_OVERHEAD = 16;
+    private static final long STRING_OVERHEAD = 40;
+    private static final long REFERENCE_SIZE = 8;
+
+    private final Database database;
+    // The results by key, from least to most recently used.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long bytesUsed;
+
+    // A result together with what it was computed from.
+    private static class Entry
+    {
+        final QueryResult result;
+        final String[] tableNames;
+        final long[] modificationCounts;
+        final long schemaVersion;
+        final long bytes;
+
+        Entry(QueryResult result, String[] tableNames, long[] modificationCounts, long schemaVersion, long bytes)
+        {
+            this.result = result;
+            this.tableNames = tableNames;
+            this.modificationCounts = modificationCounts;
+            this.schemaVersion = schemaVersion;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Creates an empty cache of results from a database.
+     * @param database The database the queries are run against.
+     * @param budget   The most bytes of results to hold.
+     */
+    ResultCache(Database database, long budget)
+    {
+        this.database = database;
+        setBudget(budget);
+    }
+
+    /**
+     * Makes the key that a query run with some values is cached under.
+     * @param  text       The standard form of the query text.
+     * @param  parameters The values of the parameters of the query.
+     * @return            The key.
+     */
+    static String keyOf(String text, String[] parameters)
+    {
+        // Each value is preceded by its length, so that values holding the
+        // separator can't be confused with more values.
+        StringBuilder key = new StringBuilder(text);
+        for (String parameter : parameters)
+        {
+            if (parameter == null)
+                key.append("\0-");
+            else
+                key.append('\0').append(parameter.length()).append(':').append(parameter);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the modification counts of some Tables, to be read before running
+     * a query so that changes made while it runs make its result out of date.
+     * @param  tableNames The names of the Tables.
+     * @return            The modification count of each Table, in order.
+     */
+    long[] getModificationCounts(String[] tableNames)
+    {
+        long[] counts = new long[tableNames.length];
+        for (int i = 0; i < tableNames.length; i++)
+            counts[i] = database.getModificationCount(tableNames[i]);
+        return counts;
+    }
+
+    /**
+     * Gets a cached result, if there is one which is still up to date.
+     * @param  key The key of the query and values.
+     * @return     The result, or null if there is none.
+     */
+    synchronized QueryResult get(String key)
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (!isCurrent(entry))
+        {
+            remove(key);
+            return null;
+        }
+        return entry.result;
+    }
+
+    /**
+     * Caches a result, replacing any result cached under the same key.
+     * @param key                The key of the query and values.
+     * @param tableNames         The names of the Tables the query read.
+     * @param modificationCounts The modification counts of those Tables from
+     *                           before the query was run.
+     * @param schemaVersion      The schema version of the database from
+     *                           before the query was run.
+     * @param result             The result.
+     */
+    synchronized void put(String key, String[] tableNames, long[] modificationCounts, long schemaVersion, QueryResult result)
+    {
+        remove(key);
+        long bytes = estimateBytes(key, result);
+        if (bytes > budget)
+            return;
+        entries.put(key, new Entry(result, tableNames, modificationCounts, schemaVersion, bytes));
+        bytesUsed += bytes;
+        evict();
+    }
+
+    /**
+     * Sets the most bytes of results to hold, forgetting the least recently
+     * used results if they no longer fit.
+     * @param budget The number of bytes, or 0 to cache nothing.
+     */
+    synchronized void setBudget(long budget)
+    {
+        if (budget < 0)
+            throw new IllegalArgumentException("The cache size cannot be negative");
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Gets the estimated number of bytes of results held.
+     * @return The number of bytes.
+     */
+    synchronized long getBytesUsed()
+    {
+        return bytesUsed;
+    }
+
+    /**
+     * Gets the number of results held, some of which may be out of date.
+     * @return The number of results.
+     */
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    // Gets whether the Tables a result was computed from are unchanged.
+    private boolean isCurrent(Entry entry)
+    {
+        if (entry.schemaVersion != database.getSchemaVersion())
+            return false;
+        for (int i = 0; i < entry.tableNames.length; i++)
+            if (database.getModificationCount(entry.tableNames[i]) != entry.modificationCounts[i])
+                return false;
+        return true;
+    }
+
+    private void remove(String key)
+    {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            bytesUsed -= entry.bytes;
+    }
+
+    // Forgets the least recently used results until the rest fit the budget.
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (bytesUsed > budget && eldest.hasNext())
+        {
+            bytesUsed -= eldest.next().getValue().bytes;
+            eldest.remove();
+        }
+    }
+
+    // Estimates the bytes taken by a cached result, counting each String as
+    // two bytes per character plus the overhead of the object.
+    private static long estimateBytes(String key, QueryResult result)
+    {
+        long bytes = STRING_OVERHEAD + 2L * key.length();
+        for (String columnName : result.getColumnNames())
+            bytes += REFERENCE_SIZE + STRING_OVERHEAD + 2L * columnName.length();
+        for (String[] row : result.getRows())
+        {
+            bytes += REFERENCE_SIZE + ARRAY_OVERHEAD + REFERENCE_SIZE * row.length;
+            for (String value : row)
+                if (value != null)
+                    bytes += STRING_OVERHEAD + 2L * value.length();
+        }
+        return bytes;
+    }
+}
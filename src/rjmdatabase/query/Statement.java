@@ -0,0 +1,153 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.JoinType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A parsed query, before it has been checked against the database. Each kind
+ * of statement is a subclass holding the parts of the query as written.
+ * @author Rjmcf
+ */
+abstract class Statement
+{
+    // The number of "?" parameters in the statement.
+    int numParameters;
+
+    /**
+     * A table named in a FROM or JOIN clause.
+     */
+    static class TableRef
+    {
+        final String tableName;
+        // The name columns of this table are qualified by, which is the table
+        // name unless an alias was given.
+        final String alias;
+
+        TableRef(String tableName, String alias)
+        {
+            this.tableName = tableName;
+            this.alias = alias == null ? tableName : alias;
+        }
+    }
+
+    /**
+     * An entry in a SELECT list or ORDER BY clause: either a column or an
+     * aggregate function applied to a column or to "*", and for some functions
+     * a further number.
+     */
+    static class SelectItem
+    {
+        // The column, or null for an aggregate over "*".
+        final ColumnRef column;
+        // The lower case name of the aggregate function, or null for a column.
+        final String function;
+        // The number given after the column, such as the quantile of
+        // approx_quantile, or null.
+        final String argument;
+        // The name given with AS, or null.
+        final String alias;
+
+        SelectItem(ColumnRef column, String function, String argument, String alias)
+        {
+            this.column = column;
+            this.function = function;
+            this.argument = argument;
+            this.alias = alias;
+        }
+
+        boolean isAggregate()
+        {
+            return function != null;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (function == null)
+                return column.toString();
+            return function + "(" + (column == null ? "*" : column.toString()) + (argument == null ? "" : ", " + argument) + ")";
+        }
+    }
+
+    /**
+     * An entry in an ORDER BY clause.
+     */
+    static class OrderItem
+    {
+        final SelectItem item;
+        final boolean descending;
+
+        OrderItem(SelectItem item, boolean descending)
+        {
+            this.item = item;
+            this.descending = descending;
+        }
+    }
+
+    /**
+     * SELECT items FROM table [JOIN table ON column = column] [WHERE condition]
+     * [GROUP BY columns] [ORDER BY items] [LIMIT count].
+     */
+    static class Select extends Statement
+    {
+        // The items to output, or empty for "*".
+        final List<SelectItem> items = new ArrayList<>();
+        TableRef from;
+        // The joined table, or null if there is no join.
+        TableRef join;
+        JoinType joinType;
+        ColumnRef joinLeft;
+        ColumnRef joinRight;
+        // The WHERE condition, or null.
+        Condition where;
+        final List<ColumnRef> groupBy = new ArrayList<>();
+        final List<OrderItem> orderBy = new ArrayList<>();
+        // The largest number of rows to output, or -1 for no limit.
+        int limit = -1;
+    }
+
+    /**
+     * INSERT INTO table [(columns)] VALUES (values) [, (values)]...
+     */
+    static class Insert extends Statement
+    {
+        String tableName;
+        // The columns the values are given for, or empty for every field in
+        // order.
+        final List<String> columns = new ArrayList<>();
+        final List<List<Value>> rows = new ArrayList<>();
+    }
+
+    /**
+     * UPDATE table SET column = value [, column = value]... [WHERE condition].
+     */
+    static class Update extends Statement
+    {
+        TableRef table;
+        final List<String> columns = new ArrayList<>();
+        final List<Value> values = new ArrayList<>();
+        // The WHERE condition, or null.
+        Condition where;
+    }
+
+    /**
+     * DELETE FROM table [WHERE condition].
+     */
+    static class Delete extends Statement
+    {
+        TableRef table;
+        // The WHERE condition, or null.
+        Condition where;
+    }
+
+    /**
+     * EXPLAIN select, which describes the plan of a SELECT instead of running
+     * it.
+     */
+    static class Explain extends Statement
+    {
+        Select select;
+    }
+}
@@ -0,0 +1,107 @@
+package rjmdatabase.query;
+
+import java.util.Locale;
+
+/**
+ * A single piece of query text, such as a word, a quoted string or a symbol.
+ * @author Rjmcf
+ */
+class Token
+{
+    /**
+     * The kinds of Token.
+     */
+    enum Kind
+    {
+        // A keyword or a name, such as SELECT or Person. Names in double quotes
+        // are also words, so that they may hold spaces.
+        WORD,
+        // A string in single quotes, with the quotes removed.
+        STRING,
+        // A number, kept as written.
+        NUMBER,
+        // Punctuation or an operator, such as "(" or "<=".
+        SYMBOL,
+        // A "?" standing for a value supplied later.
+        PARAMETER,
+        // The end of the query.
+        END
+    }
+
+    private final Kind kind;
+    private final String text;
+    // The position of the Token in the query, for error messages.
+    private final int position;
+    // Whether the Token was a quoted name, which is never a keyword.
+    private final boolean quoted;
+
+    Token(Kind kind, String text, int position, boolean quoted)
+    {
+        this.kind = kind;
+        this.text = text;
+        this.position = position;
+        this.quoted = quoted;
+    }
+
+    /**
+     * Gets the kind of this Token.
+     * @return The kind.
+     */
+    Kind getKind()
+    {
+        return kind;
+    }
+
+    /**
+     * Gets the text of this Token, without any quotes.
+     * @return The text.
+     */
+    String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Gets where this Token starts in the query.
+     * @return The index of the Token's first character.
+     */
+    int getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Gets whether this Token is a name written in double quotes.
+     * @return Whether the Token was quoted.
+     */
+    boolean isQuoted()
+    {
+        return quoted;
+    }
+
+    /**
+     * Gets whether this Token is the given keyword, in any case.
+     * @param  keyword The keyword, in upper case.
+     * @return         Whether this Token is that keyword.
+     */
+    boolean isKeyword(String keyword)
+    {
+        return kind == Kind.WORD && !quoted && text.toUpperCase(Locale.ROOT).equals(keyword);
+    }
+
+    /**
+     * Gets whether this Token is the given symbol.
+     * @param  symbol The symbol.
+     * @return        Whether this Token is that symbol.
+     */
+    boolean isSymbol(String symbol)
+    {
+        return kind == Kind.SYMBOL && text.equals(symbol);
+    }
+
+    @Override
+    public String toString()
+    {
+        return kind == Kind.END ? "end of query" : "'" + text + "'";
+    }
+}
@@ -0,0 +1,72 @@
+package rjmdatabase.query;
+
+/**
+ * A value written in a query. It is either given in the query text, or is a
+ * "?" standing for a parameter, whose value is supplied each time a prepared
+ * query is run.
+ * @author Rjmcf
+ */
+class Value
+{
+    // The value given in the query, or null for a parameter.
+    private final String literal;
+    // The position of the parameter among those in the query, counting from 0,
+    // or -1 for a literal.
+    private final int parameter;
+
+    private Value(String literal, int parameter)
+    {
+        this.literal = literal;
+        this.parameter = parameter;
+    }
+
+    /**
+     * Creates a value given in the query text.
+     * @param  literal The value.
+     * @return         The Value.
+     */
+    static Value literal(String literal)
+    {
+        return new Value(literal, -1);
+    }
+
+    /**
+     * Creates a value standing for a parameter.
+     * @param  parameter The position of the parameter, counting from 0.
+     * @return           The Value.
+     */
+    static Value parameter(int parameter)
+    {
+        return new Value(null, parameter);
+    }
+
+    /**
+     * Gets whether this Value stands for a parameter.
+     * @return Whether the value is supplied when the query is run.
+     */
+    boolean isParameter()
+    {
+        return parameter != -1;
+    }
+
+    /**
+     * Gets the value, looking up the value of a parameter.
+     * @param  parameters The values of the parameters of the query.
+     * @return            The value.
+     */
+    String resolve(String[] parameters)
+    {
+        if (literal != null)
+            return literal;
+        if (parameter >= parameters.length || parameters[parameter] == null)
+            throw new IllegalArgumentException("No value given for parameter " + (parameter + 1));
+        return parameters[parameter];
+    }
+
+    // Values are shown as they would be written in a query.
+    @Override
+    public String toString()
+    {
+        return literal == null ? "?" : "'" + literal.replace("'", "''") + "'";
+    }
+}
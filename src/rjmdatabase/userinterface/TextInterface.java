@@ -1,6 +1,9 @@
 package rjmdatabase.userinterface;
 
 import rjmdatabase.dbcomponents.Database;
+import rjmdatabase.dbcomponents.TablePrinter;
+import rjmdatabase.query.QueryEngine;
+import rjmdatabase.query.QueryResult;
 
 import java.io.IOException;
 import java.util.StringJoiner;
@@ -10,6 +13,7 @@ import static rjmdatabase.userinterface.ConsoleInterfaceUtil.*;
 public class TextInterface
 {
     private static Database database;
+    private static QueryEngine queryEngine;
 
     public static void main(String[] args) {
         if (args.length != 1)
@@ -20,6 +24,7 @@ public class TextInterface
 
         String databaseFolderName = args[0];
         database = new Database(databaseFolderName);
+        queryEngine = new QueryEngine(database);
 
         mainMenu();
     }
@@ -34,7 +39,8 @@ public class TextInterface
             println("2). Add table.");
             println("3). Edit table.");
             println("4). Print table.");
-            println("5). Quit.");
+            println("5). Run a query.");
+            println("6). Quit.");
 
             choice = getIntInput();
 
@@ -69,6 +75,9 @@ public class TextInterface
                         database.printTable(tableName);
                         break;
                     case 5:
+                        runQuery();
+                        break;
+                    case 6:
                         if (saveDatabaseAndQuit())
                             return;
                         else
@@ -116,6 +125,31 @@ public class TextInterface
             return userRespondedYes("Do you still want to quit?");
     }
 
+    private static void runQuery()
+    {
+        println("Enter a query, or leave blank to return to menu:");
+        String query = getLineOfInput();
+        if (query == null)
+            return;
+
+        try
+        {
+            QueryResult result = queryEngine.execute(query);
+            if (result.hasRows())
+                TablePrinter.printRows("Query result", result.getColumnNames(), result.getRows());
+            else
+                println(String.format("%d record(s) changed.", result.getUpdateCount()));
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException e)
+        {
+            println(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            println("Unable to run query, as temporary files could not be used.");
+        }
+    }
+
     private static void addTable()
     {
         println("Enter table name, or leave blank to return to menu:");
@@ -170,7 +204,8 @@ public class TextInterface
             println("6). Delete a column.");
             println("7). Rename a column.");
             println("8). Rename the table.");
-            println("9). Return to the main menu.");
+            println("9). Import records from a CSV file.");
+            println("10). Return to the main menu.");
 
             choice = getIntInput();
 
@@ -201,6 +236,9 @@ public class TextInterface
                     name = renameTable(name);
                     break;
                 case 9:
+                    importRecordsIntoTable(name);
+                    break;
+                case 10:
                     return;
                 default:
                     println("Please enter one of the options listed.");
@@ -210,11 +248,12 @@ public class TextInterface
 
     private static void addRecordToTable(String tableName)
     {
-        StringJoiner fieldJoiner = new StringJoiner(", ");
+        String[] fieldNames = database.getFieldNamesAsArray(tableName);
+        String[] fieldValues = new String[fieldNames.length];
         println("Enter the value you want to store under each field name.");
-        for (String fieldName : database.getFieldNamesAsArray(tableName))
+        for (int i = 0; i < fieldNames.length; i++)
         {
-            println(String.format("%s:", fieldName));
+            println(String.format("%s:", fieldNames[i]));
             String fieldValue;
             do
             {
@@ -222,13 +261,37 @@ public class TextInterface
             }
             while (fieldValue == null);
 
-            fieldJoiner.add(fieldValue);
+            fieldValues[i] = fieldValue;
         }
 
-        database.addRecord(tableName, fieldJoiner.toString());
+        // The values are passed separately so that they may contain commas.
+        database.addRecord(tableName, fieldValues);
         println("Record added successfully.");
     }
 
+    private static void importRecordsIntoTable(String tableName)
+    {
+        println("Enter the path of the CSV file to import, or leave blank to cancel.");
+        String filePath = getLineOfInput();
+        if (filePath == null)
+            return;
+        boolean hasHeader = userRespondedYes("Does the first line name the columns?");
+
+        try
+        {
+            int numRecords = database.importCsv(tableName, filePath, ',', hasHeader);
+            println(String.format("%d record(s) imported.", numRecords));
+        }
+        catch (IOException e)
+        {
+            println(String.format("Unable to read file %s.", filePath));
+        }
+        catch (IllegalArgumentException e)
+        {
+            println(e.getMessage());
+        }
+    }
+
     private static void updateRecordInTable(String tableName)
     {
         println("Please enter the key of the record you wish to update, or -1 if you wish to cancel.");
@@ -0,0 +1,127 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+public class AggregateTest extends TestBase
+{
+    /**
+     * Runs the tests for Aggregate.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        AggregateTest tester = new AggregateTest();
+        tester.startTest();
+    }
+
+    @Test
+    public void testNames()
+    {
+        claim(Aggregate.count().getName().equals("count(*)"), "Incorrect name for count.");
+        claim(Aggregate.avg("Score").getName().equals("avg(Score)"), "Incorrect name for avg.");
+    }
+
+    @Test
+    public void testSum()
+    {
+        Aggregate.Accumulator whole = Aggregate.sum("Score").newAccumulator();
+        whole.add(3);
+        whole.add(4L);
+        whole.add("5");
+        claim(whole.getResult().equals("12"), "Whole numbers should sum exactly.");
+
+        Aggregate.Accumulator fractional = Aggregate.sum("Score").newAccumulator();
+        fractional.add("1.5");
+        fractional.add(2);
+        claim(fractional.getResult().equals("3.5"), "Incorrect fractional sum.");
+
+        Aggregate.Accumulator large = Aggregate.sum("Score").newAccumulator();
+        claim(large.getResult() == null, "Sum of nothing should have no result.");
+        large.add(Long.MAX_VALUE);
+        large.add(Long.MAX_VALUE);
+        claim(Double.parseDouble(large.getResult()) == 2.0 * Long.MAX_VALUE, "Sums too large for a long should not wrap around.");
+
+        try
+        {
+            whole.add("Five");
+            claim(false, "Should not be able to add up text.");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testMinMax()
+    {
+        // Numeric text compares as numbers.
+        Aggregate.Accumulator max = Aggregate.max("Age").newAccumulator();
+        max.add("9");
+        max.add("10");
+        claim(max.getResult().equals("10"), "Numeric text should compare as numbers.");
+        // Until a value that isn't a number turns up.
+        max.add("Nine");
+        claim(max.getResult().equals("Nine"), "Non numeric text should compare as text.");
+
+        Aggregate.Accumulator min = Aggregate.min("Age").newAccumulator();
+        claim(min.getResult() == null, "Min of nothing should have no result.");
+        min.add(7);
+        min.add(-2);
+        claim(min.getResult().equals("-2"), "Incorrect min of ints.");
+    }
+
+    @Test
+    public void testMerge()
+    {
+        Aggregate avg = Aggregate.avg("Score");
+        Aggregate.Accumulator first = avg.newAccumulator();
+        Aggregate.Accumulator second = avg.newAccumulator();
+        claim(first.getResult() == null, "Average of nothing should have no result.");
+        first.add(1);
+        second.add(2);
+        second.add(6);
+        first.merge(second);
+        claim(first.getResult().equals("3.0"), "Incorrect merged average.");
+
+        Aggregate.Accumulator max = Aggregate.max("Age").newAccumulator();
+        Aggregate.Accumulator otherMax = Aggregate.max("Age").newAccumulator();
+        max.add("20");
+        otherMax.add("100");
+        max.merge(otherMax);
+        claim(max.getResult().equals("100"), "Incorrect merged max.");
+    }
+
+    @Test
+    public void testSketches()
+    {
+        Aggregate median = Aggregate.approxQuantile("Score", 0.5);
+        claim(median.getName().equals("approx_quantile(Score,0.5)"), "Incorrect name for approx_quantile.");
+        claim(Aggregate.fromName(median.getName()).getName().equals(median.getName()), "Names should be read back.");
+        claim(median.newAccumulator().getResult() == null, "Quantile of nothing should have no result.");
+
+        // Each half of the values is sketched separately and then merged.
+        Aggregate.Accumulator[] distinct = {Aggregate.approxCountDistinct("Score").newAccumulator(), Aggregate.approxCountDistinct("Score").newAccumulator()};
+        Aggregate.Accumulator[] quantiles = {median.newAccumulator(), median.newAccumulator()};
+        for (long i = 0; i < 100000; i++)
+        {
+            distinct[(int)(i % 2)].add(i % 50000);
+            quantiles[(int)(i % 2)].add(i);
+        }
+        distinct[0].merge(distinct[1]);
+        quantiles[0].merge(quantiles[1]);
+        long numDistinct = Long.parseLong(distinct[0].getResult());
+        claim(Math.abs(numDistinct - 50000) < 2500, "Distinct count too far out: " + numDistinct);
+        long middle = Long.parseLong(quantiles[0].getResult());
+        claim(Math.abs(middle - 50000) < 2000, "Median too far out: " + middle);
+
+        Aggregate.Accumulator few = Aggregate.approxCountDistinct("Name").newAccumulator();
+        for (String name : new String[]{"Ann", "Bob", "Ann", "Cat"})
+            few.add(name);
+        claim(few.getResult().equals("3"), "Small distinct counts should be exact.");
+
+        try
+        {
+            Aggregate.approxQuantile("Score", 1.5);
+            claim(false, "Should not be able to ask for a quantile above 1.");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+}
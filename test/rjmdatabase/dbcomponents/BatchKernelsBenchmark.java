@@ -0,0 +1,111 @@
+package rjmdatabase.dbcomponents;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times the scalar and Vector API batch kernels against each other on full
+ * batches of random numbers, both with every position selected and with half
+ * of them selected at random, and on sorted numbers as in a column of times. Each kernel is warmed up before being timed, so
+ * that the times are of compiled code. Run it with make benchmark.
+ * @author Rjmcf
+ */
+public class BatchKernelsBenchmark
+{
+    private static final int WARM_UP_ROUNDS = 20000;
+    private static final int TIMED_ROUNDS = 50000;
+
+    private final int[] ints = new int[VectorBatch.CAPACITY];
+    private final long[] longs = new long[VectorBatch.CAPACITY];
+    private final double[] doubles = new double[VectorBatch.CAPACITY];
+    private final long[] times = new long[VectorBatch.CAPACITY];
+    private final int[] dense = new int[VectorBatch.CAPACITY];
+    private final int[] sparse;
+    private final int[] selection = new int[VectorBatch.CAPACITY];
+    // Accumulates results so that the work can't be optimised away.
+    private long sink;
+
+    /**
+     * Runs the benchmark.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args)
+    {
+        BatchKernels vector = BatchKernels.vector();
+        if (vector == null)
+            System.out.println("The Vector API is not available, so only the scalar kernels will be timed.");
+        new BatchKernelsBenchmark().run(BatchKernels.scalar(), vector);
+    }
+
+    private BatchKernelsBenchmark()
+    {
+        Random random = new Random(1);
+        int numSparse = 0;
+        int[] chosen = new int[VectorBatch.CAPACITY];
+        for (int i = 0; i < VectorBatch.CAPACITY; i++)
+        {
+            ints[i] = random.nextInt(1000);
+            longs[i] = random.nextLong();
+            doubles[i] = random.nextGaussian();
+            times[i] = 1600000000000L + i * 1000L + random.nextInt(1000);
+            dense[i] = i;
+            if (random.nextBoolean())
+                chosen[numSparse++] = i;
+        }
+        sparse = Arrays.copyOf(chosen, numSparse);
+    }
+
+    // Times every kernel with each implementation, printing nanoseconds per
+    // value tested or added.
+    private void run(BatchKernels scalar, BatchKernels vector)
+    {
+        long intLo = 250, intHi = 749;
+        long timeLo = times[VectorBatch.CAPACITY / 4], timeHi = times[VectorBatch.CAPACITY * 3 / 4];
+        long doubleLo = BatchKernels.sortableBits(-0.5), doubleHi = BatchKernels.sortableBits(0.5);
+        for (int[] positions : new int[][]{dense, sparse})
+        {
+            String selected = positions == dense ? "all selected" : "half selected";
+            int count = positions.length;
+            System.out.println(String.format("%d values, %s", count, selected));
+            for (BatchKernels kernels : new BatchKernels[]{scalar, vector})
+            {
+                if (kernels == null)
+                    continue;
+                report(kernels, "int range", count, () -> kernels.selectInRange(ints, intLo, intHi, false, reset(positions), count));
+                report(kernels, "long range", count, () -> kernels.selectInRange(longs, 0, Long.MAX_VALUE, false, reset(positions), count));
+                report(kernels, "time range", count, () -> kernels.selectInRange(times, timeLo, timeHi, false, reset(positions), count));
+                report(kernels, "double range", count, () -> kernels.selectInRange(doubles, doubleLo, doubleHi, false, reset(positions), count));
+                report(kernels, "int sum", count, () -> kernels.sum(ints, positions, count));
+                report(kernels, "long sum", count, () -> kernels.sum(longs, positions, count));
+                report(kernels, "double sum", count, () -> (long)kernels.sum(doubles, positions, count));
+            }
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    // Copies positions into the selection that the tests narrow in place.
+    private int[] reset(int[] positions)
+    {
+        System.arraycopy(positions, 0, selection, 0, positions.length);
+        return selection;
+    }
+
+    // A kernel being timed, returning something that depends on its result.
+    private interface Kernel
+    {
+        long run();
+    }
+
+    // Warms up and then times a kernel, printing the time per value.
+    private void report(BatchKernels kernels, String name, int count, Kernel kernel)
+    {
+        for (int i = 0; i < WARM_UP_ROUNDS; i++)
+            sink += kernel.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_ROUNDS; i++)
+            sink += kernel.run();
+        double nanosPerValue = (System.nanoTime() - start) / ((double)TIMED_ROUNDS * count);
+        System.out.println(String.format("    %-20s %-14s %.3f ns per value", kernels.getName(), name, nanosPerValue));
+    }
+}
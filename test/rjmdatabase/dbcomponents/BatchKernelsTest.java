@@ -0,0 +1,130 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class BatchKernelsTest extends TestBase
+{
+    private static final int SIZE = 1000;
+
+    private BatchKernels scalar;
+    private BatchKernels vector;
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+
+    /**
+     * Runs the tests for BatchKernels.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        BatchKernelsTest tester = new BatchKernelsTest();
+        tester.startTest();
+    }
+
+    @Override
+    public void beforeTest()
+    {
+        scalar = BatchKernels.scalar();
+        vector = BatchKernels.vector();
+        Random random = new Random(42);
+        double[] specials = {-0.0, 0.0, Double.NaN, Double.longBitsToDouble(0x7ff0000000000001L),
+                Double.longBitsToDouble(0xfff8000000000000L), Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        ints = new int[SIZE];
+        longs = new long[SIZE];
+        doubles = new double[SIZE];
+        for (int i = 0; i < SIZE; i++)
+        {
+            ints[i] = i % 7 == 0 ? Integer.MAX_VALUE - i : random.nextInt(200) - 100;
+            longs[i] = i % 5 == 0 ? Long.MAX_VALUE - i : random.nextLong() / 1000;
+            doubles[i] = i % 3 == 0 ? specials[i % specials.length] : random.nextGaussian();
+        }
+    }
+
+    @Test
+    public void testChoice()
+    {
+        BatchKernels chosen = BatchKernels.get();
+        claim(chosen == scalar || chosen == vector, "Chosen kernels should be one of the two.");
+        claim(vector != null || chosen == scalar, "Should fall back to the scalar kernels.");
+        claim(BatchKernels.sortableBits(-0.0) < BatchKernels.sortableBits(0.0), "-0.0 should sort first.");
+        claim(BatchKernels.sortableBits(Double.POSITIVE_INFINITY) < BatchKernels.sortableBits(Double.NaN), "NaN should sort last.");
+    }
+
+    @Test
+    public void testSelections()
+    {
+        if (vector == null)
+            return;
+        long[][] ranges = {
+            {-50, 50}, {Integer.MIN_VALUE, 0}, {0, Long.MAX_VALUE}, {1, 0}, {Long.MIN_VALUE, Long.MIN_VALUE},
+            {BatchKernels.sortableBits(-0.0), BatchKernels.sortableBits(-0.0)},
+            {BatchKernels.sortableBits(Double.NaN), BatchKernels.sortableBits(Double.NaN)},
+            {BatchKernels.sortableBits(-1), BatchKernels.sortableBits(1)}
+        };
+        for (int[] selection : selections())
+        {
+            for (long[] range : ranges)
+            {
+                for (boolean negate : new boolean[]{false, true})
+                {
+                    claim(sameSelection(selection, (kernels, s) -> kernels.selectInRange(ints, range[0], range[1], negate, s, selection.length)),
+                            "Int selections disagree.");
+                    claim(sameSelection(selection, (kernels, s) -> kernels.selectInRange(longs, range[0], range[1], negate, s, selection.length)),
+                            "Long selections disagree.");
+                    claim(sameSelection(selection, (kernels, s) -> kernels.selectInRange(doubles, range[0], range[1], negate, s, selection.length)),
+                            "Double selections disagree.");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSums()
+    {
+        if (vector == null)
+            return;
+        for (int[] selection : selections())
+        {
+            claim(vector.sum(ints, selection, selection.length) == scalar.sum(ints, selection, selection.length), "Int sums disagree.");
+            claim(vector.sum(longs, selection, selection.length) == scalar.sum(longs, selection, selection.length), "Long sums disagree.");
+            double vectorSum = vector.sum(doubles, selection, selection.length);
+            double scalarSum = scalar.sum(doubles, selection, selection.length);
+            claim(Double.compare(vectorSum, scalarSum) == 0, "Double sums should round the same way.");
+        }
+    }
+
+    // A test that narrows a selection using some kernels.
+    private interface Selector
+    {
+        int select(BatchKernels kernels, int[] selection);
+    }
+
+    // Gets whether the scalar and vector kernels narrow copies of a selection
+    // the same way.
+    private boolean sameSelection(int[] selection, Selector selector)
+    {
+        int[] scalarSelection = selection.clone();
+        int[] vectorSelection = selection.clone();
+        int scalarCount = selector.select(scalar, scalarSelection);
+        int vectorCount = selector.select(vector, vectorSelection);
+        return scalarCount == vectorCount &&
+               Arrays.equals(Arrays.copyOf(scalarSelection, scalarCount), Arrays.copyOf(vectorSelection, vectorCount));
+    }
+
+    // Gets selections covering every position, every third position, and a
+    // few positions too few to fill a register.
+    private int[][] selections()
+    {
+        int[] all = new int[SIZE];
+        for (int i = 0; i < SIZE; i++)
+            all[i] = i;
+        int[] thirds = new int[SIZE / 3];
+        for (int i = 0; i < thirds.length; i++)
+            thirds[i] = i * 3 + 1;
+        return new int[][]{all, Arrays.copyOf(all, SIZE - 1), thirds, {5, 9}, new int[0]};
+    }
+}
@@ -0,0 +1,60 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+public class ColumnTypeTest extends TestBase
+{
+    /**
+     * Runs the tests for ColumnType.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        ColumnTypeTest tester = new ColumnTypeTest();
+        tester.startTest();
+    }
+
+    @Test
+    public void testFromName()
+    {
+        claim(ColumnType.fromName("int") == ColumnType.INT, "Wrong type for int.");
+        claim(ColumnType.fromName(" Double ") == ColumnType.DOUBLE, "Names should ignore case and spaces.");
+        try
+        {
+            ColumnType.fromName("float");
+            claim(false, "No type named float.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testParseAndFormat()
+    {
+        claim(Integer.valueOf(21).equals(ColumnType.INT.parse("21")), "Int not parsed.");
+        claim(Long.valueOf(5000000000L).equals(ColumnType.LONG.parse("5000000000")), "Long not parsed.");
+        claim(Double.valueOf(1.5).equals(ColumnType.DOUBLE.parse("1.5")), "Double not parsed.");
+        claim(Boolean.TRUE.equals(ColumnType.BOOLEAN.parse("TRUE")), "Boolean not parsed.");
+        claim("Some text".equals(ColumnType.STRING.parse("Some text")), "String should be unchanged.");
+        claim("00ff10".equals(ColumnType.format(ColumnType.BYTES.parse("00FF10"))), "Bytes should round trip as hex.");
+        claim("21".equals(ColumnType.format(ColumnType.INT.parse("21"))), "Int should round trip.");
+
+        String[][] invalid = new String[][]{{"int", "2.5"}, {"long", "abc"}, {"double", ""}, {"boolean", "yes"}, {"bytes", "abc"}, {"bytes", "zz"}};
+        for (String[] typeAndValue : invalid)
+        {
+            try
+            {
+                ColumnType.fromName(typeAndValue[0]).parse(typeAndValue[1]);
+                claim(false, typeAndValue[1] + " is not a valid " + typeAndValue[0]);
+            }
+            catch (IllegalArgumentException e) { /* test passed */ }
+        }
+    }
+
+    @Test
+    public void testCompare()
+    {
+        claim(ColumnType.compare(ColumnType.INT.parse("9"), ColumnType.INT.parse("10")) < 0, "Ints should compare numerically.");
+        claim(ColumnType.compare(ColumnType.STRING.parse("9"), ColumnType.STRING.parse("10")) > 0, "Strings should compare as text.");
+        claim(ColumnType.compare(ColumnType.BYTES.parse("0102"), ColumnType.BYTES.parse("0102")) == 0, "Equal bytes should compare equal.");
+    }
+}
@@ -0,0 +1,98 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.fileutils.FileUtil;
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvReaderTest extends TestBase
+{
+    String testFolder = "dbTestFolders/csvReaderTest";
+    Path csvFile = new File(testFolder, "input.csv").toPath();
+
+    /**
+     * Runs the tests for CsvReader.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        CsvReaderTest tester = new CsvReaderTest();
+        tester.startTest();
+    }
+
+    @Override
+    protected void beforeTest()
+    {
+        FileUtil.makeDirsIfNeeded(new File(testFolder));
+    }
+
+    @Override
+    protected void afterTest()
+    {
+        FileUtil.deleteDirIfExists(new File(testFolder));
+    }
+
+    @Test
+    public void testQuoting() throws IOException
+    {
+        write("plain,\"quoted, with comma\",\"say \"\"hi\"\"\"\r\n\n\"two\nlines\",,\u00e9\n,last,\"\"");
+        List<String[]> rows = new CsvReader(',', CsvReader.DEFAULT_CHUNK_SIZE).read(csvFile);
+        claim(rows.size() == 3, "Empty lines should be skipped.");
+        claim(Arrays.equals(rows.get(0), new String[]{"plain", "quoted, with comma", "say \"hi\""}), "Incorrect quoted fields.");
+        claim(Arrays.equals(rows.get(1), new String[]{"two\nlines", "", "\u00e9"}), "Quoted fields should hold line breaks.");
+        claim(Arrays.equals(rows.get(2), new String[]{"", "last", ""}), "Incorrect empty fields.");
+
+        write("a\tb,c\n");
+        claim(Arrays.equals(new CsvReader('\t', 16).read(csvFile).get(0), new String[]{"a", "b,c"}), "Other separators should be allowed.");
+
+        for (String invalid : new String[]{"a,\"open\nb", "\"closed\"early,b"})
+        {
+            write(invalid);
+            try
+            {
+                new CsvReader(',', 4).read(csvFile);
+                claim(false, "Should not read " + invalid);
+            }
+            catch (IllegalArgumentException e) {}
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException
+    {
+        // Quoted line breaks and quotes fall across chunks of every size.
+        List<String[]> expected = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+        {
+            String[] row = {Integer.toString(i), i % 3 == 0 ? "line\nbreak " + i : "text " + i, i % 5 == 0 ? "\"" + i + "\"" : ""};
+            expected.add(row);
+            String last = row[2].isEmpty() ? "" : "\"" + row[2].replace("\"", "\"\"") + "\"";
+            text.append(row[0]).append(",\"").append(row[1]).append("\",").append(last).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        write(text.toString());
+        for (int chunkSize : new int[]{1, 3, 7, 64, 1000, 1 << 20})
+        {
+            List<String[]> rows = new CsvReader(',', chunkSize).read(csvFile);
+            boolean same = rows.size() == expected.size();
+            for (int i = 0; same && i < rows.size(); i++)
+                same = Arrays.equals(rows.get(i), expected.get(i));
+            claim(same, "Incorrect rows with chunks of " + chunkSize + " bytes.");
+        }
+
+        write("");
+        claim(new CsvReader(',', 8).read(csvFile).isEmpty(), "An empty file has no rows.");
+    }
+
+    private void write(String text) throws IOException
+    {
+        Files.write(csvFile, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -9,6 +9,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -310,6 +315,568 @@ public class DatabaseTest extends TestBase
         claim(theField.equals("Phil"), "Update has not succeeded.");
     }
 
+    @Test
+    public void testLookup()
+    {
+        String tableName = personTable.getName();
+        db.addRecord(tableName, "John, Address1");
+        db.addRecord(tableName, "Jane, Address2");
+        db.addRecord(tableName, "John, Address3");
+
+        try
+        {
+            db.createIndex("FakeTable", "Name", IndexType.HASH);
+            claim(false, "Table does not exist.");
+        }
+        catch (IndexOutOfBoundsException e) { /* test passed */ }
+
+        db.createIndex(tableName, "Name", IndexType.HASH);
+        claim(db.hasIndex(tableName, "Name", IndexType.HASH), "Index not created.");
+        List<String[]> johns = db.lookup(tableName, "Name", "John");
+        claim(johns.size() == 2, "Should find both Johns.");
+        claim("0".equals(johns.get(0)[0]) && "Address1".equals(johns.get(0)[2]), "Incorrect row returned.");
+        claim("2".equals(johns.get(1)[0]) && "Address3".equals(johns.get(1)[2]), "Incorrect row returned.");
+        claim(db.lookup(tableName, "Address", "Address2").size() == 1, "Lookup without index should work.");
+
+        try
+        {
+            db.saveDatabase();
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while saving Database.");
+        }
+        Database loaded = new Database(testFolder);
+        claim(loaded.hasIndex(tableName, "Name", IndexType.HASH), "Index should be rebuilt on load.");
+        db.dropIndex(tableName, "Name", IndexType.HASH);
+        claim(!db.hasIndex(tableName, "Name", IndexType.HASH), "Index not dropped.");
+    }
+
+    @Test
+    public void testRangeAndPrefix()
+    {
+        db.addTable("Scores", "Player, Score", "string, int");
+        db.addRecord("Scores", "Ann, 30");
+        db.addRecord("Scores", "Bob, 5");
+        db.addRecord("Scores", "Anna, 12");
+        db.createIndex("Scores", "Score", IndexType.SORTED);
+
+        Iterator<String[]> rows = db.range("Scores", "Score", "5", "30");
+        claim("Bob".equals(rows.next()[1]), "Lowest score should come first.");
+        claim("Anna".equals(rows.next()[1]), "Incorrect second row.");
+        claim(!rows.hasNext(), "Upper bound should be exclusive.");
+
+        rows = db.prefix("Scores", "Player", "Ann");
+        claim("Ann".equals(rows.next()[1]) && "Anna".equals(rows.next()[1]), "Incorrect prefix matches.");
+        claim(!rows.hasNext(), "Bob does not start with Ann.");
+    }
+
+    @Test
+    public void testFilter()
+    {
+        String tableName = animalTable.getName();
+        db.addRecord(tableName, "Rex, Dog, John");
+        db.addRecord(tableName, "Tweety, Bird, Jane");
+        db.addRecord(tableName, "Fido, Dog, Jane");
+        db.createIndex(tableName, "Type", IndexType.BITMAP);
+        db.createIndex(tableName, "Owner", IndexType.BITMAP);
+
+        List<String[]> rows = db.filter(tableName, Filter.and(Filter.equalTo("Type", "Dog"), Filter.equalTo("Owner", "Jane")));
+        claim(rows.size() == 1 && "Fido".equals(rows.get(0)[1]), "Incorrect rows found.");
+        claim(db.count(tableName, Filter.or(Filter.equalTo("Type", "Bird"), Filter.equalTo("Owner", "John"))) == 2, "Incorrect count.");
+        db.deleteRecord(tableName, 2);
+        claim(db.count(tableName, Filter.equalTo("Type", "Dog")) == 1, "Index not maintained.");
+    }
+
+    @Test
+    public void testTextSearches()
+    {
+        String tableName = personTable.getName();
+        db.addRecord(tableName, "Robin, XX Nilford Road");
+        db.addRecord(tableName, "Laura, XX Mewton Avenue");
+        db.createIndex(tableName, "Address", IndexType.TEXT);
+
+        claim(db.searchWord(tableName, "Address", "xx").size() == 2, "Both addresses contain XX.");
+        claim("Laura".equals(db.searchPhrase(tableName, "Address", "mewton avenue").get(0)[1]), "Incorrect phrase match.");
+        claim(db.searchPrefix(tableName, "Address", "nil").size() == 1, "Incorrect prefix matches.");
+    }
+
+    @Test
+    public void testScan()
+    {
+        db.addTable("Scores", "Player, Score, Team", "string, int, string");
+        db.addRecord("Scores", "Ann, 30, Red");
+        db.addRecord("Scores", "Bob, 5, Blue");
+        db.addRecord("Scores", "Cat, 12, Red");
+
+        List<String[]> rows = db.select("Scores", Filter.greaterThan("Score", "10"), new String[]{"Player", "KeyTable"});
+        claim(rows.size() == 2, "Incorrect number of rows.");
+        for (String[] row : rows)
+        {
+            claim(row.length == 2, "Rows should only hold the projected columns.");
+            claim(row[0].equals("Ann") ? row[1].equals("0") : row[0].equals("Cat") && row[1].equals("2"), "Incorrect projected values.");
+        }
+
+        db.createIndex("Scores", "Score", IndexType.SORTED);
+        db.createIndex("Scores", "Team", IndexType.BITMAP);
+        ArrayList<String> players = new ArrayList<>();
+        db.scan("Scores", Filter.and(Filter.equalTo("Team", "Red"), Filter.lessThan("Score", "20")), new String[]{"Player"}, row -> players.add(row[0]));
+        claim(players.size() == 1 && players.get(0).equals("Cat"), "Indexed scan found the wrong rows.");
+        claim(db.select("Scores", Filter.all(), null).get(0).length == 4, "Null projection should give every column.");
+        try
+        {
+            db.select("Scores", Filter.all(), new String[]{"Colour"});
+            claim(false, "No Colour column.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testParallelScan()
+    {
+        db.addTable("Numbers", "Value, Parity", "int, string");
+        for (int i = 0; i < 5000; i++)
+            db.addRecord("Numbers", i + ", " + (i % 2 == 0 ? "Even" : "Odd"));
+        db.deleteRecord("Numbers", 10);
+
+        List<String[]> ordered = db.parallelScan("Numbers", Filter.equalTo("Parity", "Even"), new String[]{"Value"}, true);
+        claim(ordered.size() == 2499, "Incorrect number of rows.");
+        for (int i = 1; i < ordered.size(); i++)
+            claim(Integer.parseInt(ordered.get(i - 1)[0]) < Integer.parseInt(ordered.get(i)[0]), "Ordered scan is out of order.");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        db.setScanPool(pool);
+        List<String[]> unordered = db.parallelScan("Numbers", Filter.lessThan("Value", "100"), null, false);
+        claim(unordered.size() == 99, "Incorrect number of rows in dedicated pool.");
+        db.createIndex("Numbers", "Parity", IndexType.BITMAP);
+        claim(db.parallelScan("Numbers", Filter.equalTo("Parity", "Odd"), null, true).size() == 2500, "Indexed parallel scan is wrong.");
+        pool.shutdown();
+    }
+
+    @Test
+    public void testScanBatches()
+    {
+        db.addTable("Metrics", "Value, Weight", "int, double");
+        for (int i = 0; i < 3000; i++)
+            db.addRecord("Metrics", new String[]{Integer.toString(i), "0.5"});
+
+        long[] total = new long[1];
+        db.scanBatches("Metrics", Filter.greaterThanOrEqualTo("Value", "1000"), batch -> {
+            ColumnVector values = batch.getColumn("Value");
+            for (int i = 0; i < batch.getSelectedCount(); i++)
+                total[0] += values.getInt(batch.getSelectedPosition(i));
+        });
+        claim(total[0] == 3999000, "Incorrect total of selected values.");
+
+        // Ungrouped aggregates are computed a batch at a time.
+        List<String[]> sums = db.aggregate("Metrics", Filter.lessThan("Value", "2000"), new String[0],
+                Aggregate.count(), Aggregate.sum("Value"), Aggregate.sum("Weight"), Aggregate.avg("KeyTable"));
+        claim(Arrays.equals(sums.get(0), new String[]{"2000", "1999000", "1000.0", "999.5"}), "Incorrect batch aggregates.");
+        List<String[]> none = db.aggregate("Metrics", Filter.lessThan("Value", "0"), new String[0], Aggregate.count(), Aggregate.sum("Weight"));
+        claim(none.size() == 1 && none.get(0)[0].equals("0") && none.get(0)[1] == null, "No matches should still give one row.");
+
+        db.addTable("Large", "Value", "long");
+        db.addRecord("Large", new String[]{Long.toString(Long.MAX_VALUE)});
+        db.addRecord("Large", new String[]{Long.toString(Long.MAX_VALUE)});
+        String largeSum = db.aggregate("Large", Filter.all(), new String[0], Aggregate.sum("Value")).get(0)[0];
+        claim(Double.parseDouble(largeSum) > Long.MAX_VALUE, "Sums too large for a long should not wrap around.");
+    }
+
+    @Test
+    public void testImportCsv() throws IOException
+    {
+        db.addTable("Items", "Name, Price", "string, int");
+        db.saveDatabase();
+        String csvPath = testFolder + "/items.csv";
+        FileUtil.writeFile(csvPath, new String[]{"Price,KeyTable,Name", "3,10,\"Nuts, salted\"", "5,4,Bolts"});
+        claim(db.importCsv("Items", csvPath, ',', true) == 2, "Incorrect number of records imported.");
+        claim(Arrays.equals(db.select("Items", Filter.all(), null).get(0), new String[]{"4", "Bolts", "5"}), "Columns should be matched by name.");
+        claim(db.lookup("Items", "Name", "Nuts, salted").get(0)[0].equals("10"), "Keys should be taken from the key column.");
+
+        FileUtil.writeFile(csvPath, new String[]{"Washers,1", "Screws,two"});
+        try
+        {
+            db.importCsv("Items", csvPath, ',', false);
+            claim(false, "Invalid values should be rejected.");
+        }
+        catch (IllegalArgumentException e) {}
+        claim(db.count("Items", Filter.all()) == 2, "A failed import should add nothing.");
+        FileUtil.writeFile(csvPath, new String[]{"Washers,1", "Screws,2"});
+        claim(db.importCsv("Items", csvPath, ',', false) == 2 && db.count("Items", Filter.all()) == 4, "Rows without a header should be added.");
+    }
+
+    @Test
+    public void testExport() throws IOException
+    {
+        db.addTable("Notes", "Text, Count, Score, Done", "string, int, double, boolean");
+        db.addRecord("Notes", new String[]{"Plain", "1", "0.5", "true"});
+        db.addRecord("Notes", new String[]{"Has \"quotes\", commas\nand lines", "-2", "NaN", "false"});
+        db.addRecord("Notes", new String[]{"Skipped", "3", "1.0", "true"});
+        db.saveDatabase();
+
+        String csvPath = testFolder + "/notes.csv";
+        claim(db.exportTable("Notes", csvPath, ExportFormat.CSV, Filter.lessThan("Count", "3"), null) == 2, "Incorrect number of records exported.");
+        db.addTable("Copy", "Text, Count, Score, Done", "string, int, double, boolean");
+        db.importCsv("Copy", csvPath, ',', true);
+        claim(db.count("Copy", Filter.all()) == 2, "Only matching records should be exported.");
+        for (int key = 0; key < 2; key++)
+            claim(db.getTable("Copy").getRecord(key).equals(db.getTable("Notes").getRecord(key)), "An exported CSV file should import to the same records.");
+
+        String jsonPath = testFolder + "/notes.json";
+        db.exportTable("Notes", jsonPath, ExportFormat.NDJSON, Filter.all(), new String[]{"Text", "KeyTable", "Score", "Done"});
+        List<String> lines = FileUtil.readFile(jsonPath);
+        claim(lines.size() == 3, "There should be one line per record.");
+        claim(lines.get(0).equals("{\"Text\":\"Plain\",\"KeyTable\":0,\"Score\":0.5,\"Done\":true}"), "Incorrect JSON: " + lines.get(0));
+        claim(lines.get(1).equals("{\"Text\":\"Has \\\"quotes\\\", commas\\nand lines\",\"KeyTable\":1,\"Score\":\"NaN\",\"Done\":false}"), "Incorrect escaping: " + lines.get(1));
+    }
+
+    @Test
+    public void testBulkChanges()
+    {
+        db.addTable("Jobs", "State, Priority", "string, int");
+        for (int i = 0; i < 1000; i++)
+            db.addRecord("Jobs", new String[]{i % 4 == 0 ? "Done" : "Waiting", Integer.toString(i % 10)});
+        db.createIndex("Jobs", "State", IndexType.HASH);
+        db.createIndex("Jobs", "Priority", IndexType.SORTED);
+        db.createView("Urgent", "Jobs", Filter.greaterThanOrEqualTo("Priority", "8"), new String[]{"State"});
+        long modifications = db.getModificationCount("Jobs");
+
+        claim(db.updateWhere("Jobs", Filter.equalTo("Priority", "9"), new String[]{"State", "Priority"}, new String[]{"Done", "0"}) == 100, "Incorrect number updated.");
+        claim(db.getModificationCount("Jobs") == modifications + 1, "A bulk update should be one change.");
+        claim(db.lookup("Jobs", "State", "Done").size() == 350, "Hash indexes should follow bulk updates.");
+        claim(db.count("Jobs", Filter.equalTo("Priority", "9")) == 0 && db.count("Jobs", Filter.lessThan("Priority", "1")) == 200, "Sorted indexes should follow bulk updates.");
+        claim(db.count("Urgent", Filter.all()) == 100, "Views should follow bulk updates.");
+
+        claim(db.deleteWhere("Jobs", Filter.equalTo("State", "Done")) == 350, "Incorrect number deleted.");
+        claim(db.getModificationCount("Jobs") == modifications + 2, "A bulk delete should be one change.");
+        claim(db.count("Jobs", Filter.all()) == 650 && db.lookup("Jobs", "State", "Done").isEmpty(), "Indexes should follow bulk deletes.");
+        claim(db.count("Urgent", Filter.all()) == 50, "Views should follow bulk deletes.");
+
+        try
+        {
+            db.deleteRecords("Jobs", new int[]{1, 0});
+            claim(false, "Deleted keys should be rejected.");
+        }
+        catch (IndexOutOfBoundsException e) {}
+        try
+        {
+            db.updateRecords("Jobs", new int[]{1, 2}, new String[]{"Priority"}, new String[]{"high"});
+            claim(false, "Invalid values should be rejected.");
+        }
+        catch (IllegalArgumentException e) {}
+        claim(db.count("Jobs", Filter.all()) == 650 && db.getModificationCount("Jobs") == modifications + 2, "Failed bulk changes should change nothing.");
+    }
+
+    @Test
+    public void testUpsert() throws IOException
+    {
+        db.addTable("Users", "Email, Name, Visits", "string, string, int");
+        db.addRecord("Users", new String[]{"a@example.com", "Ann", "1"});
+        db.addRecord("Users", new String[]{"a@example.com", "Annie", "2"});
+        try
+        {
+            db.createIndex("Users", "Email", IndexType.UNIQUE);
+            claim(false, "Unique indexes should not be built over repeated values.");
+        }
+        catch (IllegalArgumentException e) {}
+        db.deleteRecord("Users", 1);
+        db.createIndex("Users", "Email", IndexType.UNIQUE);
+        claim(db.lookup("Users", "Email", "a@example.com").size() == 1, "Unique indexes should answer lookups.");
+
+        int bob = db.upsert("Users", "Email", new String[]{"b@example.com", "Bob", "1"});
+        long modifications = db.getModificationCount("Users");
+        claim(db.upsert("Users", "Email", new String[]{"a@example.com", "Ann", "5"}) == 0, "Existing records should be updated in place.");
+        claim(db.upsert("Users", "Email", new String[]{"b@example.com", "Bob", "1"}) == bob, "Unchanged records should keep their key.");
+        claim(db.getModificationCount("Users") == modifications + 1, "Upserting an unchanged record should change nothing.");
+        claim(db.count("Users", Filter.all()) == 2 && db.select("Users", Filter.equalTo("Visits", "5"), new String[]{"Name"}).get(0)[0].equals("Ann"),
+                "Incorrect records after upserting.");
+
+        String[] violations = {"add", "insert", "add many", "update", "update many", "upsert without index"};
+        for (String violation : violations)
+        {
+            try
+            {
+                switch (violation)
+                {
+                    case "add":
+                        db.addRecord("Users", new String[]{"b@example.com", "Other", "0"});
+                        break;
+                    case "insert":
+                        db.insertRecords("Users", new int[]{10}, Collections.singletonList(new String[]{"a@example.com", "Other", "0"}));
+                        break;
+                    case "add many":
+                        db.addRecords("Users", Arrays.asList(new String[]{"c@example.com", "C", "0"}, new String[]{"c@example.com", "D", "0"}));
+                        break;
+                    case "update":
+                        db.updateRecord("Users", bob, "Email", "a@example.com");
+                        break;
+                    case "update many":
+                        db.updateWhere("Users", Filter.all(), new String[]{"Email"}, new String[]{"z@example.com"});
+                        break;
+                    default:
+                        db.upsert("Users", "Name", new String[]{"d@example.com", "Ann", "0"});
+                }
+                claim(false, "Should not be allowed to " + violation + ".");
+            }
+            catch (IllegalArgumentException e) {}
+        }
+        claim(db.count("Users", Filter.all()) == 2 && db.getModificationCount("Users") == modifications + 1, "Failed changes should change nothing.");
+        db.updateRecord("Users", bob, "Email", "b@example.com");
+
+        db.saveDatabase();
+        Database loaded = new Database(testFolder);
+        claim(loaded.hasIndex("Users", "Email", IndexType.UNIQUE), "Unique indexes should be saved.");
+        claim(loaded.upsert("Users", "Email", new String[]{"c@example.com", "Cat", "1"}) != bob && loaded.count("Users", Filter.all()) == 3, "New values should be added.");
+    }
+
+    @Test
+    public void testCursor()
+    {
+        db.addTable("Events", "Kind, Size", "string, int");
+        for (int i = 0; i < 5000; i++)
+            db.addRecord("Events", new String[]{i % 3 == 0 ? "Click" : "View", Integer.toString(i)});
+
+        // Page through with a new Cursor for each batch, as a client would.
+        List<String> keys = new ArrayList<>();
+        String token = null;
+        do
+        {
+            Cursor cursor = db.openCursor("Events", Filter.equalTo("Kind", "Click"), new String[]{"KeyTable", "Size"}, 100, token);
+            if (!cursor.hasNext())
+                break;
+            List<String[]> batch = cursor.next();
+            claim(batch.size() <= 100, "Batches should not exceed their size.");
+            for (String[] row : batch)
+                keys.add(row[0]);
+            token = cursor.getContinuationToken();
+            // Deleting Records already returned doesn't disturb later pages.
+            db.deleteRecord("Events", Integer.parseInt(batch.get(0)[0]));
+        }
+        while (true);
+        claim(keys.size() == 1667, "Every matching Record should be returned once.");
+        for (int i = 0; i < keys.size(); i++)
+            claim(keys.get(i).equals(Integer.toString(3 * i)), "Records should be returned in key order.");
+
+        // Most keys are now unused, so the keys are found without checking
+        // every possible key.
+        for (int i = 0; i < 5000; i++)
+            if (i % 10 != 0 && i % 3 != 0)
+                db.deleteRecord("Events", i);
+        db.addRecord("Events", new String[]{"View", "1"});
+        Cursor cursor = db.openCursor("Events", Filter.all(), null, 7, "4998");
+        List<String[]> rest = cursor.next();
+        claim(rest.size() == 1 && rest.get(0)[0].equals("5000") && !cursor.hasNext(), "Incorrect final page.");
+        claim(cursor.getContinuationToken().equals("5000"), "Incorrect final token.");
+        int total = 0;
+        for (Cursor all = db.openCursor("Events", Filter.all(), null, 64, null); all.hasNext(); )
+            total += all.next().size();
+        claim(total == db.count("Events", Filter.all()), "Sparse tables should be paged completely.");
+        Cursor changing = db.openCursor("Events", Filter.all(), null, 64, null);
+        total = changing.next().size();
+        db.addRecord("Events", new String[]{"View", "2"});
+        while (changing.hasNext())
+            total += changing.next().size();
+        claim(total == db.count("Events", Filter.all()), "Records added while paging should be found.");
+
+        try
+        {
+            db.openCursor("Events", Filter.all(), null, 10, "next");
+            claim(false, "Invalid tokens should be rejected.");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testJoin()
+    {
+        db.addRecord("Person", "Susan, 1 High Street");
+        db.addRecord("Person", "James, 2 Low Road");
+        db.addRecord("Person", "Alex, 3 Side Lane");
+        db.addRecord("Animal", "Rex, Dog, Susan");
+        db.addRecord("Animal", "Tom, Cat, Susan");
+        db.addRecord("Animal", "Polly, Parrot, James");
+        db.addRecord("Animal", "Nemo, Fish, Nobody");
+
+        // Person is smaller, so is the side the hash table is built on.
+        List<String[]> inner = new ArrayList<>();
+        db.join("Person", "Name", "Animal", "Owner", JoinType.INNER, inner::add);
+        claim(inner.size() == 3, "Incorrect number of inner join rows.");
+        for (String[] row : inner)
+            claim(row.length == 7 && row[1].equals(row[6]), "Joined rows should share the join value.");
+
+        List<String[]> outer = new ArrayList<>();
+        db.join("Person", "Name", "Animal", "Owner", JoinType.LEFT_OUTER, outer::add);
+        claim(outer.size() == 4, "Incorrect number of left outer join rows.");
+        claim(outer.stream().anyMatch(row -> row[1].equals("Alex") && row[3] == null && row[6] == null), "Alex should be padded with nulls.");
+
+        // Animal is now the left Table and the larger one.
+        List<String[]> reversed = new ArrayList<>();
+        db.join("Animal", "Owner", "Person", "Name", JoinType.LEFT_OUTER, reversed::add);
+        claim(reversed.size() == 4, "Incorrect number of reversed join rows.");
+        claim(reversed.stream().anyMatch(row -> row[1].equals("Nemo") && row[4] == null), "Nemo should be padded with nulls.");
+
+        // A hash index on the smaller side is used instead of a hash table, and
+        // the Filters still apply.
+        db.createIndex("Person", "Name", IndexType.HASH);
+        List<String[]> filtered = new ArrayList<>();
+        db.join("Person", Filter.notEqualTo("Name", "James"), "Name", "Animal", Filter.equalTo("Type", "Dog"), "Owner", JoinType.INNER, filtered::add);
+        claim(filtered.size() == 1 && filtered.get(0)[4].equals("Rex"), "Incorrect filtered join.");
+
+        // Fields of different types are compared by their text.
+        db.addTable("Owners", "Id", "int");
+        db.addTable("Pets", "OwnerId", "string");
+        db.addRecord("Owners", "7");
+        db.addRecord("Pets", "7");
+        db.addRecord("Pets", "8");
+        List<String[]> mixed = new ArrayList<>();
+        db.join("Owners", "Id", "Pets", "OwnerId", JoinType.INNER, mixed::add);
+        claim(mixed.size() == 1, "Should join ints to matching text.");
+    }
+
+    @Test
+    public void testSort()
+    {
+        db.addTable("Scores", "Name, Score", "string, int");
+        for (int i = 0; i < 1000; i++)
+            db.addRecord("Scores", "Player" + (i % 7) + ", " + ((i * 37) % 101));
+
+        List<String[]> inMemory = new ArrayList<>();
+        List<String[]> spilled = new ArrayList<>();
+        List<String[]> merged = new ArrayList<>();
+        SortKey[] order = new SortKey[]{SortKey.descending("Score"), SortKey.ascending("Name")};
+        try
+        {
+            db.sort("Scores", Filter.all(), order, null, inMemory::add);
+            // Force the sort to write many small runs to disk.
+            db.setSortRunSize(64);
+            db.sort("Scores", Filter.all(), order, null, spilled::add);
+            // So many runs that they must be merged in more than one pass.
+            db.setSortRunSize(1);
+            db.sort("Scores", Filter.all(), order, null, merged::add);
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while sorting.");
+        }
+
+        claim(spilled.size() == 1000 && merged.size() == 1000, "Incorrect number of sorted rows.");
+        for (int i = 0; i < spilled.size(); i++)
+            claim(Arrays.equals(inMemory.get(i), spilled.get(i)) && Arrays.equals(inMemory.get(i), merged.get(i)), "Spilled sort should match in memory sort.");
+        for (int i = 1; i < spilled.size(); i++)
+        {
+            String[] previous = spilled.get(i - 1);
+            String[] current = spilled.get(i);
+            int byScore = Integer.compare(Integer.parseInt(current[2]), Integer.parseInt(previous[2]));
+            claim(byScore < 0 || (byScore == 0 && previous[1].compareTo(current[1]) <= 0), "Rows are out of order.");
+            if (byScore == 0 && previous[1].equals(current[1]))
+                claim(Integer.parseInt(previous[0]) < Integer.parseInt(current[0]), "Ties should be broken by key.");
+        }
+
+        File sortDir = new File(testFolder + "/.sortRuns");
+        claim(!sortDir.exists() || sortDir.list().length == 0, "Temporary files should be removed.");
+        // The leftover folder must not stop the database being loaded.
+        Database loaded = new Database(testFolder);
+        claim(loaded.getTableNames().length == 0, "No Tables have been saved.");
+
+        List<String[]> names = new ArrayList<>();
+        try
+        {
+            db.sort("Scores", Filter.lessThan("Score", "3"), new SortKey[]{SortKey.ascending("KeyTable")}, new String[]{"Name"}, names::add);
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while sorting.");
+        }
+        claim(names.size() > 0 && names.get(0).length == 1, "Projection should apply to sorted rows.");
+    }
+
+    @Test
+    public void testTop()
+    {
+        db.addTable("Scores", "Name, Score", "string, int");
+        for (int i = 0; i < 5000; i++)
+            db.addRecord("Scores", "Player" + i + ", " + ((i * 37) % 1009));
+
+        SortKey[] order = new SortKey[]{SortKey.descending("Score"), SortKey.ascending("KeyTable")};
+        List<String[]> top = db.top("Scores", Filter.all(), order, new String[]{"KeyTable", "Score"}, 10);
+        List<String[]> sorted = new ArrayList<>();
+        try
+        {
+            db.sort("Scores", Filter.all(), order, new String[]{"KeyTable", "Score"}, sorted::add);
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while sorting.");
+        }
+        claim(top.size() == 10, "Incorrect number of top rows.");
+        for (int i = 0; i < top.size(); i++)
+            claim(Arrays.equals(top.get(i), sorted.get(i)), "Top rows should match the start of the full sort.");
+
+        claim(db.top("Scores", Filter.lessThan("Score", "2"), order, null, 100).size() < 100, "Should return every match if there are few.");
+        claim(db.top("Scores", Filter.all(), order, null, 0).isEmpty(), "A limit of zero should return nothing.");
+        claim(db.top("Scores", Filter.all(), order, null, Integer.MAX_VALUE).size() == db.count("Scores", Filter.all()),
+                "A limit larger than the table should return every Record.");
+    }
+
+    @Test
+    public void testAggregate()
+    {
+        db.addTable("Sales", "Region, Item, Amount", "string, string, int");
+        db.addRecord("Sales", "North, Apple, 5");
+        db.addRecord("Sales", "North, Pear, 7");
+        db.addRecord("Sales", "South, Apple, 2");
+        for (int i = 0; i < 3000; i++)
+            db.addRecord("Sales", "West, Plum, 1");
+
+        List<String[]> byRegion = db.aggregate("Sales", Filter.all(), new String[]{"Region"},
+                Aggregate.count(), Aggregate.sum("Amount"), Aggregate.max("Item"));
+        claim(byRegion.size() == 3, "Incorrect number of groups.");
+        claim(Arrays.equals(byRegion.get(0), new String[]{"North", "2", "12", "Pear"}), "Incorrect North group.");
+        claim(Arrays.equals(byRegion.get(1), new String[]{"South", "1", "2", "Apple"}), "Incorrect South group.");
+        claim(Arrays.equals(byRegion.get(2), new String[]{"West", "3000", "3000", "Plum"}), "Incorrect West group.");
+
+        List<String[]> twoColumns = db.aggregate("Sales", Filter.notEqualTo("Region", "West"), new String[]{"Item", "Region"}, Aggregate.count());
+        claim(twoColumns.size() == 3, "Incorrect number of groups by two columns.");
+        claim(Arrays.equals(twoColumns.get(0), new String[]{"Apple", "North", "1"}), "Groups should be ordered by their values.");
+
+        List<String[]> noMatches = db.aggregate("Sales", Filter.equalTo("Region", "East"), new String[0], Aggregate.count(), Aggregate.avg("Amount"));
+        claim(noMatches.size() == 1, "Aggregating nothing should give one row.");
+        claim(noMatches.get(0)[0].equals("0") && noMatches.get(0)[1] == null, "Incorrect aggregate of nothing.");
+
+        // Numbers held as text are parsed.
+        db.addTable("Ages", "Age");
+        db.addRecord("Ages", "30");
+        db.addRecord("Ages", "4");
+        List<String[]> ages = db.aggregate("Ages", Filter.all(), new String[0], Aggregate.sum("Age"), Aggregate.min("Age"));
+        claim(Arrays.equals(ages.get(0), new String[]{"34", "4"}), "Should be able to aggregate ages stored as text.");
+    }
+
+    @Test
+    public void testEstimates() throws IOException
+    {
+        db.addTable("Readings", "Sensor, Value", "string, int");
+        for (int i = 0; i < 20000; i++)
+            db.addRecord("Readings", new String[]{"Sensor" + (i % 1000), Integer.toString(i)});
+        claim(Math.abs(db.estimateDistinct("Readings", "Sensor") - 1000) < 50, "Incorrect estimate without an index.");
+        claim(Math.abs(Integer.parseInt(db.estimateQuantile("Readings", "Value", 0.9)) - 18000) < 400, "Incorrect quantile without an index.");
+
+        db.createIndex("Readings", "Value", IndexType.SKETCH);
+        claim(Math.abs(db.estimateDistinct("Readings", "Value") - 20000) < 1000, "Incorrect estimate from the index.");
+        // Deleting most of the values makes the index build itself again.
+        for (int i = 0; i < 15000; i++)
+            db.deleteRecord("Readings", i);
+        db.addRecord("Readings", new String[]{"Sensor0", "50000"});
+        claim(Math.abs(db.estimateDistinct("Readings", "Value") - 5001) < 250, "The index should forget deleted values.");
+        int median = Integer.parseInt(db.estimateQuantile("Readings", "Value", 0.5));
+        claim(Math.abs(median - 17500) < 100, "Incorrect quantile from the index: " + median);
+        claim(db.estimateQuantile("Person", "Name", 0.5) == null, "An empty Table should have no quantiles.");
+
+        db.saveDatabase();
+        Database loaded = new Database(testFolder);
+        claim(loaded.hasIndex("Readings", "Value", IndexType.SKETCH), "Sketch indexes should be saved.");
+        claim(loaded.estimateQuantile("Readings", "Value", 1).equals("50000"), "Incorrect quantile after loading.");
+    }
+
     @Test
     public void testSaveDatabase()
     {
@@ -0,0 +1,175 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+public class FilterTest extends TestBase
+{
+    private Table table;
+
+    /**
+     * Runs the tests for Filter.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        FilterTest tester = new FilterTest();
+        tester.startTest();
+    }
+
+    @Override
+    public void beforeTest()
+    {
+        table = new Table("Animal", "Name, Type, Legs", "string, string, int");
+        table.addRecord("Rex, Dog, 4");
+        table.addRecord("Tweety, Bird, 2");
+        table.addRecord("Fido, Dog, 3");
+        table.addRecord("Nemo, Fish, 0");
+    }
+
+    @Test
+    public void testWithoutIndexes()
+    {
+        repeatableFilters();
+    }
+
+    @Test
+    public void testWithIndexes()
+    {
+        table.createIndex("Type", IndexType.BITMAP);
+        table.createIndex("Legs", IndexType.HASH);
+        claim(Filter.equalTo("Type", "Dog").isAnsweredByIndexes(table), "Type has a bitmap index.");
+        claim(!Filter.and(Filter.equalTo("Type", "Dog"), Filter.equalTo("Name", "Rex")).isAnsweredByIndexes(table), "Name has no index.");
+        claim(Filter.or(Filter.equalTo("Type", "Dog"), Filter.equalTo("Name", "Rex")).findCandidates(table) == null, "OR cannot narrow the search if one side has no index.");
+        repeatableFilters();
+
+        table.updateRecord(3, "Type", "Dog");
+        table.deleteRecord(0);
+        claim(table.filter(Filter.equalTo("Type", "Dog")).getCardinality() == 2, "Bitmap index not maintained.");
+    }
+
+    private void repeatableFilters()
+    {
+        int[] dogs = table.filter(Filter.equalTo("Type", "Dog")).toArray();
+        claim(dogs.length == 2 && dogs[0] == 0 && dogs[1] == 2, "Incorrect dogs found.");
+        int[] fourLeggedDogs = table.filter(Filter.and(Filter.equalTo("Type", "Dog"), Filter.equalTo("Legs", "4"))).toArray();
+        claim(fourLeggedDogs.length == 1 && fourLeggedDogs[0] == 0, "Incorrect AND result.");
+        int[] birdsOrFish = table.filter(Filter.or(Filter.equalTo("Type", "Bird"), Filter.equalTo("Type", "Fish"))).toArray();
+        claim(birdsOrFish.length == 2 && birdsOrFish[0] == 1 && birdsOrFish[1] == 3, "Incorrect OR result.");
+        int[] mixed = table.filter(Filter.and(Filter.equalTo("Type", "Dog"), Filter.or(Filter.equalTo("Name", "Fido"), Filter.equalTo("Legs", "0")))).toArray();
+        claim(mixed.length == 1 && mixed[0] == 2, "Incorrect nested result.");
+        try
+        {
+            table.filter(Filter.equalTo("Legs", "Many"));
+            claim(false, "Legs must be an int.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+        try
+        {
+            table.filter(Filter.equalTo("Colour", "Brown"));
+            claim(false, "No Colour column.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testTextSearches()
+    {
+        Table people = new Table("Person", "Name, Address");
+        people.addRecord(new String[]{"Robin", "XX Nilford Road\nLeicester\nLE3 3GF"});
+        people.addRecord(new String[]{"Laura", "XX Mewton Avenue\nBodworth\nCV2 0UQ"});
+        people.addRecord(new String[]{"Sam", "Road Nilford, Leicestershire"});
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+            claim(people.filter(Filter.containsWord("Address", "nilford")).getCardinality() == 2, "Incorrect word matches.");
+            claim(people.filter(Filter.containsPhrase("Address", "Nilford Road")).getCardinality() == 1, "Incorrect phrase matches.");
+            claim(people.filter(Filter.containsWordStartingWith("Address", "LEIC")).getCardinality() == 2, "Incorrect prefix matches.");
+            claim(people.filter(Filter.and(Filter.containsWord("Address", "road"), Filter.equalTo("Name", "Sam"))).getCardinality() == 1, "Incorrect combined matches.");
+            people.createIndex("Address", IndexType.TEXT);
+        }
+        people.updateRecord(1, "Address", "1 Nilford Close");
+        claim(people.filter(Filter.containsWord("Address", "nilford")).getCardinality() == 3, "Text index not maintained.");
+
+        try
+        {
+            table.createIndex("Legs", IndexType.TEXT);
+            claim(false, "Legs is not a string column.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testComparisons()
+    {
+        for (int pass = 0; pass < 2; pass++)
+        {
+            claim(table.filter(Filter.lessThan("Legs", "3")).getCardinality() == 2, "Incorrect less than matches.");
+            claim(table.filter(Filter.lessThanOrEqualTo("Legs", "3")).getCardinality() == 3, "Incorrect less than or equal matches.");
+            claim(table.filter(Filter.greaterThan("Legs", "3")).getCardinality() == 1, "Incorrect greater than matches.");
+            claim(table.filter(Filter.greaterThanOrEqualTo("Legs", "3")).getCardinality() == 2, "Incorrect greater than or equal matches.");
+            claim(table.filter(Filter.notEqualTo("Legs", "3")).getCardinality() == 3, "Incorrect not equal matches.");
+            int[] between = table.filter(Filter.between("Legs", "2", "4")).toArray();
+            claim(between.length == 2 && between[0] == 1 && between[1] == 2, "Range should include the lower bound only.");
+            claim(table.filter(Filter.startsWith("Name", "F")).getCardinality() == 1, "Incorrect prefix matches.");
+            claim(table.filter(Filter.not(Filter.equalTo("Type", "Dog"))).getCardinality() == 2, "Incorrect negated matches.");
+            claim(table.filter(Filter.all()).getCardinality() == 4, "Should match everything.");
+            table.createIndex("Legs", IndexType.SORTED);
+            table.createIndex("Name", IndexType.SORTED);
+        }
+        claim(Filter.between("Legs", "2", "4").isAnsweredByIndexes(table), "Range should be answered by the sorted index.");
+        claim(Filter.equalTo("Legs", "4").isAnsweredByIndexes(table), "Equality can use a sorted index too.");
+        claim(!Filter.notEqualTo("Legs", "4").isAnsweredByIndexes(table), "Sorted index can't answer not equal.");
+    }
+
+    @Test
+    public void testBatches()
+    {
+        Table readings = new Table("Readings", "Count, Total, Level, Label", "int, long, double, string");
+        double[] levels = {-1.5, -0.0, 0.0, 2.5, Double.NaN, Double.NEGATIVE_INFINITY, 7};
+        // Enough Records to fill several batches.
+        for (int i = 0; i < 2500; i++)
+        {
+            String count = Integer.toString(i % 3 == 0 ? Integer.MIN_VALUE + i : i - 1000);
+            String total = Long.toString(i * 1000000007L - 50);
+            readings.addRecord(new String[]{count, total, Double.toString(levels[i % levels.length]), "L" + (i % 10)});
+        }
+        readings.deleteRecord(1500);
+
+        Filter[] filters = {
+            Filter.lessThan("Count", "0"), Filter.greaterThanOrEqualTo("Count", "-5"),
+            Filter.equalTo("Count", Integer.toString(Integer.MIN_VALUE + 3)), Filter.notEqualTo("Count", "1"),
+            Filter.greaterThan("Total", "1000000000000"), Filter.lessThanOrEqualTo("Total", "-50"),
+            Filter.lessThan("Level", "0.0"), Filter.lessThan("Level", "-0.0"), Filter.greaterThan("Level", "7"),
+            Filter.equalTo("Level", "NaN"), Filter.notEqualTo("Level", "-0.0"), Filter.equalTo("Label", "L3"),
+            Filter.notEqualTo("Label", "L3"), Filter.greaterThan("Label", "L5"), Filter.startsWith("Label", "L1"),
+            Filter.not(Filter.equalTo("Label", "L2")), Filter.and(Filter.lessThan("Count", "0"), Filter.equalTo("Label", "L3")),
+            Filter.or(Filter.greaterThan("Level", "2"), Filter.equalTo("Label", "L4"), Filter.lessThan("Count", "-1000")),
+            Filter.lessThan("Count", Integer.toString(Integer.MIN_VALUE)), Filter.greaterThan("Total", Long.toString(Long.MAX_VALUE))
+        };
+        for (Filter filter : filters)
+        {
+            // Batches must select exactly the Records that pass the row test.
+            Predicate<Record> test = filter.compile(readings);
+            RoaringBitmap expected = new RoaringBitmap();
+            for (int key = 0; key < 2500; key++)
+                if (key != 1500 && test.test(readings.getRecord(key)))
+                    expected.add(key);
+            RoaringBitmap found = readings.filter(filter);
+            claim(Arrays.equals(found.toArray(), expected.toArray()), "Batch and row tests disagree.");
+        }
+
+        int[] batchSizes = new int[1];
+        int[] selected = new int[1];
+        readings.forEachBatch(Filter.equalTo("Label", "L0"), batch -> {
+            batchSizes[0]++;
+            selected[0] += batch.getSelectedCount();
+            claim(batch.getSelectedCount() <= VectorBatch.CAPACITY, "Batch is too large.");
+            for (int i = 0; i < batch.getSelectedCount(); i++)
+                claim(batch.getColumn("Label").getString(batch.getSelectedPosition(i)).equals("L0"), "Unmatched Record selected.");
+        });
+        claim(batchSizes[0] == 3 && selected[0] == 249, "Incorrect batches.");
+    }
+}
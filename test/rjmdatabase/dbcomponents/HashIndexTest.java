@@ -0,0 +1,65 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+public class HashIndexTest extends TestBase
+{
+    private HashIndex index;
+
+    /**
+     * Runs the tests for HashIndex.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        HashIndexTest tester = new HashIndexTest();
+        tester.startTest();
+    }
+
+    @Override
+    public void beforeTest()
+    {
+        index = new HashIndex("Name", false);
+        index.add(0, "Susan");
+        index.add(1, "James");
+        index.add(2, "Susan");
+    }
+
+    @Test
+    public void testLookup()
+    {
+        claim(index.lookup("Susan").size() == 2, "Should find both Susans.");
+        claim(index.lookup("Susan").contains(0) && index.lookup("Susan").contains(2), "Incorrect keys found.");
+        claim(index.lookup("James").size() == 1, "Should find one James.");
+        claim(index.lookup("Alex").isEmpty(), "Should find nobody.");
+        claim(index.getType() == IndexType.HASH, "Incorrect index type.");
+    }
+
+    @Test
+    public void testRemove()
+    {
+        index.remove(0, "Susan");
+        claim(index.lookup("Susan").size() == 1, "Key not removed.");
+        index.remove(2, "Susan");
+        claim(index.lookup("Susan").isEmpty(), "Key not removed.");
+        index.remove(1, "Alex");
+        claim(index.lookup("James").size() == 1, "Removing a value not present should change nothing.");
+    }
+
+    @Test
+    public void testUnique()
+    {
+        HashIndex unique = new HashIndex("Name", true);
+        unique.add(0, "Susan");
+        unique.add(0, "Susan");
+        try
+        {
+            unique.add(1, "Susan");
+            claim(false, "Unique indexes should not store a value twice.");
+        }
+        catch (IllegalArgumentException e) {}
+        unique.remove(0, "Susan");
+        unique.add(1, "Susan");
+        claim(unique.lookup("Susan").contains(1) && unique.getType() == IndexType.UNIQUE, "Removed values should be free again.");
+    }
+}
@@ -0,0 +1,56 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.util.HashMap;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
+public class KeyRangeSpliteratorTest extends TestBase
+{
+    private HashMap<Integer, Record> records;
+
+    /**
+     * Runs the tests for KeyRangeSpliterator.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        KeyRangeSpliteratorTest tester = new KeyRangeSpliteratorTest();
+        tester.startTest();
+    }
+
+    @Override
+    public void beforeTest()
+    {
+        // Every key below 10000 except the multiples of 7.
+        records = new HashMap<>();
+        for (int key = 0; key < 10000; key++)
+            if (key % 7 != 0)
+                records.put(key, new Record());
+    }
+
+    @Test
+    public void testSplitting()
+    {
+        KeyRangeSpliterator whole = new KeyRangeSpliterator(records, 0, 10000);
+        Spliterator.OfInt firstHalf = whole.trySplit();
+        claim(firstHalf != null, "Large range should split.");
+        claim(firstHalf.estimateSize() == 5000 && whole.estimateSize() == 5000, "Range should split in half.");
+        int[] last = new int[]{-1};
+        firstHalf.forEachRemaining((int key) -> last[0] = key);
+        claim(last[0] == 4999, "First half should end just before the second half starts.");
+        claim(whole.tryAdvance((int key) -> claim(key == 5000, "Second half starts at 5000.")), "Second half has keys.");
+        claim(new KeyRangeSpliterator(records, 0, 100).trySplit() == null, "Small range should not split.");
+    }
+
+    @Test
+    public void testParallelStream()
+    {
+        int[] keys = StreamSupport.intStream(new KeyRangeSpliterator(records, 0, 10000), true).toArray();
+        claim(keys.length == records.size(), "Every used key should be visited once.");
+        for (int i = 1; i < keys.length; i++)
+            claim(keys[i - 1] < keys[i], "Keys should be in ascending order.");
+        claim(keys[0] == 1, "Unused keys should be skipped.");
+    }
+}
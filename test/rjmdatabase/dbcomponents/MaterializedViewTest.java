@@ -0,0 +1,233 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.fileutils.FileUtil;
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class MaterializedViewTest extends TestBase
+{
+    private static final String[] REGIONS = {"North", "South", "East", "West"};
+
+    String testFolder = "dbTestFolders/materializedViewTest";
+    Database db;
+    Filter bigSales = Filter.greaterThanOrEqualTo("Amount", "100");
+    Aggregate[] aggregates = {Aggregate.count(), Aggregate.sum("Amount"), Aggregate.min("Amount"), Aggregate.max("Amount"), Aggregate.avg("Amount")};
+
+    /**
+     * Runs the tests for MaterializedView.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        MaterializedViewTest tester = new MaterializedViewTest();
+        tester.startTest();
+    }
+
+    @Override
+    protected void beforeTest()
+    {
+        db = new Database(testFolder);
+        db.addTable("Sales", "Region, Product, Amount", "string, string, int");
+        for (int i = 0; i < 40; i++)
+            db.addRecord("Sales", new String[]{REGIONS[i % 4], "Product" + (i % 7), Integer.toString(i * 10)});
+    }
+
+    @Override
+    protected void afterTest()
+    {
+        FileUtil.deleteDirIfExists(new File(testFolder));
+    }
+
+    @Test
+    public void testProjection()
+    {
+        db.createView("BigSales", "Sales", bigSales, new String[]{"Region", "Amount"});
+        claim(db.isView("BigSales") && !db.isView("Sales"), "Incorrect views.");
+        claim(sameRows(db.select("BigSales", Filter.all(), null), expectedProjection()), "The view should start full.");
+
+        db.addRecord("Sales", new String[]{"North", "Widget", "500"});
+        db.addRecord("Sales", new String[]{"North", "Widget", "5"});
+        db.updateRecord("Sales", 1, "Amount", "150");
+        db.updateRecord("Sales", 20, "Amount", "50");
+        db.updateRecord("Sales", 30, "Region", "Nowhere");
+        db.updateRecord("Sales", 31, "Product", "Gadget");
+        db.deleteRecord("Sales", 39);
+        db.deleteRecord("Sales", 2);
+        claim(sameRows(db.select("BigSales", Filter.all(), null), expectedProjection()), "The view should follow changes.");
+        claim(db.lookup("BigSales", "Region", "Nowhere").size() == 1, "The view should be readable like a Table.");
+    }
+
+    @Test
+    public void testGrouping()
+    {
+        db.createView("RegionTotals", "Sales", bigSales, new String[]{"Region"}, aggregates);
+        claim(sameRows(groupRows(), db.aggregate("Sales", bigSales, new String[]{"Region"}, aggregates)), "The view should start full.");
+        long modifications = db.getModificationCount("RegionTotals");
+        db.updateRecord("Sales", 0, "Product", "Gadget");
+        claim(db.getModificationCount("RegionTotals") == modifications, "Changes to other fields should leave the view alone.");
+
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++)
+        {
+            int key = random.nextInt(60);
+            boolean exists = db.select("Sales", Filter.all(), new String[]{"KeyTable"}).stream().anyMatch(row -> row[0].equals(Integer.toString(key)));
+            int choice = random.nextInt(3);
+            if (!exists || choice == 0)
+                db.addRecord("Sales", new String[]{REGIONS[random.nextInt(4)], "Product", Integer.toString(random.nextInt(400))});
+            else if (choice == 1 && random.nextBoolean())
+                db.updateRecord("Sales", key, "Region", REGIONS[random.nextInt(4)]);
+            else if (choice == 1)
+                db.updateRecord("Sales", key, "Amount", Integer.toString(random.nextInt(400)));
+            else
+                db.deleteRecord("Sales", key);
+            claim(sameRows(groupRows(), db.aggregate("Sales", bigSales, new String[]{"Region"}, aggregates)),
+                    "The view should match the aggregate after change " + i);
+        }
+
+        for (String[] row : db.select("Sales", Filter.all(), null))
+            db.deleteRecord("Sales", Integer.parseInt(row[0]));
+        claim(db.select("RegionTotals", Filter.all(), null).isEmpty(), "Empty groups should be removed.");
+    }
+
+    @Test
+    public void testUpdateOnlyRecordOfGroup()
+    {
+        db.addRecord("Sales", new String[]{"Hull", "Widget", "4"});
+        db.createView("RegionTotals", "Sales", Filter.all(), new String[]{"Region"}, aggregates);
+        db.updateRecord("Sales", 40, "Amount", "10");
+        List<String[]> hull = db.select("RegionTotals", Filter.equalTo("Region", "Hull"), new String[]{"count(*)", "sum(Amount)", "min(Amount)"});
+        claim(hull.size() == 1 && Arrays.equals(hull.get(0), new String[]{"1", "10", "10"}), "The only Record of a group should be counted once.");
+        claim(sameRows(groupRows(), db.aggregate("Sales", Filter.all(), new String[]{"Region"}, aggregates)), "The view should match the aggregate.");
+    }
+
+    @Test
+    public void testSketches() throws IOException
+    {
+        db.createView("Medians", "Sales", Filter.all(), new String[]{"Region"}, Aggregate.approxQuantile("Amount", 0.5), Aggregate.approxCountDistinct("Product"));
+        db.addRecord("Sales", new String[]{"North", "Widget", "1000"});
+        db.deleteRecord("Sales", 0);
+        String[] columns = {"Region", "approx_quantile(Amount,0.5)", "approx_count_distinct(Product)"};
+        claim(sameRows(db.select("Medians", Filter.all(), columns), db.aggregate("Sales", Filter.all(), new String[]{"Region"},
+                Aggregate.approxQuantile("Amount", 0.5), Aggregate.approxCountDistinct("Product"))), "The view should match the aggregate.");
+        db.saveDatabase();
+        claim(new Database(testFolder).isView("Medians"), "Quantile views should be loaded as views.");
+    }
+
+    @Test
+    public void testPersistence() throws IOException
+    {
+        db.createView("BigSales", "Sales", bigSales, null);
+        db.createView("RegionTotals", "Sales", Filter.all(), new String[]{"Region"}, aggregates);
+        db.renameTable("Sales", "AllSales");
+        db.saveDatabase();
+
+        Database loaded = new Database(testFolder);
+        claim(loaded.isView("BigSales") && loaded.isView("RegionTotals"), "Views should be loaded as views.");
+        claim(sameRows(loaded.select("BigSales", Filter.all(), null), db.select("BigSales", Filter.all(), null)), "Incorrect loaded view.");
+        loaded.addRecord("AllSales", new String[]{"North", "Widget", "1000"});
+        loaded.deleteRecord("AllSales", 0);
+        claim(loaded.select("BigSales", Filter.equalTo("Amount", "1000"), null).size() == 1, "Loaded views should be kept up to date.");
+        claim(sameRows(loaded.select("RegionTotals", Filter.all(), new String[]{"Region", "count(*)", "sum(Amount)", "min(Amount)", "max(Amount)", "avg(Amount)"}),
+                loaded.aggregate("AllSales", Filter.all(), new String[]{"Region"}, aggregates)), "Loaded groups should be kept up to date.");
+    }
+
+    @Test
+    public void testChangesWithoutSaving() throws IOException
+    {
+        db.createView("BigSales", "Sales", bigSales, null);
+        db.createView("SmallSales", "Sales", Filter.lessThan("Amount", "100"), null);
+        db.saveDatabase();
+        db.dropView("SmallSales");
+
+        Database loaded = new Database(testFolder);
+        claim(!loaded.hasTable("SmallSales") && loaded.isView("BigSales") && loaded.getUnloadedViews().isEmpty(), "Dropped views should stay dropped.");
+        loaded.renameTable("Sales", "AllSales");
+
+        Database reloaded = new Database(testFolder);
+        claim(reloaded.getUnloadedViews().equals(Arrays.asList("BigSales")), "Views of Tables that were not saved should be reported.");
+        claim(reloaded.hasTable("BigSales") && !reloaded.isView("BigSales"), "The view should be left as an ordinary Table.");
+    }
+
+    @Test
+    public void testEmptyValuePersistence() throws IOException
+    {
+        db.createView("Unnamed", "Sales", Filter.equalTo("Product", ""), null);
+        db.saveDatabase();
+
+        Database loaded = new Database(testFolder);
+        loaded.addRecord("Sales", new String[]{"North", "", "10"});
+        claim(loaded.select("Unnamed", Filter.all(), null).size() == 1, "Empty filter values should survive saving.");
+    }
+
+    @Test
+    public void testRestrictions()
+    {
+        db.createView("BigSales", "Sales", bigSales, new String[]{"Amount"});
+        String[] invalid = {"add to view", "delete from view", "delete source column", "view over text", "taken name", "drop table"};
+        for (String change : invalid)
+        {
+            try
+            {
+                switch (change)
+                {
+                    case "add to view":
+                        db.addRecord("BigSales", new String[]{"1"});
+                        break;
+                    case "delete from view":
+                        db.deleteRecord("BigSales", 10);
+                        break;
+                    case "delete source column":
+                        db.deleteColumn("Sales", "Product");
+                        break;
+                    case "view over text":
+                        db.createView("Totals", "Sales", Filter.all(), new String[0], Aggregate.sum("Product"));
+                        break;
+                    case "taken name":
+                        db.createView("Sales", "Sales", Filter.all(), null);
+                        break;
+                    default:
+                        db.dropView("Sales");
+                }
+                claim(false, "Should not be allowed to " + change + ".");
+            }
+            catch (IllegalArgumentException e) {}
+        }
+        claim(!db.isView("Sales") && db.getTableNames().length == 2, "Failed changes should leave no trace.");
+        db.dropView("BigSales");
+        db.deleteColumn("Sales", "Product");
+        db.addRecord("Sales", new String[]{"North", "1000"});
+        claim(!db.hasTable("BigSales"), "The view should be gone.");
+    }
+
+    // Gets the rows of the grouping view without their keys.
+    private List<String[]> groupRows()
+    {
+        return db.select("RegionTotals", Filter.all(), new String[]{"Region", "count(*)", "sum(Amount)", "min(Amount)", "max(Amount)", "avg(Amount)"});
+    }
+
+    // Gets the rows the projection view should hold.
+    private List<String[]> expectedProjection()
+    {
+        return db.select("Sales", bigSales, new String[]{"KeyTable", "Region", "Amount"});
+    }
+
+    // Gets whether two lists hold the same rows in any order.
+    private static boolean sameRows(List<String[]> a, List<String[]> b)
+    {
+        Comparator<String[]> order = (x, y) -> Arrays.toString(x).compareTo(Arrays.toString(y));
+        a.sort(order);
+        b.sort(order);
+        if (a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++)
+            if (!Arrays.equals(a.get(i), b.get(i)))
+                return false;
+        return true;
+    }
+}
@@ -108,34 +108,34 @@ public class RecordTest extends TestBase
     }
 
     @Test
-    public void testUpdateField()
+    public void testUpdateValue()
     {
         try
         {
-            emptyRecord.updateField(-1, "Anything");
+            emptyRecord.updateValue(-1, "Anything");
             claim(false, "Invalid index -1.");
         }
         catch (IndexOutOfBoundsException e) { /* test passed */ }
         try
         {
-            emptyRecord.updateField(0, "Anything");
+            emptyRecord.updateValue(0, "Anything");
             claim(false, "Invalid index 0.");
         }
         catch (IndexOutOfBoundsException e) { /* test passed */ }
 
         try
         {
-            filledRecord.updateField(-1, "Anything");
+            filledRecord.updateValue(-1, "Anything");
             claim(false, "Invalid index -1.");
         }
         catch (IndexOutOfBoundsException e) { /* test passed */ }
         try
         {
-            filledRecord.updateField(3, "Anything");
+            filledRecord.updateValue(3, "Anything");
             claim(false, "Invalid index 3.");
         }
         catch (IndexOutOfBoundsException e) { /* test passed */ }
-        filledRecord.updateField(1, "NewField1");
+        filledRecord.updateValue(1, "NewField1");
         for (int i = 0; i < 3; i++)
         {
             String prefix = i == 1 ? "New" : "";
@@ -195,12 +195,35 @@ public class RecordTest extends TestBase
         claim(!filledRecord.equals(otherRecord), "Too few fields to be equal.");
         otherRecord.addField(2, "Field2");
         claim(filledRecord.equals(otherRecord), "Same fields should be equal.");
-        otherRecord.updateField(0, "NotField0");
+        otherRecord.updateValue(0, "NotField0");
         claim(!filledRecord.equals(otherRecord), "Different fields should not be equal.");
-        otherRecord.updateField(0, "Field0");
+        otherRecord.updateValue(0, "Field0");
         otherRecord.addField(3, "Field3");
         claim(!filledRecord.equals(otherRecord), "Too many fields to be equal.");
         otherRecord.deleteField(3);
         claim(filledRecord.equals(otherRecord), "Same fields should be equal.");
     }
+
+    @Test
+    public void testTypedValues()
+    {
+        Record typedRecord = new Record(new Object[]{21, 5000000000L, 1.5, true, ColumnType.BYTES.parse("ff")});
+        claim(typedRecord.getInt(0) == 21, "Incorrect int value.");
+        claim(typedRecord.getLong(0) == 21L, "An int should be readable as a long.");
+        claim(typedRecord.getLong(1) == 5000000000L, "Incorrect long value.");
+        claim(typedRecord.getDouble(2) == 1.5, "Incorrect double value.");
+        claim(typedRecord.getBoolean(3), "Incorrect boolean value.");
+        claim(typedRecord.getBytes(4)[0] == (byte)0xff, "Incorrect bytes value.");
+        claim("ff".equals(typedRecord.getField(4)), "Bytes should be shown as hex.");
+        try
+        {
+            filledRecord.getInt(0);
+            claim(false, "Field0 is not an int.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+
+        typedRecord.updateValue(0, 22);
+        claim(typedRecord.getInt(0) == 22, "Update has not succeeded.");
+        claim(!typedRecord.equals(new Record(new Object[]{"22", 5000000000L, 1.5, true, ColumnType.BYTES.parse("ff")})), "Values of different types should not be equal.");
+    }
 }
@@ -0,0 +1,88 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.util.TreeSet;
+
+public class RoaringBitmapTest extends TestBase
+{
+    /**
+     * Runs the tests for RoaringBitmap.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        RoaringBitmapTest tester = new RoaringBitmapTest();
+        tester.startTest();
+    }
+
+    @Test
+    public void testAddAndRemove()
+    {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        claim(bitmap.isEmpty(), "New bitmap should be empty.");
+        bitmap.add(5);
+        bitmap.add(70000);
+        bitmap.add(5);
+        claim(bitmap.getCardinality() == 2, "Duplicates should not be counted.");
+        claim(bitmap.contains(5) && bitmap.contains(70000) && !bitmap.contains(6), "Incorrect contents.");
+        bitmap.remove(70000);
+        bitmap.remove(12);
+        claim(bitmap.getCardinality() == 1 && !bitmap.contains(70000), "Value not removed.");
+        try
+        {
+            bitmap.add(-1);
+            claim(false, "Negative values are not allowed.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testDenseChunks()
+    {
+        // Enough values in one chunk that it must switch to a bitmap and back.
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 10000; i++)
+            bitmap.add(i * 3);
+        claim(bitmap.getCardinality() == 10000, "Incorrect cardinality.");
+        claim(bitmap.contains(29997) && !bitmap.contains(29998), "Incorrect contents.");
+        for (int i = 0; i < 9000; i++)
+            bitmap.remove(i * 3);
+        claim(bitmap.getCardinality() == 1000, "Incorrect cardinality after removal.");
+        int[] values = bitmap.toArray();
+        claim(values[0] == 27000 && values[999] == 29997, "Values should be in ascending order.");
+    }
+
+    @Test
+    public void testAndOr()
+    {
+        RoaringBitmap evens = new RoaringBitmap();
+        RoaringBitmap threes = new RoaringBitmap();
+        TreeSet<Integer> expectedAnd = new TreeSet<>();
+        TreeSet<Integer> expectedOr = new TreeSet<>();
+        for (int i = 0; i < 200000; i++)
+        {
+            if (i % 2 == 0)
+                evens.add(i);
+            // Sparse in some chunks and dense in others.
+            if (i % 3 == 0 && (i < 65536 || i % 300 == 0))
+                threes.add(i);
+            if (i % 2 == 0 && i % 3 == 0 && (i < 65536 || i % 300 == 0))
+                expectedAnd.add(i);
+            if (i % 2 == 0 || (i % 3 == 0 && (i < 65536 || i % 300 == 0)))
+                expectedOr.add(i);
+        }
+        claim(RoaringBitmap.of(expectedAnd).toArray().length == evens.and(threes).getCardinality(), "Incorrect AND cardinality.");
+        int[] and = evens.and(threes).toArray();
+        int i = 0;
+        for (int expected : expectedAnd)
+            claim(and[i++] == expected, "Incorrect AND contents.");
+        int[] or = evens.or(threes).toArray();
+        claim(or.length == expectedOr.size(), "Incorrect OR cardinality.");
+        i = 0;
+        for (int expected : expectedOr)
+            claim(or[i++] == expected, "Incorrect OR contents.");
+        claim(evens.and(new RoaringBitmap()).isEmpty(), "AND with empty should be empty.");
+        claim(evens.or(new RoaringBitmap()).getCardinality() == evens.getCardinality(), "OR with empty should be unchanged.");
+    }
+}
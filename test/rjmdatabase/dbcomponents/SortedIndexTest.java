@@ -0,0 +1,66 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SortedIndexTest extends TestBase
+{
+    private SortedIndex index;
+
+    /**
+     * Runs the tests for SortedIndex.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        SortedIndexTest tester = new SortedIndexTest();
+        tester.startTest();
+    }
+
+    @Override
+    public void beforeTest()
+    {
+        index = new SortedIndex("Name");
+        index.add(0, "Susan");
+        index.add(1, "James");
+        index.add(2, "Sue");
+        index.add(3, "Alex");
+        index.add(4, "Susan");
+    }
+
+    @Test
+    public void testRange()
+    {
+        List<Integer> keys = index.range("B", "Sue").collect(Collectors.toList());
+        claim(keys.size() == 1 && keys.get(0) == 1, "Only James lies in the range.");
+        keys = index.range("James", null).collect(Collectors.toList());
+        claim(keys.equals(List.of(1, 2, 0, 4)), "Keys should be ordered by value then key.");
+        keys = index.range(null, null).collect(Collectors.toList());
+        claim(keys.size() == 5, "Unbounded range should find everything.");
+    }
+
+    @Test
+    public void testPrefix()
+    {
+        List<Integer> keys = index.prefix("Su").collect(Collectors.toList());
+        claim(keys.equals(List.of(2, 0, 4)), "Should find Sue then both Susans.");
+        claim(index.prefix("Z").count() == 0, "Nothing starts with Z.");
+        index.remove(2, "Sue");
+        claim(index.prefix("Su").count() == 2, "Removed key still found.");
+    }
+
+    @Test
+    public void testBuild()
+    {
+        HashMap<Integer, Record> records = new HashMap<>();
+        for (int key = 0; key < 1000; key++)
+            records.put(key, new Record(new Object[]{key % 10}));
+        SortedIndex built = new SortedIndex("Digit");
+        built.build(records, 0);
+        claim(built.range(3, 5).count() == 200, "Built index has wrong contents.");
+        claim(built.range(3, 4).allMatch(key -> key % 10 == 3), "Built index has wrong keys.");
+    }
+}
@@ -9,6 +9,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class TableTest extends TestBase
 {
@@ -68,6 +71,42 @@ public class TableTest extends TestBase
         claim(filledTable.getNumRecords() == 4, "Number of records hasn't changed after add.");
     }
 
+    @Test
+    public void testAddRecords()
+    {
+        Table typed = new Table("Typed", "Name, Age", "string, int");
+        typed.createIndex("Age", IndexType.HASH);
+        try
+        {
+            typed.addRecords(Arrays.asList(new String[]{"Ann", "30"}, new String[]{"Bob", "old"}));
+            claim(false, "Invalid values should be rejected.");
+        }
+        catch (IllegalArgumentException e)
+        {
+            claim(e.getMessage().startsWith("Row 1"), "The bad row should be named.");
+        }
+        claim(typed.getNumRecords() == 0 && typed.getModificationCount() == 1, "A bad row should store nothing.");
+
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++)
+            rows.add(new String[]{"Name" + i, Integer.toString(i % 50)});
+        claim(typed.addRecords(rows) == 0, "The first block should start at key 0.");
+        claim(typed.getNumRecords() == 3000 && typed.getModificationCount() == 2, "The batch should be stored as one change.");
+        claim(typed.lookup("Age", "7").size() == 60, "Indexes should be kept up to date.");
+
+        // Keys in the way of the block move it past every used key.
+        typed.insertRecords(new int[]{3002, 3000}, Arrays.asList(new String[]{"Cat", "1"}, new String[]{"Dan", "2"}));
+        claim(typed.getRecord(3002).getField(0).equals("Cat"), "Incorrect inserted record.");
+        claim(typed.addRecords(rows.subList(0, 5)) == 3003, "The block should not overlap used keys.");
+        try
+        {
+            typed.insertRecords(new int[]{7000, 7000}, Arrays.asList(new String[]{"Eve", "1"}, new String[]{"Fay", "2"}));
+            claim(false, "Repeated keys should be rejected.");
+        }
+        catch (IllegalArgumentException e) {}
+        claim(typed.getNumRecords() == 3007, "Incorrect number of records.");
+    }
+
     @Test
     public void testAddRecordAsSingleString()
     {
@@ -92,6 +131,234 @@ public class TableTest extends TestBase
         claim("4".equals(record.getField(2)), "Incorrect field value");
     }
 
+    @Test
+    public void testTypedColumns()
+    {
+        try
+        {
+            new Table("Bad", "Name, Age", "string");
+            claim(false, "Not enough types supplied.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+
+        Table typed = new Table("Typed", "Name, Age, Height, Alive, Population, Tag", "string, int, double, boolean, long, bytes");
+        claim("string, int, double, boolean, long, bytes".equals(typed.getFieldTypes()), "Field types do not match original.");
+        typed.addRecord(new String[]{"Susan", "21", "1.65", "true", "7000000000", "cafe"});
+        try
+        {
+            typed.addRecord(new String[]{"James", "Old", "1.80", "true", "1", "00"});
+            claim(false, "Age must be an int.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+        claim(typed.getNumRecords() == 1, "Invalid Record should not be added.");
+
+        claim(typed.getInt(0, "Age") == 21, "Incorrect int value.");
+        claim(typed.getLong(0, "Population") == 7000000000L, "Incorrect long value.");
+        claim(typed.getDouble(0, "Height") == 1.65, "Incorrect double value.");
+        claim(typed.getBoolean(0, "Alive"), "Incorrect boolean value.");
+        byte[] tag = typed.getBytes(0, "Tag");
+        claim(tag.length == 2 && tag[0] == (byte)0xca && tag[1] == (byte)0xfe, "Incorrect bytes value.");
+        claim("21".equals(typed.getRecord(0).getField(1)), "Typed fields should still be readable as text.");
+        try
+        {
+            typed.getInt(0, "Name");
+            claim(false, "Name is not an int.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+
+        try
+        {
+            typed.updateRecord(0, "Age", "Twenty two");
+            claim(false, "Age must be an int.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+        typed.updateRecord(0, "Age", "22");
+        claim(typed.getInt(0, "Age") == 22, "Update has not succeeded.");
+
+        typed.addColumn(2, "Pets", ColumnType.INT, "0");
+        claim(typed.getFieldType("Pets") == ColumnType.INT, "New column has wrong type.");
+        claim(typed.getInt(0, "Pets") == 0, "Default value not saved.");
+        typed.deleteColumn("Height");
+        claim("string, int, int, boolean, long, bytes".equals(typed.getFieldTypes()), "Type not deleted with column.");
+
+        try
+        {
+            typed.saveTableToFile(tableTestFolderPath);
+            Table loaded = TableFileReadWriter.readFromFile(typed.getName(), tableTestFolderPath);
+            claim(typed.equals(loaded), "Loaded table does not equal original.");
+            claim(loaded.getInt(0, "Age") == 22, "Loaded values should keep their types.");
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while reading or writing.");
+        }
+    }
+
+    @Test
+    public void testIndexes()
+    {
+        try
+        {
+            filledTable.createIndex("NotAColumn", IndexType.HASH);
+            claim(false, "No column with that name.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+
+        filledTable.addRecord("James, 30, 2");
+        filledTable.createIndex("Name", IndexType.HASH);
+        claim(filledTable.hasIndex("Name", IndexType.HASH), "Index not created.");
+        claim(filledTable.lookup("Name", "James").size() == 2, "Index should find both James.");
+        claim(filledTable.lookup("Age", "21").first() == 0, "Lookup without index should still work.");
+
+        filledTable.addRecord("Susan, 50, 0");
+        claim(filledTable.lookup("Name", "Susan").size() == 2, "Index not updated after add.");
+        filledTable.updateRecord(0, "Name", "Beatrice");
+        claim(filledTable.lookup("Name", "Susan").size() == 1, "Index not updated after update.");
+        claim(filledTable.lookup("Name", "Beatrice").first() == 0, "Index not updated after update.");
+        filledTable.deleteRecord(1);
+        claim(filledTable.lookup("Name", "James").size() == 1, "Index not updated after delete.");
+
+        filledTable.renameColumn("Name", "FirstName");
+        claim(filledTable.hasIndex("FirstName", IndexType.HASH), "Index not renamed with column.");
+        claim(filledTable.lookup("FirstName", "James").size() == 1, "Renamed index should still work.");
+        filledTable.addColumn(0, "Title", "Dr");
+        claim(filledTable.lookup("FirstName", "Beatrice").first() == 0, "Index should survive a new column.");
+
+        try
+        {
+            filledTable.saveTableToFile(tableTestFolderPath);
+            Table loaded = TableFileReadWriter.readFromFile(filledTable.getName(), tableTestFolderPath);
+            claim(loaded.hasIndex("FirstName", IndexType.HASH), "Index should be rebuilt on load.");
+            claim(loaded.lookup("FirstName", "Susan").size() == 1, "Rebuilt index is wrong.");
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while reading or writing.");
+        }
+
+        filledTable.deleteColumn("FirstName");
+        claim(!filledTable.hasIndex("FirstName", IndexType.HASH), "Index should be removed with its column.");
+        filledTable.createIndex("Age", IndexType.HASH);
+        filledTable.dropIndex("Age", IndexType.HASH);
+        claim(!filledTable.hasIndex("Age", IndexType.HASH), "Index not dropped.");
+        try
+        {
+            filledTable.dropIndex("Age", IndexType.HASH);
+            claim(false, "Index already dropped.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testRangeAndPrefix()
+    {
+        Table typed = new Table("Typed", "Name, Age", "string, int");
+        typed.addRecord("Susan, 21");
+        typed.addRecord("James, 47");
+        typed.addRecord("Sue, 17");
+        typed.addRecord("Alex, 9");
+
+        // Without an index, then with one.
+        for (int pass = 0; pass < 2; pass++)
+        {
+            List<Integer> keys = typed.range("Age", "10", "40").collect(Collectors.toList());
+            claim(keys.equals(List.of(2, 0)), "Ages should compare as numbers.");
+            keys = typed.prefix("Name", "Su").collect(Collectors.toList());
+            claim(keys.equals(List.of(2, 0)), "Incorrect prefix matches.");
+            typed.createIndex("Age", IndexType.SORTED);
+            typed.createIndex("Name", IndexType.SORTED);
+        }
+
+        typed.updateRecord(3, "Age", "30");
+        typed.deleteRecord(0);
+        claim(typed.range("Age", "10", "40").collect(Collectors.toList()).equals(List.of(2, 3)), "Sorted index not maintained.");
+        try
+        {
+            typed.prefix("Age", "1");
+            claim(false, "Age is not a string column.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
+    }
+
+    @Test
+    public void testMatchingKeys()
+    {
+        // Leave most keys unused, so ordered scans can't check every key.
+        Table sparse = new Table("Sparse", "Value", "int");
+        sparse.insertRecord(5000000, new String[]{"3"});
+        sparse.insertRecord(2, new String[]{"1"});
+        sparse.insertRecord(70, new String[]{"2"});
+        int[] keys = sparse.matchingKeys(Filter.all(), true, true).toArray();
+        claim(keys.length == 3 && keys[0] == 2 && keys[1] == 70 && keys[2] == 5000000, "Keys should be in ascending order.");
+        claim(sparse.matchingKeys(Filter.greaterThan("Value", "1"), false, false).count() == 2, "Incorrect number of matches.");
+        List<String[]> rows = filledTable.parallelScan(Filter.all(), new String[]{"Name"}, true);
+        claim(rows.size() == 3 && rows.get(2)[0].equals("Alex"), "Incorrect parallel scan.");
+    }
+
+    @Test
+    public void testStatistics()
+    {
+        Table numbers = new Table("Numbers", "Value, Parity", "int, string");
+        for (int i = 0; i < 1000; i++)
+            numbers.addRecord(new String[]{Integer.toString(i), i % 2 == 0 ? "even" : "odd"});
+        numbers.analyze();
+        ColumnStatistics values = numbers.getColumnStatistics("Value");
+        claim(values.getDistinctCount() == 1000, "Every value is distinct.");
+        claim(values.getMin().equals("0") && values.getMax().equals("999"), "Incorrect range of values.");
+        claim(values.getBucketCounts().length == ColumnStatistics.MAX_BUCKETS, "Histogram should use every bucket.");
+        claim(numbers.getColumnStatistics("Parity").getDistinctCount() == 2, "There are only two parities.");
+        double estimate = numbers.estimateMatches(Filter.lessThan("Value", "100"));
+        claim(estimate > 80 && estimate < 120, "Range estimate too far out: " + estimate);
+        estimate = numbers.estimateMatches(Filter.equalTo("Parity", "odd"));
+        claim(estimate > 450 && estimate < 550, "Equality estimate too far out: " + estimate);
+        claim(numbers.estimateMatches(Filter.equalTo("Value", "5000")) == 0, "Value is out of range.");
+
+        // Indexes are only used when they rule out most of the Table.
+        numbers.createIndex("Value", IndexType.SORTED);
+        claim(numbers.usesIndexes(Filter.equalTo("Value", "5")), "Index should find a single value.");
+        claim(!numbers.usesIndexes(Filter.greaterThan("Value", "10")), "Scanning should be cheaper for most of the Table.");
+        claim(numbers.filter(Filter.greaterThan("Value", "10")).getCardinality() == 989, "Scan found the wrong Records.");
+        claim(numbers.filter(Filter.equalTo("Value", "5")).getCardinality() == 1, "Index found the wrong Records.");
+
+        // Changes are counted as they happen.
+        numbers.addRecord(new String[]{"2000", "even"});
+        claim(numbers.getColumnStatistics("Value").getMax().equals("2000"), "Maximum not updated.");
+        numbers.deleteRecord(0);
+        claim(numbers.getStatistics().getRowCount() == 1000, "Row count not updated.");
+        numbers.updateRecord(1, "Value", "-5");
+        claim(numbers.getColumnStatistics("Value").getMin().equals("-5"), "Minimum not updated.");
+        claim(numbers.getStatistics().getChangesSinceAnalyze() == 3, "Incorrect number of changes.");
+
+        try
+        {
+            numbers.saveTableToFile(tableTestFolderPath);
+            Table loaded = TableFileReadWriter.readFromFile(numbers.getName(), tableTestFolderPath);
+            ColumnStatistics loadedValues = loaded.getColumnStatistics("Value");
+            claim(loadedValues.getMin().equals("-5") && loadedValues.getMax().equals("2000"), "Statistics not saved.");
+            claim(Arrays.equals(loadedValues.getBucketCounts(), numbers.getColumnStatistics("Value").getBucketCounts()), "Histogram not saved.");
+            claim(loaded.getStatistics().getChangesSinceAnalyze() == 3, "Changes not saved.");
+        }
+        catch (IOException e)
+        {
+            claim(false, "IOException while reading or writing.");
+        }
+
+        // Stale statistics are gathered again when read, without the Table
+        // needing saving again.
+        for (int i = 0; i < 300; i++)
+            numbers.addRecord(new String[]{Integer.toString(3000 + i), "even"});
+        try {numbers.saveTableToFile(tableTestFolderPath);}
+        catch (IOException e) { claim(false, "IOException while saving to file."); }
+        numbers.estimateMatches(Filter.equalTo("Value", "5"));
+        claim(numbers.getStatistics().getChangesSinceAnalyze() == 0, "Stale statistics should be gathered again.");
+        claim(!numbers.getIsDirty(), "Reading the Table should not mark it as changed.");
+
+        // Files from before statistics were saved are analysed when loaded.
+        Table old = Table.createTableFromData("Old", new String[][]{{"1.2"}, {"KeyTable", "Name"}, {"int", "string"}, {"Indexes"}, {"0", "Susan"}});
+        claim(old.getStatistics().getRowCount() == 1, "Old table not analysed.");
+        claim(old.getColumnStatistics("Name").getMax().equals("Susan"), "Old table not analysed.");
+    }
+
     @Test
     public void testGetRecord()
     {
@@ -316,6 +583,12 @@ public class TableTest extends TestBase
             claim(false, "Already a column with that name.");
         }
         catch (IllegalArgumentException e) { /* test passed */ }
+        try
+        {
+            filledTable.renameColumn("Name", Table.KEY_COL_NAME);
+            claim(false, "The key column already has that name.");
+        }
+        catch (IllegalArgumentException e) { /* test passed */ }
 
         filledTable.renameColumn("NumberOfPets", "NumPets");
         claim("Name, Age, NumPets".equals(filledTable.getFieldNames()), "Incorrect field names.");
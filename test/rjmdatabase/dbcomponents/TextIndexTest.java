@@ -0,0 +1,53 @@
+package rjmdatabase.dbcomponents;
+
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.util.List;
+
+public class TextIndexTest extends TestBase
+{
+    private TextIndex index;
+
+    /**
+     * Runs the tests for TextIndex.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        TextIndexTest tester = new TextIndexTest();
+        tester.startTest();
+    }
+
+    @Override
+    public void beforeTest()
+    {
+        index = new TextIndex("Address");
+        index.add(0, "XX Nilford Road\nLeicester\nLE3 3GF");
+        index.add(1, "XX Mewton Avenue\nBodworth\nCV2 0UQ");
+        index.add(2, "Road Nilford, Leicestershire");
+    }
+
+    @Test
+    public void testTokenize()
+    {
+        claim(TextIndex.tokenize("XX Nilford Road\nLE3, 3GF!").equals(List.of("xx", "nilford", "road", "le3", "3gf")), "Incorrect words.");
+        claim(TextIndex.tokenize("  ,, ").isEmpty(), "Separators alone have no words.");
+        claim(TextIndex.containsPhrase(List.of("a", "b", "c"), List.of("b", "c")), "Phrase should be found.");
+        claim(!TextIndex.containsPhrase(List.of("a", "b", "c"), List.of("a", "c")), "Words must be consecutive.");
+    }
+
+    @Test
+    public void testSearches()
+    {
+        claim(index.searchWord("NILFORD").getCardinality() == 2, "Search should ignore case.");
+        claim(index.searchWord("Leicester").getCardinality() == 1, "Should only match whole words.");
+        claim(index.searchPrefix("leic").getCardinality() == 2, "Prefix should match both words.");
+        int[] phrase = index.searchPhrase("nilford road").toArray();
+        claim(phrase.length == 1 && phrase[0] == 0, "Phrase words must be in order.");
+        claim(index.searchPhrase("xx nowhere").isEmpty(), "Unknown word means no match.");
+
+        index.remove(0, "XX Nilford Road\nLeicester\nLE3 3GF");
+        claim(index.searchWord("nilford").getCardinality() == 1, "Removed Record still found.");
+        claim(index.searchWord("le3").isEmpty(), "Word only in removed Record still found.");
+    }
+}
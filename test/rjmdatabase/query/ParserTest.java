@@ -0,0 +1,84 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.JoinType;
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+public class ParserTest extends TestBase
+{
+    /**
+     * Runs the tests for Parser.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        ParserTest tester = new ParserTest();
+        tester.startTest();
+    }
+
+    @Test
+    public void testSelect()
+    {
+        Statement statement = Parser.parse("select Name, count(*) AS Total from Person p "
+                + "left join Animal a on p.Name = a.Owner where Age >= 18 and not (Name = 'Al''s') "
+                + "group by Name order by Total desc, Name limit 10;");
+        claim(statement instanceof Statement.Select, "Should parse a SELECT.");
+        Statement.Select select = (Statement.Select)statement;
+        claim(select.items.size() == 2 && select.items.get(1).isAggregate(), "Incorrect SELECT items.");
+        claim("Total".equals(select.items.get(1).alias), "Incorrect alias.");
+        claim(select.from.tableName.equals("Person") && select.from.alias.equals("p"), "Incorrect FROM table.");
+        claim(select.join.tableName.equals("Animal") && select.joinType == JoinType.LEFT_OUTER, "Incorrect join.");
+        claim(select.where.getConjuncts().size() == 2, "Incorrect WHERE condition.");
+        claim(select.where.toString().contains("'Al''s'"), "Quotes should be unescaped then escaped again.");
+        claim(select.groupBy.size() == 1 && select.orderBy.size() == 2, "Incorrect GROUP BY or ORDER BY.");
+        claim(select.orderBy.get(0).descending && !select.orderBy.get(1).descending, "Incorrect sort directions.");
+        claim(select.limit == 10, "Incorrect limit.");
+    }
+
+    @Test
+    public void testModifications()
+    {
+        Statement.Insert insert = (Statement.Insert)Parser.parse("INSERT INTO Person (Name, Age) VALUES ('Susan', 30), ('James', 25)");
+        claim(insert.columns.size() == 2 && insert.rows.size() == 2, "Incorrect INSERT.");
+        claim(insert.rows.get(1).get(1).resolve(new String[0]).equals("25"), "Numbers should be kept as written.");
+
+        Statement.Update update = (Statement.Update)Parser.parse("UPDATE Person SET Age = 31, Name = 'Sue' WHERE Name LIKE 'Sus%'");
+        claim(update.columns.size() == 2 && update.where instanceof Condition.StartsWith, "Incorrect UPDATE.");
+
+        Statement.Delete delete = (Statement.Delete)Parser.parse("DELETE FROM Person");
+        claim(delete.where == null, "DELETE without WHERE should have no condition.");
+    }
+
+    @Test
+    public void testParameters()
+    {
+        Statement select = Parser.parse("SELECT Name FROM Person WHERE Age > ? AND Name LIKE ?");
+        claim(select.numParameters == 2, "Incorrect number of parameters.");
+        String normal = Parser.normalize("select  Name\nfrom Person where Name = 'Al''s' and Age>?;");
+        claim(normal.equals("SELECT Name FROM Person WHERE Name = 'Al''s' AND Age > ?"), "Incorrect normal form: " + normal);
+        claim(!Parser.normalize("SELECT name FROM Person").equals(Parser.normalize("SELECT Name FROM Person")),
+                "Names should keep their case.");
+    }
+
+    @Test
+    public void testErrors()
+    {
+        String[] invalid = {
+            "SELECT FROM Person",
+            "SELECT * FROM Person WHERE",
+            "SELECT * FROM Person WHERE Name LIKE '%son'",
+            "SELECT * FROM Person LIMIT -1",
+            "SELECT * FROM Person extra words",
+            "SELECT * FROM Person WHERE Name = 'unterminated",
+            "DROP TABLE Person"
+        };
+        for (String query : invalid)
+        {
+            try
+            {
+                Parser.parse(query);
+                claim(false, "Should not parse: " + query);
+            }
+            catch (IllegalArgumentException e) {}
+        }
+    }
+}
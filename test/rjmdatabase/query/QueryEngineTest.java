@@ -0,0 +1,268 @@
+package rjmdatabase.query;
+
+import rjmdatabase.dbcomponents.Database;
+import rjmdatabase.dbcomponents.IndexType;
+import rjmdatabase.fileutils.FileUtil;
+import rjmdatabase.testutils.Test;
+import rjmdatabase.testutils.TestBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class QueryEngineTest extends TestBase
+{
+    String testFolder = "dbTestFolders/queryEngineTest";
+    Database db;
+    QueryEngine engine;
+
+    /**
+     * Runs the tests for QueryEngine.
+     * @param args Command line arguments.
+     */
+    public static void main(String[] args) {
+        QueryEngineTest tester = new QueryEngineTest();
+        tester.startTest();
+    }
+
+    @Override
+    protected void beforeTest()
+    {
+        db = new Database(testFolder);
+        db.addTable("Person", "Name, Age, City", "string, int, string");
+        db.addTable("Animal", "Name, Type, Owner");
+        engine = new QueryEngine(db);
+        run("INSERT INTO Person VALUES ('Susan', 30, 'Leeds'), ('James', 25, 'York'), ('Alex', 41, 'Leeds'), ('Sam', 19, 'Hull')");
+        run("INSERT INTO Animal (Owner, Name, Type) VALUES ('Susan', 'Rex', 'Dog'), ('Susan', 'Tom', 'Cat'), ('James', 'Polly', 'Parrot')");
+    }
+
+    @Override
+    protected void afterTest()
+    {
+        FileUtil.deleteDirIfExists(new File(testFolder));
+    }
+
+    // Runs a query that is expected to succeed.
+    private QueryResult run(String query)
+    {
+        try
+        {
+            return engine.execute(query);
+        }
+        catch (IOException e)
+        {
+            throw new Error(e);
+        }
+    }
+
+    @Test
+    public void testSelect()
+    {
+        QueryResult result = run("SELECT Name, Age FROM Person WHERE Age > 20 AND City = 'Leeds' ORDER BY Age DESC");
+        claim(Arrays.equals(result.getColumnNames(), new String[]{"Name", "Age"}), "Incorrect column names.");
+        claim(result.getRows().size() == 2, "Incorrect number of rows.");
+        claim(Arrays.equals(result.getRows().get(0), new String[]{"Alex", "41"}), "Rows should be sorted by age.");
+
+        List<String[]> all = run("SELECT * FROM Person").getRows();
+        claim(all.size() == 4 && all.get(0).length == 4, "SELECT * should return keys and fields.");
+        claim(run("SELECT Name FROM Person ORDER BY Name LIMIT 2").getRows().size() == 2, "Limit should apply.");
+        claim(run("SELECT Name FROM Person WHERE KeyTable < 2").getRows().size() == 2, "Should be able to test keys.");
+        claim(run("SELECT Name FROM Person WHERE Age BETWEEN 19 AND 25 OR Name LIKE 'Su%'").getRows().size() == 3, "Incorrect OR result.");
+    }
+
+    @Test
+    public void testAggregates()
+    {
+        QueryResult result = run("SELECT City, count(*), avg(Age) AS AverageAge FROM Person GROUP BY City ORDER BY AverageAge DESC");
+        claim(Arrays.equals(result.getColumnNames(), new String[]{"City", "count(*)", "AverageAge"}), "Incorrect column names.");
+        claim(Arrays.equals(result.getRows().get(0), new String[]{"Leeds", "2", "35.5"}), "Incorrect first group.");
+        claim(run("SELECT max(Age) FROM Person").getRows().get(0)[0].equals("41"), "Incorrect max.");
+        claim(run("SELECT sum(Age) FROM Person WHERE Age > 100").getRows().get(0)[0] == null, "Sum of no rows should be missing, like avg.");
+        claim(run("SELECT City, count(*) FROM Person GROUP BY City ORDER BY City LIMIT 2147483647").getRows().size() == 3,
+                "A limit larger than the result should return every group.");
+
+        QueryResult approximate = run("SELECT City, approx_count_distinct(Name), approx_quantile(Age, 0.5) FROM Person GROUP BY City ORDER BY City");
+        claim(Arrays.equals(approximate.getColumnNames(), new String[]{"City", "approx_count_distinct(Name)", "approx_quantile(Age, 0.5)"}), "Incorrect approximate column names.");
+        claim(Arrays.equals(approximate.getRows().get(1), new String[]{"Leeds", "2", "30"}), "Incorrect approximate aggregates.");
+
+        try
+        {
+            engine.execute("SELECT Name, count(*) FROM Person GROUP BY City");
+            claim(false, "Ungrouped columns should be rejected.");
+        }
+        catch (IllegalArgumentException | IOException e) {}
+        try
+        {
+            engine.execute("SELECT approx_quantile(Age, 2) FROM Person");
+            claim(false, "Quantiles above 1 should be rejected.");
+        }
+        catch (IllegalArgumentException | IOException e) {}
+    }
+
+    @Test
+    public void testJoin()
+    {
+        QueryResult inner = run("SELECT p.Name, a.Name FROM Person p JOIN Animal a ON a.Owner = p.Name WHERE a.Type != 'Cat' ORDER BY a.Name");
+        claim(Arrays.equals(inner.getColumnNames(), new String[]{"p.Name", "a.Name"}), "Joined columns should be qualified.");
+        claim(inner.getRows().size() == 2, "Incorrect number of joined rows.");
+        claim(Arrays.equals(inner.getRows().get(0), new String[]{"James", "Polly"}), "Incorrect first joined row.");
+
+        QueryResult outer = run("SELECT Person.Name, Animal.Name FROM Person LEFT JOIN Animal ON Person.Name = Animal.Owner");
+        claim(outer.getRows().size() == 5, "Unmatched people should be kept.");
+        // Conditions on the right table of a left join remove unmatched rows.
+        claim(run("SELECT * FROM Person LEFT JOIN Animal ON Person.Name = Owner WHERE Type = 'Dog'").getRows().size() == 1, "Incorrect filtered outer join.");
+        claim(run("SELECT * FROM Person LEFT JOIN Animal ON Person.Name = Owner WHERE NOT Type = 'Dog'").getRows().size() == 2,
+                "NOT should not match missing values either.");
+
+        try
+        {
+            engine.execute("SELECT Name FROM Person JOIN Animal ON Person.Name = Animal.Owner");
+            claim(false, "Ambiguous columns should be rejected.");
+        }
+        catch (IllegalArgumentException | IOException e) {}
+    }
+
+    @Test
+    public void testModifications()
+    {
+        claim(run("UPDATE Person SET City = 'Bath, Somerset' WHERE Age < 26").getUpdateCount() == 2, "Incorrect update count.");
+        claim(run("SELECT Name FROM Person WHERE City = 'Bath, Somerset'").getRows().size() == 2, "Updates should allow commas.");
+        claim(run("DELETE FROM Person WHERE Name CONTAINS 'sam'").getUpdateCount() == 1, "Incorrect delete count.");
+        claim(run("SELECT count(*) FROM Person").getRows().get(0)[0].equals("3"), "Record should be deleted.");
+        claim(run("DELETE FROM Animal").getUpdateCount() == 3, "Should delete everything.");
+
+        try
+        {
+            engine.execute("INSERT INTO Person VALUES ('Jo', 'not a number', 'Hull')");
+            claim(false, "Invalid values should be rejected.");
+        }
+        catch (IllegalArgumentException | IOException e) {}
+        try
+        {
+            engine.execute("INSERT INTO Person VALUES ('Jo', 52, 'Hull'), ('Kim', 'not a number', 'Hull')");
+            claim(false, "Invalid values should be rejected.");
+        }
+        catch (IllegalArgumentException | IOException e) {}
+        claim(run("SELECT count(*) FROM Person").getRows().get(0)[0].equals("3"), "A failed INSERT should insert no rows.");
+        String[] invalidUpdates = {"UPDATE Nobody SET Age = 1", "UPDATE Person SET Age = 31, Age = 32"};
+        for (String invalid : invalidUpdates)
+        {
+            try
+            {
+                engine.execute(invalid);
+                claim(false, "Should reject " + invalid);
+            }
+            catch (IllegalArgumentException | IOException e) {}
+        }
+    }
+
+    @Test
+    public void testExplain()
+    {
+        // Indexes are only worth using on a table large enough for them to
+        // rule out most of it.
+        for (int i = 0; i < 200; i++)
+            db.addRecord("Person", new String[]{"Person" + i, Integer.toString(i % 80), "Town" + (i % 50)});
+        db.createIndex("Person", "City", IndexType.HASH);
+        db.analyze("Person");
+        String plan = engine.explain("SELECT Name FROM Person WHERE City = 'Leeds' ORDER BY Age LIMIT 1");
+        claim(!plan.contains("\n"), "The whole query should be merged into one scan.");
+        claim(plan.contains("hash index on City"), "The hash index should be chosen.");
+        claim(plan.contains("LIMIT 1"), "The limit should be merged into the scan.");
+        plan = engine.explain("SELECT Name FROM Person WHERE City <> 'Leeds'");
+        claim(plan.contains("(full scan, about 2"), "Most of the table matches, so it should be scanned: " + plan);
+
+        String joinPlan = engine.explain("SELECT * FROM Person p JOIN Animal a ON p.Name = a.Owner WHERE p.Age > 20 AND a.Type = 'Dog'");
+        claim(joinPlan.startsWith("Hash join"), "No filter should be left above the join.");
+        claim(joinPlan.contains("(building on a)"), "The hash table should be built from the smaller side.");
+        claim(joinPlan.contains("Scan Person AS p (full scan, about"), "A range over most of the table should be scanned.");
+        claim(joinPlan.contains("WHERE p.Age > '20'"), "Condition should be pushed to the left table.");
+        claim(joinPlan.contains("WHERE a.Type = 'Dog'"), "Condition should be pushed to the right table.");
+        claim(run("EXPLAIN SELECT * FROM Person").getRows().size() == 1, "EXPLAIN should return the plan as rows.");
+    }
+
+    @Test
+    public void testParameters() throws IOException
+    {
+        QueryResult result = engine.execute("SELECT Name FROM Person WHERE Age > ? AND City = ? ORDER BY Name", "20", "Leeds");
+        claim(result.getRows().size() == 2 && result.getRows().get(0)[0].equals("Alex"), "Parameters should be used as values.");
+        claim(engine.execute("SELECT Name FROM Person WHERE Name LIKE ?", "Sa%").getRows().size() == 1, "LIKE should take a parameter.");
+
+        claim(engine.execute("INSERT INTO Person VALUES (?, ?, 'Hull')", "Jo", "50").getUpdateCount() == 1, "Incorrect insert count.");
+        claim(engine.execute("UPDATE Person SET City = ? WHERE Age > ?", "Bath", "40").getUpdateCount() == 2, "Incorrect update count.");
+        claim(engine.execute("DELETE FROM Person WHERE City = ?", "Bath").getUpdateCount() == 2, "Incorrect delete count.");
+
+        try
+        {
+            engine.execute("SELECT Name FROM Person WHERE Age > ?");
+            claim(false, "Missing parameters should be rejected.");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testPlanCache() throws IOException
+    {
+        PreparedQuery prepared = engine.prepare("SELECT Name FROM Person WHERE Age > ?");
+        claim(engine.prepare("select Name  from Person where Age > ?;") == prepared, "Equivalent text should share a query.");
+        claim(prepared.getNumParameters() == 1, "Incorrect number of parameters.");
+        prepared.execute("20");
+        prepared.execute("30");
+        claim(prepared.getTimesPlanned() == 1, "The plan should be kept between runs.");
+
+        db.createIndex("Person", "Age", IndexType.SORTED);
+        claim(prepared.execute("30").getRows().size() == 1, "Incorrect result after adding an index.");
+        claim(prepared.getTimesPlanned() == 2, "Adding an index should invalidate the plan.");
+        db.dropIndex("Person", "Age", IndexType.SORTED);
+        prepared.execute("30");
+        claim(prepared.getTimesPlanned() == 3, "Dropping an index should invalidate the plan.");
+        db.addColumn("Person", "Email", "string", "none");
+        prepared.execute("30");
+        claim(prepared.getTimesPlanned() == 4, "Adding a column should invalidate the plan.");
+        db.deleteColumn("Person", "Email");
+        db.renameColumn("Person", "Age", "Years");
+        try
+        {
+            prepared.execute("30");
+            claim(false, "Plans should not use renamed columns.");
+        }
+        catch (IllegalArgumentException e) {}
+
+        engine.setPlanCacheSize(2);
+        engine.prepare("SELECT * FROM Animal");
+        engine.prepare("SELECT * FROM Person");
+        claim(engine.getPlanCacheCount() == 2, "The cache should be bounded.");
+        claim(engine.prepare("SELECT Name FROM Person WHERE Age > ?") != prepared, "The least recently used query should be evicted.");
+    }
+
+    @Test
+    public void testResultCache() throws IOException
+    {
+        String query = "SELECT Name FROM Person WHERE Age > ?";
+        QueryResult first = engine.execute(query, "20");
+        claim(engine.execute(query, "20") == first, "Repeated queries should be answered from the cache.");
+        claim(engine.execute(query, "30") != first, "Different values should have their own results.");
+
+        long count = db.getModificationCount("Person");
+        db.saveDatabase();
+        claim(db.getModificationCount("Person") == count, "Saving should not count as a change.");
+        claim(engine.execute(query, "20") == first, "Saving should not invalidate results.");
+        db.updateRecord("Person", 0, "Age", "10");
+        QueryResult updated = engine.execute(query, "20");
+        claim(updated != first && updated.getRows().size() == 2, "Changes should invalidate results.");
+        run("INSERT INTO Animal VALUES ('Rover', 'Dog', 'Sam')");
+        claim(engine.execute(query, "20") == updated, "Changes to other tables should not invalidate results.");
+        QueryResult joined = run("SELECT a.Name FROM Person p JOIN Animal a ON p.Name = a.Owner");
+        run("DELETE FROM Animal WHERE Name = 'Rover'");
+        claim(run("SELECT a.Name FROM Person p JOIN Animal a ON p.Name = a.Owner") != joined, "Changes to joined tables should invalidate results.");
+
+        long used = engine.getResultCacheBytesUsed();
+        claim(used > 0, "Results should take up space.");
+        engine.setResultCacheBytes(used / 2);
+        claim(engine.getResultCacheBytesUsed() <= used / 2, "The cache should stay within its budget.");
+        engine.setResultCacheBytes(0);
+        claim(engine.getResultCacheBytesUsed() == 0, "An empty budget should cache nothing.");
+        claim(engine.execute(query, "20") != engine.execute(query, "20"), "Results should not be kept without a budget.");
+    }
+}